@@ -17,19 +17,97 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.routing.IRoutingDecision;
+
 /**
  * This is a context object where floodlight listeners can register 
  * and later retrieve context information associated with an
  * event
+ * 
+ * The keys that nearly every packet-in carries (the payload, the source
+ * and destination devices and the routing decision) are kept in a small
+ * array indexed by a fixed slot per key. Other keys go to the storage map.
+ * A context is only used by the thread processing its event, so the slots
+ * are not synchronized.
  * @author readams
  */
 public class FloodlightContext {
+    private static final int SLOT_PI_PAYLOAD = 0;
+    private static final int SLOT_SRC_DEVICE = 1;
+    private static final int SLOT_DST_DEVICE = 2;
+    private static final int SLOT_ORIG_DST_DEVICE = 3;
+    private static final int SLOT_DECISION = 4;
+    private static final int NUM_SLOTS = 5;
+
+    protected final Object[] slots = new Object[NUM_SLOTS];
+
     protected ConcurrentHashMap<String, Object> storage =
             new ConcurrentHashMap<String, Object>();
 
+    /**
+     * @return the values stored under keys that do not have a slot
+     */
     public ConcurrentHashMap<String, Object> getStorage() {
         return storage;
     }
+
+    /**
+     * Get the slot for a well-known key. The keys are constants, so
+     * their hash codes are cached and equals() hits the identity check.
+     * @param key
+     * @return the slot index, or -1 if the key lives in the storage map
+     */
+    static int slotOf(String key) {
+        switch (key) {
+        case IFloodlightProviderService.CONTEXT_PI_PAYLOAD:
+            return SLOT_PI_PAYLOAD;
+        case IDeviceService.CONTEXT_SRC_DEVICE:
+            return SLOT_SRC_DEVICE;
+        case IDeviceService.CONTEXT_DST_DEVICE:
+            return SLOT_DST_DEVICE;
+        case IDeviceService.CONTEXT_ORIG_DST_DEVICE:
+            return SLOT_ORIG_DST_DEVICE;
+        case IRoutingDecision.CONTEXT_DECISION:
+            return SLOT_DECISION;
+        default:
+            return -1;
+        }
+    }
+
+    Object get(String key) {
+        int slot = slotOf(key);
+        return slot >= 0 ? slots[slot] : storage.get(key);
+    }
+
+    void put(String key, Object value) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            slots[slot] = value;
+        } else {
+            storage.put(key, value);
+        }
+    }
+
+    void remove(String key) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            slots[slot] = null;
+        } else {
+            storage.remove(key);
+        }
+    }
+
+    /**
+     * Drop everything stored in the context so it can be reused
+     */
+    public void clear() {
+        Arrays.fill(slots, null);
+        if (!storage.isEmpty()) {
+            storage.clear();
+        }
+    }
 }
@@ -55,10 +55,12 @@ public interface IFloodlightProviderService extends
 
     /**
      * A FloodlightContextStore object that can be used to retrieve the
-     * packet-in payload
+     * packet-in payload. The payload is decoded lazily: use
+     * {@link PacketInPayloadStore#getView(FloodlightContext, String)} to
+     * read header fields without deserializing the whole packet.
      */
-    public static final FloodlightContextStore<Ethernet> bcStore =
-            new FloodlightContextStore<Ethernet>();
+    public static final PacketInPayloadStore bcStore =
+            new PacketInPayloadStore();
 
     /**
      * Service name used in the service directory representing
@@ -0,0 +1,50 @@
+package net.floodlightcontroller.core;
+
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.EthernetView;
+
+/**
+ * The FloodlightContextStore used for the packet-in payload
+ * ({@link IFloodlightProviderService#CONTEXT_PI_PAYLOAD}).
+ *
+ * The controller stores an {@link EthernetView} over the packet-in data
+ * rather than a deserialized {@link Ethernet}. Listeners that only need a
+ * few header fields can read them from {@link #getView(FloodlightContext, String)}
+ * without ever decoding the packet; {@link #get(FloodlightContext, String)}
+ * keeps returning an Ethernet and deserializes the view on first use.
+ *
+ * @see EthernetView
+ */
+public class PacketInPayloadStore extends FloodlightContextStore<Ethernet> {
+
+    @Override
+    public Ethernet get(FloodlightContext bc, String key) {
+        Object o = bc.get(key);
+        if (o instanceof EthernetView) {
+            return ((EthernetView) o).getEthernet();
+        }
+        return (Ethernet) o;
+    }
+
+    /**
+     * Get the payload as a lazily decoded view. If a deserialized packet
+     * was stored instead, it is wrapped in a view that returns that same
+     * packet from {@link EthernetView#getEthernet()}.
+     * @param bc
+     * @param key
+     * @return the view, or null if nothing is stored under key
+     */
+    public EthernetView getView(FloodlightContext bc, String key) {
+        Object o = bc.get(key);
+        if (o == null || o instanceof EthernetView) {
+            return (EthernetView) o;
+        }
+        EthernetView view = EthernetView.of((Ethernet) o);
+        bc.put(key, view);
+        return view;
+    }
+
+    public void putView(FloodlightContext bc, String key, EthernetView view) {
+        bc.put(key, view);
+    }
+}
@@ -20,6 +20,7 @@ package net.floodlightcontroller.core.internal;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -29,7 +30,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -55,7 +55,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleLoader;
 import net.floodlightcontroller.core.util.ListenerDispatcher;
 import net.floodlightcontroller.core.web.CoreWebRoutable;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
-import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.EthernetView;
 import net.floodlightcontroller.perfmon.IPktInProcessingTimeService;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.storage.IResultSet;
@@ -87,6 +87,20 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     /* OpenFlow message listeners and dispatchers */
     protected static ConcurrentMap<OFType, ListenerDispatcher<OFType,IOFMessageListener>> messageListeners;
     protected static ConcurrentLinkedQueue<IControllerCompletionListener> completionListeners;
+
+    /*
+     * Snapshots of the above for handleMessage(), rebuilt whenever a
+     * listener is added or removed. dispatchTable is indexed by
+     * OFType.ordinal(); an entry is null if no listener was ever added for
+     * that type.
+     */
+    private static final IOFMessageListener[] NO_LISTENERS = new IOFMessageListener[0];
+    private static final IControllerCompletionListener[] NO_COMPLETION_LISTENERS =
+            new IControllerCompletionListener[0];
+    protected static volatile IOFMessageListener[][] dispatchTable =
+            new IOFMessageListener[OFType.values().length][];
+    protected static volatile IControllerCompletionListener[] completionListenerArray =
+            NO_COMPLETION_LISTENERS;
     
     /* 
      * The controllerNodeIPsCache maps Controller IDs to their IP address.
@@ -293,13 +307,14 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     // Handler for SwitchPortsChanged was here (notifyPortChanged). Handled in OFSwitchManager
 
     /**
-     * flcontext_cache - Keep a thread local stack of contexts
+     * flcontext_cache - Keep a thread local stack of contexts. Only the
+     * owning thread touches it, so it is an unsynchronized ArrayDeque.
      */
-    protected static final ThreadLocal<Stack<FloodlightContext>> flcontext_cache =
-        new ThreadLocal <Stack<FloodlightContext>> () {
+    protected static final ThreadLocal<ArrayDeque<FloodlightContext>> flcontext_cache =
+        new ThreadLocal <ArrayDeque<FloodlightContext>> () {
             @Override
-            protected Stack<FloodlightContext> initialValue() {
-                return new Stack<FloodlightContext>();
+            protected ArrayDeque<FloodlightContext> initialValue() {
+                return new ArrayDeque<FloodlightContext>();
             }
         };
 
@@ -308,15 +323,10 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @return FloodlightContext
      */
     protected static FloodlightContext flcontext_alloc() {
-        FloodlightContext flcontext = null;
-
-        if (flcontext_cache.get().empty()) {
+        FloodlightContext flcontext = flcontext_cache.get().pollFirst();
+        if (flcontext == null) {
             flcontext = new FloodlightContext();
         }
-        else {
-            flcontext = flcontext_cache.get().pop();
-        }
-
         return flcontext;
     }
 
@@ -325,8 +335,8 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @param flcontext
      */
     protected void flcontext_free(FloodlightContext flcontext) {
-        flcontext.getStorage().clear();
-        flcontext_cache.get().push(flcontext);
+        flcontext.clear();
+        flcontext_cache.get().addFirst(flcontext);
     }
 
 
@@ -348,7 +358,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     @Override
     public void handleMessage(IOFSwitch sw, OFMessage m,
                                  FloodlightContext bContext) {
-        Ethernet eth = null;
+        EthernetView eth = null;
         log.trace("Dispatching OFMessage to listeners.");
         if (this.notifiedRole == HARole.STANDBY) {
             counters.dispatchMessageWhileStandby.increment();
@@ -368,27 +378,19 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                 }
 
                 if (alwaysDecodeEth) {
-                    try {
-                        eth = new Ethernet();
-                        eth.deserialize(pi.getData(), 0, pi.getData().length);
-                    }
-                    catch (RuntimeException e) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Failed to deserialize ethernet packet {} -> {}",
-                                    eth.getSourceMACAddress(), eth.getDestinationMACAddress());
-                        }
-                        throw new RuntimeException("Error in deserialize ethernet packet", e);
-                    }
-
+                    /*
+                     * Only wrap the data; header fields are parsed on demand
+                     * and the Ethernet object is built the first time a
+                     * listener asks for it through bcStore.get(). A decode
+                     * error there names this switch and packet-in.
+                     */
+                    eth = new PacketInEthernetView(sw, pi);
                 }
                 // fall through to default case...
 
             default:
 
-                List<IOFMessageListener> listeners = null;
-                if (messageListeners.containsKey(m.getType())) {
-                    listeners = messageListeners.get(m.getType()).getOrderedListeners();
-                }
+                IOFMessageListener[] listeners = dispatchTable[m.getType().ordinal()];
 
                 FloodlightContext bc = null;
                 if (listeners != null) {
@@ -401,42 +403,70 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                         bc = bContext;
                     }
                     if (eth != null) {
-                        IFloodlightProviderService.bcStore.put(bc,
+                        IFloodlightProviderService.bcStore.putView(bc,
                                 IFloodlightProviderService.CONTEXT_PI_PAYLOAD,
                                 eth);
                     }
 
-                    // Get the starting time (overall and per-component) of
-                    // the processing chain for this packet if performance
-                    // monitoring is turned on
-                    pktinProcTimeService.bootstrap();
-
-                    for (IOFMessageListener l : listeners) {
-                        pktinProcTimeService.addListener(l);
-                    }
-                    pktinProcTimeService.recordStartTimePktIn();
-                    Command cmd;
-                    for (IOFMessageListener listener : listeners) {
-                        pktinProcTimeService.recordStartTimeComp(listener);
-                        cmd = listener.receive(sw, m, bc);
-                        pktinProcTimeService.recordEndTimeComp(listener);
-
-                        if (Command.STOP.equals(cmd)) {
-                            break;
+                    if (pktinProcTimeService.isEnabled()) {
+                        dispatchTimed(listeners, sw, m, bc);
+                    } else {
+                        for (IOFMessageListener listener : listeners) {
+                            if (listener.receive(sw, m, bc) == Command.STOP) {
+                                break;
+                            }
                         }
                     }
-                    pktinProcTimeService.recordEndTimePktIn(sw, m, bc);
                 }
                 // paag
                 // And just before we exit the controller loop we see if anyone
                 // is interested in knowing that we are exiting the loop
-                for (IControllerCompletionListener listener : completionListeners)
-                	listener.onMessageConsumed(sw, m, bc);
+                IControllerCompletionListener[] cls = completionListenerArray;
+                if (cls.length != 0) {
+                    for (IControllerCompletionListener listener : cls)
+                        listener.onMessageConsumed(sw, m, bc);
+                }
                 
                 if ((bContext == null) && (bc != null)) flcontext_free(bc);
         }
     }
     
+    /**
+     * Dispatch with the start and end time (overall and per-component) of
+     * the processing chain recorded by the performance monitor
+     */
+    private void dispatchTimed(IOFMessageListener[] listeners, IOFSwitch sw,
+                               OFMessage m, FloodlightContext bc) {
+        pktinProcTimeService.bootstrap();
+        for (IOFMessageListener l : listeners) {
+            pktinProcTimeService.addListener(l);
+        }
+        pktinProcTimeService.recordStartTimePktIn();
+        for (IOFMessageListener listener : listeners) {
+            pktinProcTimeService.recordStartTimeComp(listener);
+            Command cmd = listener.receive(sw, m, bc);
+            pktinProcTimeService.recordEndTimeComp(listener);
+            if (cmd == Command.STOP) {
+                break;
+            }
+        }
+        pktinProcTimeService.recordEndTimePktIn(sw, m, bc);
+    }
+
+    /**
+     * Rebuild the dispatch table from messageListeners. Called with the
+     * controller's lock held whenever a message listener changes.
+     */
+    private static void rebuildDispatchTable() {
+        IOFMessageListener[][] table = new IOFMessageListener[OFType.values().length][];
+        for (Map.Entry<OFType, ListenerDispatcher<OFType, IOFMessageListener>> e : messageListeners.entrySet()) {
+            List<IOFMessageListener> ordered = e.getValue().getOrderedListeners();
+            table[e.getKey().ordinal()] = ordered == null ? NO_LISTENERS :
+                ordered.toArray(new IOFMessageListener[ordered.size()]);
+        }
+        dispatchTable = table;
+    }
+
     // ***************
     // IFloodlightProvider
     // ***************
@@ -458,12 +488,14 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     @Override
     public synchronized void addCompletionListener(IControllerCompletionListener listener) {
     	completionListeners.add(listener);
+    	completionListenerArray = completionListeners.toArray(NO_COMPLETION_LISTENERS);
     }
     
     @Override
     public synchronized void removeCompletionListener(IControllerCompletionListener listener) {
     	String listenerName = listener.getName();
     	if (completionListeners.remove(listener)) {
+    		completionListenerArray = completionListeners.toArray(NO_COMPLETION_LISTENERS);
     		log.debug("Removing completion listener {}" , listenerName);
     	} else {
     		log.warn("Trying to remove unknown completion listener {}" , listenerName);
@@ -480,6 +512,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             messageListeners.put(type, ldd);
         }
         ldd.addListener(type, listener);
+        rebuildDispatchTable();
     }
 
     @Override
@@ -488,6 +521,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
             messageListeners.get(type);
         if (ldd != null) {
             ldd.removeListener(listener);
+            rebuildDispatchTable();
         }
     }
 
@@ -516,8 +550,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         log.debug(sb.toString());
     }
 
-    public void removeOFMessageListeners(OFType type) {
+    public synchronized void removeOFMessageListeners(OFType type) {
         messageListeners.remove(type);
+        rebuildDispatchTable();
     }
 
     @Override
@@ -539,14 +574,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 
         FloodlightContext bc = new FloodlightContext();
 
-        List<IOFMessageListener> listeners = null;
-        if (messageListeners.containsKey(m.getType())) {
-            listeners = messageListeners.get(m.getType()).getOrderedListeners();
-        }
+        IOFMessageListener[] listeners = dispatchTable[m.getType().ordinal()];
 
         if (listeners != null) {
             for (IOFMessageListener listener : listeners) {
-                if (Command.STOP.equals(listener.receive(sw, m, bc))) {
+                if (listener.receive(sw, m, bc) == Command.STOP) {
                     break;
                 }
             }
@@ -679,6 +711,8 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         updates = new LinkedBlockingQueue<IUpdate>();
         providerMap = new HashMap<String, List<IInfoProvider>>();
         completionListeners = new ConcurrentLinkedQueue<IControllerCompletionListener>();
+        dispatchTable = new IOFMessageListener[OFType.values().length][];
+        completionListenerArray = NO_COMPLETION_LISTENERS;
         
         setConfigParams(configParams);
 
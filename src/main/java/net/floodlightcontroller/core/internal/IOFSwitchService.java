@@ -12,6 +12,8 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 
 import org.projectfloodlight.openflow.types.DatapathId;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public interface IOFSwitchService extends IFloodlightService {
 
     /**
@@ -103,4 +105,23 @@ public interface IOFSwitchService extends IFloodlightService {
      */
     List<OFSwitchHandshakeHandler> getSwitchHandshakeHandlers();
 
+    /**
+     * Get the controller's model of the flows installed on a switch. It is
+     * kept up to date from the flow mods written to the switch and dropped
+     * when the switch disconnects.
+     * @param dpid
+     * @return the shadow flow table of the switch, or null if the switch
+     * is not connected
+     */
+    ShadowFlowTable getShadowFlowTable(DatapathId dpid);
+
+    /**
+     * Read all flows from a switch into its shadow flow table. Use
+     * {@link ShadowFlowTable#diff(java.util.Collection)} on the result to
+     * write only the flows a switch is missing, e.g. when it reconnects.
+     * @param dpid
+     * @return the refreshed table; fails if the switch is not connected or
+     * does not reply in time
+     */
+    ListenableFuture<ShadowFlowTable> refreshShadowFlowTable(DatapathId dpid);
 }
@@ -23,10 +23,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
 
@@ -102,6 +105,16 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
 	private volatile U64 latency;
 
+	/* Write coalescing settings for new connections; see setWriteCoalescing() */
+	private static volatile boolean coalesceWritesForNewConnections = false;
+	private static volatile int maxWriteBatchForNewConnections = 256;
+
+	private final boolean coalesceWrites;
+	private final int maxWriteBatch;
+	/* Messages written but not yet handed to the channel, when coalescing */
+	private final Queue<OFMessage> pendingWrites;
+	private final AtomicBoolean flushScheduled;
+
 	/**
 	 * Used to write messages to ensure order w/Netty4.
 	 * It also ensures we do not reuse the array, since
@@ -116,15 +129,69 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
 		@Override
 		public void run() {
+			int n = 0;
 			for (OFMessage m : msglist) {
 				if (logger.isTraceEnabled())
 					logger.trace("{}: send {}", this, m);
 				counters.updateWriteStats(m);
+				n++;
 			}
 			channel.writeAndFlush(msglist);
+			counters.updateWriteBatchStats(n);
+		}
+	}
+
+	/**
+	 * Used instead of WriteMessageTask when coalescing writes. Hands
+	 * everything written since the last flush to the channel as one list,
+	 * and so one flush, or as several lists of at most maxWriteBatch
+	 * messages if more than that is pending. Only one flush task is
+	 * scheduled on the EventLoop at a time, and messages are queued in the
+	 * order they are written, so order is kept as with WriteMessageTask.
+	 */
+	private class FlushTask implements Runnable {
+		@Override
+		public void run() {
+			/* Clear first; anything queued from now on gets a new task if we miss it */
+			flushScheduled.set(false);
+			List<OFMessage> batch = new ArrayList<OFMessage>();
+			OFMessage m;
+			while ((m = pendingWrites.poll()) != null) {
+				if (logger.isTraceEnabled())
+					logger.trace("{}: send {}", this, m);
+				counters.updateWriteStats(m);
+				batch.add(m);
+				if (batch.size() >= maxWriteBatch) {
+					flush(batch);
+					batch = new ArrayList<OFMessage>();
+				}
+			}
+			if (!batch.isEmpty()) {
+				flush(batch);
+			}
+		}
+
+		private void flush(List<OFMessage> batch) {
+			channel.writeAndFlush(batch);
+			counters.updateWriteBatchStats(batch.size());
 		}
 	}
 
+	/**
+	 * Sets whether connections created from now on coalesce writes. When
+	 * they do, messages written while a flush is already pending on the
+	 * connection's EventLoop are sent along with it, so e.g. the flow-mods
+	 * of a path and its packet-out cost one flush instead of one each.
+	 *
+	 * @param coalesce true to coalesce writes
+	 * @param maxBatch the most messages handed to the channel per flush
+	 */
+	public static void setWriteCoalescing(boolean coalesce, int maxBatch) {
+		Preconditions.checkArgument(maxBatch > 0, "maxBatch must be positive");
+		coalesceWritesForNewConnections = coalesce;
+		maxWriteBatchForNewConnections = maxBatch;
+	}
+
 	public OFConnection(@Nonnull DatapathId dpid,
 			@Nonnull OFFactory factory,
 			@Nonnull Channel channel,
@@ -147,6 +214,10 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		this.counters = new OFConnectionCounters(debugCounters, dpid, this.auxId);
 		this.timer = timer;
 		this.latency = U64.ZERO;
+		this.coalesceWrites = coalesceWritesForNewConnections;
+		this.maxWriteBatch = maxWriteBatchForNewConnections;
+		this.pendingWrites = new ConcurrentLinkedQueue<OFMessage>();
+		this.flushScheduled = new AtomicBoolean(false);
 	}
 
 	/**
@@ -172,7 +243,16 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 				counters.updateWriteStats(m);
 			}
 		}
-		this.channel.eventLoop().execute(new WriteMessageTask(msgList));
+		if (coalesceWrites) {
+			for (OFMessage m : msgList) {
+				pendingWrites.add(m);
+			}
+			if (flushScheduled.compareAndSet(false, true)) {
+				this.channel.eventLoop().execute(new FlushTask());
+			}
+		} else {
+			this.channel.eventLoop().execute(new WriteMessageTask(msgList));
+		}
 		return Collections.emptyList();
 	}
 
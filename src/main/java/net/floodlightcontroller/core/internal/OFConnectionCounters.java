@@ -101,6 +101,11 @@ public class OFConnectionCounters {
     private final IDebugCounter ctrReadRequestForward;
     private final IDebugCounter ctrReadControllerStatus;
 
+    // Write batch counters; messages / batches is the average batch size
+    //
+    private final IDebugCounter ctrWriteBatches;
+    private final IDebugCounter ctrWriteBatchMessages;
+
     private static final Logger logger =
             LoggerFactory.getLogger(OFConnectionCounters.class);
 
@@ -529,6 +534,16 @@ public class OFConnectionCounters {
                 hierarchy,
                 stringId,
                 OFType.CONTROLLER_STATUS.toString());
+
+        hierarchy = "/write-batch";
+        counters.registerCounter(COUNTER_MODULE, stringId + hierarchy,
+                                 "Write batches in this connection");
+        ctrWriteBatches =
+                counters.registerCounter(COUNTER_MODULE, stringId + hierarchy + "/batches",
+                                         "Number of times messages were flushed to this connection");
+        ctrWriteBatchMessages =
+                counters.registerCounter(COUNTER_MODULE, stringId + hierarchy + "/messages",
+                                         "Number of messages flushed to this connection");
     }
     
     /**
@@ -541,6 +556,15 @@ public class OFConnectionCounters {
     	return debugCounterService.removeCounterHierarchy(COUNTER_MODULE, dpidAndConnIdString);
     }
 
+   /**
+    * Update Write Counters for a flush of messages to the channel
+    * @param messages the number of messages flushed at once
+    */
+   public void updateWriteBatchStats(int messages) {
+       ctrWriteBatches.increment();
+       ctrWriteBatchMessages.add(messages);
+   }
+
    /**
     * Update Write Counters for Open flow messages
     * @param ofm openflow message
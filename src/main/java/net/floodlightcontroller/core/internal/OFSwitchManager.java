@@ -17,6 +17,7 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HAListenerTypeMarker;
@@ -44,14 +45,22 @@ import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import org.projectfloodlight.openflow.protocol.OFControllerRole;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFBundleAddMsg;
 import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowRemoved;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.protocol.OFPortState;
 import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.OFGroup;
 import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.TableId;
 import org.projectfloodlight.openflow.types.TransportPort;
 import org.projectfloodlight.openflow.types.U32;
@@ -72,6 +81,9 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelOption;
@@ -127,6 +139,8 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
     private static ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler> switchHandlers;
     private static ConcurrentHashMap<DatapathId, IOFSwitchBackend> switches;
     private static ConcurrentHashMap<DatapathId, IOFSwitch> syncedSwitches;
+    private static ConcurrentHashMap<DatapathId, ShadowFlowTable> shadowFlowTables;
+    private static final long SHADOW_FLOW_TABLE_REFRESH_TIMEOUT_MS = 10000;
 
     protected static Map<DatapathId, OFControllerRole> switchInitialRole;
 
@@ -191,6 +205,8 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
             addUpdateToQueue(new SwitchUpdate(dpid, SwitchUpdateType.REMOVED));
             oldSw.disconnect();
         }
+        /* Filled in from the flow mods written from now on */
+        shadowFlowTables.put(dpid, new ShadowFlowTable());
 
         /*
          * Set some other config options for this switch.
@@ -257,6 +273,8 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
 
         counters.switchDisconnected.increment();
         switches.remove(dpid);
+        /* What it has when it comes back is read from the switch again */
+        shadowFlowTables.remove(dpid);
     }
 
     @Override public void handshakeDisconnected(DatapathId dpid) {
@@ -485,14 +503,63 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
 
     @Override
     public void handleMessage(IOFSwitchBackend sw, OFMessage m, FloodlightContext bContext) {
+        if (m instanceof OFFlowRemoved) {
+            ShadowFlowTable table = shadowFlowTables.get(sw.getId());
+            if (table != null) {
+                table.apply((OFFlowRemoved) m);
+            }
+        }
         floodlightProvider.handleMessage(sw, m, bContext);
     }
 
     @Override
     public void handleOutgoingMessage(IOFSwitch sw, OFMessage m) {
+        /* Flow mods in a bundle are taken to be committed */
+        OFMessage fm = m instanceof OFBundleAddMsg ? ((OFBundleAddMsg) m).getData() : m;
+        if (fm instanceof OFFlowMod) {
+            /* None once the switch is gone; a late write must not bring it back */
+            ShadowFlowTable table = shadowFlowTables.get(sw.getId());
+            if (table != null) {
+                table.apply((OFFlowMod) fm);
+            }
+        }
         floodlightProvider.handleOutgoingMessage(sw, m);
     }
 
+    @Override
+    public ShadowFlowTable getShadowFlowTable(DatapathId dpid) {
+        return shadowFlowTables.get(dpid);
+    }
+
+    @Override
+    public ListenableFuture<ShadowFlowTable> refreshShadowFlowTable(DatapathId dpid) {
+        IOFSwitch sw = getSwitch(dpid);
+        final ShadowFlowTable table = shadowFlowTables.get(dpid);
+        if (sw == null || table == null) {
+            return Futures.immediateFailedFuture(
+                    new IllegalArgumentException("Switch " + dpid + " is not connected"));
+        }
+        OFFlowStatsRequest.Builder b = sw.getOFFactory().buildFlowStatsRequest()
+                .setMatch(sw.getOFFactory().buildMatch().build())
+                .setOutPort(OFPort.ANY)
+                .setTableId(TableId.ALL);
+        if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_11) >= 0) {
+            b.setOutGroup(OFGroup.ANY);
+        }
+        final long requestedMs = System.currentTimeMillis();
+        final ListenableFuture<List<OFFlowStatsReply>> future = sw.writeStatsRequest(b.build());
+        timer.newTimeout(t -> future.cancel(false),
+                SHADOW_FLOW_TABLE_REFRESH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        return Futures.transform(future, replies -> {
+            List<OFFlowStatsEntry> entries = new ArrayList<OFFlowStatsEntry>();
+            for (OFFlowStatsReply r : replies) {
+                entries.addAll(r.getEntries());
+            }
+            table.sync(entries, requestedMs);
+            return table;
+        }, MoreExecutors.directExecutor());
+    }
+
     @Override
     public void addOFSwitchDriver(String manufacturerDescriptionPrefix,
             IOFSwitchDriver driver) {
@@ -621,6 +688,7 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
         switchHandlers = new ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler>();
         switches = new ConcurrentHashMap<DatapathId, IOFSwitchBackend>();
         syncedSwitches = new ConcurrentHashMap<DatapathId, IOFSwitch>();
+        shadowFlowTables = new ConcurrentHashMap<DatapathId, ShadowFlowTable>();
         counters = new SwitchManagerCounters(debugCounterService);
         driverRegistry = new NaiveSwitchDriverRegistry(this);
 
@@ -841,6 +909,17 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
             tcpSendBufferSize = Integer.parseInt(tcpBuffer);
         }
 
+        /* Coalesce writes to a switch into fewer flushes */
+        boolean coalesceWrites = parseConfigBooleanValue(configParams.get("coalesceWrites"), false);
+        int maxWriteBatch = 256;
+        String maxBatch = configParams.get("maxWriteBatchMessages");
+        if (!Strings.isNullOrEmpty(maxBatch)) {
+            maxWriteBatch = Integer.parseInt(maxBatch.trim());
+        }
+        OFConnection.setWriteCoalescing(coalesceWrites, maxWriteBatch);
+        log.info("Coalesce writes to switches: {}, at most {} messages per flush",
+                coalesceWrites ? "TRUE" : "FALSE", maxWriteBatch);
+
         log.info("Listening for OpenFlow switches on {}:{}", openFlowAddresses, openFlowPort);
         log.info("OpenFlow socket config: "
                 + "{} boss thread(s), "
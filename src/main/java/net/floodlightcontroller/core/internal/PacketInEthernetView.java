@@ -0,0 +1,27 @@
+package net.floodlightcontroller.core.internal;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.packet.EthernetView;
+
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+
+/**
+ * The view the controller stores for the data of an OFPacketIn. It keeps
+ * the switch and the message, so a frame that fails to decode, possibly
+ * long after dispatch started, is reported with where it came from.
+ */
+class PacketInEthernetView extends EthernetView {
+    private final IOFSwitch sw;
+    private final OFPacketIn pi;
+
+    PacketInEthernetView(IOFSwitch sw, OFPacketIn pi) {
+        super(pi.getData());
+        this.sw = sw;
+        this.pi = pi;
+    }
+
+    @Override
+    protected String describe() {
+        return "from switch " + sw + ", " + pi;
+    }
+}
@@ -0,0 +1,394 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowRemoved;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionApplyActions;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionWriteActions;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * The controller's model of the flows installed on one switch. It is kept
+ * up to date from the flow mods written to the switch, the flow removed
+ * messages it sends, and flow stats replies, which replace whatever the
+ * model thinks is installed.
+ *
+ * Only permanent flows (no idle or hard timeout) are tracked by default.
+ * Those are the ones that have to be pushed again when a switch
+ * reconnects; reactive flows time out on their own and would only make the
+ * model grow between stats replies.
+ *
+ * Flows are keyed by table, priority and match, as on the switch. Flow
+ * mods are applied with OpenFlow semantics, except that a non-strict modify
+ * only changes the flow with exactly the given match, and a modify of a flow
+ * that is not known is taken as an add, as OpenFlow 1.0 does. Static entries
+ * are written as modifies. A flow the model gets wrong is put right by the
+ * next stats reply.
+ *
+ * @see IOFSwitchService#getShadowFlowTable(org.projectfloodlight.openflow.types.DatapathId)
+ */
+public class ShadowFlowTable {
+    private final boolean trackTransientFlows;
+
+    private final ConcurrentHashMap<FlowKey, FlowEntry> flows =
+            new ConcurrentHashMap<FlowKey, FlowEntry>();
+    private final ConcurrentHashMap<U64, Set<FlowKey>> flowsByCookie =
+            new ConcurrentHashMap<U64, Set<FlowKey>>();
+
+    protected static class FlowKey {
+        private final TableId tableId;
+        private final int priority;
+        private final Match match;
+
+        protected FlowKey(TableId tableId, int priority, Match match) {
+            this.tableId = tableId;
+            this.priority = priority;
+            this.match = match;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + tableId.hashCode();
+            result = prime * result + priority;
+            result = prime * result + match.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof FlowKey)) return false;
+            FlowKey other = (FlowKey) obj;
+            return priority == other.priority && tableId.equals(other.tableId)
+                    && match.equals(other.match);
+        }
+    }
+
+    /**
+     * What the switch does with the packets of a flow. Two entries that
+     * are equal need not be written again.
+     */
+    protected static class FlowEntry {
+        private final U64 cookie;
+        private final int idleTimeout;
+        private final int hardTimeout;
+        private final List<OFInstruction> instructions;
+        private final List<OFAction> actions;
+        private final long updatedMs;
+
+        private FlowEntry(U64 cookie, int idleTimeout, int hardTimeout,
+                List<OFInstruction> instructions, List<OFAction> actions, long updatedMs) {
+            this.cookie = cookie;
+            this.idleTimeout = idleTimeout;
+            this.hardTimeout = hardTimeout;
+            this.instructions = instructions;
+            this.actions = actions;
+            this.updatedMs = updatedMs;
+        }
+
+        private static FlowEntry of(OFFlowMod fm, long nowMs) {
+            boolean of10 = fm.getVersion() == OFVersion.OF_10;
+            return new FlowEntry(fm.getCookie(), fm.getIdleTimeout(), fm.getHardTimeout(),
+                    of10 ? Collections.<OFInstruction>emptyList() : fm.getInstructions(),
+                    of10 ? fm.getActions() : Collections.<OFAction>emptyList(), nowMs);
+        }
+
+        private static FlowEntry of(OFFlowStatsEntry e, long nowMs) {
+            boolean of10 = e.getVersion() == OFVersion.OF_10;
+            return new FlowEntry(e.getCookie(), e.getIdleTimeout(), e.getHardTimeout(),
+                    of10 ? Collections.<OFInstruction>emptyList() : e.getInstructions(),
+                    of10 ? e.getActions() : Collections.<OFAction>emptyList(), nowMs);
+        }
+
+        private boolean sameAs(FlowEntry other) {
+            return cookie.equals(other.cookie) && idleTimeout == other.idleTimeout
+                    && hardTimeout == other.hardTimeout
+                    && instructions.equals(other.instructions) && actions.equals(other.actions);
+        }
+
+        private boolean outputsTo(OFPort port) {
+            if (outputsTo(actions, port)) {
+                return true;
+            }
+            for (OFInstruction i : instructions) {
+                if (i instanceof OFInstructionApplyActions
+                        && outputsTo(((OFInstructionApplyActions) i).getActions(), port)) {
+                    return true;
+                }
+                if (i instanceof OFInstructionWriteActions
+                        && outputsTo(((OFInstructionWriteActions) i).getActions(), port)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean outputsTo(List<OFAction> actions, OFPort port) {
+            for (OFAction a : actions) {
+                if (a instanceof OFActionOutput && ((OFActionOutput) a).getPort().equals(port)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public ShadowFlowTable() {
+        this(false);
+    }
+
+    /**
+     * @param trackTransientFlows also track flows with an idle or hard timeout
+     */
+    public ShadowFlowTable(boolean trackTransientFlows) {
+        this.trackTransientFlows = trackTransientFlows;
+    }
+
+    private boolean isTracked(int idleTimeout, int hardTimeout) {
+        return trackTransientFlows || (idleTimeout == 0 && hardTimeout == 0);
+    }
+
+    private static TableId getTableId(OFFlowMod fm) {
+        return fm.getVersion() == OFVersion.OF_10 ? TableId.ZERO : fm.getTableId();
+    }
+
+    private static FlowKey keyOf(OFFlowMod fm) {
+        return new FlowKey(getTableId(fm), fm.getPriority(), fm.getMatch());
+    }
+
+    /**
+     * Apply a flow mod written to the switch
+     * @param fm
+     */
+    public void apply(OFFlowMod fm) {
+        switch (fm.getCommand()) {
+        case ADD:
+            if (isTracked(fm.getIdleTimeout(), fm.getHardTimeout())) {
+                put(keyOf(fm), FlowEntry.of(fm, System.currentTimeMillis()));
+            } else {
+                /* Replaces whatever was installed with this key */
+                remove(keyOf(fm));
+            }
+            break;
+        case MODIFY:
+        case MODIFY_STRICT:
+            FlowKey key = keyOf(fm);
+            FlowEntry old = flows.get(key);
+            if (old != null) {
+                /* A modify changes the instructions, not the cookie or timeouts */
+                FlowEntry changed = FlowEntry.of(fm, System.currentTimeMillis());
+                put(key, new FlowEntry(old.cookie, old.idleTimeout, old.hardTimeout,
+                        changed.instructions, changed.actions, changed.updatedMs));
+            } else if (isTracked(fm.getIdleTimeout(), fm.getHardTimeout())) {
+                put(key, FlowEntry.of(fm, System.currentTimeMillis()));
+            }
+            break;
+        case DELETE_STRICT:
+            FlowKey strictKey = keyOf(fm);
+            FlowEntry e = flows.get(strictKey);
+            if (e != null && deletes(fm, strictKey, e, false)) {
+                remove(strictKey);
+            }
+            break;
+        case DELETE:
+            for (FlowKey k : candidates(fm)) {
+                FlowEntry candidate = flows.get(k);
+                if (candidate != null && deletes(fm, k, candidate, true)) {
+                    remove(k);
+                }
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * The flows a delete might apply to. Deletes are most often by cookie,
+     * so only the flows with a matching cookie are returned if it has one.
+     */
+    private Collection<FlowKey> candidates(OFFlowMod fm) {
+        if (fm.getVersion() == OFVersion.OF_10 || fm.getCookieMask().equals(U64.ZERO)) {
+            return new ArrayList<FlowKey>(flows.keySet());
+        }
+        List<FlowKey> keys = new ArrayList<FlowKey>();
+        U64 want = fm.getCookie().and(fm.getCookieMask());
+        for (Entry<U64, Set<FlowKey>> e : flowsByCookie.entrySet()) {
+            if (e.getKey().and(fm.getCookieMask()).equals(want)) {
+                keys.addAll(e.getValue());
+            }
+        }
+        return keys;
+    }
+
+    private static boolean deletes(OFFlowMod fm, FlowKey key, FlowEntry e, boolean covering) {
+        if (fm.getVersion() != OFVersion.OF_10) {
+            TableId t = fm.getTableId();
+            if (!t.equals(TableId.ALL) && !t.equals(key.tableId)) {
+                return false;
+            }
+            if (!e.cookie.and(fm.getCookieMask()).equals(fm.getCookie().and(fm.getCookieMask()))) {
+                return false;
+            }
+        }
+        if (!fm.getOutPort().equals(OFPort.ANY) && !e.outputsTo(fm.getOutPort())) {
+            return false;
+        }
+        return covering ? covers(fm.getMatch(), key.match) : key.match.equals(fm.getMatch());
+    }
+
+    /**
+     * @return true if every field the filter sets is set to the same value
+     * in the match, so a non-strict delete with the filter removes a flow
+     * with the match. A field the match has more narrowly masked than the
+     * filter is not taken to be covered.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    protected static boolean covers(Match filter, Match match) {
+        Iterator<MatchField<?>> itr = filter.getMatchFields().iterator();
+        while (itr.hasNext()) {
+            MatchField mf = itr.next();
+            if (filter.isExact(mf)) {
+                if (!match.isExact(mf) || !filter.get(mf).equals(match.get(mf))) {
+                    return false;
+                }
+            } else if (!filter.getMasked(mf).equals(match.getMasked(mf))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Remove a flow the switch reports as removed
+     * @param fr
+     */
+    public void apply(OFFlowRemoved fr) {
+        TableId t = fr.getVersion() == OFVersion.OF_10 ? TableId.ZERO : fr.getTableId();
+        remove(new FlowKey(t, fr.getPriority(), fr.getMatch()));
+    }
+
+    /**
+     * Replace the model with the flows a switch reported in a stats reply.
+     * Flows that were changed after the request was sent are kept as
+     * they are, since the reply may not reflect the change.
+     * @param entries the flow stats entries of all replies to the request
+     * @param requestedMs when the request was sent
+     */
+    public void sync(Iterable<OFFlowStatsEntry> entries, long requestedMs) {
+        long now = System.currentTimeMillis();
+        Set<FlowKey> reported = new HashSet<FlowKey>();
+        for (OFFlowStatsEntry e : entries) {
+            if (!isTracked(e.getIdleTimeout(), e.getHardTimeout())) {
+                continue;
+            }
+            TableId t = e.getVersion() == OFVersion.OF_10 ? TableId.ZERO : e.getTableId();
+            FlowKey key = new FlowKey(t, e.getPriority(), e.getMatch());
+            reported.add(key);
+            FlowEntry cur = flows.get(key);
+            if (cur == null || cur.updatedMs < requestedMs) {
+                put(key, FlowEntry.of(e, now));
+            }
+        }
+        for (Entry<FlowKey, FlowEntry> e : flows.entrySet()) {
+            if (!reported.contains(e.getKey()) && e.getValue().updatedMs < requestedMs) {
+                remove(e.getKey());
+            }
+        }
+    }
+
+    /**
+     * @param fm a flow add
+     * @return true if the switch is known to have the flow, with the same
+     * cookie, timeouts and instructions
+     */
+    public boolean contains(OFFlowMod fm) {
+        FlowEntry e = flows.get(keyOf(fm));
+        return e != null && e.sameAs(FlowEntry.of(fm, 0));
+    }
+
+    /**
+     * Get the flow adds that still have to be written for the switch to
+     * have the given flows
+     * @param desired the flows the switch should have
+     * @return the flow adds of desired that are missing or different on
+     * the switch, in the order given
+     */
+    public List<OFFlowMod> diff(Collection<? extends OFFlowMod> desired) {
+        List<OFFlowMod> missing = new ArrayList<OFFlowMod>();
+        for (OFFlowMod fm : desired) {
+            if (!contains(fm)) {
+                missing.add(fm);
+            }
+        }
+        return missing;
+    }
+
+    private void put(FlowKey key, FlowEntry e) {
+        FlowEntry old = flows.put(key, e);
+        if (old != null && !old.cookie.equals(e.cookie)) {
+            unindex(old.cookie, key);
+        }
+        flowsByCookie.compute(e.cookie, (k, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    private void remove(FlowKey key) {
+        FlowEntry old = flows.remove(key);
+        if (old != null) {
+            unindex(old.cookie, key);
+        }
+    }
+
+    private void unindex(U64 cookie, FlowKey key) {
+        flowsByCookie.computeIfPresent(cookie, (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * @return the number of flows in the model
+     */
+    public int size() {
+        return flows.size();
+    }
+
+    /**
+     * @return the number of flows in the model with the given cookie
+     */
+    public int countFlowsWithCookie(U64 cookie) {
+        Set<FlowKey> keys = flowsByCookie.get(cookie);
+        return keys == null ? 0 : keys.size();
+    }
+
+    public void clear() {
+        flows.clear();
+        flowsByCookie.clear();
+    }
+}
@@ -1,8 +1,7 @@
 package net.floodlightcontroller.debugcounter;
 
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.Nonnull;
 
@@ -12,15 +11,22 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 
+/**
+ * Counters are incremented by every I/O thread for every message, so the
+ * value is kept in a {@link LongAdder}, which spreads concurrent updates
+ * over separate cells instead of contending on one word. The last modified
+ * time has millisecond resolution and is only written when it changes, so
+ * a hot counter writes it at most once per millisecond.
+ */
 class DebugCounterImpl implements IDebugCounter {
     private final String moduleName;
     private final String counterHierarchy;
     private final String description;
     private final ImmutableSet<IDebugCounterService.MetaData> metaData;
 
-    private final AtomicLong value = new AtomicLong();
+    private final LongAdder value = new LongAdder();
 
-    private final Date lastModified = new Date(); // should return long ms to ensure immutability
+    private volatile long lastModified;
 
     DebugCounterImpl(@Nonnull String moduleName,
                      @Nonnull String counterHierarchy,
@@ -30,7 +36,7 @@ class DebugCounterImpl implements IDebugCounter {
         this.counterHierarchy = counterHierarchy;
         this.description = description;
         this.metaData = Sets.immutableEnumSet(metaData);
-        this.lastModified.setTime(System.currentTimeMillis());
+        this.lastModified = System.currentTimeMillis();
     }
 
     @Nonnull
@@ -57,14 +63,21 @@ class DebugCounterImpl implements IDebugCounter {
 
     @Override
     public void reset() {
-        value.set(0);
-        lastModified.setTime(System.currentTimeMillis());
+        value.reset();
+        lastModified = System.currentTimeMillis();
+    }
+
+    private void touch() {
+        long now = System.currentTimeMillis();
+        if (now != lastModified) {
+            lastModified = now;
+        }
     }
 
     @Override
     public void increment() {
-        value.incrementAndGet();
-        lastModified.setTime(System.currentTimeMillis());
+        value.increment();
+        touch();
     }
 
     @Override
@@ -73,19 +86,19 @@ class DebugCounterImpl implements IDebugCounter {
             throw new IllegalArgumentException("increment must be > 0. Was "
                     + increment);
         }
-        value.addAndGet(increment);
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(increment);
+        touch();
     }
 
     @Override
     public long getCounterValue() {
-        return value.get();
+        return value.sum();
+    }
+
+    @Override
+    public long getLastModified() {
+        return lastModified;
     }
-    
-	@Override
-	public long getLastModified() {
-		return lastModified.getTime();
-	}
 
     @Override
     public int hashCode() {
@@ -126,7 +139,7 @@ class DebugCounterImpl implements IDebugCounter {
         } else if (!moduleName.equals(other.moduleName)) return false;
         if (value == null) {
             if (other.value != null) return false;
-        } else if (value.get() != other.value.get()) return false;
+        } else if (value.sum() != other.value.sum()) return false;
         return true;
     }
 
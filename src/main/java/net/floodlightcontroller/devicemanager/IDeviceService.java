@@ -142,6 +142,26 @@ public interface IDeviceService extends IFloodlightService {
      */
     public Collection<? extends IDevice> getAllDevices();
 
+    /**
+     * Get the devices that currently have an attachment point on the given
+     * switch port. This is looked up in an index that is kept up to date as
+     * attachment points change, so it does not scan the device list.
+     * @param swId the switch DPID
+     * @param port the switch port
+     * @return the devices attached to the switch port
+     */
+    public Collection<? extends IDevice> getDevicesOnSwitchPort(@Nonnull DatapathId swId,
+                                                                @Nonnull OFPort port);
+
+    /**
+     * Get the devices that currently have an attachment point on any port
+     * of the given switch.
+     * @param swId the switch DPID
+     * @return the devices attached to the switch
+     * @see IDeviceService#getDevicesOnSwitchPort(DatapathId, OFPort)
+     */
+    public Collection<? extends IDevice> getDevicesOnSwitch(@Nonnull DatapathId swId);
+
     /**
      * Create an index over a set of fields.  This allows efficient lookup
      * of devices when querying using the indexed set of specified fields.
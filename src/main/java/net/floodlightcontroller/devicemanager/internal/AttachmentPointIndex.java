@@ -0,0 +1,174 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.devicemanager.SwitchPort;
+
+/**
+ * An index from switch and switch port to the keys of the devices that
+ * have an attachment point there. The device manager calls
+ * {@link #update(Long)} whenever a device's attachment points may have
+ * changed; the index then re-reads them from the device map. Lookups can
+ * return devices that have moved on since, so results are checked against
+ * the device's current attachment points.
+ */
+public class AttachmentPointIndex {
+    private final DeviceManagerImpl deviceManager;
+
+    private final ConcurrentHashMap<DatapathId, ConcurrentHashMap<OFPort, Set<Long>>> index =
+            new ConcurrentHashMap<DatapathId, ConcurrentHashMap<OFPort, Set<Long>>>();
+
+    /**
+     * The attachment points each device was last indexed under
+     */
+    private final ConcurrentHashMap<Long, List<SwitchPort>> indexed =
+            new ConcurrentHashMap<Long, List<SwitchPort>>();
+
+    public AttachmentPointIndex(DeviceManagerImpl deviceManager) {
+        this.deviceManager = deviceManager;
+    }
+
+    /**
+     * Bring the index up to date with the current attachment points of the
+     * device with the given key, or drop it if the device is gone
+     */
+    public void update(Long deviceKey) {
+        Device d = deviceManager.deviceMap.get(deviceKey);
+        if (d != null && sameSwitchPorts(indexed.get(deviceKey), d.attachmentPoints)) {
+            return;
+        }
+        indexed.compute(deviceKey, (k, old) -> {
+            Device cur = deviceManager.deviceMap.get(k);
+            List<AttachmentPoint> aps = cur == null ? null : cur.attachmentPoints;
+            if (cur != null && sameSwitchPorts(old, aps)) {
+                return old;
+            }
+            List<SwitchPort> now = new ArrayList<SwitchPort>();
+            if (aps != null) {
+                for (AttachmentPoint ap : aps) {
+                    now.add(new SwitchPort(ap.getSw(), ap.getPort()));
+                }
+            }
+            if (old != null) {
+                for (SwitchPort sp : old) {
+                    if (!now.contains(sp)) {
+                        remove(sp, k);
+                    }
+                }
+            }
+            for (SwitchPort sp : now) {
+                if (old == null || !old.contains(sp)) {
+                    add(sp, k);
+                }
+            }
+            return cur == null ? null : now;
+        });
+    }
+
+    private static boolean sameSwitchPorts(List<SwitchPort> indexed,
+                                           List<AttachmentPoint> aps) {
+        if (indexed == null) {
+            return false;
+        }
+        int n = aps == null ? 0 : aps.size();
+        if (indexed.size() != n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            AttachmentPoint ap = aps.get(i);
+            SwitchPort sp = indexed.get(i);
+            if (!sp.getNodeId().equals(ap.getSw()) ||
+                    !sp.getPortId().equals(ap.getPort())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(SwitchPort sp, Long deviceKey) {
+        index.compute(sp.getNodeId(), (sw, ports) -> {
+            if (ports == null) {
+                ports = new ConcurrentHashMap<OFPort, Set<Long>>();
+            }
+            ports.computeIfAbsent(sp.getPortId(),
+                    p -> ConcurrentHashMap.<Long>newKeySet()).add(deviceKey);
+            return ports;
+        });
+    }
+
+    private void remove(SwitchPort sp, Long deviceKey) {
+        index.computeIfPresent(sp.getNodeId(), (sw, ports) -> {
+            ports.computeIfPresent(sp.getPortId(), (p, keys) -> {
+                keys.remove(deviceKey);
+                return keys.isEmpty() ? null : keys;
+            });
+            return ports.isEmpty() ? null : ports;
+        });
+    }
+
+    /**
+     * @return the keys of the devices indexed under the switch port
+     */
+    public Set<Long> getDeviceKeys(DatapathId sw, OFPort port) {
+        ConcurrentHashMap<OFPort, Set<Long>> ports = index.get(sw);
+        if (ports == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> keys = ports.get(port);
+        return keys == null ? Collections.<Long>emptySet() : new HashSet<Long>(keys);
+    }
+
+    /**
+     * @return the keys of the devices indexed under any port of the switch
+     */
+    public Set<Long> getDeviceKeys(DatapathId sw) {
+        ConcurrentHashMap<OFPort, Set<Long>> ports = index.get(sw);
+        if (ports == null) {
+            return Collections.emptySet();
+        }
+        Set<Long> keys = new HashSet<Long>();
+        for (Set<Long> s : ports.values()) {
+            keys.addAll(s);
+        }
+        return keys;
+    }
+
+    /**
+     * The devices whose current attachment points include the switch port,
+     * or any port of the switch if port is null
+     */
+    public List<Device> getDevices(DatapathId sw, OFPort port) {
+        Set<Long> keys = port == null ? getDeviceKeys(sw) : getDeviceKeys(sw, port);
+        List<Device> devices = new ArrayList<Device>(keys.size());
+        for (Long key : keys) {
+            Device d = deviceManager.deviceMap.get(key);
+            if (d == null) {
+                continue;
+            }
+            List<AttachmentPoint> aps = d.attachmentPoints;
+            if (aps == null) {
+                continue;
+            }
+            for (AttachmentPoint ap : aps) {
+                if (ap.getSw().equals(sw) && (port == null || ap.getPort().equals(port))) {
+                    devices.add(d);
+                    break;
+                }
+            }
+        }
+        return devices;
+    }
+
+    public void clear() {
+        index.clear();
+        indexed.clear();
+    }
+}
@@ -522,6 +522,47 @@ public class Device implements IDevice {
 		return false;
 	}
 
+	/**
+	 * Fast path of {@link #updateAttachmentPoint(DatapathId, OFPort, Date)}
+	 * for a packet seen at one of the device's current attachment points.
+	 * Only the last seen time of that attachment point is updated, in place,
+	 * without copying the attachment point lists. A last seen time older than
+	 * the current one (a reordered packet) is ignored.
+	 *
+	 * @return false if (sw, port) is not a current attachment point, is also
+	 * an old one, or any current attachment point is no longer valid, in
+	 * which case nothing was changed and the slow path has to run
+	 */
+	protected boolean refreshAttachmentPoint(DatapathId sw, OFPort port,
+			Date lastSeen) {
+		List<AttachmentPoint> apList = attachmentPoints;
+		if (apList == null)
+			return false;
+		// Invalid attachment points are only pruned by the slow path
+		for (int i = 0; i < apList.size(); i++) {
+			AttachmentPoint ap = apList.get(i);
+			if (!deviceManager.isValidAttachmentPoint(ap.getSw(), ap.getPort()))
+				return false;
+		}
+		List<AttachmentPoint> oldAPList = oldAPs;
+		if (oldAPList != null) {
+			for (int i = 0; i < oldAPList.size(); i++) {
+				AttachmentPoint ap = oldAPList.get(i);
+				if (ap.getSw().equals(sw) && ap.getPort().equals(port))
+					return false;
+			}
+		}
+		for (int i = 0; i < apList.size(); i++) {
+			AttachmentPoint ap = apList.get(i);
+			if (ap.getSw().equals(sw) && ap.getPort().equals(port)) {
+				if (lastSeen.after(ap.getLastSeen()))
+					ap.setLastSeen(lastSeen);
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Delete (sw,port) from the list of list of attachment points and oldAPs.
 	 * 
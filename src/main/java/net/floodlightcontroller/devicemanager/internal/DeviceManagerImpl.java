@@ -183,9 +183,16 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	protected static final int ENTITY_TIMEOUT = 60*60*1000;
 
 	/**
-	 * Time in seconds between cleaning up old entities/devices
+	 * Time in seconds between cleaning up old entities/devices. This is
+	 * also the resolution of the entity expiry wheel.
 	 */
-	protected static final int ENTITY_CLEANUP_INTERVAL = 60*60;
+	protected static final int ENTITY_CLEANUP_INTERVAL = 60;
+
+	/**
+	 * Number of slots in the entity expiry wheel, enough for one turn to
+	 * cover ENTITY_TIMEOUT
+	 */
+	protected static final int ENTITY_EXPIRY_SLOTS = 64;
 
 	/**
 	 * This is the master device map that maps device IDs to {@link Device}
@@ -193,6 +200,17 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 */
 	protected ConcurrentHashMap<Long, Device> deviceMap;
 
+	/**
+	 * Index of device keys by attachment point switch and port
+	 */
+	protected AttachmentPointIndex apIndex = new AttachmentPointIndex(this);
+
+	/**
+	 * Devices ordered by when their oldest entity expires
+	 */
+	protected EntityExpiryWheel entityExpiry =
+			new EntityExpiryWheel(ENTITY_CLEANUP_INTERVAL * 1000L, ENTITY_EXPIRY_SLOTS);
+
 	/**
 	 * Counter used to generate device keys
 	 */
@@ -494,6 +512,36 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		return Collections.unmodifiableCollection(deviceMap.values());
 	}
 
+	@Override
+	public Collection<? extends IDevice> getDevicesOnSwitchPort(@Nonnull DatapathId swId,
+			@Nonnull OFPort port) {
+		if (swId == null) {
+			throw new IllegalArgumentException("Switch DPID cannot be null.");
+		}
+		if (port == null) {
+			throw new IllegalArgumentException("Switch port cannot be null.");
+		}
+		return apIndex.getDevices(swId, port);
+	}
+
+	@Override
+	public Collection<? extends IDevice> getDevicesOnSwitch(@Nonnull DatapathId swId) {
+		if (swId == null) {
+			throw new IllegalArgumentException("Switch DPID cannot be null.");
+		}
+		return apIndex.getDevices(swId, null);
+	}
+
+	/**
+	 * The devices with an attachment point on the switch port, or on any
+	 * port of the switch for OFPort.ZERO
+	 */
+	protected Iterator<Device> queryByAttachmentPoint(DatapathId switchDPID,
+			OFPort switchPort) {
+		return apIndex.getDevices(switchDPID,
+				switchPort.equals(OFPort.ZERO) ? null : switchPort).iterator();
+	}
+
 	@Override
 	public void addIndex(boolean perClass,
 			EnumSet<DeviceField> keyFields) {
@@ -538,7 +586,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		}
 
 		Iterator<Device> deviceIterator = null;
-		if (index == null) {
+		if (index == null && !switchDPID.equals(DatapathId.NONE)) {
+			// attachment point index lookup
+			deviceIterator = queryByAttachmentPoint(switchDPID, switchPort);
+		} else if (index == null) {
 			// Do a full table scan
 			deviceIterator = deviceMap.values().iterator();
 		} else {
@@ -607,8 +658,11 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (index == null) {
 			index = classState.classIndex;
 			if (index == null) {
-				// scan all devices
-				return new DeviceIterator(deviceMap.values().iterator(),
+				// scan all devices, or those on the switch
+				Iterator<Device> candidates = switchDPID.equals(DatapathId.NONE) ?
+						deviceMap.values().iterator() :
+						queryByAttachmentPoint(switchDPID, switchPort);
+				return new DeviceIterator(candidates,
 						new IEntityClass[] { entityClass },
 						macAddress, vlan, ipv4Address,
 						ipv6Address, switchDPID, switchPort);
@@ -666,7 +720,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		}
 
 		Iterator<Device> deviceIterator = null;
-		if (index == null) {
+		if (index == null && !switchDPID.equals(DatapathId.NONE)) {
+			// attachment point index lookup
+			deviceIterator = queryByAttachmentPoint(switchDPID, switchPort);
+		} else if (index == null) {
 			// Do a full table scan
 			deviceIterator = deviceMap.values().iterator();
 		} else {
@@ -850,6 +907,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		secondaryIndexMap = new HashMap<EnumSet<DeviceField>, DeviceIndex>();
 
 		deviceMap = new ConcurrentHashMap<Long, Device>();
+		apIndex.clear();
+		entityExpiry.clear();
 		classStateMap =
 				new ConcurrentHashMap<String, ClassState>();
 		apComparator = new AttachmentPointComparator();
@@ -1069,12 +1128,11 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
 
-		NodePortTuple npt = new NodePortTuple(sw.getId(), inPort);
 		MacAddress gatewayMac = null;
 		if (routingService.isL3RoutingEnabled()) {
 			Optional<VirtualGatewayInstance> instance = gatewayService.getGatewayInstance(sw.getId());
 			if (!instance.isPresent()) {
-				instance = gatewayService.getGatewayInstance(npt);
+				instance = gatewayService.getGatewayInstance(new NodePortTuple(sw.getId(), inPort));
 			}
 
 			if (!instance.isPresent()) {
@@ -1180,7 +1238,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (topology.isAttachmentPointPort(switchDPID, switchPort) == false)
 			return false;
 
-		if (suppressAPs.contains(new SwitchPort(switchDPID, switchPort)))
+		if (!suppressAPs.isEmpty() &&
+				suppressAPs.contains(new SwitchPort(switchDPID, switchPort)))
 			return false;
 
 		return true;
@@ -1588,6 +1647,14 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			// Update attachment point (will only be hit if the device
 			// already existed and no concurrent modification)
 			if (entity.hasSwitchPort()) {
+				// Seen again at a known attachment point: only the last seen
+				// time changes, which is done in place
+				if (suppressAPs.isEmpty() &&
+						device.refreshAttachmentPoint(entity.getSwitchDPID(),
+								entity.getSwitchPort(),
+								entity.getLastSeenTimestamp())) {
+					break;
+				}
 				boolean moved = device.updateAttachmentPoint(entity.getSwitchDPID(),
 						entity.getSwitchPort(),
 						entity.getLastSeenTimestamp());
@@ -1617,6 +1684,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				this.deleteDevice(dev);
 			}
 		}
+		if (device != null) {
+			apIndex.update(device.getDeviceKey());
+			scheduleEntityExpiry(device.getDeviceKey(), entity.getLastSeenTimestamp());
+		}
 		processUpdates(deviceUpdates);
 		deviceSyncManager.storeDeviceThrottled(device);
 
@@ -1847,24 +1918,37 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 }
 
 	 /**
-	  * Clean up expired entities/devices
+	  * Make sure the device is looked at by cleanupEntities() once an entity
+	  * last seen at the given time has expired.
+	  */
+	 protected void scheduleEntityExpiry(Long deviceKey, Date lastSeen) {
+		 if (lastSeen != null && !lastSeen.equals(Entity.NO_DATE)) {
+			 entityExpiry.schedule(deviceKey, lastSeen.getTime() + ENTITY_TIMEOUT);
+		 }
+	 }
+
+	 /**
+	  * Clean up expired entities/devices. Only the devices the expiry wheel
+	  * says have an entity due are looked at; devices that are kept are
+	  * rescheduled for their oldest remaining entity.
 	  */
 	 protected void cleanupEntities () {
 		 cntCleanupEntitiesRuns.increment();
 
-		 Calendar c = Calendar.getInstance();
-		 c.add(Calendar.MILLISECOND, -ENTITY_TIMEOUT);
-		 Date cutoff = c.getTime();
+		 long now = System.currentTimeMillis();
+		 long cutoff = now - ENTITY_TIMEOUT;
 
 		 ArrayList<Entity> toRemove = new ArrayList<Entity>();
 		 ArrayList<Entity> toKeep = new ArrayList<Entity>();
 
-		 Iterator<Device> diter = deviceMap.values().iterator();
 		 LinkedList<DeviceUpdate> deviceUpdates =
 				 new LinkedList<DeviceUpdate>();
 
-		 while (diter.hasNext()) {
-			 Device d = diter.next();
+		 for (Long deviceKey : entityExpiry.poll(now)) {
+			 Device d = deviceMap.get(deviceKey);
+			 if (d == null) {
+				 continue;
+			 }
 
 			 while (true) {
 				 deviceUpdates.clear();
@@ -1872,7 +1956,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				 toKeep.clear();
 				 for (Entity e : d.getEntities()) {
 					 if (!e.getLastSeenTimestamp().equals(Entity.NO_DATE) &&
-							 0 > e.getLastSeenTimestamp().compareTo(cutoff)) {
+							 e.getLastSeenTimestamp().getTime() < cutoff) {
 						 // individual entity needs to be removed
 						 toRemove.add(e);
 					 } else {
@@ -1935,9 +2019,17 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 					 }
 					 deviceUpdates.add(update);
 				 }
+				 apIndex.update(deviceKey);
 				 processUpdates(deviceUpdates);
 				 break;
 			 }
+
+			 Device kept = deviceMap.get(deviceKey);
+			 if (kept != null) {
+				 for (Entity e : kept.getEntities()) {
+					 scheduleEntityExpiry(deviceKey, e.getLastSeenTimestamp());
+				 }
+			 }
 		 }
 	 }
 
@@ -1984,6 +2076,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				 logger.debug("device map does not have this device -" +
 						 device.toString());
 		 }
+		 apIndex.update(device.getDeviceKey());
 	 }
 
 	 private EnumSet<DeviceField> getEntityKeys(@Nonnull MacAddress macAddress,
@@ -2085,6 +2178,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 while (diter.hasNext()) {
 			 Device d = diter.next();
 			 if (d.updateAttachmentPoint()) {
+				 apIndex.update(d.getDeviceKey());
 				 if (logger.isDebugEnabled()) {
 					 logger.debug("Attachment point changed for device: {}", d);
 				 }
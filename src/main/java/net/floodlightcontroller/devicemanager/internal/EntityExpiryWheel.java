@@ -0,0 +1,134 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A hashed timing wheel of device keys, ordered by the time the oldest
+ * entity of the device is due to expire. Scheduling a device that is
+ * already in the wheel only moves it if the new time is earlier, so
+ * refreshing an entity's last seen time costs a single map lookup; the
+ * device is looked at again once its old time comes up and rescheduled
+ * then. Copies left in a slot by moving a device are dropped when that
+ * slot comes up.
+ *
+ * Times are rounded down to whole ticks, the same way poll() does, so a
+ * device comes up in the poll of its due time at the latest; it may come
+ * up earlier in its tick, and the caller reschedules it then. A device due
+ * further out than one turn of the wheel stays in its slot until the turn
+ * it is due in.
+ */
+public class EntityExpiryWheel {
+    private final long tickMs;
+    private final Set<Long>[] slots;
+
+    /**
+     * The tick each scheduled device is due in
+     */
+    private final ConcurrentHashMap<Long, Long> dueTicks =
+            new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * The last tick that was polled, or -1 if none was yet
+     */
+    private volatile long lastTick = -1;
+
+    @SuppressWarnings("unchecked")
+    public EntityExpiryWheel(long tickMs, int size) {
+        if (tickMs <= 0 || size <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be > 0");
+        }
+        this.tickMs = tickMs;
+        this.slots = new Set[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = ConcurrentHashMap.<Long>newKeySet();
+        }
+    }
+
+    /**
+     * Make sure the device is polled no later than the given time
+     * @param deviceKey the device key
+     * @param dueMs the time (ms) the first entity of the device expires
+     */
+    public void schedule(Long deviceKey, long dueMs) {
+        /* Never schedule into a tick that was already polled */
+        long tick = Math.max(dueMs / tickMs, lastTick + 1);
+        while (true) {
+            Long cur = dueTicks.get(deviceKey);
+            if (cur == null) {
+                if (dueTicks.putIfAbsent(deviceKey, tick) == null) {
+                    break;
+                }
+            } else if (cur <= tick) {
+                return;
+            } else if (dueTicks.replace(deviceKey, cur, tick)) {
+                break;
+            }
+        }
+        slots[slot(tick)].add(deviceKey);
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % slots.length);
+    }
+
+    /**
+     * Remove and return the devices due at or before the given time. The
+     * caller is expected to reschedule the devices it keeps.
+     * @param nowMs the current time (ms)
+     * @return the keys of the devices that are due
+     */
+    public synchronized List<Long> poll(long nowMs) {
+        long nowTick = nowMs / tickMs;
+        List<Long> due = new ArrayList<Long>();
+        if (nowTick <= lastTick) {
+            return due;
+        }
+        long from = lastTick < 0 || nowTick - lastTick > slots.length ?
+                Math.max(0, nowTick - slots.length + 1) : lastTick + 1;
+        for (long t = from; t <= nowTick; t++) {
+            int s = slot(t);
+            Iterator<Long> it = slots[s].iterator();
+            while (it.hasNext()) {
+                Long key = it.next();
+                Long tick = dueTicks.get(key);
+                if (tick == null || slot(tick) != s) {
+                    /* Rescheduled to an earlier slot or already polled */
+                    it.remove();
+                    /* ...unless it was scheduled back into this slot meanwhile */
+                    tick = dueTicks.get(key);
+                    if (tick != null && slot(tick) == s) {
+                        slots[s].add(key);
+                    }
+                } else if (tick <= nowTick && dueTicks.remove(key, tick)) {
+                    it.remove();
+                    due.add(key);
+                }
+            }
+        }
+        lastTick = nowTick;
+        return due;
+    }
+
+    /**
+     * @return the number of scheduled devices
+     */
+    public int size() {
+        return dueTicks.size();
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+
+    public synchronized void clear() {
+        for (Set<Long> s : slots) {
+            s.clear();
+        }
+        dueTicks.clear();
+        lastTick = -1;
+    }
+}
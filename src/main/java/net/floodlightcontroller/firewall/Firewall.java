@@ -55,10 +55,7 @@ import net.floodlightcontroller.devicemanager.IDeviceService;
 
 import java.util.ArrayList;
 
-import net.floodlightcontroller.packet.Ethernet;
-import net.floodlightcontroller.packet.IPv4;
-import net.floodlightcontroller.packet.TCP;
-import net.floodlightcontroller.packet.UDP;
+import net.floodlightcontroller.packet.EthernetView;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.IRoutingDecision;
 import net.floodlightcontroller.routing.IRoutingService;
@@ -99,7 +96,10 @@ IFloodlightModule {
 	protected IRoutingService routingService;
 	protected static Logger logger;
 
-	protected List<FirewallRule> rules; // protected by synchronized
+	// copy-on-write; replaced, together with classifier, under synchronized
+	protected volatile List<FirewallRule> rules;
+	// read without locking on the packet-in path
+	protected volatile FirewallClassifier classifier;
 	protected boolean enabled;
 	protected IPv4Address subnet_mask = IPv4Address.of("255.255.255.0");
 
@@ -297,7 +297,7 @@ IFloodlightModule {
 		storageSource = context.getServiceImpl(IStorageSourceService.class);
 		restApi = context.getServiceImpl(IRestApiService.class);
 		routingService = context.getServiceImpl(IRoutingService.class);
-		rules = new ArrayList<FirewallRule>();
+		setRules(Collections.<FirewallRule>emptyList());
 		logger = LoggerFactory.getLogger(Firewall.class);
 
 		// start disabled
@@ -315,7 +315,21 @@ IFloodlightModule {
 		// storage, create table and read rules
 		storageSource.createTable(TABLE_NAME, null);
 		storageSource.setTablePrimaryKeyName(TABLE_NAME, COLUMN_RULEID);
-		this.rules = readRulesFromStorage();
+		setRules(readRulesFromStorage());
+	}
+
+	/**
+	 * Compiles a new classifier for the given rules and makes them current.
+	 * Callers that derive the new list from the current one must hold the
+	 * lock on this.
+	 * 
+	 * @param l
+	 *            the rules, sorted in the order they are to be tried
+	 */
+	protected synchronized void setRules(List<FirewallRule> l) {
+		FirewallClassifier c = new FirewallClassifier(l);
+		this.classifier = c;
+		this.rules = c.getRules();
 	}
 
 	@Override
@@ -401,18 +415,16 @@ IFloodlightModule {
 		// may want to check conflict
 		rule.ruleid = rule.genID();
 
+		List<FirewallRule> l = new ArrayList<FirewallRule>(this.rules);
 		int i = 0;
 		// locate the position of the new rule in the sorted arraylist
-		for (i = 0; i < this.rules.size(); i++) {
-			if (this.rules.get(i).priority >= rule.priority)
+		for (i = 0; i < l.size(); i++) {
+			if (l.get(i).priority >= rule.priority)
 				break;
 		}
-		// now, add rule to the list
-		if (i <= this.rules.size()) {
-			this.rules.add(i, rule);
-		} else {
-			this.rules.add(rule);
-		}
+		// now, add rule to the list and recompile
+		l.add(i, rule);
+		setRules(l);
 		// add rule to database
 		Map<String, Object> entry = new HashMap<String, Object>();
 		entry.put(COLUMN_RULEID, Integer.toString(rule.ruleid));
@@ -457,12 +469,14 @@ IFloodlightModule {
 
 	@Override
 	public synchronized void deleteRule(int ruleid) {
-		Iterator<FirewallRule> iter = this.rules.iterator();
+		List<FirewallRule> l = new ArrayList<FirewallRule>(this.rules);
+		Iterator<FirewallRule> iter = l.iterator();
 		while (iter.hasNext()) {
 			FirewallRule r = iter.next();
 			if (r.ruleid == ruleid) {
-				// found the rule, now remove it
+				// found the rule, now remove it and recompile
 				iter.remove();
+				setRules(l);
 				break;
 			}
 		}
@@ -483,7 +497,9 @@ IFloodlightModule {
 
 	/**
 	 * Iterates over the firewall rules and tries to match them with the
-	 * incoming packet (flow). Uses the FirewallRule class's matchWithFlow
+	 * incoming packet (flow). Only rules for the packet's switch and input
+	 * port are tried, by way of the compiled {@link FirewallClassifier}, and
+	 * no lock is taken. Uses the FirewallRule class's matchWithFlow
 	 * method to perform matching. It maintains a pair of wildcards (allow and
 	 * deny) which are assigned later to the firewall's decision, where 'allow'
 	 * wildcards are applied if the matched rule turns out to be an ALLOW rule
@@ -514,25 +530,11 @@ IFloodlightModule {
 	 */
 	protected RuleMatchPair matchWithRule(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
 		FirewallRule matched_rule = null;
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		EthernetView view = IFloodlightProviderService.bcStore.getView(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
 		AllowDropPair adp = new AllowDropPair(sw.getOFFactory());
 
-		synchronized (rules) {
-			Iterator<FirewallRule> iter = this.rules.iterator();
-			FirewallRule rule = null;
-			// iterate through list to find a matching firewall rule
-			while (iter.hasNext()) {
-				// get next rule from list
-				rule = iter.next();
-
-				// check if rule matches
-				// AllowDropPair adp's allow and drop matches will modified with what matches
-				if (rule.matchesThisPacket(sw.getId(), (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT)), eth, adp) == true) {
-					matched_rule = rule;
-					break;
-				}
-			}
-		}
+		// AllowDropPair adp's allow and drop matches will modified with what matches
+		matched_rule = this.classifier.match(sw.getId(), (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT)), view, adp);
 
 		// make a pair of rule and wildcards, then return it
 		RuleMatchPair rmp = new RuleMatchPair();
@@ -545,24 +547,23 @@ IFloodlightModule {
 			 */
 			Match.Builder mb = OFFactories.getFactory(pi.getVersion()).buildMatch();
 			mb.setExact(MatchField.IN_PORT, (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT)))
-			.setExact(MatchField.ETH_SRC, eth.getSourceMACAddress())
-			.setExact(MatchField.ETH_DST, eth.getDestinationMACAddress())
-			.setExact(MatchField.ETH_TYPE, eth.getEtherType());
-
-			if (mb.get(MatchField.ETH_TYPE).equals(EthType.IPv4)) {
-				IPv4 ipv4 = (IPv4) eth.getPayload();
-				mb.setExact(MatchField.IPV4_SRC, ipv4.getSourceAddress())
-				.setExact(MatchField.IPV4_DST, ipv4.getDestinationAddress())
-				.setExact(MatchField.IP_PROTO, ipv4.getProtocol());
-
-				if (mb.get(MatchField.IP_PROTO).equals(IpProtocol.TCP)) {
-					TCP tcp = (TCP) ipv4.getPayload();
-					mb.setExact(MatchField.TCP_SRC, tcp.getSourcePort())
-					.setExact(MatchField.TCP_DST, tcp.getDestinationPort());
+			.setExact(MatchField.ETH_SRC, view.getSourceMACAddress())
+			.setExact(MatchField.ETH_DST, view.getDestinationMACAddress())
+			.setExact(MatchField.ETH_TYPE, view.getEtherType());
+
+			if (mb.get(MatchField.ETH_TYPE).equals(EthType.IPv4) && view.isIPv4()) {
+				mb.setExact(MatchField.IPV4_SRC, view.getIPv4Source())
+				.setExact(MatchField.IPV4_DST, view.getIPv4Destination())
+				.setExact(MatchField.IP_PROTO, view.getIpProtocol());
+
+				if (!view.hasTransportPorts()) {
+					// fragment or neither TCP nor UDP; IPv4 src/dst + ip proto only
+				} else if (mb.get(MatchField.IP_PROTO).equals(IpProtocol.TCP)) {
+					mb.setExact(MatchField.TCP_SRC, view.getTransportSource())
+					.setExact(MatchField.TCP_DST, view.getTransportDestination());
 				} else if (mb.get(MatchField.IP_PROTO).equals(IpProtocol.UDP)) {
-					UDP udp = (UDP) ipv4.getPayload();
-					mb.setExact(MatchField.UDP_SRC, udp.getSourcePort())
-					.setExact(MatchField.UDP_DST, udp.getDestinationPort());
+					mb.setExact(MatchField.UDP_SRC, view.getTransportSource())
+					.setExact(MatchField.UDP_DST, view.getTransportDestination());
 				} else {
 					// could be ICMP, which will be taken care of via IPv4 src/dst + ip proto
 				}
@@ -592,16 +593,16 @@ IFloodlightModule {
 	}
 
 	public Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, IRoutingDecision decision, FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		EthernetView view = IFloodlightProviderService.bcStore.getView(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
 		OFPort inPort = OFMessageUtils.getInPort(pi);
 
 		// Allowing L2 broadcast + ARP broadcast request (also deny malformed
 		// broadcasts -> L2 broadcast + L3 unicast)
-		if (eth.isBroadcast() == true) {
+		if (view.isBroadcast() == true) {
 			boolean allowBroadcast = true;
 			// the case to determine if we have L2 broadcast + L3 unicast (L3 broadcast default set to /24 or 255.255.255.0)
 			// don't allow this broadcast packet if such is the case (malformed packet)
-			if ((eth.getPayload() instanceof IPv4) && !isIPBroadcast(((IPv4) eth.getPayload()).getDestinationAddress())) {
+			if (view.isIPv4() && !isIPBroadcast(view.getIPv4Destination())) {
 				allowBroadcast = false;
 			}
 			if (allowBroadcast == true) {
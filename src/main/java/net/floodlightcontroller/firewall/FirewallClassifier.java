@@ -0,0 +1,165 @@
+package net.floodlightcontroller.firewall;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.packet.EthernetView;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * An immutable, compiled form of the firewall rule list. A new classifier is
+ * built whenever a rule is added or removed, so packet-ins can be matched
+ * against it without any locking.
+ *
+ * Every rule is put in exactly one of four buckets, depending on whether it
+ * names a switch and/or an input port: (dpid, in_port), (dpid, any),
+ * (any, in_port) and (any, any). A lookup merges the (at most four) buckets
+ * that apply to a packet by rule position, so rules are still tried in the
+ * order of the rule list. Rules that are skipped this way are exactly those
+ * whose switch or input port differs from the packet's;
+ * {@link FirewallRule#matchesThisPacket} rejects those before touching the
+ * {@link AllowDropPair}, so the wildcards of the resulting decision are the
+ * same as with a scan over the whole list.
+ *
+ * Rules are not bucketed by the L2-L4 fields. matchesThisPacket narrows
+ * the wildcards of each field it gets past before checking the next one,
+ * so a rule rejected on, say, tp_dst has already narrowed in_port, dl_*
+ * and nw_* of the decision. Skipping such rules would widen the flow that
+ * gets installed.
+ */
+class FirewallClassifier {
+    private static final int[] NONE = new int[0];
+
+    private final List<FirewallRule> rules;
+    private final FirewallRule[] ruleArray;
+
+    /* Bucket contents are positions in ruleArray, in ascending order */
+    private final Map<DatapathId, Map<OFPort, int[]>> dpidPort;
+    private final Map<DatapathId, int[]> dpidAnyPort;
+    private final Map<OFPort, int[]> anyDpidPort;
+    private final int[] anyDpidAnyPort;
+
+    /**
+     * @param rules the rules, in the order they are to be tried
+     */
+    FirewallClassifier(List<FirewallRule> rules) {
+        this.rules = ImmutableList.copyOf(rules);
+        this.ruleArray = this.rules.toArray(new FirewallRule[0]);
+
+        Map<DatapathId, Map<OFPort, List<Integer>>> dp = new HashMap<DatapathId, Map<OFPort, List<Integer>>>();
+        Map<DatapathId, List<Integer>> da = new HashMap<DatapathId, List<Integer>>();
+        Map<OFPort, List<Integer>> ap = new HashMap<OFPort, List<Integer>>();
+        List<Integer> aa = new ArrayList<Integer>();
+
+        for (int i = 0; i < ruleArray.length; i++) {
+            FirewallRule r = ruleArray[i];
+            if (!r.any_dpid && !r.any_in_port) {
+                Map<OFPort, List<Integer>> ports = dp.get(r.dpid);
+                if (ports == null) {
+                    ports = new HashMap<OFPort, List<Integer>>();
+                    dp.put(r.dpid, ports);
+                }
+                add(ports, r.in_port, i);
+            } else if (!r.any_dpid) {
+                add(da, r.dpid, i);
+            } else if (!r.any_in_port) {
+                add(ap, r.in_port, i);
+            } else {
+                aa.add(i);
+            }
+        }
+
+        dpidPort = new HashMap<DatapathId, Map<OFPort, int[]>>(dp.size() * 2);
+        for (Map.Entry<DatapathId, Map<OFPort, List<Integer>>> e : dp.entrySet()) {
+            dpidPort.put(e.getKey(), toArrays(e.getValue()));
+        }
+        dpidAnyPort = toArrays(da);
+        anyDpidPort = toArrays(ap);
+        anyDpidAnyPort = toArray(aa);
+    }
+
+    private static <K> void add(Map<K, List<Integer>> m, K key, int i) {
+        List<Integer> l = m.get(key);
+        if (l == null) {
+            l = new ArrayList<Integer>();
+            m.put(key, l);
+        }
+        l.add(i);
+    }
+
+    private static <K> Map<K, int[]> toArrays(Map<K, List<Integer>> m) {
+        Map<K, int[]> result = new HashMap<K, int[]>(m.size() * 2);
+        for (Map.Entry<K, List<Integer>> e : m.entrySet()) {
+            result.put(e.getKey(), toArray(e.getValue()));
+        }
+        return result;
+    }
+
+    private static int[] toArray(List<Integer> l) {
+        int[] a = new int[l.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = l.get(i);
+        }
+        return a;
+    }
+
+    /**
+     * @return the rules, in the order they are tried; never modified
+     */
+    List<FirewallRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Finds the first rule, in rule list order, that matches the packet.
+     * As with {@link FirewallRule#matchesThisPacket}, adp collects the
+     * wildcards of every rule tried along the way. The packet is only
+     * decoded if some rule applies to its switch and input port.
+     *
+     * @return the matching rule, or null if there is none
+     */
+    FirewallRule match(DatapathId dpid, OFPort inPort, EthernetView view, AllowDropPair adp) {
+        Map<OFPort, int[]> ports = dpidPort.get(dpid);
+        int[] a = ports == null ? NONE : get(ports, inPort);
+        int[] b = get(dpidAnyPort, dpid);
+        int[] c = get(anyDpidPort, inPort);
+        int[] d = anyDpidAnyPort;
+
+        int ia = 0, ib = 0, ic = 0, id = 0;
+        while (true) {
+            /* Take the lowest rule position at the head of the four buckets */
+            int next = Integer.MAX_VALUE;
+            int from = -1;
+            if (ia < a.length && a[ia] < next) { next = a[ia]; from = 0; }
+            if (ib < b.length && b[ib] < next) { next = b[ib]; from = 1; }
+            if (ic < c.length && c[ic] < next) { next = c[ic]; from = 2; }
+            if (id < d.length && d[id] < next) { next = d[id]; from = 3; }
+            switch (from) {
+            case 0: ia++; break;
+            case 1: ib++; break;
+            case 2: ic++; break;
+            case 3: id++; break;
+            default: return null;
+            }
+
+            FirewallRule r = ruleArray[next];
+            if (r.matchesThisPacket(dpid, inPort, view.getEthernet(), adp)) {
+                return r;
+            }
+        }
+    }
+
+    private static <K> int[] get(Map<K, int[]> m, K key) {
+        if (key == null) {
+            return NONE;
+        }
+        int[] a = m.get(key);
+        return a == null ? NONE : a;
+    }
+}
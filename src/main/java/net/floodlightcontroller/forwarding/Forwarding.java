@@ -20,6 +20,10 @@ package net.floodlightcontroller.forwarding;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -96,21 +100,59 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
     private static final long FLOWSET_MAX = (long) (Math.pow(2, FLOWSET_BITS) - 1);
     protected static FlowSetIdRegistry flowSetIdRegistry;
 
+    /* Wrap the deletes sent after a link or port failure in an OF1.4+ bundle */
+    private static boolean REMOVE_FLOWS_IN_BUNDLE = false;
+
     private static L3RoutingManager l3manager;
     private static volatile IRoutingService.RoutingType routingType = IRoutingService.RoutingType.FORWARDING;
 
     private Map<OFPacketIn, Ethernet> l3cache;
     private DeviceListenerImpl deviceListener;
 
+    /**
+     * Index of the node port tuples each flowset was installed on, in both
+     * directions, so a port going down only touches the flowsets that use
+     * it and the ports those flowsets use.
+     *
+     * Flowsets are aged out in the order they were first registered: once
+     * there are more than maxFlowSets of them, or once they are older than
+     * maxAgeMs (if set). This runs as new flowsets are registered, so it
+     * needs no timer. A flowset that is removed keeps its place in the age
+     * queue until it comes up there; the entry is then skipped, since it
+     * is no longer the flowset's current one. A flowset that is aged out while its flows are still
+     * installed is not removed on a later port down; its flows go away by
+     * their own timeouts.
+     */
     protected static class FlowSetIdRegistry {
-        private volatile Map<NodePortTuple, Set<U64>> nptToFlowSetIds;
-        private volatile Map<U64, Set<NodePortTuple>> flowSetIdToNpts;
-        
-        private volatile long flowSetGenerator = -1;
+        protected static final int DEFAULT_MAX_FLOWSETS = 1 << 20;
+
+        private final ConcurrentHashMap<NodePortTuple, Set<U64>> nptToFlowSetIds;
+        private final ConcurrentHashMap<U64, Set<NodePortTuple>> flowSetIdToNpts;
+
+        private final AtomicLong flowSetGenerator = new AtomicLong(-1);
+
+        private static class FlowSetAge {
+            private final U64 flowSetId;
+            private final long registeredMs;
+
+            private FlowSetAge(U64 flowSetId, long registeredMs) {
+                this.flowSetId = flowSetId;
+                this.registeredMs = registeredMs;
+            }
+        }
+
+        /* Flowsets in the order they were first registered, including removed ones */
+        private final ConcurrentLinkedQueue<FlowSetAge> ages = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger numAges = new AtomicInteger();
+        /* The current entry in ages of each registered flowset */
+        private final ConcurrentHashMap<U64, FlowSetAge> liveAges = new ConcurrentHashMap<>();
+        private final AtomicBoolean aging = new AtomicBoolean();
+        private volatile int maxFlowSets = DEFAULT_MAX_FLOWSETS;
+        private volatile long maxAgeMs = 0;
 
         private static volatile FlowSetIdRegistry instance;
 
-        private FlowSetIdRegistry() {
+        FlowSetIdRegistry() {
             nptToFlowSetIds = new ConcurrentHashMap<>();
             flowSetIdToNpts = new ConcurrentHashMap<>();
         }
@@ -127,74 +169,161 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
          * @param seed
          */
         protected void seedFlowSetIdForUnitTest(int seed) {
-            flowSetGenerator = seed;
+            flowSetGenerator.set(seed);
+        }
+
+        /**
+         * @param maxFlowSets the number of flowsets to keep before the
+         * oldest are dropped
+         */
+        protected void setMaxFlowSets(int maxFlowSets) {
+            this.maxFlowSets = maxFlowSets;
+        }
+
+        /**
+         * @param maxAgeMs how long (ms) to keep a flowset after it was first
+         * registered, or 0 to keep it until it is removed or pushed out by
+         * newer flowsets
+         */
+        protected void setMaxAge(long maxAgeMs) {
+            this.maxAgeMs = maxAgeMs;
         }
         
-        protected synchronized U64 generateFlowSetId() {
-            flowSetGenerator += 1;
-            if (flowSetGenerator == FLOWSET_MAX) {
-                flowSetGenerator = 0;
+        protected U64 generateFlowSetId() {
+            long prev;
+            long next;
+            do {
+                prev = flowSetGenerator.get();
+                next = prev + 1 == FLOWSET_MAX ? 0 : prev + 1;
+            } while (!flowSetGenerator.compareAndSet(prev, next));
+            if (next == 0 && prev != -1) {
                 log.warn("Flowset IDs have exceeded capacity of {}. Flowset ID generator resetting back to 0", FLOWSET_MAX);
             }
-            U64 id = U64.of(flowSetGenerator << FLOWSET_SHIFT);
-            log.debug("Generating flowset ID {}, shifted {}", flowSetGenerator, id);
+            U64 id = U64.of(next << FLOWSET_SHIFT);
+            log.debug("Generating flowset ID {}, shifted {}", next, id);
             return id;
         }
 
-        private void registerFlowSetId(NodePortTuple npt, U64 flowSetId) {
-            if (nptToFlowSetIds.containsKey(npt)) {
-                Set<U64> ids = nptToFlowSetIds.get(npt);
-                ids.add(flowSetId);
-            } else {
-                Set<U64> ids = new HashSet<>();
+        void registerFlowSetId(NodePortTuple npt, U64 flowSetId) {
+            nptToFlowSetIds.compute(npt, (k, ids) -> {
+                if (ids == null) {
+                    ids = ConcurrentHashMap.newKeySet();
+                }
                 ids.add(flowSetId);
-                nptToFlowSetIds.put(npt, ids);
-            }  
-
-            if (flowSetIdToNpts.containsKey(flowSetId)) {
-                Set<NodePortTuple> npts = flowSetIdToNpts.get(flowSetId);
-                npts.add(npt);
-            } else {
-                Set<NodePortTuple> npts = new HashSet<>();
+                return ids;
+            });
+
+            FlowSetAge[] added = new FlowSetAge[1];
+            flowSetIdToNpts.compute(flowSetId, (k, npts) -> {
+                if (npts == null) {
+                    npts = ConcurrentHashMap.newKeySet();
+                    added[0] = new FlowSetAge(k, System.currentTimeMillis());
+                    liveAges.put(k, added[0]);
+                }
                 npts.add(npt);
-                flowSetIdToNpts.put(flowSetId, npts);
+                return npts;
+            });
+            if (added[0] != null) {
+                ages.add(added[0]);
+                numAges.incrementAndGet();
+                ageOut();
+            }
+        }
+
+        /**
+         * Drop the oldest flowsets while there are too many of them or they
+         * are too old. Only one thread ages out at a time; the others skip it.
+         */
+        private void ageOut() {
+            if (!aging.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                long cutoff = maxAgeMs > 0 ? System.currentTimeMillis() - maxAgeMs : Long.MIN_VALUE;
+                FlowSetAge oldest;
+                while ((oldest = ages.peek()) != null) {
+                    if (liveAges.get(oldest.flowSetId) != oldest) {
+                        /* Removed since, maybe registered again under a wrapped ID */
+                        ages.poll();
+                        numAges.decrementAndGet();
+                    } else if (liveAges.size() > maxFlowSets || oldest.registeredMs < cutoff) {
+                        ages.poll();
+                        numAges.decrementAndGet();
+                        removeFlowSetId(oldest.flowSetId);
+                    } else {
+                        break;
+                    }
+                }
+                /* Removed flowsets behind a live one would pile up otherwise */
+                if (numAges.get() > 2 * liveAges.size() + 64) {
+                    int[] dropped = new int[1];
+                    ages.removeIf(age -> {
+                        if (liveAges.get(age.flowSetId) != age) {
+                            dropped[0]++;
+                            return true;
+                        }
+                        return false;
+                    });
+                    numAges.addAndGet(-dropped[0]);
+                }
+            } finally {
+                aging.set(false);
             }
         }
 
-        private Set<U64> getFlowSetIds(NodePortTuple npt) {
+        Set<U64> getFlowSetIds(NodePortTuple npt) {
             return nptToFlowSetIds.get(npt);
         }
 
-        private Set<NodePortTuple> getNodePortTuples(U64 flowSetId) {
+        Set<NodePortTuple> getNodePortTuples(U64 flowSetId) {
             return flowSetIdToNpts.get(flowSetId);
         }
 
-        private void removeNodePortTuple(NodePortTuple npt) {
-            nptToFlowSetIds.remove(npt);
-
-            Iterator<Set<NodePortTuple>> itr = flowSetIdToNpts.values().iterator();
-            while (itr.hasNext()) {
-                Set<NodePortTuple> npts = itr.next();
-                npts.remove(npt);
+        void removeNodePortTuple(NodePortTuple npt) {
+            Set<U64> ids = nptToFlowSetIds.remove(npt);
+            if (ids == null) {
+                return;
+            }
+            for (U64 id : ids) {
+                flowSetIdToNpts.computeIfPresent(id, (k, npts) -> {
+                    npts.remove(npt);
+                    if (npts.isEmpty()) {
+                        liveAges.remove(k);
+                        return null;
+                    }
+                    return npts;
+                });
             }
         }
 
-        private void removeExpiredFlowSetId(U64 flowSetId, NodePortTuple avoid, Iterator<U64> avoidItr) {
-            flowSetIdToNpts.remove(flowSetId);
-
-            Iterator<Entry<NodePortTuple, Set<U64>>> itr = nptToFlowSetIds.entrySet().iterator();
-            boolean removed = false;
-            while (itr.hasNext()) {
-                Entry<NodePortTuple, Set<U64>> e = itr.next();
-                if (e.getKey().equals(avoid) && ! removed) {
-                    avoidItr.remove();
-                    removed = true;
-                } else {
-                    Set<U64> ids = e.getValue();
+        /**
+         * Remove a flowset from every node port tuple it was registered on.
+         * It is safe to call while iterating over {@link #getFlowSetIds(NodePortTuple)}.
+         * @param flowSetId
+         */
+        void removeFlowSetId(U64 flowSetId) {
+            @SuppressWarnings("unchecked")
+            Set<NodePortTuple>[] removed = new Set[1];
+            flowSetIdToNpts.computeIfPresent(flowSetId, (k, npts) -> {
+                liveAges.remove(k);
+                removed[0] = npts;
+                return null;
+            });
+            Set<NodePortTuple> npts = removed[0];
+            if (npts == null) {
+                return;
+            }
+            for (NodePortTuple npt : npts) {
+                nptToFlowSetIds.computeIfPresent(npt, (k, ids) -> {
                     ids.remove(flowSetId);
-                }
+                    return ids.isEmpty() ? null : ids;
+                });
             }
         }
+
+        protected int size() {
+            return flowSetIdToNpts.size();
+        }
     }
 
     @Override
@@ -1455,6 +1584,25 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         } else {
             log.info("Flows will not be removed on link/port down events");
         }
+
+        tmp = configParameters.get("remove-flows-in-bundle");
+        if (tmp != null) {
+            REMOVE_FLOWS_IN_BUNDLE = Boolean.parseBoolean(tmp);
+            log.info("Flows removed on link/port down will {}be sent in a bundle", REMOVE_FLOWS_IN_BUNDLE ? "" : "not ");
+        }
+
+        tmp = configParameters.get("flowset-max-entries");
+        if (tmp != null) {
+            flowSetIdRegistry.setMaxFlowSets(ParseUtils.parseHexOrDecInt(tmp));
+            log.info("Keeping at most {} flowsets for link/port down removal", tmp);
+        }
+        /* Flows with a hard timeout are gone from the switches by then */
+        tmp = configParameters.get("flowset-max-age");
+        int maxAge = tmp != null ? ParseUtils.parseHexOrDecInt(tmp) : FLOWMOD_DEFAULT_HARD_TIMEOUT;
+        if (maxAge > 0) {
+            flowSetIdRegistry.setMaxAge(maxAge * 1000L);
+            log.info("Flowsets will be aged out after {} seconds", maxAge);
+        }
     }
 
     @Override
@@ -1533,106 +1681,159 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
     @Override
     public void linkDiscoveryUpdate(List<LDUpdate> updateList) {
+        /* Remove flows on either side if link/port went down */
+        Set<NodePortTuple> downPorts = new HashSet<NodePortTuple>();
         for (LDUpdate u : updateList) {
-            /* Remove flows on either side if link/port went down */
             if (u.getOperation() == UpdateOperation.LINK_REMOVED ||
                     u.getOperation() == UpdateOperation.PORT_DOWN ||
                     u.getOperation() == UpdateOperation.TUNNEL_PORT_REMOVED) {
-                Set<OFMessage> msgs = new HashSet<OFMessage>();
-
                 if (u.getSrc() != null && !u.getSrc().equals(DatapathId.NONE)) {
-                    IOFSwitch srcSw = switchService.getSwitch(u.getSrc());
-                    /* src side of link */
-                    if (srcSw != null) {
-                        Set<U64> ids = flowSetIdRegistry.getFlowSetIds(
-                                new NodePortTuple(u.getSrc(), u.getSrcPort()));
-                        if (ids != null) {
-                            Iterator<U64> i = ids.iterator();
-                            while (i.hasNext()) {
-                                U64 id = i.next();
-                                U64 cookie = id.or(DEFAULT_FORWARDING_COOKIE);
-                                U64 cookieMask = U64.of(FLOWSET_MASK).or(AppCookie.getAppFieldMask());
-
-                                /* Delete flows matching on src port and outputting to src port */
-                                msgs = buildDeleteFlows(u.getSrcPort(), msgs, srcSw, cookie, cookieMask);
-                                messageDamper.write(srcSw, msgs);
-                                log.debug("src: Removing flows to/from DPID={}, port={}", u.getSrc(), u.getSrcPort());
-                                log.debug("src: Cookie/mask {}/{}", cookie, cookieMask);
-
-                                /* 
-                                 * Now, for each ID on this particular failed link, remove
-                                 * all other flows in the network using this ID.
-                                 */
-                                Set<NodePortTuple> npts = flowSetIdRegistry.getNodePortTuples(id);
-                                if (npts != null) {
-                                    for (NodePortTuple npt : npts) {
-                                        msgs.clear();
-                                        IOFSwitch sw = switchService.getSwitch(npt.getNodeId());
-                                        if (sw != null) {
-
-                                            /* Delete flows matching on npt port and outputting to npt port*/
-                                            msgs = buildDeleteFlows(npt.getPortId(), msgs, sw, cookie, cookieMask);
-                                            messageDamper.write(sw, msgs);
-                                            log.debug("src: Removing same-cookie flows to/from DPID={}, port={}", npt.getNodeId(), npt.getPortId());
-                                            log.debug("src: Cookie/mask {}/{}", cookie, cookieMask);
-                                        }
-                                    }
-                                }
-                                flowSetIdRegistry.removeExpiredFlowSetId(id, new NodePortTuple(u.getSrc(), u.getSrcPort()), i);
-                            }
-                        }
-                    }
-                    flowSetIdRegistry.removeNodePortTuple(new NodePortTuple(u.getSrc(), u.getSrcPort()));
+                    downPorts.add(new NodePortTuple(u.getSrc(), u.getSrcPort()));
                 }
-
                 /* must be a link, not just a port down, if we have a dst switch */
                 if (u.getDst() != null && !u.getDst().equals(DatapathId.NONE)) {
-                    /* dst side of link */
-                    IOFSwitch dstSw = switchService.getSwitch(u.getDst());
-                    if (dstSw != null) {
-                        Set<U64> ids = flowSetIdRegistry.getFlowSetIds(
-                                new NodePortTuple(u.getDst(), u.getDstPort()));
-                        if (ids != null) {
-                            Iterator<U64> i = ids.iterator();
-                            while (i.hasNext()) {
-                                U64 id = i.next();
-                                U64 cookie = id.or(DEFAULT_FORWARDING_COOKIE);
-                                U64 cookieMask = U64.of(FLOWSET_MASK).or(AppCookie.getAppFieldMask());
-                                /* Delete flows matching on dst port and outputting to dst port */
-                                msgs = buildDeleteFlows(u.getDstPort(), msgs, dstSw, cookie, cookieMask);
-                                messageDamper.write(dstSw, msgs);
-                                log.debug("dst: Removing flows to/from DPID={}, port={}", u.getDst(), u.getDstPort());
-                                log.debug("dst: Cookie/mask {}/{}", cookie, cookieMask);
-
-                                /* 
-                                 * Now, for each ID on this particular failed link, remove
-                                 * all other flows in the network using this ID.
-                                 */
-                                Set<NodePortTuple> npts = flowSetIdRegistry.getNodePortTuples(id);
-                                if (npts != null) {
-                                    for (NodePortTuple npt : npts) {
-                                        msgs.clear();
-                                        IOFSwitch sw = switchService.getSwitch(npt.getNodeId());
-                                        if (sw != null) {
-                                            /* Delete flows matching on npt port and outputting on npt port */
-                                            msgs = buildDeleteFlows(npt.getPortId(), msgs, sw, cookie, cookieMask);
-                                            messageDamper.write(sw, msgs);
-                                            log.debug("dst: Removing same-cookie flows to/from DPID={}, port={}", npt.getNodeId(), npt.getPortId());
-                                            log.debug("dst: Cookie/mask {}/{}", cookie, cookieMask);
-                                        }
-                                    }
-                                }
-                                flowSetIdRegistry.removeExpiredFlowSetId(id, new NodePortTuple(u.getDst(), u.getDstPort()), i);
+                    downPorts.add(new NodePortTuple(u.getDst(), u.getDstPort()));
+                }
+            }
+        }
+        if (downPorts.isEmpty()) {
+            return;
+        }
+
+        /* 
+         * Collect, for the whole batch, which flowsets to remove from which
+         * ports. The ports that went down lose all forwarding flows, so
+         * they need no per-flowset deletes. Every other port a flowset on
+         * a failed port was installed on gets a delete for that flowset.
+         */
+        Map<DatapathId, FlowDeletes> deletes = new HashMap<DatapathId, FlowDeletes>();
+        for (NodePortTuple down : downPorts) {
+            deletes.computeIfAbsent(down.getNodeId(), k -> new FlowDeletes()).downPorts.add(down.getPortId());
+
+            Set<U64> ids = flowSetIdRegistry.getFlowSetIds(down);
+            if (ids != null) {
+                for (U64 id : ids) {
+                    Set<NodePortTuple> npts = flowSetIdRegistry.getNodePortTuples(id);
+                    if (npts != null) {
+                        for (NodePortTuple npt : npts) {
+                            if (!downPorts.contains(npt)) {
+                                deletes.computeIfAbsent(npt.getNodeId(), k -> new FlowDeletes())
+                                .flowSets.computeIfAbsent(npt.getPortId(), k -> new HashSet<U64>())
+                                .add(id);
                             }
                         }
                     }
-                    flowSetIdRegistry.removeNodePortTuple(new NodePortTuple(u.getDst(), u.getDstPort()));
+                    flowSetIdRegistry.removeFlowSetId(id);
+                }
+            }
+            flowSetIdRegistry.removeNodePortTuple(down);
+        }
+
+        /* Writes are queued on the switch channels, so this does not block on switch I/O */
+        for (Entry<DatapathId, FlowDeletes> e : deletes.entrySet()) {
+            IOFSwitch sw = switchService.getSwitch(e.getKey());
+            if (sw != null) {
+                writeFlowDeletes(sw, e.getValue());
+            }
+        }
+    }
+
+    /**
+     * The forwarding flows to remove from one switch after a link or port
+     * failure
+     */
+    private static class FlowDeletes {
+        /* Ports to remove all forwarding flows from */
+        private final Set<OFPort> downPorts = new HashSet<OFPort>();
+        /* Flowsets to remove from other ports */
+        private final Map<OFPort, Set<U64>> flowSets = new HashMap<OFPort, Set<U64>>();
+    }
+
+    private void writeFlowDeletes(IOFSwitch sw, FlowDeletes d) {
+        List<OFMessage> msgs = new ArrayList<OFMessage>();
+        U64 appMask = AppCookie.getAppFieldMask();
+        boolean of10 = sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) == 0;
+
+        for (OFPort port : d.downPorts) {
+            buildDeleteFlows(port, msgs, sw, DEFAULT_FORWARDING_COOKIE, appMask);
+            log.debug("Removing flows to/from DPID={}, port={}", sw.getId(), port);
+        }
+
+        /* 
+         * A flowset has a single path, so all of its flows on this switch
+         * go, whatever their ports. That lets the flowsets of all ports be
+         * removed together by cookie alone.
+         */
+        Set<U64> ids = new HashSet<U64>();
+        for (Entry<OFPort, Set<U64>> e : d.flowSets.entrySet()) {
+            if (d.downPorts.contains(e.getKey())) {
+                continue;
+            }
+            if (of10) {
+                /* The cookie is ignored by OpenFlow 1.0 deletes, so one per port does */
+                buildDeleteFlows(e.getKey(), msgs, sw, DEFAULT_FORWARDING_COOKIE, appMask);
+                continue;
+            }
+            ids.addAll(e.getValue());
+        }
+        if (!ids.isEmpty()) {
+            Collection<Masked<U64>> cookies = aggregateFlowSetIds(ids);
+            for (Masked<U64> cookie : cookies) {
+                msgs.add(sw.getOFFactory().buildFlowDelete()
+                        .setCookie(cookie.getValue())
+                        .setCookieMask(cookie.getMask())
+                        .build());
+            }
+            log.debug("Removing {} flowsets from DPID={} with {} masked-cookie deletes",
+                    new Object[] { ids.size(), sw.getId(), cookies.size() });
+        }
+
+        if (REMOVE_FLOWS_IN_BUNDLE) {
+            messageDamper.write(sw, OFMessageUtils.buildBundle(sw.getOFFactory(), msgs));
+        } else {
+            messageDamper.write(sw, msgs);
+        }
+    }
+
+    /**
+     * Covers a set of flowset IDs with as few masked forwarding cookies as
+     * possible without matching any other flowset. IDs are handed out in
+     * sequence, so runs of them merge into aligned, power-of-two blocks that
+     * each need only one cookie with the low flowset bits masked out.
+     *
+     * @param ids flowset IDs, as returned by the flowset ID registry
+     * @return masked cookies matching exactly the given flowsets
+     */
+    protected static Collection<Masked<U64>> aggregateFlowSetIds(Set<U64> ids) {
+        Set<Long> blocks = new HashSet<Long>();
+        for (U64 id : ids) {
+            blocks.add((id.getValue() & FLOWSET_MASK) >>> FLOWSET_SHIFT);
+        }
+
+        List<Masked<U64>> cookies = new ArrayList<Masked<U64>>();
+        U64 appMask = AppCookie.getAppFieldMask();
+        for (int bit = 0; bit < FLOWSET_BITS && !blocks.isEmpty(); bit++) {
+            /* Blocks here span 2^bit IDs; merge each with its buddy if present */
+            Set<Long> merged = new HashSet<Long>();
+            U64 mask = U64.of(FLOWSET_MASK & (-1L << (FLOWSET_SHIFT + bit))).or(appMask);
+            for (Long block : blocks) {
+                long buddy = block ^ (1L << bit);
+                if (blocks.contains(buddy)) {
+                    merged.add(block & ~(1L << bit));
+                } else {
+                    cookies.add(Masked.of(U64.of(block << FLOWSET_SHIFT).or(DEFAULT_FORWARDING_COOKIE), mask));
                 }
             }
+            blocks = merged;
+        }
+        for (Long block : blocks) {
+            /* Every flowset ID, only possible when all were given */
+            cookies.add(Masked.of(U64.of(block << FLOWSET_SHIFT).or(DEFAULT_FORWARDING_COOKIE), appMask));
         }
+        return cookies;
     }
 
-    private Set<OFMessage> buildDeleteFlows(OFPort port, Set<OFMessage> msgs, IOFSwitch sw, U64 cookie, U64 cookieMask) {
+    private Collection<OFMessage> buildDeleteFlows(OFPort port, Collection<OFMessage> msgs, IOFSwitch sw, U64 cookie, U64 cookieMask) {
         if(sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) == 0) {
             msgs.add(sw.getOFFactory().buildFlowDelete()
                     .setCookie(cookie)
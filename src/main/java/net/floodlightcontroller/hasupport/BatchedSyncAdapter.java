@@ -0,0 +1,213 @@
+package net.floodlightcontroller.hasupport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.error.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Sync adapter that publishes updates as numbered, binary delta batches
+ * (see {@link SyncUpdateCodec}) instead of rewriting one JSON document per
+ * key on every update.
+ *
+ * Each call to packJSON writes one batch under "controllerID:batchSeq" and
+ * then moves the head pointer "controllerID" to batchSeq. Only the last
+ * {@link #RETAINED_BATCHES} batches are kept in the syncDB. Every update
+ * carries a per-key sequence number, so a subscriber that reads the same
+ * batch twice, or reads batches after a newer update for that key, drops
+ * the stale copy. The sequence numbers restart when the publisher does,
+ * which is signalled by a new epoch in the batch header.
+ *
+ * The sync store holds strings, so batches are stored Base64 encoded.
+ * Updates handed to the reverse filter queue are JSON objects with the
+ * update's fields plus "seq" and "timestamp" (ms).
+ */
+public abstract class BatchedSyncAdapter implements ISyncAdapter {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchedSyncAdapter.class);
+
+	protected static final String[] KEY_FIELDS = new String[] { "src", "srcPort", "dst", "dstPort", "type" };
+	protected static final String[] VALUE_FIELDS = new String[] { "operation", "latency" };
+
+	public static final int RETAINED_BATCHES = 256;
+
+	private static final TypeReference<HashMap<String, String>> TYPE_REF =
+			new TypeReference<HashMap<String, String>>() {
+	};
+
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	private final SyncUpdateCodec codec = new SyncUpdateCodec(KEY_FIELDS, VALUE_FIELDS);
+	private final long epoch = System.currentTimeMillis();
+
+	protected final IStoreClient<String, String> store;
+	protected final String controllerID;
+	private final IFilterQueue filterQueue;
+
+	/* Publisher state */
+	private final Map<String, Long> keySeqs = new HashMap<>();
+	private long batchSeq = -1;
+
+	/* Subscriber state, per publishing controller */
+	private final Map<String, Long> lastBatch = new HashMap<>();
+	private final Map<String, Long> lastEpoch = new HashMap<>();
+	private final Map<String, Map<String, Long>> lastKeySeqs = new HashMap<>();
+
+	protected BatchedSyncAdapter(IStoreClient<String, String> store, String controllerID,
+			IFilterQueue filterQueue) {
+		this.store = store;
+		this.controllerID = controllerID;
+		this.filterQueue = filterQueue;
+	}
+
+	public SyncUpdateCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @return the key fields of a JSON update joined into one string, or
+	 * the update itself if it cannot be parsed
+	 */
+	public static String updateKey(String update) {
+		try {
+			Map<String, String> fields = mapper.readValue(update, TYPE_REF);
+			String[] key = new String[KEY_FIELDS.length];
+			for (int i = 0; i < KEY_FIELDS.length; i++) {
+				key[i] = fields.get(KEY_FIELDS[i]);
+			}
+			return SyncUpdateCodec.keyString(key);
+		} catch (IOException e) {
+			return update;
+		}
+	}
+
+	protected static String batchKey(String controllerID, long seq) {
+		return controllerID + ":" + seq;
+	}
+
+	/**
+	 * Encodes the updates, each a JSON object of field/value pairs, into one
+	 * batch and pushes it into the syncDB. Malformed updates are skipped.
+	 */
+	@Override
+	public synchronized void packJSON(List<String> newUpdates) {
+		if (newUpdates.isEmpty()) {
+			return;
+		}
+
+		List<SyncUpdateCodec.Record> records = new ArrayList<>(newUpdates.size());
+		for (String up : newUpdates) {
+			Map<String, String> fields;
+			try {
+				fields = mapper.readValue(up, TYPE_REF);
+			} catch (IOException e) {
+				logger.debug("[Sync] Skipping malformed update {}", up);
+				continue;
+			}
+			SyncUpdateCodec.Record r = codec.toRecord(fields, 0);
+			long seq = keySeqs.merge(r.getKeyString(), 1L, Long::sum);
+			records.add(new SyncUpdateCodec.Record(r.getKey(), r.getValues(), seq));
+		}
+		if (records.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (batchSeq < 0) {
+				/* Continue after the last batch a previous run published */
+				String head = store.getValue(controllerID, null);
+				try {
+					batchSeq = head == null ? 0 : Long.parseLong(head);
+				} catch (NumberFormatException nfe) {
+					logger.warn("[Sync] Bad batch head {} for {}, restarting at 0", head, controllerID);
+					batchSeq = 0;
+				}
+			}
+			long seq = batchSeq + 1;
+			byte[] batch = codec.encode(epoch, seq, System.currentTimeMillis(), records);
+			store.put(batchKey(controllerID, seq), Base64.getEncoder().encodeToString(batch));
+			store.put(controllerID, Long.toString(seq));
+			batchSeq = seq;
+			if (seq > RETAINED_BATCHES) {
+				store.delete(batchKey(controllerID, seq - RETAINED_BATCHES));
+			}
+		} catch (SyncException se) {
+			logger.warn("[Sync] Exception: sync packJSON!", se);
+		}
+	}
+
+	/**
+	 * Reads the batches that controllerID published since the last call
+	 * and passes the updates that are newer than what was already seen for
+	 * their key on to the filter queue's enqueueReverse().
+	 */
+	@Override
+	public synchronized void unpackJSON(String controllerID) {
+		try {
+			String head = store.getValue(controllerID, null);
+			if (head == null) {
+				return;
+			}
+			long headSeq;
+			try {
+				headSeq = Long.parseLong(head);
+			} catch (NumberFormatException nfe) {
+				logger.warn("[Sync] Bad batch head {} from {}", head, controllerID);
+				return;
+			}
+			Long last = lastBatch.get(controllerID);
+			if (last != null && last > headSeq) {
+				/* The publisher's store was reset */
+				last = null;
+			}
+			long from = Math.max(last == null ? 1 : last + 1, headSeq - RETAINED_BATCHES + 1);
+			for (long seq = Math.max(from, 1); seq <= headSeq; seq++) {
+				String value = store.getValue(batchKey(controllerID, seq), null);
+				if (value != null) {
+					try {
+						deliver(controllerID, codec.decode(Base64.getDecoder().decode(value)));
+					} catch (IOException | IllegalArgumentException e) {
+						/* Reading it again will not help; go on with the next one */
+						logger.warn("[Sync] Skipping bad batch {} from {}: {}",
+								new Object[] { seq, controllerID, e.getMessage() });
+					}
+				}
+				lastBatch.put(controllerID, seq);
+			}
+		} catch (SyncException e) {
+			logger.warn("[Sync] Exception: sync unpackJSON!", e);
+		}
+	}
+
+	private void deliver(String controllerID, SyncUpdateCodec.Batch batch) throws IOException {
+		Map<String, Long> seen = lastKeySeqs.get(controllerID);
+		Long knownEpoch = lastEpoch.get(controllerID);
+		if (seen == null || knownEpoch == null || knownEpoch != batch.getEpoch()) {
+			seen = new HashMap<>();
+			lastKeySeqs.put(controllerID, seen);
+			lastEpoch.put(controllerID, batch.getEpoch());
+		}
+		String timestamp = Long.toString(batch.getTimestamp());
+		for (SyncUpdateCodec.Record r : batch.getRecords()) {
+			Long prev = seen.get(r.getKeyString());
+			if (prev != null && prev >= r.getSeq()) {
+				continue;
+			}
+			seen.put(r.getKeyString(), r.getSeq());
+			Map<String, String> fields = codec.toFields(r);
+			fields.put("seq", Long.toString(r.getSeq()));
+			fields.put("timestamp", timestamp);
+			filterQueue.enqueueReverse(mapper.writeValueAsString(fields));
+		}
+	}
+}
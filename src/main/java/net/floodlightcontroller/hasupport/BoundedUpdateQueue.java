@@ -0,0 +1,214 @@
+package net.floodlightcontroller.hasupport;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.hasupport.IFilterQueue.OverflowPolicy;
+
+/**
+ * A FIFO of HA updates with a fixed capacity, used as the forward and
+ * reverse queues of the filter queues. What happens to an update that
+ * arrives when the queue is full is decided by its {@link OverflowPolicy}.
+ * For COALESCE the queue keeps track of the newest queued update for each
+ * key (e.g. each link) so that the new update can replace it in place.
+ * Updates are only mapped to their key once the queue has been full.
+ */
+public class BoundedUpdateQueue {
+
+	/**
+	 * What became of an offered update
+	 */
+	public enum OfferResult {
+		/** Queued; nothing was dropped */
+		ENQUEUED,
+		/** Queued in place of the newest queued update for its key */
+		COALESCED,
+		/** Queued after the oldest queued update was dropped */
+		EVICTED,
+		/** Not queued */
+		REJECTED
+	}
+
+	private static class Node {
+		String key;
+		String value;
+
+		Node(String value) {
+			this.value = value;
+		}
+	}
+
+	private final ArrayDeque<Node> queue = new ArrayDeque<>();
+	private final Map<String, Node> newestForKey = new HashMap<>();
+	private boolean indexed;
+	private final Function<String, String> keyOf;
+	private volatile int capacity;
+	private volatile OverflowPolicy policy;
+
+	private final AtomicLong drops = new AtomicLong();
+	private final AtomicLong coalesces = new AtomicLong();
+	private volatile IDebugCounter dropCounter;
+	private volatile IDebugCounter coalesceCounter;
+
+	/**
+	 * @param capacity maximum number of queued updates
+	 * @param policy what to do with updates offered when full
+	 * @param keyOf maps an update to the key it is coalesced on
+	 */
+	public BoundedUpdateQueue(int capacity, OverflowPolicy policy, Function<String, String> keyOf) {
+		setOverflowPolicy(policy, capacity);
+		this.keyOf = keyOf;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy policy, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be > 0. Was " + capacity);
+		}
+		this.policy = policy;
+		this.capacity = capacity;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Also count drops and coalesces in the given debug counters
+	 */
+	public void setCounters(IDebugCounter dropCounter, IDebugCounter coalesceCounter) {
+		this.dropCounter = dropCounter;
+		this.coalesceCounter = coalesceCounter;
+	}
+
+	public OfferResult offer(String value) {
+		return offer(value, null);
+	}
+
+	/**
+	 * @param value the update to queue
+	 * @param dropped if not null, called with each queued update that
+	 * leaves the queue unsent because of this one, i.e. the evicted oldest
+	 * or the coalesced update. Called with the queue locked.
+	 * @return what became of the update
+	 */
+	public synchronized OfferResult offer(String value, Consumer<String> dropped) {
+		if (queue.size() < capacity) {
+			add(value);
+			return OfferResult.ENQUEUED;
+		}
+		switch (policy) {
+		case REJECT:
+			countDrop();
+			return OfferResult.REJECTED;
+		case COALESCE:
+			if (!indexed) {
+				index();
+			}
+			Node newest = newestForKey.get(keyOf.apply(value));
+			if (newest != null) {
+				String old = newest.value;
+				newest.value = value;
+				coalesces.incrementAndGet();
+				IDebugCounter c = coalesceCounter;
+				if (c != null) {
+					c.increment();
+				}
+				if (dropped != null) {
+					dropped.accept(old);
+				}
+				return OfferResult.COALESCED;
+			}
+			/* Nothing queued for this key, make room instead */
+			dropOldest(dropped);
+			break;
+		case DROP_OLDEST:
+			dropOldest(dropped);
+			break;
+		}
+		add(value);
+		return OfferResult.EVICTED;
+	}
+
+	/*
+	 * Keys are only worked out once the queue has filled up, so that the
+	 * common case does not pay for parsing every update.
+	 */
+	private void index() {
+		for (Node n : queue) {
+			n.key = keyOf.apply(n.value);
+			newestForKey.put(n.key, n);
+		}
+		indexed = true;
+	}
+
+	private void add(String value) {
+		Node n = new Node(value);
+		queue.addLast(n);
+		if (indexed) {
+			n.key = keyOf.apply(value);
+			newestForKey.put(n.key, n);
+		}
+	}
+
+	private void dropOldest(Consumer<String> dropped) {
+		Node n = queue.pollFirst();
+		if (n != null) {
+			if (n.key != null && newestForKey.get(n.key) == n) {
+				newestForKey.remove(n.key);
+			}
+			countDrop();
+			if (dropped != null) {
+				dropped.accept(n.value);
+			}
+		}
+	}
+
+	private void countDrop() {
+		drops.incrementAndGet();
+		IDebugCounter c = dropCounter;
+		if (c != null) {
+			c.increment();
+		}
+	}
+
+	public synchronized int drainTo(Collection<String> to) {
+		int n = queue.size();
+		for (Node node : queue) {
+			to.add(node.value);
+		}
+		clear();
+		return n;
+	}
+
+	public synchronized int size() {
+		return queue.size();
+	}
+
+	public synchronized boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	public synchronized void clear() {
+		queue.clear();
+		newestForKey.clear();
+		indexed = false;
+	}
+
+	public long getDropCount() {
+		return drops.get();
+	}
+
+	public long getCoalesceCount() {
+		return coalesces.get();
+	}
+}
@@ -38,6 +38,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.hasupport.linkdiscovery.LDHAWorker;
 import net.floodlightcontroller.hasupport.topology.TopoHAWorker;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
@@ -74,6 +75,7 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 	protected static ITopologyService toposerv;
 	protected static IFloodlightProviderService floodlightProvider;
 	protected static ISyncService syncService;
+	protected static IDebugCounterService debugCounterService;
 	protected static IStoreClient<String, String> storeLD;
 	protected static IStoreClient<String, String> storeTopo;
 	private static String controllerID;
@@ -98,6 +100,7 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 		l.add(IStorageSourceService.class);
 		l.add(IFloodlightProviderService.class);
 		l.add(ISyncService.class);
+		l.add(IDebugCounterService.class);
 		return l;
 	}
 
@@ -152,10 +155,46 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 		toposerv = context.getServiceImpl(ITopologyService.class);
 		floodlightProvider = context.getServiceImpl(IFloodlightProviderService.class);
 		syncService = context.getServiceImpl(ISyncService.class);
+		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 		controllerID = new String("C" + floodlightProvider.getControllerId());
 		logger.info("Configuration parameters: {} {} ", new Object[] { config.toString(), config.get("nodeid") });
 	}
 
+	/**
+	 * Apply the optional filterQueueCapacity, filterQueueOverflowPolicy
+	 * (REJECT, DROP_OLDEST or COALESCE) and dedupCapacity settings.
+	 */
+	private void configureFilterQueue(IFilterQueue fq) throws FloodlightModuleException {
+		String capacity = config.get("filterQueueCapacity");
+		String policy = config.get("filterQueueOverflowPolicy");
+		String dedup = config.get("dedupCapacity");
+		try {
+			if (capacity != null || policy != null) {
+				fq.setOverflowPolicy(
+						policy == null ? fq.getOverflowPolicy()
+								: IFilterQueue.OverflowPolicy.valueOf(policy.trim().toUpperCase()),
+						capacity == null ? IFilterQueue.DEFAULT_QUEUE_CAPACITY
+								: Integer.parseInt(capacity.trim()));
+			}
+			if (dedup != null) {
+				fq.setDedupCapacity(Integer.parseInt(dedup.trim()));
+			}
+		} catch (IllegalArgumentException e) {
+			throw new FloodlightModuleException("Invalid filter queue configuration", e);
+		}
+	}
+
+	private void registerFilterQueueCounters(IFilterQueue fq, String name) {
+		String module = HAController.class.getPackage().getName();
+		debugCounterService.registerModule(module);
+		fq.setCounters(
+				debugCounterService.registerCounter(module, name + "-queue-drops",
+						"Updates dropped because a " + name + " filter queue was full",
+						IDebugCounterService.MetaData.WARN),
+				debugCounterService.registerCounter(module, name + "-queue-coalesces",
+						"Updates that replaced a queued " + name + " update for the same key"));
+	}
+
 	@Override
 	public void keysModified(Iterator<String> keys, org.sdnplatform.sync.IStoreListener.UpdateType type) {
 	}
@@ -244,6 +283,11 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 		toposerv.addListener(HAController.topohaworker);
 		haworker.registerService("TopoHAWorker", HAController.topohaworker);
 
+		configureFilterQueue(HAController.ldhaworker.getFilterQ());
+		configureFilterQueue(HAController.topohaworker.getFilterQ());
+		registerFilterQueueCounters(HAController.ldhaworker.getFilterQ(), "ld");
+		registerFilterQueueCounters(HAController.topohaworker.getFilterQ(), "topo");
+
 		/**
 		 * Read config file and start the Election class with the right params.
 		 */
@@ -16,6 +16,8 @@ package net.floodlightcontroller.hasupport;
 
 import java.util.List;
 
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+
 /**
  * IFilterQueue
  *
@@ -28,11 +30,34 @@ import java.util.List;
  * reverse queue. Then the subscribeHook() in HAWorker calls the
  * dequeueReverse() method to finally get the updates.
  *
+ * Both queues are bounded. When one is full, the overflow policy decides
+ * whether a new update is rejected, pushes out the oldest queued one, or
+ * replaces the newest queued update for the same key (link). The duplicate
+ * filter only remembers a bounded number of recent updates.
+ *
  * @author Bhargav Srinivasan, Om Kale
  *
  */
 public interface IFilterQueue {
 
+	public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+	public static final int DEFAULT_DEDUP_CAPACITY = 65536;
+
+	/**
+	 * What to do with an update that arrives when a queue is full
+	 */
+	public enum OverflowPolicy {
+		/** Drop the new update; enqueue returns false */
+		REJECT,
+		/** Drop the oldest queued update */
+		DROP_OLDEST,
+		/**
+		 * Replace the newest queued update for the same key, else drop the
+		 * oldest queued update
+		 */
+		COALESCE
+	}
+
 	public boolean dequeueForward();
 
 	public List<String> dequeueReverse();
@@ -43,4 +68,26 @@ public interface IFilterQueue {
 
 	public void subscribe(String controllerID);
 
+	public void setOverflowPolicy(OverflowPolicy policy, int capacity);
+
+	public OverflowPolicy getOverflowPolicy();
+
+	public void setDedupCapacity(int capacity);
+
+	/**
+	 * Also count the drops and coalesces of both queues in these debug
+	 * counters
+	 */
+	public void setCounters(IDebugCounter dropCounter, IDebugCounter coalesceCounter);
+
+	/**
+	 * @return updates dropped because a queue was full
+	 */
+	public long getDropCount();
+
+	/**
+	 * @return updates that replaced a queued update for the same key
+	 */
+	public long getCoalesceCount();
+
 }
@@ -0,0 +1,48 @@
+package net.floodlightcontroller.hasupport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A map that holds at most maxSize entries, evicting the least recently
+ * used one when full. Not thread safe.
+ */
+public class LruMap<K, V> extends LinkedHashMap<K, V> {
+
+	private static final long serialVersionUID = 1L;
+
+	private int maxSize;
+	private long evictions;
+
+	public LruMap(int maxSize) {
+		super(16, 0.75f, true);
+		setMaxSize(maxSize);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Takes effect on the next insertion
+	 */
+	public void setMaxSize(int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be > 0. Was " + maxSize);
+		}
+		this.maxSize = maxSize;
+	}
+
+	public long getEvictionCount() {
+		return evictions;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+		if (size() > maxSize) {
+			evictions++;
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,428 @@
+package net.floodlightcontroller.hasupport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding for a batch of HA updates (link discovery or
+ * topology), replacing the JSON strings that used to be pushed into the
+ * syncDB.
+ *
+ * Each update is identified by its key fields (e.g. src, srcPort, dst,
+ * dstPort, type) and carries a few value fields (e.g. operation, latency)
+ * plus a per-key sequence number assigned by the publisher. Within a batch
+ * the key fields of an update are written only the first time that key
+ * appears; later updates for the same key refer back to it by index and
+ * only carry the value fields that changed, along with the sequence number
+ * delta. Field values that look like DPIDs, decimal numbers or 0x-prefixed
+ * 64 bit hex numbers are written as binary numbers instead of text.
+ *
+ * Batch layout:
+ * <pre>
+ * byte    version
+ * varlong epoch, batch sequence, timestamp (ms)
+ * varint  record count
+ * records:
+ *   varint  key index (== number of keys seen so far for a new key)
+ *   [new key] byte key mask, then the present key fields
+ *   varlong sequence (new key) or sequence delta (repeated key)
+ *   byte    value mask, then the value fields that are set in it
+ * </pre>
+ */
+public class SyncUpdateCodec {
+
+	public static final byte VERSION = 1;
+
+	private static final byte T_NULL = 0;
+	private static final byte T_STRING = 1;
+	private static final byte T_DPID = 2;
+	private static final byte T_DECIMAL = 3;
+	private static final byte T_HEX64 = 4;
+
+	/**
+	 * One update: the key fields, the value fields and the publisher's
+	 * sequence number for this key. Missing fields are null.
+	 */
+	public static class Record {
+		private final String[] key;
+		private final String[] values;
+		private final long seq;
+
+		public Record(String[] key, String[] values, long seq) {
+			this.key = key;
+			this.values = values;
+			this.seq = seq;
+		}
+
+		public String[] getKey() {
+			return key;
+		}
+
+		public String[] getValues() {
+			return values;
+		}
+
+		public long getSeq() {
+			return seq;
+		}
+
+		/**
+		 * @return the key fields joined into one string, usable as a map key
+		 */
+		public String getKeyString() {
+			return keyString(key);
+		}
+	}
+
+	/**
+	 * A decoded batch
+	 */
+	public static class Batch {
+		private final long epoch;
+		private final long seq;
+		private final long timestamp;
+		private final List<Record> records;
+
+		public Batch(long epoch, long seq, long timestamp, List<Record> records) {
+			this.epoch = epoch;
+			this.seq = seq;
+			this.timestamp = timestamp;
+			this.records = records;
+		}
+
+		public long getEpoch() {
+			return epoch;
+		}
+
+		public long getSeq() {
+			return seq;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public List<Record> getRecords() {
+			return records;
+		}
+	}
+
+	private final String[] keyFields;
+	private final String[] valueFields;
+
+	public SyncUpdateCodec(String[] keyFields, String[] valueFields) {
+		if (keyFields.length > 8 || valueFields.length > 8) {
+			throw new IllegalArgumentException("At most 8 key and 8 value fields are supported");
+		}
+		this.keyFields = keyFields.clone();
+		this.valueFields = valueFields.clone();
+	}
+
+	public String[] getKeyFields() {
+		return keyFields.clone();
+	}
+
+	public String[] getValueFields() {
+		return valueFields.clone();
+	}
+
+	public static String keyString(String[] key) {
+		StringBuilder sb = new StringBuilder();
+		for (String k : key) {
+			sb.append(k == null ? "" : k).append('|');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Split a field map, as parsed from the JSON form of an update, into a
+	 * record with the given sequence number.
+	 */
+	public Record toRecord(Map<String, String> fields, long seq) {
+		String[] key = new String[keyFields.length];
+		for (int i = 0; i < keyFields.length; i++) {
+			key[i] = fields.get(keyFields[i]);
+		}
+		String[] values = new String[valueFields.length];
+		for (int i = 0; i < valueFields.length; i++) {
+			values[i] = fields.get(valueFields[i]);
+		}
+		return new Record(key, values, seq);
+	}
+
+	/**
+	 * The inverse of {@link #toRecord(Map, long)}, leaving out null fields
+	 */
+	public Map<String, String> toFields(Record record) {
+		Map<String, String> fields = new HashMap<>();
+		for (int i = 0; i < keyFields.length; i++) {
+			if (record.getKey()[i] != null) {
+				fields.put(keyFields[i], record.getKey()[i]);
+			}
+		}
+		for (int i = 0; i < valueFields.length; i++) {
+			if (record.getValues()[i] != null) {
+				fields.put(valueFields[i], record.getValues()[i]);
+			}
+		}
+		return fields;
+	}
+
+	public byte[] encode(long epoch, long batchSeq, long timestamp, List<Record> records) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + records.size() * 24);
+		DataOutputStream out = new DataOutputStream(bytes);
+		Map<String, Integer> keyIndex = new HashMap<>();
+		List<Record> lastForKey = new ArrayList<>();
+		try {
+			out.writeByte(VERSION);
+			writeVarLong(out, epoch);
+			writeVarLong(out, batchSeq);
+			writeVarLong(out, timestamp);
+			writeVarLong(out, records.size());
+			for (Record r : records) {
+				String ks = r.getKeyString();
+				Integer idx = keyIndex.get(ks);
+				Record prev = null;
+				if (idx == null) {
+					idx = lastForKey.size();
+					keyIndex.put(ks, idx);
+					lastForKey.add(r);
+					writeVarLong(out, idx);
+					writeFields(out, r.getKey(), null);
+					writeVarLong(out, r.getSeq());
+				} else {
+					prev = lastForKey.get(idx);
+					lastForKey.set(idx, r);
+					writeVarLong(out, idx);
+					writeVarLong(out, r.getSeq() - prev.getSeq());
+				}
+				writeFields(out, r.getValues(), prev == null ? null : prev.getValues());
+			}
+			out.flush();
+		} catch (IOException e) {
+			/* Not possible with a byte array stream */
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	public Batch decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		byte version = in.readByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported sync batch version " + version);
+		}
+		long epoch = readVarLong(in);
+		long batchSeq = readVarLong(in);
+		long timestamp = readVarLong(in);
+		int count = (int) readVarLong(in);
+		List<Record> records = new ArrayList<>(Math.min(count, 1024));
+		List<Record> lastForKey = new ArrayList<>();
+		for (int n = 0; n < count; n++) {
+			int idx = (int) readVarLong(in);
+			Record prev;
+			String[] key;
+			long seq;
+			if (idx == lastForKey.size()) {
+				prev = null;
+				key = readFields(in, keyFields.length, null);
+				seq = readVarLong(in);
+			} else if (idx < lastForKey.size()) {
+				prev = lastForKey.get(idx);
+				key = prev.getKey();
+				seq = prev.getSeq() + readVarLong(in);
+			} else {
+				throw new IOException("Bad key index " + idx + " in sync batch");
+			}
+			String[] values = readFields(in, valueFields.length,
+					prev == null ? null : prev.getValues());
+			Record r = new Record(key, values, seq);
+			if (prev == null) {
+				lastForKey.add(r);
+			} else {
+				lastForKey.set(idx, r);
+			}
+			records.add(r);
+		}
+		return new Batch(epoch, batchSeq, timestamp, records);
+	}
+
+	/**
+	 * Write a mask of the fields that differ from prev (all non-null fields
+	 * when there is no prev), followed by those fields.
+	 */
+	private static void writeFields(DataOutputStream out, String[] fields, String[] prev)
+			throws IOException {
+		int mask = 0;
+		for (int i = 0; i < fields.length; i++) {
+			boolean changed = prev == null ? fields[i] != null
+					: !equal(fields[i], prev[i]);
+			if (changed) {
+				mask |= 1 << i;
+			}
+		}
+		out.writeByte(mask);
+		for (int i = 0; i < fields.length; i++) {
+			if ((mask & (1 << i)) != 0) {
+				writeValue(out, fields[i]);
+			}
+		}
+	}
+
+	private static String[] readFields(DataInputStream in, int n, String[] prev)
+			throws IOException {
+		int mask = in.readUnsignedByte();
+		String[] fields = prev == null ? new String[n] : prev.clone();
+		for (int i = 0; i < n; i++) {
+			if ((mask & (1 << i)) != 0) {
+				fields[i] = readValue(in);
+			}
+		}
+		return fields;
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	private static void writeValue(DataOutputStream out, String v) throws IOException {
+		if (v == null) {
+			out.writeByte(T_NULL);
+			return;
+		}
+		Long dpid = parseDpid(v);
+		if (dpid != null) {
+			out.writeByte(T_DPID);
+			out.writeLong(dpid);
+			return;
+		}
+		Long decimal = parseDecimal(v);
+		if (decimal != null) {
+			out.writeByte(T_DECIMAL);
+			writeVarLong(out, decimal);
+			return;
+		}
+		Long hex = parseHex64(v);
+		if (hex != null) {
+			out.writeByte(T_HEX64);
+			out.writeLong(hex);
+			return;
+		}
+		out.writeByte(T_STRING);
+		out.writeUTF(v);
+	}
+
+	private static String readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case T_NULL:
+			return null;
+		case T_DPID:
+			return formatDpid(in.readLong());
+		case T_DECIMAL:
+			return Long.toString(readVarLong(in));
+		case T_HEX64:
+			return String.format("0x%016x", in.readLong());
+		case T_STRING:
+			return in.readUTF();
+		default:
+			throw new IOException("Bad value type " + type + " in sync batch");
+		}
+	}
+
+	/* The numeric forms are only used when they give back the exact string */
+
+	private static Long parseDpid(String v) {
+		if (v.length() != 23) {
+			return null;
+		}
+		long l = 0;
+		for (int i = 0; i < 23; i++) {
+			char c = v.charAt(i);
+			if (i % 3 == 2) {
+				if (c != ':') {
+					return null;
+				}
+				continue;
+			}
+			int d = Character.digit(c, 16);
+			if (d < 0 || Character.isUpperCase(c)) {
+				return null;
+			}
+			l = (l << 4) | d;
+		}
+		return l;
+	}
+
+	private static String formatDpid(long l) {
+		char[] c = new char[23];
+		for (int i = 7, p = 0; i >= 0; i--) {
+			int b = (int) (l >>> (i * 8)) & 0xff;
+			c[p++] = Character.forDigit(b >>> 4, 16);
+			c[p++] = Character.forDigit(b & 0xf, 16);
+			if (i > 0) {
+				c[p++] = ':';
+			}
+		}
+		return new String(c);
+	}
+
+	private static Long parseDecimal(String v) {
+		if (v.isEmpty() || v.length() > 18 || (v.length() > 1 && v.charAt(0) == '0')) {
+			return null;
+		}
+		for (int i = 0; i < v.length(); i++) {
+			if (v.charAt(i) < '0' || v.charAt(i) > '9') {
+				return null;
+			}
+		}
+		return Long.parseLong(v);
+	}
+
+	private static Long parseHex64(String v) {
+		if (v.length() != 18 || !v.startsWith("0x")) {
+			return null;
+		}
+		for (int i = 2; i < 18; i++) {
+			char c = v.charAt(i);
+			if (Character.digit(c, 16) < 0 || Character.isUpperCase(c)) {
+				return null;
+			}
+		}
+		return Long.parseUnsignedLong(v.substring(2), 16);
+	}
+
+	private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Malformed varint in sync batch");
+	}
+
+	@Override
+	public String toString() {
+		return "SyncUpdateCodec [keyFields=" + Arrays.toString(keyFields)
+				+ ", valueFields=" + Arrays.toString(valueFields) + "]";
+	}
+}
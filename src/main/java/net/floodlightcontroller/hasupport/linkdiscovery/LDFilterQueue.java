@@ -15,25 +15,26 @@
 package net.floodlightcontroller.hasupport.linkdiscovery;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.floodlightcontroller.hasupport.BatchedSyncAdapter;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.hasupport.BoundedUpdateQueue;
+import net.floodlightcontroller.hasupport.BoundedUpdateQueue.OfferResult;
 import net.floodlightcontroller.hasupport.IFilterQueue;
+import net.floodlightcontroller.hasupport.LruMap;
 
 /**
  * Two Queues to store LDupdates
  *
- * Filters out duplicates up to a specified capacity.
- *
- * Possible improvements: a. Implement a data structure which can eliminate
- * duplicates completely, without a threshold on the amount of filtering it can
- * do which is currently limited by the mapCapacity.
+ * Filters out duplicates among the most recent updates (an LRU of
+ * dedupCapacity MD5 hashes). Both queues are bounded; when the sync store
+ * falls behind, the overflow policy decides what gives, by default
+ * coalescing to the latest queued update per link.
  *
  * @author Bhargav Srinivasan, Om Kale
  */
@@ -44,10 +45,11 @@ public class LDFilterQueue implements IFilterQueue {
 	protected static IStoreClient<String, String> storeLD;
 	private static LDSyncAdapter syncAdapter;
 
-	public static LinkedBlockingQueue<String> filterQueue = new LinkedBlockingQueue<>();
-	public static Map<String, String> myMap = new HashMap<>();
-	public static LinkedBlockingQueue<String> reverseFilterQueue = new LinkedBlockingQueue<>();
-	private final Integer mapCapacity = new Integer(1073741000);
+	public static final BoundedUpdateQueue filterQueue = new BoundedUpdateQueue(DEFAULT_QUEUE_CAPACITY,
+			OverflowPolicy.COALESCE, BatchedSyncAdapter::updateKey);
+	public static final LruMap<String, String> myMap = new LruMap<>(DEFAULT_DEDUP_CAPACITY);
+	public static final BoundedUpdateQueue reverseFilterQueue = new BoundedUpdateQueue(DEFAULT_QUEUE_CAPACITY,
+			OverflowPolicy.COALESCE, BatchedSyncAdapter::updateKey);
 
 	protected String controllerID;
 
@@ -134,19 +136,26 @@ public class LDFilterQueue implements IFilterQueue {
 	public boolean enqueueForward(String value) {
 		try {
 			String newMD5 = new String();
-			LDHAUtils myMD5 = new LDHAUtils();
+			final LDHAUtils myMD5 = new LDHAUtils();
 			newMD5 = myMD5.calculateMD5Hash(value);
 
-			if (LDFilterQueue.myMap.size() >= mapCapacity) {
-				// logger.debug("[LDFilterQ Clear] Clearing LDFilterQ's Map");
-				LDFilterQueue.myMap.clear();
+			/**
+			 * myMap is an LRU of the most recent updates, so old hashes age
+			 * out one at a time instead of the whole map being cleared.
+			 */
+			synchronized (myMap) {
+				if (myMap.containsKey(newMD5) || value.equals(null)) {
+					return true;
+				}
+				myMap.put(newMD5, value);
 			}
-
 			// logger.debug("[FilterQ] The MD5: {} The Value {}", new Object []
 			// {newMD5,value});
-			if ((!myMap.containsKey(newMD5)) && (!value.equals(null))) {
-				filterQueue.offer(value);
-				myMap.put(newMD5, value);
+			/* Forget the hashes of updates that are not sent, so they are not taken for duplicates */
+			OfferResult result = filterQueue.offer(value, dropped -> forget(myMD5.calculateMD5Hash(dropped)));
+			if (result == OfferResult.REJECTED) {
+				forget(newMD5);
+				return false;
 			}
 			return true;
 
@@ -157,6 +166,12 @@ public class LDFilterQueue implements IFilterQueue {
 		}
 	}
 
+	private void forget(String md5) {
+		synchronized (myMap) {
+			myMap.remove(md5);
+		}
+	}
+
 	/**
 	 * This method is called by the syncDB in order to enqueue the updates that
 	 * it received from the syncDB.
@@ -170,7 +185,7 @@ public class LDFilterQueue implements IFilterQueue {
 			// logger.info("[ReverseFilterQ] The Value {}", new Object []
 			// {value});
 			if ((!value.equals(null))) {
-				reverseFilterQueue.offer(value);
+				return reverseFilterQueue.offer(value) != OfferResult.REJECTED;
 			}
 			return true;
 		} catch (Exception e) {
@@ -193,4 +208,38 @@ public class LDFilterQueue implements IFilterQueue {
 		return;
 	}
 
+	@Override
+	public void setOverflowPolicy(OverflowPolicy policy, int capacity) {
+		filterQueue.setOverflowPolicy(policy, capacity);
+		reverseFilterQueue.setOverflowPolicy(policy, capacity);
+	}
+
+	@Override
+	public OverflowPolicy getOverflowPolicy() {
+		return filterQueue.getOverflowPolicy();
+	}
+
+	@Override
+	public void setDedupCapacity(int capacity) {
+		synchronized (myMap) {
+			myMap.setMaxSize(capacity);
+		}
+	}
+
+	@Override
+	public void setCounters(IDebugCounter dropCounter, IDebugCounter coalesceCounter) {
+		filterQueue.setCounters(dropCounter, coalesceCounter);
+		reverseFilterQueue.setCounters(dropCounter, coalesceCounter);
+	}
+
+	@Override
+	public long getDropCount() {
+		return filterQueue.getDropCount() + reverseFilterQueue.getDropCount();
+	}
+
+	@Override
+	public long getCoalesceCount() {
+		return filterQueue.getCoalesceCount() + reverseFilterQueue.getCoalesceCount();
+	}
+
 }
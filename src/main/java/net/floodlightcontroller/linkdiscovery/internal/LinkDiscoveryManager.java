@@ -73,6 +73,7 @@ import net.floodlightcontroller.linkdiscovery.Link;
 import net.floodlightcontroller.linkdiscovery.web.LinkDiscoveryWebRoutable;
 import net.floodlightcontroller.packet.BSN;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.EthernetView;
 import net.floodlightcontroller.packet.LLDP;
 import net.floodlightcontroller.packet.LLDPTLV;
 import net.floodlightcontroller.restserver.IRestApiService;
@@ -588,11 +589,17 @@ IFloodlightModule, IInfoProvider {
 
 	protected Command handlePacketIn(DatapathId sw, OFPacketIn pi,
 			FloodlightContext cntx) {
-		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx,
+		// Only LLDP and BDDP are decoded; everything else is checked on the raw header
+		EthernetView view = IFloodlightProviderService.bcStore.getView(cntx,
 				IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		if (!view.isValid()) {
+			log.error("Received packet-in shorter than an Ethernet header.");
+			return Command.STOP;
+		}
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
-		if (eth.getPayload() instanceof BSN) {
-			BSN bsn = (BSN) eth.getPayload();
+		int etherType = view.getEtherTypeValue();
+		if (etherType == (Ethernet.TYPE_BSN & 0xffff) && view.getEthernet().getPayload() instanceof BSN) {
+			BSN bsn = (BSN) view.getEthernet().getPayload();
 			if (bsn == null) return Command.STOP;
 			if (bsn.getPayload() == null) return Command.STOP;
 			// It could be a packet other than BSN LLDP, therefore
@@ -600,10 +607,10 @@ IFloodlightModule, IInfoProvider {
 			if (bsn.getPayload() instanceof LLDP == false)
 				return Command.CONTINUE;
 			return handleLldp((LLDP) bsn.getPayload(), sw, inPort, false, cntx);
-		} else if (eth.getPayload() instanceof LLDP) {
-			return handleLldp((LLDP) eth.getPayload(), sw, inPort, true, cntx);
-		} else if (eth.getEtherType().getValue() < 1536 && eth.getEtherType().getValue() >= 17) {
-			long destMac = eth.getDestinationMACAddress().getLong();
+		} else if (etherType == (Ethernet.TYPE_LLDP & 0xffff) && view.getEthernet().getPayload() instanceof LLDP) {
+			return handleLldp((LLDP) view.getEthernet().getPayload(), sw, inPort, true, cntx);
+		} else if (etherType < 1536 && etherType >= 17) {
+			long destMac = view.getDestinationMACAddress().getLong();
 			if ((destMac & LINK_LOCAL_MASK) == LINK_LOCAL_VALUE) {
 				ctrLinkLocalDrops.increment();
 				if (log.isTraceEnabled()) {
@@ -612,12 +619,12 @@ IFloodlightModule, IInfoProvider {
 				}
 				return Command.STOP;
 			}
-		} else if (eth.getEtherType().getValue() < 17) {
-			log.error("Received invalid ethertype of {}.", eth.getEtherType());
+		} else if (etherType < 17) {
+			log.error("Received invalid ethertype of {}.", view.getEtherType());
 			return Command.STOP;
 		}
 
-		if (ignorePacketInFromSource(eth.getSourceMACAddress())) {
+		if (ignorePacketInFromSource(view.getSourceMACAddress())) {
 			ctrIgnoreSrcMacDrops.increment();
 			return Command.STOP;
 		}
@@ -1375,6 +1382,29 @@ IFloodlightModule, IInfoProvider {
 	protected boolean addOrUpdateLink(Link lt, LinkInfo newInfo) {
 		boolean linkChanged = false;
 
+		/*
+		 * Most LLDPs and BDDPs only refresh the time stamps of a known link.
+		 * Those are applied under the LinkInfo's own monitor and the read
+		 * lock, so refreshes of different links do not contend, while
+		 * timeoutLinks and deleteLinks, which hold the write lock, cannot
+		 * remove the link halfway. New links and changes of link type or
+		 * latency take the write lock below.
+		 */
+		lock.readLock().lock();
+		try {
+			LinkInfo existingInfo = links.get(lt);
+			if (existingInfo != null && existingInfo.refresh(newInfo, lt.getLatency())) {
+				if (log.isTraceEnabled()) {
+					log.trace("addOrUpdateLink: {} {} refreshed", lt,
+							(newInfo.getMulticastValidTime() != null) ? "multicast" : "unicast");
+				}
+				writeLinkToStorage(lt, newInfo);
+				return false;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
 		lock.writeLock().lock();
 		try {
 			/*
@@ -1391,8 +1421,12 @@ IFloodlightModule, IInfoProvider {
 			}
 
 			/* Update existing LinkInfo with most recent time stamp */
-			if (existingInfo != null && existingInfo.getFirstSeenTime().before(newInfo.getFirstSeenTime())) {
-				existingInfo.setFirstSeenTime(newInfo.getFirstSeenTime());
+			if (existingInfo != null) {
+				synchronized (existingInfo) {
+					if (existingInfo.getFirstSeenTime().before(newInfo.getFirstSeenTime())) {
+						existingInfo.setFirstSeenTime(newInfo.getFirstSeenTime());
+					}
+				}
 			}
 
 			if (log.isTraceEnabled()) {
@@ -1415,7 +1449,9 @@ IFloodlightModule, IInfoProvider {
 					log.debug("Inter-switch link detected: {}", lt);
 				}
 			} else {
-				linkChanged = updateLink(lt, existingInfo, newInfo);
+				synchronized (existingInfo) {
+					linkChanged = updateLink(lt, existingInfo, newInfo);
+				}
 				if (linkChanged) {
 					updateOperation = UpdateOperation.LINK_UPDATED;
 					LinkType linkType = getLinkType(lt, newInfo);
@@ -1587,18 +1623,27 @@ IFloodlightModule, IInfoProvider {
 				Entry<Link, LinkInfo> entry = it.next();
 				Link lt = entry.getKey();
 				LinkInfo info = entry.getValue();
+				boolean erase;
 
-				/* Timeout the unicast and multicast LLDP valid times independently. */
-				if ((info.getUnicastValidTime() != null)
-						&& (info.getUnicastValidTime().getTime()
-								+ (this.LINK_TIMEOUT * 1000) < curTime)) {
-					unicastTimedOut = true;
-					info.setUnicastValidTime(null);
-				}
-				if ((info.getMulticastValidTime() != null)
-						&& (info.getMulticastValidTime().getTime()
-								+ (this.LINK_TIMEOUT * 1000) < curTime)) {
-					info.setMulticastValidTime(null);
+				/*
+				 * Refreshes do not take the lock (see addOrUpdateLink()), so
+				 * check and clear the valid times under the LinkInfo's monitor.
+				 */
+				synchronized (info) {
+					/* Timeout the unicast and multicast LLDP valid times independently. */
+					if ((info.getUnicastValidTime() != null)
+							&& (info.getUnicastValidTime().getTime()
+									+ (this.LINK_TIMEOUT * 1000) < curTime)) {
+						unicastTimedOut = true;
+						info.setUnicastValidTime(null);
+					}
+					if ((info.getMulticastValidTime() != null)
+							&& (info.getMulticastValidTime().getTime()
+									+ (this.LINK_TIMEOUT * 1000) < curTime)) {
+						info.setMulticastValidTime(null);
+					}
+					erase = info.getUnicastValidTime() == null 
+							&& info.getMulticastValidTime() == null;
 				}
 				/* 
 				 * Add to the erase list only if the unicast time is null
@@ -1607,8 +1652,7 @@ IFloodlightModule, IInfoProvider {
 				 * null (meaning it just timed out), then we transition
 				 * from unicast to multicast.
 				 */
-				if (info.getUnicastValidTime() == null 
-						&& info.getMulticastValidTime() == null) {
+				if (erase) {
 					eraseList.add(entry.getKey());
 				} else if (unicastTimedOut) {
 					/* Just moved from unicast to multicast. */
@@ -2006,7 +2050,7 @@ IFloodlightModule, IInfoProvider {
 		this.linkDiscoveryAware = new ArrayList<ILinkDiscoveryListener>();
 		this.lock = new ReentrantReadWriteLock();
 		this.updates = new LinkedBlockingQueue<LDUpdate>();
-		this.links = new HashMap<Link, LinkInfo>();
+		this.links = new ConcurrentHashMap<Link, LinkInfo>();
 		this.portLinks = new HashMap<NodePortTuple, Set<Link>>();
 		this.suppressLinkDiscovery = Collections.synchronizedSet(new HashSet<NodePortTuple>());
 		this.switchLinks = new HashMap<DatapathId, Set<Link>>();
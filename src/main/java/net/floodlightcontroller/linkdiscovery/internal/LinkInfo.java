@@ -26,13 +26,19 @@ import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+/**
+ * Time stamps and latency history of a link. Refreshes of a known link
+ * are applied under the LinkInfo's own monitor, without the link table's
+ * lock (see {@link #refresh(LinkInfo, U64)}), so the fields read by others
+ * are volatile and copies are taken under the monitor.
+ */
 public class LinkInfo {
 	private static final Logger log = LoggerFactory.getLogger(LinkInfo.class);
 	
-	private Date firstSeenTime;
-	private Date lastLldpReceivedTime; /* Standard LLDP received time */
-	private Date lastBddpReceivedTime; /* Modified LLDP received time  */
-	private U64 currentLatency;
+	private volatile Date firstSeenTime;
+	private volatile Date lastLldpReceivedTime; /* Standard LLDP received time */
+	private volatile Date lastBddpReceivedTime; /* Modified LLDP received time  */
+	private volatile U64 currentLatency;
 	private ArrayDeque<U64> latencyHistory;
 	private int latencyHistoryWindow;
 	private double latencyUpdateThreshold;
@@ -48,13 +54,15 @@ public class LinkInfo {
 	}
 
 	public LinkInfo(LinkInfo fromLinkInfo) {
-		this.firstSeenTime = fromLinkInfo.getFirstSeenTime();
-		this.lastLldpReceivedTime = fromLinkInfo.getUnicastValidTime();
-		this.lastBddpReceivedTime = fromLinkInfo.getMulticastValidTime();
-		this.currentLatency = fromLinkInfo.currentLatency;
-		this.latencyHistory = new ArrayDeque<U64>(fromLinkInfo.getLatencyHistory());
-		this.latencyHistoryWindow = fromLinkInfo.getLatencyHistoryWindow();
-		this.latencyUpdateThreshold = fromLinkInfo.getLatencyUpdateThreshold();
+		synchronized (fromLinkInfo) {
+			this.firstSeenTime = fromLinkInfo.getFirstSeenTime();
+			this.lastLldpReceivedTime = fromLinkInfo.getUnicastValidTime();
+			this.lastBddpReceivedTime = fromLinkInfo.getMulticastValidTime();
+			this.currentLatency = fromLinkInfo.currentLatency;
+			this.latencyHistory = new ArrayDeque<U64>(fromLinkInfo.getLatencyHistory());
+			this.latencyHistoryWindow = fromLinkInfo.getLatencyHistoryWindow();
+			this.latencyUpdateThreshold = fromLinkInfo.getLatencyUpdateThreshold();
+		}
 	}
 
 	/** 
@@ -103,10 +111,7 @@ public class LinkInfo {
 		U64 newLatency = getLatencyHistoryAverage();
 		if (newLatency != null) {
 			/* check threshold */
-			if ((((double) Math.abs(newLatency.getValue() - currentLatency.getValue())) 
-					/ (currentLatency.getValue() == 0 ? 1 : currentLatency.getValue())
-					) 
-					>= latencyUpdateThreshold) {
+			if (exceedsUpdateThreshold(newLatency.getValue())) {
 				/* perform update */
 				log.debug("Updating link latency from {} to {}", currentLatency.getValue(), newLatency.getValue());
 				currentLatency = newLatency;
@@ -115,6 +120,77 @@ public class LinkInfo {
 		return currentLatency;
 	}
 
+	private boolean exceedsUpdateThreshold(long newLatency) {
+		return (((double) Math.abs(newLatency - currentLatency.getValue())) 
+				/ (currentLatency.getValue() == 0 ? 1 : currentLatency.getValue())
+				) 
+				>= latencyUpdateThreshold;
+	}
+
+	/**
+	 * Determine if adding the given latency to the history would
+	 * change the current latency, without changing anything.
+	 */
+	private boolean wouldChangeLatency(U64 latency) {
+		if (currentLatency == null) {
+			return false; /* the first latency is the initial value, not a change */
+		}
+		int size = latencyHistory.size();
+		if (size + 1 < latencyHistoryWindow) {
+			return false; /* history will not be full yet */
+		}
+		double avg = latency.getValue();
+		int skip = (size == latencyHistoryWindow) ? 1 : 0; /* the oldest would be removed */
+		for (U64 l : latencyHistory) {
+			if (skip > 0) {
+				skip--;
+				continue;
+			}
+			avg = avg + l.getValue();
+		}
+		avg = avg / latencyHistoryWindow;
+		long newLatency = (long) avg;
+		return newLatency != currentLatency.getValue() && exceedsUpdateThreshold(newLatency);
+	}
+
+	/**
+	 * Apply an LLDP or BDDP refresh of this link, but only if it changes
+	 * nothing other observers care about: the link type stays the same
+	 * and the latency to use does not change. These are the updates
+	 * LinkDiscoveryManager does not dispatch, so they do not need its
+	 * exclusive lock. Follows LinkDiscoveryManager.updateLink().
+	 * 
+	 * @param newInfo with updated time stamps
+	 * @param latency the newly observed latency
+	 * @return true if applied; false, with nothing changed, if this is
+	 * a topology change
+	 */
+	synchronized boolean refresh(LinkInfo newInfo, U64 latency) {
+		boolean ignoreLatency = false;
+		if (lastBddpReceivedTime == null && newInfo.getMulticastValidTime() != null) {
+			if (lastLldpReceivedTime == null) {
+				return false; /* becomes BDDP */
+			}
+			ignoreLatency = true; /* have LLDP already */
+		} else if (lastLldpReceivedTime == null && newInfo.getUnicastValidTime() != null) {
+			return false; /* becomes LLDP */
+		}
+		if (!ignoreLatency && wouldChangeLatency(latency)) {
+			return false;
+		}
+
+		if (firstSeenTime.before(newInfo.getFirstSeenTime())) {
+			firstSeenTime = newInfo.getFirstSeenTime();
+		}
+		if (newInfo.getUnicastValidTime() != null) {
+			lastLldpReceivedTime = newInfo.getUnicastValidTime();
+		} else if (newInfo.getMulticastValidTime() != null) {
+			lastBddpReceivedTime = newInfo.getMulticastValidTime();
+		}
+		addObservedLatency(latency);
+		return true;
+	}
+
 	/**
 	 * Determine if we've observed enough latency values
 	 * to consider computing a new latency value based
@@ -136,7 +212,7 @@ public class LinkInfo {
 	 * @param latency
 	 * @return latency to use for the link; either initial or historical average
 	 */
-	public U64 addObservedLatency(U64 latency) {
+	public synchronized U64 addObservedLatency(U64 latency) {
 		if (isLatencyHistoryFull()) {
 			latencyHistory.removeFirst();
 		}
@@ -0,0 +1,253 @@
+package net.floodlightcontroller.packet;
+
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.projectfloodlight.openflow.util.HexString;
+
+/**
+ * A read-only, lazily decoded view over the raw bytes of an Ethernet frame,
+ * typically the data of an OFPacketIn.
+ *
+ * Header fields are read directly from the backing array when asked for;
+ * nothing is copied and no packet objects are built. The full
+ * {@link Ethernet} object tree is only deserialized the first time
+ * {@link #getEthernet()} is called, and is cached from then on so that
+ * every listener of the same message sees the same instance.
+ *
+ * The view does not copy the backing array, so the array must not be
+ * modified while the view is in use.
+ */
+public class EthernetView {
+    private static final int ETH_HEADER_LEN = 14;
+    private static final int VLAN_TAG_LEN = 4;
+    private static final int IPV4_MIN_HEADER_LEN = 20;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    /* Offset of the L3 header relative to offset, or -1 if not yet computed */
+    private int l3Offset = -1;
+    private Ethernet eth;
+
+    public EthernetView(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public EthernetView(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Wrap an already deserialized packet. The view is backed by the
+     * serialized form, and {@link #getEthernet()} returns the given
+     * instance without deserializing it again.
+     * @param eth
+     * @return
+     */
+    public static EthernetView of(Ethernet eth) {
+        EthernetView view = new EthernetView(eth.serialize());
+        view.eth = eth;
+        return view;
+    }
+
+    /**
+     * @return the raw frame the view is backed by; not a copy
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return true if the frame is long enough to hold an Ethernet header,
+     * including the VLAN tag if there is one; the accessors below must not
+     * be used otherwise
+     */
+    public boolean isValid() {
+        if (length < ETH_HEADER_LEN) {
+            return false;
+        }
+        return !isVlanTagged() || length >= ETH_HEADER_LEN + VLAN_TAG_LEN;
+    }
+
+    public MacAddress getDestinationMACAddress() {
+        return MacAddress.of(readMac(0));
+    }
+
+    public MacAddress getSourceMACAddress() {
+        return MacAddress.of(readMac(6));
+    }
+
+    public boolean isBroadcast() {
+        return readMac(0) == 0xffffffffffffL;
+    }
+
+    public boolean isMulticast() {
+        return (data[offset] & 0x01) != 0 && !isBroadcast();
+    }
+
+    public boolean isVlanTagged() {
+        return readShort(12) == EthType.VLAN_FRAME.getValue();
+    }
+
+    /**
+     * @return the VLAN ID, or {@link Ethernet#VLAN_UNTAGGED}
+     */
+    public short getVlanID() {
+        return isVlanTagged() ? (short) (readShort(14) & 0x0fff) : Ethernet.VLAN_UNTAGGED;
+    }
+
+    public byte getPriorityCode() {
+        return isVlanTagged() ? (byte) ((readShort(14) >> 13) & 0x07) : 0;
+    }
+
+    public EthType getEtherType() {
+        return EthType.of(getEtherTypeValue());
+    }
+
+    /**
+     * @return the ethertype of the payload (after any VLAN tag) as an unsigned value
+     */
+    public int getEtherTypeValue() {
+        return readShort(l3Offset() - 2);
+    }
+
+    public boolean isIPv4() {
+        return getEtherTypeValue() == (Ethernet.TYPE_IPv4 & 0xffff)
+                && length - l3Offset() >= IPV4_MIN_HEADER_LEN;
+    }
+
+    /*
+     * IPv4 accessors. These must only be called when isIPv4() is true.
+     */
+
+    public IPv4Address getIPv4Source() {
+        return IPv4Address.of(readInt(l3Offset() + 12));
+    }
+
+    public IPv4Address getIPv4Destination() {
+        return IPv4Address.of(readInt(l3Offset() + 16));
+    }
+
+    public IpProtocol getIpProtocol() {
+        return IpProtocol.of((short) (data[offset + l3Offset() + 9] & 0xff));
+    }
+
+    /**
+     * @return true if this is an IPv4 TCP or UDP datagram that carries
+     * the transport header, i.e. it is not a non-initial fragment
+     */
+    public boolean hasTransportPorts() {
+        if (!isIPv4()) {
+            return false;
+        }
+        int proto = data[offset + l3Offset() + 9] & 0xff;
+        if (proto != IpProtocol.TCP.getIpProtocolNumber()
+                && proto != IpProtocol.UDP.getIpProtocolNumber()) {
+            return false;
+        }
+        if ((readShort(l3Offset() + 6) & 0x1fff) != 0) {
+            return false;
+        }
+        return length - l4Offset() >= 4;
+    }
+
+    /*
+     * Transport accessors. These must only be called when
+     * hasTransportPorts() is true.
+     */
+
+    public TransportPort getTransportSource() {
+        return TransportPort.of(readShort(l4Offset()));
+    }
+
+    public TransportPort getTransportDestination() {
+        return TransportPort.of(readShort(l4Offset() + 2));
+    }
+
+    /**
+     * Deserialize the frame into the regular packet classes. This is done
+     * at most once per view; subsequent calls return the same instance.
+     * @return the deserialized packet
+     * @throws RuntimeException if the frame is malformed, wrapping the
+     * decoder's exception together with {@link #describe()}
+     */
+    public Ethernet getEthernet() {
+        if (eth == null) {
+            Ethernet e = new Ethernet();
+            try {
+                e.deserialize(data, offset, length);
+            } catch (RuntimeException ex) {
+                throw new RuntimeException("Error in deserialize ethernet packet "
+                        + describe(), ex);
+            }
+            eth = e;
+        }
+        return eth;
+    }
+
+    /**
+     * Describe the frame for error messages. Views built for a message
+     * override this to name where the frame came from.
+     * @return the frame length and bytes
+     */
+    protected String describe() {
+        byte[] frame = new byte[length];
+        System.arraycopy(data, offset, frame, 0, length);
+        return "of " + length + " bytes: " + HexString.toHexString(frame);
+    }
+
+    /**
+     * @return true if {@link #getEthernet()} has been called already
+     */
+    public boolean isMaterialized() {
+        return eth != null;
+    }
+
+    private int l3Offset() {
+        if (l3Offset < 0) {
+            l3Offset = isVlanTagged() ? ETH_HEADER_LEN + VLAN_TAG_LEN : ETH_HEADER_LEN;
+        }
+        return l3Offset;
+    }
+
+    private int l4Offset() {
+        return l3Offset() + (data[offset + l3Offset()] & 0x0f) * 4;
+    }
+
+    private long readMac(int pos) {
+        int p = offset + pos;
+        return ((long) (data[p] & 0xff) << 40)
+                | ((long) (data[p + 1] & 0xff) << 32)
+                | ((long) (data[p + 2] & 0xff) << 24)
+                | ((long) (data[p + 3] & 0xff) << 16)
+                | ((long) (data[p + 4] & 0xff) << 8)
+                | (long) (data[p + 5] & 0xff);
+    }
+
+    private int readShort(int pos) {
+        int p = offset + pos;
+        return ((data[p] & 0xff) << 8) | (data[p + 1] & 0xff);
+    }
+
+    private int readInt(int pos) {
+        int p = offset + pos;
+        return ((data[p] & 0xff) << 24)
+                | ((data[p + 1] & 0xff) << 16)
+                | ((data[p + 2] & 0xff) << 8)
+                | (data[p + 3] & 0xff);
+    }
+}
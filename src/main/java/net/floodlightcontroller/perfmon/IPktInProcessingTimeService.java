@@ -16,7 +16,7 @@
 
 package net.floodlightcontroller.perfmon;
 
-import java.util.List;
+import java.util.Map;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
 
@@ -55,4 +55,21 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     public void setEnabled(boolean enabled);
     
     public CumulativeTimeBucket getCtb();
+
+    /**
+     * @return the distribution of end-to-end packet-in processing times over
+     * the last few time windows
+     */
+    public LatencyHistogram getPktInLatency();
+
+    /**
+     * @return the distribution of processing times of each listener over
+     * the last few time windows, by listener name
+     */
+    public Map<String, LatencyHistogram> getComponentLatencies();
+
+    /**
+     * Discards all samples of the latency distributions
+     */
+    public void resetLatencies();
 }
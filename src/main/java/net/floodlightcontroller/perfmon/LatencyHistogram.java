@@ -0,0 +1,143 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A fixed-size histogram of latencies in nanoseconds, along the lines of
+ * HdrHistogram: values below 64 ns are counted exactly, larger values in
+ * buckets whose width is 1/32 of their lower bound, so percentiles are
+ * accurate to about 3%. Values above {@link #MAX_TRACKABLE_NS} are counted
+ * as that value.
+ *
+ * Recording takes no lock and allocates nothing, so it can be done from
+ * any number of threads. Reads are not atomic with respect to concurrent
+ * recording; a percentile may be off by the few samples recorded while it
+ * is computed.
+ */
+@JsonSerialize(using=LatencyHistogramJSONSerializer.class)
+public class LatencyHistogram {
+    /* log2 of the number of buckets per power of two */
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /* Values below this are counted exactly */
+    private static final long EXACT_LIMIT = SUB_BUCKETS * 2;
+
+    /** About 68.7 seconds */
+    public static final long MAX_TRACKABLE_NS = (1L << 36) - 1;
+    private static final int BUCKETS = index(MAX_TRACKABLE_NS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNs = new AtomicLong();
+    private final AtomicLong maxNs = new AtomicLong();
+
+    /*
+     * Values from 2^k to 2^(k+1)-1, k >= 6, are split into SUB_BUCKETS
+     * buckets by their top SUB_BUCKET_BITS + 1 bits.
+     */
+    private static int index(long valueNs) {
+        if (valueNs < EXACT_LIMIT) {
+            return (int) valueNs;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(valueNs) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (valueNs >>> shift);
+    }
+
+    /* The largest value counted in the given bucket */
+    private static long highestValue(int index) {
+        if (index < EXACT_LIMIT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long top = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public void record(long valueNs) {
+        if (valueNs < 0) {
+            valueNs = 0;
+        } else if (valueNs > MAX_TRACKABLE_NS) {
+            valueNs = MAX_TRACKABLE_NS;
+        }
+        counts.incrementAndGet(index(valueNs));
+        count.incrementAndGet();
+        sumNs.addAndGet(valueNs);
+        long max = maxNs.get();
+        while (valueNs > max && !maxNs.compareAndSet(max, valueNs)) {
+            max = maxNs.get();
+        }
+    }
+
+    /**
+     * Adds the samples of another histogram to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.addAndGet(other.count.get());
+        sumNs.addAndGet(other.sumNs.get());
+        long otherMax = other.maxNs.get();
+        long max = maxNs.get();
+        while (otherMax > max && !maxNs.compareAndSet(max, otherMax)) {
+            max = maxNs.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sumNs.set(0);
+        maxNs.set(0);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxNs() {
+        return maxNs.get();
+    }
+
+    public long getMeanNs() {
+        long c = count.get();
+        return c == 0 ? 0 : sumNs.get() / c;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the smallest value, within the precision of the histogram,
+     * that at least the given percentage of samples are at or below;
+     * 0 if there are no samples
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                /* Never report more than the largest value actually seen */
+                long max = maxNs.get();
+                return max > 0 ? Math.min(highestValue(i), max) : highestValue(i);
+            }
+        }
+        return maxNs.get();
+    }
+}
@@ -0,0 +1,34 @@
+package net.floodlightcontroller.perfmon;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+public class LatencyHistogramJSONSerializer
+                                extends JsonSerializer<LatencyHistogram> {
+    /**
+     * Writes the sample count and the usual percentiles, all times in ns
+     */
+    @Override
+    public void serialize(LatencyHistogram h,
+                    JsonGenerator jGen,
+                    SerializerProvider serializer)
+                    throws IOException, JsonProcessingException {
+        jGen.writeStartObject();
+        jGen.writeNumberField("count", h.getCount());
+        jGen.writeNumberField("mean", h.getMeanNs());
+        jGen.writeNumberField("p50", h.getValueAtPercentile(50.0));
+        jGen.writeNumberField("p99", h.getValueAtPercentile(99.0));
+        jGen.writeNumberField("p999", h.getValueAtPercentile(99.9));
+        jGen.writeNumberField("max", h.getMaxNs());
+        jGen.writeEndObject();
+    }
+
+    @Override
+    public Class<LatencyHistogram> handledType() {
+        return LatencyHistogram.class;
+    }
+}
@@ -18,6 +18,7 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -127,4 +128,19 @@ public class NullPktInProcessingTime
     public CumulativeTimeBucket getCtb() {
         return ctb;
     }
+
+    @Override
+    public LatencyHistogram getPktInLatency() {
+        return new LatencyHistogram();
+    }
+
+    @Override
+    public Map<String, LatencyHistogram> getComponentLatencies() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void resetLatencies() {
+        // no-op; a null implementation has nothing to reset
+    }
 }
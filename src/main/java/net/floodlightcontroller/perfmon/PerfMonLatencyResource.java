@@ -0,0 +1,27 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Return the packet-in latency percentiles, end to end and per listener,
+ * over the last few time windows. All times are in ns.
+ */
+public class PerfMonLatencyResource extends ServerResource {
+
+    @Get("json")
+    public Map<String, Object> getLatencies() {
+        IPktInProcessingTimeService pktinProcTime =
+            (IPktInProcessingTimeService)getContext().getAttributes().
+                get(IPktInProcessingTimeService.class.getCanonicalName());
+
+        Map<String, Object> m = new HashMap<String, Object>();
+        m.put("enabled", pktinProcTime.isEnabled());
+        m.put("packet-in", pktinProcTime.getPktInLatency());
+        m.put("modules", pktinProcTime.getComponentLatencies());
+        return m;
+    }
+}
@@ -55,6 +55,7 @@ public class PerfMonToggleResource extends ServerResource {
                 pktInProcessingTimeService.setEnabled(true);
             }
             pktInProcessingTimeService.getCtb().reset();
+            pktInProcessingTimeService.resetLatencies();
         }
         else if (param.equals("enable")) {
             pktInProcessingTimeService.setEnabled(true);
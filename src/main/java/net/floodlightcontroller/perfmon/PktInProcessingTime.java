@@ -24,6 +24,9 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -63,6 +66,11 @@ import org.slf4j.LoggerFactory;
  * TOT_PROC_TIME_ALERT_THRESHOLD_US: same as above but an alert level
  *    syslog is generated instead
  * 
+ * In addition, the distribution of processing times of each listener and
+ * of the whole chain is kept in histograms over a few rotating time
+ * windows (latencyWindows of latencyWindowSeconds each), so tail
+ * latencies can be read from /wm/performance/latency/json.
+ * 
  */
 public class PktInProcessingTime
     implements IFloodlightModule, IPktInProcessingTimeService {
@@ -82,7 +90,7 @@ public class PktInProcessingTime
     protected static  Logger  logger = 
         LoggerFactory.getLogger(PktInProcessingTime.class);
     
-    protected boolean isEnabled = false;
+    protected volatile boolean isEnabled = false;
     protected boolean isInited = false;
     // Maintains the time when the last packet was processed
     protected long lastPktTime_ns;
@@ -97,11 +105,38 @@ public class PktInProcessingTime
     protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
                                 ONE_BUCKET_DURATION_SECONDS * 1000000000;
 
+    protected int latencyWindowSeconds = ONE_BUCKET_DURATION_SECONDS;
+    protected int latencyWindows = 6;
+    private volatile RollingLatencyHistogram pktInLatency;
+    private final ConcurrentHashMap<IOFMessageListener, RollingLatencyHistogram> componentLatency =
+            new ConcurrentHashMap<IOFMessageListener, RollingLatencyHistogram>();
+
+    /*
+     * Start times of the packet-in and of the listener being timed. Packet-ins
+     * are dispatched on several I/O threads at once, so these are per thread.
+     */
+    private static final int PKT_START = 0;
+    private static final int COMP_START = 1;
+    private final ThreadLocal<long[]> startTimesNs = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[2];
+        }
+    };
+
+    private RollingLatencyHistogram newLatencyHistogram() {
+        return new RollingLatencyHistogram(latencyWindows,
+                TimeUnit.SECONDS.toNanos(latencyWindowSeconds));
+    }
+
     @Override
     public void bootstrap() {
         if (ctb == null) {
             ctb = new CumulativeTimeBucket();
         }
+        if (pktInLatency == null) {
+            pktInLatency = newLatencyHistogram();
+        }
     }
 
     @Override
@@ -128,35 +163,68 @@ public class PktInProcessingTime
         return ctb;
     }
     
-    private long startTimePktNs;
-    private long startTimeCompNs;
+    @Override
+    public LatencyHistogram getPktInLatency() {
+        RollingLatencyHistogram h = pktInLatency;
+        return h == null ? new LatencyHistogram() : h.snapshot();
+    }
+
+    @Override
+    public Map<String, LatencyHistogram> getComponentLatencies() {
+        Map<String, LatencyHistogram> m = new TreeMap<String, LatencyHistogram>();
+        for (Map.Entry<IOFMessageListener, RollingLatencyHistogram> e : componentLatency.entrySet()) {
+            m.put(e.getKey().getName(), e.getValue().snapshot());
+        }
+        return m;
+    }
+
+    @Override
+    public void resetLatencies() {
+        RollingLatencyHistogram h = pktInLatency;
+        if (h != null) {
+            h.reset();
+        }
+        for (RollingLatencyHistogram c : componentLatency.values()) {
+            c.reset();
+        }
+    }
+
     @Override
     public void recordStartTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
+            startTimesNs.get()[COMP_START] = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
+            long now = System.nanoTime();
+            long procTime = now - startTimesNs.get()[COMP_START];
             ctb.updateOneComponent(listener, procTime);
+
+            RollingLatencyHistogram h = componentLatency.get(listener);
+            if (h == null) {
+                h = componentLatency.computeIfAbsent(listener, l -> newLatencyHistogram());
+            }
+            h.record(procTime, now);
         }
     }
     
     @Override
     public void recordStartTimePktIn() {
         if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+            startTimesNs.get()[PKT_START] = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
+            long now = System.nanoTime();
+            long procTimeNs = now - startTimesNs.get()[PKT_START];
             ctb.updatePerPacketCounters(procTimeNs);
+            pktInLatency.record(procTimeNs, now);
             
             if (ptWarningThresholdInNano > 0 && 
                     procTimeNs > ptWarningThresholdInNano) {
@@ -203,6 +271,29 @@ public class PktInProcessingTime
     	floodlightProvider = context
                 .getServiceImpl(IFloodlightProviderService.class);
         restApi = context.getServiceImpl(IRestApiService.class);
+
+        Map<String, String> configParams = context.getConfigParams(this);
+        String s = configParams.get("latencyWindowSeconds");
+        if (s != null) {
+            try {
+                latencyWindowSeconds = Integer.parseInt(s.trim());
+            } catch (NumberFormatException e) {
+                logger.error("Invalid latencyWindowSeconds {}. Using default of {}", s, latencyWindowSeconds);
+            }
+        }
+        s = configParams.get("latencyWindows");
+        if (s != null) {
+            try {
+                latencyWindows = Integer.parseInt(s.trim());
+            } catch (NumberFormatException e) {
+                logger.error("Invalid latencyWindows {}. Using default of {}", s, latencyWindows);
+            }
+        }
+        if (latencyWindowSeconds < 1 || latencyWindows < 1) {
+            throw new FloodlightModuleException("latencyWindowSeconds and latencyWindows must be at least 1");
+        }
+        logger.info("Keeping packet-in latency distributions over {} windows of {}s",
+                latencyWindows, latencyWindowSeconds);
     }
     
     @Override
@@ -0,0 +1,92 @@
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies of the last few fixed-length time windows. Samples are
+ * recorded into the histogram of the current window; a window's histogram
+ * is reused, after being cleared, once it is older than the number of
+ * windows kept. Reading merges the histograms of the windows still kept,
+ * so percentiles cover between (windows - 1) and windows window lengths.
+ *
+ * A sample recorded just as its window's histogram is being cleared for
+ * reuse may be lost; that is the price of not taking a lock to record.
+ */
+public class RollingLatencyHistogram {
+    private final LatencyHistogram[] histograms;
+    /* The window number each histogram currently holds samples of */
+    private final AtomicLongArray windowOf;
+    private final long windowNs;
+
+    /**
+     * @param windows the number of windows kept
+     * @param windowNs the length of one window
+     */
+    public RollingLatencyHistogram(int windows, long windowNs) {
+        if (windows < 1 || windowNs < 1) {
+            throw new IllegalArgumentException("Need at least one window of non-zero length");
+        }
+        this.windowNs = windowNs;
+        histograms = new LatencyHistogram[windows];
+        windowOf = new AtomicLongArray(windows);
+        long now = window(System.nanoTime());
+        for (int i = 0; i < windows; i++) {
+            histograms[i] = new LatencyHistogram();
+            windowOf.set(i, now);
+        }
+    }
+
+    private long window(long timeNs) {
+        return Math.floorDiv(timeNs, windowNs);
+    }
+
+    public void record(long valueNs) {
+        record(valueNs, System.nanoTime());
+    }
+
+    /**
+     * @param nowNs the current System.nanoTime(), if the caller has it anyway
+     */
+    public void record(long valueNs, long nowNs) {
+        long w = window(nowNs);
+        int i = (int) Math.floorMod(w, (long) histograms.length);
+        long held = windowOf.get(i);
+        if (held < w && windowOf.compareAndSet(i, held, w)) {
+            histograms[i].reset();
+        }
+        histograms[i].record(valueNs);
+    }
+
+    /**
+     * @return a copy of the samples of the windows still kept
+     */
+    public LatencyHistogram snapshot() {
+        return snapshot(System.nanoTime());
+    }
+
+    LatencyHistogram snapshot(long nowNs) {
+        long w = window(nowNs);
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < histograms.length; i++) {
+            long held = windowOf.get(i);
+            if (held > w - histograms.length && held <= w) {
+                h.add(histograms[i]);
+            }
+        }
+        return h;
+    }
+
+    public void reset() {
+        for (LatencyHistogram h : histograms) {
+            h.reset();
+        }
+    }
+
+    public long getWindowNs() {
+        return windowNs;
+    }
+
+    public int getWindows() {
+        return histograms.length;
+    }
+}
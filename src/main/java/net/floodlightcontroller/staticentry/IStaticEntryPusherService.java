@@ -25,6 +25,8 @@ import org.projectfloodlight.openflow.types.DatapathId;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 public interface IStaticEntryPusherService extends IFloodlightService {
     /**
      * Adds a static flow.
@@ -69,4 +71,12 @@ public interface IStaticEntryPusherService extends IFloodlightService {
      */
     public Map<String, OFMessage> getEntries(DatapathId dpid);
 
+    /**
+     * Gets the push of the static entries to a switch, started when it connected
+     * @param dpid The DPID of the switch
+     * @return A future for the number of entries written, done once the switch
+     * has processed all of them; null if the switch is not connected
+     */
+    public ListenableFuture<Integer> getEntryPush(DatapathId dpid);
+
 }
@@ -27,7 +27,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import net.floodlightcontroller.core.FloodlightContext;
@@ -38,7 +40,9 @@ import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.IOFSwitchListener;
 import net.floodlightcontroller.core.PortChangeType;
+import net.floodlightcontroller.core.SwitchDisconnectedException;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.internal.ShadowFlowTable;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
@@ -57,7 +61,10 @@ import net.floodlightcontroller.util.FlowModUtils;
 import net.floodlightcontroller.util.GroupUtils;
 import net.floodlightcontroller.util.InstructionUtils;
 import net.floodlightcontroller.util.MatchUtils;
+import net.floodlightcontroller.util.OFMessageUtils;
 
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
@@ -78,6 +85,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 /**
  * This module is responsible for maintaining a set of static flows on
@@ -141,6 +153,33 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 	protected Map<String, Map<String, OFMessage>> entriesFromStorage;
 	// Entry Name -> DPID of Switch it's on
 	protected Map<String, String> entry2dpid;
+	// Entry Name -> row it was last parsed from, so unchanged rows aren't parsed again
+	private final Map<String, ParsedEntry> parsedEntries = new ConcurrentHashMap<String, ParsedEntry>();
+	// DPID -> push of its entries started when the switch connected
+	private final Map<DatapathId, ListenableFuture<Integer>> entryPushes =
+			new ConcurrentHashMap<DatapathId, ListenableFuture<Integer>>();
+
+	// Entries are written to a connecting switch this many at a time
+	protected int pushBatchSize = 1000;
+	// Write each batch in an OF1.4+ bundle, so it is applied all or nothing
+	protected boolean pushInBundle = false;
+
+	// A storage row and the entry parsed from it for a switch's OF version.
+	// Storage doesn't change rows once stored, so the row can be kept as is,
+	// and an unchanged row is usually the very same map.
+	private static class ParsedEntry {
+		private final Map<String, Object> row;
+		private final String dpid;
+		private final OFVersion version;
+		private final OFMessage message;
+
+		private ParsedEntry(Map<String, Object> row, String dpid, OFVersion version, OFMessage message) {
+			this.row = row;
+			this.dpid = dpid;
+			this.version = version;
+			this.message = message;
+		}
+	}
 
 	// Class to sort FlowMod's by priority, from lowest to highest
 	class FlowModSorter implements Comparator<String> {
@@ -214,28 +253,127 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 	 * while starting up.
 	 *
 	 * @param sw The switch to send entries to
+	 * @return A future for the number of entries written, done once the
+	 * switch has processed all of them
+	 */
+	protected ListenableFuture<Integer> sendEntriesToSwitch(DatapathId switchId) {
+		return sendEntriesToSwitch(switchId, null);
+	}
+
+	/**
+	 * Same as {@link #sendEntriesToSwitch(DatapathId)}, but skips the flows
+	 * the switch is known to have already.
+	 *
+	 * @param switchId The switch to send entries to
+	 * @param installed The switch's shadow flow table, or null to send all entries
+	 * @return A future for the number of entries written, done once the
+	 * switch has processed all of them
 	 */
-	protected void sendEntriesToSwitch(DatapathId switchId) {
+	protected ListenableFuture<Integer> sendEntriesToSwitch(DatapathId switchId, ShadowFlowTable installed) {
 		IOFSwitch sw = switchService.getSwitch(switchId);
 		if (sw == null)
-			return;
+			return Futures.immediateFailedFuture(new SwitchDisconnectedException(switchId));
 		String stringId = sw.getId().toString();
+		List<String> names = new ArrayList<String>();
 
 		if ((entriesFromStorage != null) && (entriesFromStorage.containsKey(stringId))) {
 			Map<String, OFMessage> entries = entriesFromStorage.get(stringId);
 			List<String> sortedList = new ArrayList<String>(entries.keySet());
 			// weird that Collections.sort() returns void
 			Collections.sort( sortedList, new FlowModSorter(stringId));
+			int skipped = 0;
 			for (String entryName : sortedList) {
 				OFMessage message = entries.get(entryName);
+				if (installed != null && message instanceof OFFlowMod
+						&& installed.contains((OFFlowMod) message)) {
+					skipped++;
+					continue;
+				}
+				if (message != null) {
+					names.add(entryName);
+				}
+			}
+			if (skipped > 0) {
+				log.info("Switch {} already has {} of its {} static entries", 
+						new Object[] { stringId, skipped, sortedList.size() });
+			}
+		}
+		SettableFuture<Integer> done = SettableFuture.create();
+		writeEntriesToSwitch(sw, names, 0, 0, done);
+		return done;
+	}
+
+	/**
+	 * Writes entries to a switch a batch at a time. Each batch is followed
+	 * by a barrier, and the next batch is written once the switch has
+	 * replied to it, so the switch never has more than one batch queued.
+	 *
+	 * Entries are looked up again when their batch is written, since
+	 * rowsModified() and rowsDeleted() write to the switch right away: an
+	 * entry deleted meanwhile is skipped, and one changed meanwhile is
+	 * written as it is now, never as it was when the push started.
+	 *
+	 * @param sw The switch to write to
+	 * @param names The names of the entries to write, in order
+	 * @param from The index of the first entry of the next batch
+	 * @param written The number of entries written so far
+	 * @param done Set to the number of entries written once the switch has processed all of them
+	 */
+	private void writeEntriesToSwitch(final IOFSwitch sw, final List<String> names, int from,
+			final int written, final SettableFuture<Integer> done) {
+		if (done.isDone()) { // cancelled, e.g. because the switch disconnected
+			return;
+		}
+		String stringId = sw.getId().toString();
+		List<OFMessage> batch = new ArrayList<OFMessage>();
+		while (batch.isEmpty() && from < names.size()) {
+			Map<String, OFMessage> entries = entriesFromStorage.get(stringId);
+			int to = Math.min(from + pushBatchSize, names.size());
+			for (String entryName : names.subList(from, to)) {
+				OFMessage message = entries == null ? null : entries.get(entryName);
 				if (message != null) {
 					if (log.isDebugEnabled()) {
 						log.debug("Pushing static entry {} for {}", stringId, entryName);
 					}
-					writeOFMessageToSwitch(sw.getId(), message);
+					batch.add(message);
 				}
 			}
+			from = to;
+		}
+		if (batch.isEmpty()) {
+			done.set(written);
+			return;
+		}
+		final int next = from;
+		final int count = written + batch.size();
+		List<OFMessage> out = pushInBundle ? OFMessageUtils.buildBundle(sw.getOFFactory(), batch)
+				: new ArrayList<OFMessage>(batch);
+		// a bundle already ends with a barrier; use that one to wait for the commit
+		OFBarrierRequest barrier;
+		if (out.get(out.size() - 1) instanceof OFBarrierRequest) {
+			barrier = (OFBarrierRequest) out.remove(out.size() - 1);
+		} else {
+			barrier = sw.getOFFactory().buildBarrierRequest().build();
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Pushing static entries {} to {} of {} to {}",
+					new Object[] { written + 1, count, names.size(), sw.getId() });
+		}
+		if (!sw.write(out).isEmpty()) {
+			done.setException(new SwitchDisconnectedException(sw.getId()));
+			return;
 		}
+		Futures.addCallback(sw.writeRequest(barrier), new FutureCallback<OFBarrierReply>() {
+			@Override
+			public void onSuccess(OFBarrierReply reply) {
+				writeEntriesToSwitch(sw, names, next, count, done);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				done.setException(t);
+			}
+		}, MoreExecutors.directExecutor());
 	}
 
 	/**
@@ -261,15 +399,20 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 	 * @return
 	 */
 	private Map<String, Map<String, OFMessage>> readEntriesFromStorage() {
-		Map<String, Map<String, OFMessage>> entries = new ConcurrentHashMap<String, Map<String, OFMessage>>();
+		final Map<String, Map<String, OFMessage>> entries = new ConcurrentHashMap<String, Map<String, OFMessage>>();
 		try {
-			Map<String, Object> row;
+			List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
 			// null1=no predicate, null2=no ordering
 			IResultSet resultSet = storageSourceService.executeQuery(TABLE_NAME, Columns.ALL_COLUMNS.toArray(new String[Columns.ALL_COLUMNS.size()]), null, null);
 			for (Iterator<IResultSet> it = resultSet.iterator(); it.hasNext();) {
-				row = it.next().getRow();
-				parseRow(row, entries);
+				rows.add(it.next().getRow());
 			}
+			// rows are independent, and parsing them is most of the work
+			rows.parallelStream().forEach(row -> parseRow(row, entries));
+			// forget rows that were deleted meanwhile, e.g. while in STANDBY
+			parsedEntries.keySet().retainAll(rows.stream()
+					.map(row -> row.get(Columns.COLUMN_NAME))
+					.collect(Collectors.toSet()));
 		} catch (StorageException e) {
 			log.error("failed to access storage: {}", e.getMessage());
 			// if the table doesn't exist, then wait to populate later via
@@ -280,7 +423,10 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 
 	/**
 	 * Take a single row, turn it into a entry.
-	 * If an entry is inactive, mark it with null
+	 * If an entry is inactive, mark it with null.
+	 * A row that is unchanged since it was last parsed, for a switch
+	 * with the same OF version, is not parsed again.
+	 * May be called for different rows concurrently.
 	 *
 	 * @param row
 	 * @param entries
@@ -298,6 +444,18 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 			log.warn("Skipping entry with missing required 'switch' or 'name' entry: {}", row);
 			return;
 		}
+
+		if (row.get(Columns.COLUMN_NAME) instanceof String) {
+			ParsedEntry parsed = parsedEntries.get(row.get(Columns.COLUMN_NAME));
+			if (parsed != null && parsed.row.equals(row)) {
+				IOFSwitch sw = switchService.getSwitch(DatapathId.of(parsed.dpid));
+				if (sw != null && sw.getOFFactory().getVersion() == parsed.version) {
+					entries.computeIfAbsent(parsed.dpid, k -> new ConcurrentHashMap<String, OFMessage>())
+					.put((String) row.get(Columns.COLUMN_NAME), parsed.message);
+					return;
+				}
+			}
+		}
 		
 		try {
 			switchName = DatapathId.of((String) row.get(Columns.COLUMN_SWITCH)).toString();
@@ -311,9 +469,7 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 				}
 			} /* else use default of flow */
 
-			if (!entries.containsKey(switchName)) {
-				entries.put(switchName, new ConcurrentHashMap<String, OFMessage>());
-			}
+			entries.computeIfAbsent(switchName, k -> new ConcurrentHashMap<String, OFMessage>());
 
 			/* get the correct builder for the OF version supported by the switch */
 			try {
@@ -421,9 +577,13 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 				e.printStackTrace();
 				return;
 			}
-			entries.get(switchName).put(entryName, fmb.build());
+			OFFlowMod fm = fmb.build();
+			entries.get(switchName).put(entryName, fm);
+			parsedEntries.put(entryName, new ParsedEntry(row, switchName, fm.getVersion(), fm));
 		} else if (gmb != null) {
-			entries.get(switchName).put(entryName, gmb.build());
+			OFGroupMod gm = gmb.build();
+			entries.get(switchName).put(entryName, gm);
+			parsedEntries.put(entryName, new ParsedEntry(row, switchName, gm.getVersion(), gm));
 		} else {
 			log.error("Processed neither flow nor group mod. Possible Static Flow Pusher bug");
 		}
@@ -433,13 +593,41 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 	public void switchAdded(DatapathId switchId) {
 		log.debug("Switch {} connected; processing its static entries",
 				switchId.toString());
-		sendEntriesToSwitch(switchId);
+		final SettableFuture<Integer> push = SettableFuture.create();
+		ListenableFuture<Integer> previous = entryPushes.put(switchId, push);
+		if (previous != null) {
+			previous.cancel(false);
+		}
+		/*
+		 * Push right away rather than wait for the switch to report its
+		 * flows, which can take a while. Once it has, push again whatever
+		 * the switch turns out not to have.
+		 */
+		final ListenableFuture<Integer> initial = sendEntriesToSwitch(switchId,
+				switchService.getShadowFlowTable(switchId));
+		final ListenableFuture<ShadowFlowTable> refresh = switchService.refreshShadowFlowTable(switchId);
+		push.setFuture(Futures.whenAllComplete(initial, refresh).callAsync(() -> {
+			final int written = Futures.getDone(initial);
+			ShadowFlowTable installed;
+			try {
+				installed = Futures.getDone(refresh);
+			} catch (ExecutionException | CancellationException e) {
+				log.debug("Could not read flows from switch {}; not reconciling its static entries", switchId);
+				return Futures.immediateFuture(written);
+			}
+			return Futures.transform(sendEntriesToSwitch(switchId, installed),
+					reconciled -> written + reconciled, MoreExecutors.directExecutor());
+		}, MoreExecutors.directExecutor()));
 	}
 
 	@Override
 	public void switchRemoved(DatapathId switchId) {
 		// do NOT delete from our internal state; we're tracking the rules,
 		// not the switches
+		ListenableFuture<Integer> push = entryPushes.remove(switchId);
+		if (push != null) {
+			push.cancel(false);
+		}
 	}
 
 	@Override
@@ -600,6 +788,7 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 	}
 
 	private void deleteStaticFlowEntry(String entryName) {
+		parsedEntries.remove(entryName);
 		String dpid = entry2dpid.remove(entryName);
 
 		if (dpid == null) {
@@ -836,6 +1025,26 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 		storageSourceService = context.getServiceImpl(IStorageSourceService.class);
 		restApiService = context.getServiceImpl(IRestApiService.class);
 		haListener = new HAListenerDelegate();
+
+		Map<String, String> configParams = context.getConfigParams(this);
+		String tmp = configParams.get("push-batch-size");
+		if (tmp != null) {
+			try {
+				pushBatchSize = Integer.parseInt(tmp.trim());
+			} catch (NumberFormatException e) {
+				log.error("Invalid push-batch-size {}", tmp);
+			}
+			if (pushBatchSize <= 0) {
+				log.error("push-batch-size must be > 0; using 1000");
+				pushBatchSize = 1000;
+			}
+			log.info("Pushing static entries to connecting switches {} at a time", pushBatchSize);
+		}
+		tmp = configParams.get("push-in-bundle");
+		if (tmp != null) {
+			pushInBundle = Boolean.parseBoolean(tmp.trim());
+			log.info("Static entries will {}be pushed in bundles", pushInBundle ? "" : "not ");
+		}
 	} 
 
 	@Override
@@ -995,6 +1204,11 @@ implements IOFSwitchListener, IFloodlightModule, IStaticEntryPusherService, ISto
 		return entriesFromStorage;
 	}
 
+	@Override
+	public ListenableFuture<Integer> getEntryPush(DatapathId dpid) {
+		return entryPushes.get(dpid);
+	}
+
 	@Override
 	public Map<String, OFMessage> getEntries(DatapathId dpid) {
 		Map<String, OFMessage> m = entriesFromStorage.get(dpid.toString());
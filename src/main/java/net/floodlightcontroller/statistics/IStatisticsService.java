@@ -1,5 +1,6 @@
 package net.floodlightcontroller.statistics;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -28,6 +29,15 @@ public interface IStatisticsService extends IFloodlightService {
 	SwitchPortBandwidth getBandwidthConsumption(DatapathId dpid, OFPort p);
 		
 	Map<NodePortTuple, SwitchPortBandwidth> getBandwidthConsumption();
+
+	/**
+	 * Get the most recent bandwidth samples of a port, oldest first, e.g. to
+	 * compute average or percentile bandwidth without new stats requests.
+	 * @param dpid
+	 * @param p
+	 * @return the samples; empty if there are none yet
+	 */
+	List<SwitchPortBandwidth> getBandwidthHistory(DatapathId dpid, OFPort p);
 	
 	void collectStatistics(boolean collect);
 
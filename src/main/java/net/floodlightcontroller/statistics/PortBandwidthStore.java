@@ -0,0 +1,201 @@
+package net.floodlightcontroller.statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+
+/**
+ * Port byte counters and the bandwidth computed from them, kept as a ring
+ * of the last few samples per port.
+ *
+ * Each port has a slot of primitive longs that samples are written into in
+ * place, so recording a sample allocates nothing. Writers to the same port
+ * are serialized; readers take no lock. A reader notes how many samples the
+ * slot holds before and after copying one out, and retries if the writer
+ * may have overwritten it in between. {@link SwitchPortBandwidth} instances
+ * are only created for readers.
+ *
+ * The first sample of a port only records its byte counters. Bandwidth is
+ * reported from the second sample on.
+ */
+class PortBandwidthStore {
+	private static final long BITS_PER_BYTE = 8;
+
+	/* Fields of a sample, in order */
+	private static final int TIME_MS = 0;
+	private static final int TIME_NS = 1;
+	private static final int SPEED = 2;
+	private static final int RX_BYTES = 3;
+	private static final int TX_BYTES = 4;
+	private static final int RX_BPS = 5;
+	private static final int TX_BPS = 6;
+	private static final int FIELDS = 7;
+
+	private final int historySize;
+	/* One more than historySize, so the oldest sample is not being overwritten while it is read */
+	private final int capacity;
+	private final ConcurrentHashMap<NodePortTuple, Slot> slots = new ConcurrentHashMap<>();
+
+	/**
+	 * @param historySize the number of bandwidth samples kept per port
+	 */
+	PortBandwidthStore(int historySize) {
+		if (historySize < 1) {
+			throw new IllegalArgumentException("History size must be at least 1");
+		}
+		this.historySize = historySize;
+		this.capacity = historySize + 1;
+	}
+
+	int getHistorySize() {
+		return historySize;
+	}
+
+	private final class Slot {
+		private final NodePortTuple npt;
+		/* capacity samples of FIELDS longs each */
+		private final AtomicLongArray samples = new AtomicLongArray(capacity * FIELDS);
+		/* Number of samples ever written; sample i is at i % capacity */
+		private final AtomicLong count = new AtomicLong();
+
+		Slot(NodePortTuple npt) {
+			this.npt = npt;
+		}
+
+		synchronized void record(long speed, long rxBytes, long txBytes) {
+			long n = count.get();
+			long timeNs = System.nanoTime();
+			long rxBps = 0;
+			long txBps = 0;
+			if (n > 0) {
+				int prev = (int) ((n - 1) % capacity) * FIELDS;
+				double timeDifSec = (timeNs - samples.get(prev + TIME_NS)) / 1e9;
+				rxBps = Math.round((bytesCounted(samples.get(prev + RX_BYTES), rxBytes) * BITS_PER_BYTE) / timeDifSec);
+				txBps = Math.round((bytesCounted(samples.get(prev + TX_BYTES), txBytes) * BITS_PER_BYTE) / timeDifSec);
+			}
+			int i = (int) (n % capacity) * FIELDS;
+			samples.set(i + TIME_MS, System.currentTimeMillis());
+			samples.set(i + TIME_NS, timeNs);
+			samples.set(i + SPEED, speed);
+			samples.set(i + RX_BYTES, rxBytes);
+			samples.set(i + TX_BYTES, txBytes);
+			samples.set(i + RX_BPS, rxBps);
+			samples.set(i + TX_BPS, txBps);
+			count.set(n + 1); /* publishes the sample */
+		}
+
+		/**
+		 * @param age 0 for the latest sample, 1 for the one before, etc.
+		 * @return the sample, or null if there is no such sample with bandwidth
+		 */
+		SwitchPortBandwidth get(int age) {
+			while (true) {
+				long before = count.get();
+				long n = before - 1 - age;
+				if (n < 1 || age >= historySize) { /* the first sample has no bandwidth */
+					return null;
+				}
+				int i = (int) (n % capacity) * FIELDS;
+				long timeMs = samples.get(i + TIME_MS);
+				long timeNs = samples.get(i + TIME_NS);
+				long speed = samples.get(i + SPEED);
+				long rxBytes = samples.get(i + RX_BYTES);
+				long txBytes = samples.get(i + TX_BYTES);
+				long rxBps = samples.get(i + RX_BPS);
+				long txBps = samples.get(i + TX_BPS);
+				/*
+				 * Sample n is overwritten by sample n + capacity, which is
+				 * written while count is n + capacity. Retry if we may have
+				 * raced with that.
+				 */
+				if (count.get() < n + capacity) {
+					return SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(),
+							U64.ofRaw(speed), U64.ofRaw(rxBps), U64.ofRaw(txBps),
+							U64.ofRaw(rxBytes), U64.ofRaw(txBytes), timeMs, timeNs);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Bytes counted since the prior sample, allowing for the counter to have
+	 * wrapped once.
+	 */
+	private static long bytesCounted(long prior, long current) {
+		if (Long.compareUnsigned(prior, current) > 0) { /* overflow */
+			return U64.NO_MASK.getValue() - prior + current;
+		}
+		return current - prior;
+	}
+
+	/**
+	 * Records the byte counters a switch reported for a port, and the
+	 * bandwidth since the previous sample of the port.
+	 */
+	void record(NodePortTuple npt, long speed, long rxBytes, long txBytes) {
+		Slot s = slots.get(npt);
+		if (s == null) {
+			s = slots.computeIfAbsent(npt, Slot::new);
+		}
+		s.record(speed, rxBytes, txBytes);
+	}
+
+	/**
+	 * @return the latest bandwidth of the port, or null if there are fewer
+	 * than two samples of it
+	 */
+	SwitchPortBandwidth get(NodePortTuple npt) {
+		Slot s = slots.get(npt);
+		return s == null ? null : s.get(0);
+	}
+
+	/**
+	 * @return the bandwidth samples of the port that are still kept, oldest
+	 * first; empty if there are fewer than two samples of it
+	 */
+	List<SwitchPortBandwidth> getHistory(NodePortTuple npt) {
+		Slot s = slots.get(npt);
+		if (s == null) {
+			return Collections.emptyList();
+		}
+		List<SwitchPortBandwidth> l = new ArrayList<>(historySize);
+		for (int age = historySize - 1; age >= 0; age--) {
+			SwitchPortBandwidth spb = s.get(age);
+			if (spb != null) {
+				l.add(spb);
+			}
+		}
+		return l;
+	}
+
+	/**
+	 * @return the latest bandwidth of every port that has at least two samples
+	 */
+	Map<NodePortTuple, SwitchPortBandwidth> getAll() {
+		Map<NodePortTuple, SwitchPortBandwidth> m = new HashMap<>(slots.size() * 2);
+		for (Map.Entry<NodePortTuple, Slot> e : slots.entrySet()) {
+			SwitchPortBandwidth spb = e.getValue().get(0);
+			if (spb != null) {
+				m.put(e.getKey(), spb);
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Forgets all samples, e.g. after a gap in collection that would
+	 * otherwise be averaged into the next bandwidth.
+	 */
+	void clear() {
+		slots.clear();
+	}
+}
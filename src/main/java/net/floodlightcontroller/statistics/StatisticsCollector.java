@@ -1,17 +1,21 @@
 package net.floodlightcontroller.statistics;
 
-import java.lang.Thread.State;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
@@ -31,15 +35,16 @@ import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFGroup;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.TableId;
-import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.primitives.UnsignedLong;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.internal.ShadowFlowTable;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
@@ -61,30 +66,44 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	private static IRestApiService restApiService;
 	protected IDebugCounterService debugCounterService;
 	private IDebugCounter counterPacketOut;
+	private IDebugCounter counterRequestsSkipped;
+	private IDebugCounter counterRequestsTimedOut;
 
 	private static boolean isEnabled = false;
 
 	private static int portStatsInterval = 10; /* could be set by REST API, so not final */
 	private static int flowStatsInterval = 11;
 
+	private static int maxInFlightPerSwitch = 4;
+
 	private static ScheduledFuture<?> portStatsCollector;
 	private static ScheduledFuture<?> flowStatsCollector;
-	private static ScheduledFuture<?> portDescCollector;
-
-	private static final long BITS_PER_BYTE = 8;
-	private static final long MILLIS_PER_SEC = 1000;
 
 	private static final String INTERVAL_PORT_STATS_STR = "collectionIntervalPortStatsSeconds";
 	private static final String ENABLED_STR = "enable";
+	private static final String MAX_IN_FLIGHT_STR = "maxInFlightRequestsPerSwitch";
+	private static final String HISTORY_SIZE_STR = "portStatsHistorySize";
 
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> portStats = new HashMap<>();
-	private static final HashMap<NodePortTuple, SwitchPortBandwidth> tentativePortStats = new HashMap<>();
+	private static int portStatsHistorySize = 30;
 
-	private static final HashMap<Pair<Match,DatapathId>, FlowRuleStats> flowStats = new HashMap<>();
+	/* Replies are handled on the switch connection threads, several switches at a time */
+	private static PortBandwidthStore portStats = new PortBandwidthStore(portStatsHistorySize);
+
+	/* Replaced switch by switch as replies come in */
+	private static final Map<DatapathId, Map<Pair<Match,DatapathId>, FlowRuleStats>> flowStats = new ConcurrentHashMap<>();
 	
-	private static final HashMap<NodePortTuple, PortDesc> portDesc = new HashMap<>();
+	private static final Map<NodePortTuple, PortDesc> portDesc = new ConcurrentHashMap<>();
 
+	/* Number of outstanding stats requests per switch */
+	private static final Map<DatapathId, AtomicInteger> inFlight = new ConcurrentHashMap<>();
 
+	/**
+	 * Handles the replies of one switch to one statistics request. Called
+	 * on the thread that completes the request.
+	 */
+	private interface StatsReplyHandler {
+		void handle(DatapathId switchId, List<? extends OFStatsReply> replies);
+	}
 
 	/**
 	 * Run periodically to collect all port statistics. This only collects
@@ -100,63 +119,32 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 * 
 	 * Stats are not reported unless at least two iterations have occurred
 	 * for a single switch's reply. This must happen to compare the byte 
-	 * counts and to get an elapsed time.
+	 * counts and to get an elapsed time. The last portStatsHistorySize
+	 * results of each port are kept; see {@link PortBandwidthStore}.
+	 * 
+	 * Port descriptions are collected at the same interval, so both requests
+	 * go out to each switch in the same round.
 	 * 
 	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
 	 *
 	 */
-	protected class PortStatsCollector implements Runnable {
+	protected class PortStatsCollector implements Runnable, StatsReplyHandler {
 
 		@Override
 		public void run() {
-			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(switchService.getAllSwitchDpids(), OFStatsType.PORT);
-			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
-				for (OFStatsReply r : e.getValue()) {
-					OFPortStatsReply psr = (OFPortStatsReply) r;
-					for (OFPortStatsEntry pse : psr.getEntries()) {
-						NodePortTuple npt = new NodePortTuple(e.getKey(), pse.getPortNo());
-						SwitchPortBandwidth spb;
-						if (portStats.containsKey(npt) || tentativePortStats.containsKey(npt)) {
-							if (portStats.containsKey(npt)) { /* update */
-								spb = portStats.get(npt);
-							} else if (tentativePortStats.containsKey(npt)) { /* finish */
-								spb = tentativePortStats.get(npt);
-								tentativePortStats.remove(npt);
-							} else {
-								log.error("Inconsistent state between tentative and official port stats lists.");
-								return;
-							}
-
-							/* Get counted bytes over the elapsed period. Check for counter overflow. */
-							U64 rxBytesCounted;
-							U64 txBytesCounted;
-							if (spb.getPriorByteValueRx().compareTo(pse.getRxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueRx());
-								U64 lower = pse.getRxBytes();
-								rxBytesCounted = upper.add(lower);
-							} else {
-								rxBytesCounted = pse.getRxBytes().subtract(spb.getPriorByteValueRx());
-							}
-							if (spb.getPriorByteValueTx().compareTo(pse.getTxBytes()) > 0) { /* overflow */
-								U64 upper = U64.NO_MASK.subtract(spb.getPriorByteValueTx());
-								U64 lower = pse.getTxBytes();
-								txBytesCounted = upper.add(lower);
-							} else {
-								txBytesCounted = pse.getTxBytes().subtract(spb.getPriorByteValueTx());
-							}
-							long speed = getSpeed(npt);
-							double timeDifSec = ((System.nanoTime() - spb.getStartTime_ns()) * 1.0 / 1000000) / MILLIS_PER_SEC;
-							portStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), 
-									U64.ofRaw(speed),
-									U64.ofRaw(Math.round((rxBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec)),
-									U64.ofRaw(Math.round((txBytesCounted.getValue() * BITS_PER_BYTE) / timeDifSec)),
-									pse.getRxBytes(), pse.getTxBytes())
-									);
-
-						} else { /* initialize */
-							tentativePortStats.put(npt, SwitchPortBandwidth.of(npt.getNodeId(), npt.getPortId(), U64.ZERO, U64.ZERO, U64.ZERO, pse.getRxBytes(), pse.getTxBytes()));
-						}
-					}
+			Map<OFStatsType, StatsReplyHandler> handlers = new EnumMap<>(OFStatsType.class);
+			handlers.put(OFStatsType.PORT, this);
+			handlers.put(OFStatsType.PORT_DESC, new PortDescCollector());
+			requestStatistics(switchService.getAllSwitchDpids(), handlers);
+		}
+
+		@Override
+		public void handle(DatapathId switchId, List<? extends OFStatsReply> replies) {
+			for (OFStatsReply r : replies) {
+				OFPortStatsReply psr = (OFPortStatsReply) r;
+				for (OFPortStatsEntry pse : psr.getEntries()) {
+					NodePortTuple npt = new NodePortTuple(switchId, pse.getPortNo());
+					portStats.record(npt, getSpeed(npt), pse.getRxBytes().getValue(), pse.getTxBytes().getValue());
 				}
 			}
 		}
@@ -202,96 +190,78 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 
 	/**
 	 * Run periodically to collect all flow statistics from every switch.
+	 * A switch's flows are replaced as a whole when its reply comes in, which
+	 * clears out expired flows. The switch's shadow flow table is synced from
+	 * the same reply.
 	 */
 	protected class FlowStatsCollector implements Runnable {
 		@Override
 		public void run() {
-			flowStats.clear(); // to clear expired flows
-			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(switchService.getAllSwitchDpids(), OFStatsType.FLOW);
-			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
-				IOFSwitch sw = switchService.getSwitch(e.getKey());
-				for (OFStatsReply r : e.getValue()) {
-					OFFlowStatsReply psr = (OFFlowStatsReply) r;
-					for (OFFlowStatsEntry pse : psr.getEntries()) {
-						if(sw.getOFFactory().getVersion().compareTo(OFVersion.OF_15) == 0){
-							log.warn("Flow Stats not supported in OpenFlow 1.5.");
-
-						} else {
-							Pair<Match, DatapathId> pair = new Pair<>(pse.getMatch(), e.getKey());
-							flowStats.put(pair,FlowRuleStats.of(
-									e.getKey(),
-									pse.getByteCount(),
-									pse.getPacketCount(),
-									pse.getPriority(),
-									pse.getHardTimeout(),
-									pse.getIdleTimeout(),
-									pse.getDurationSec()));
-						}
-					}
+			Set<DatapathId> dpids = switchService.getAllSwitchDpids();
+			flowStats.keySet().retainAll(dpids); // to clear disconnected switches
+			final long requestedMs = System.currentTimeMillis();
+			requestStatistics(dpids, Collections.<OFStatsType, StatsReplyHandler>singletonMap(OFStatsType.FLOW,
+					(switchId, replies) -> handle(switchId, replies, requestedMs)));
+		}
+
+		public void handle(DatapathId switchId, List<? extends OFStatsReply> replies, long requestedMs) {
+			IOFSwitch sw = switchService.getSwitch(switchId);
+			if (sw == null) {
+				return;
+			}
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_15) == 0) {
+				log.warn("Flow Stats not supported in OpenFlow 1.5.");
+				return;
+			}
+			Map<Pair<Match, DatapathId>, FlowRuleStats> switchFlowStats = new HashMap<>();
+			List<OFFlowStatsEntry> entries = new ArrayList<>();
+			for (OFStatsReply r : replies) {
+				OFFlowStatsReply psr = (OFFlowStatsReply) r;
+				entries.addAll(psr.getEntries());
+				for (OFFlowStatsEntry pse : psr.getEntries()) {
+					Pair<Match, DatapathId> pair = new Pair<>(pse.getMatch(), switchId);
+					switchFlowStats.put(pair,FlowRuleStats.of(
+							switchId,
+							pse.getByteCount(),
+							pse.getPacketCount(),
+							pse.getPriority(),
+							pse.getHardTimeout(),
+							pse.getIdleTimeout(),
+							pse.getDurationSec()));
 				}
 			}
+			flowStats.put(switchId, Collections.unmodifiableMap(switchFlowStats));
+			/* The reply is also what the switch has installed right now */
+			ShadowFlowTable table = switchService.getShadowFlowTable(switchId);
+			if (table != null) {
+				table.sync(entries, requestedMs);
+			}
 		}
 	}
 
 	
 	/**
-	 *  Run periodically to collect port description from every switch and port, so it is possible to know its state and configuration.
-	 * Used in Load balancer to determine if a port is enabled.
+	 *  Collects port description from every switch and port, so it is possible to know its state and configuration.
+	 * Used in Load balancer to determine if a port is enabled. Requested along with port stats.
 	 */
-	private class PortDescCollector implements Runnable {
+	private class PortDescCollector implements StatsReplyHandler {
 		@Override
-		public void run() {
-			Map<DatapathId, List<OFStatsReply>> replies = getSwitchStatistics(switchService.getAllSwitchDpids(), OFStatsType.PORT_DESC);
-			for (Entry<DatapathId, List<OFStatsReply>> e : replies.entrySet()) {
-				for (OFStatsReply r : e.getValue()) {
-					OFPortDescStatsReply psr = (OFPortDescStatsReply) r;	
-					for (OFPortDesc pse : psr.getEntries()) {
-						NodePortTuple npt = new NodePortTuple(e.getKey(), pse.getPortNo());
-						portDesc.put(npt,PortDesc.of(e.getKey(),
-								pse.getPortNo(),
-								pse.getName(),
-								pse.getState(),
-								pse.getConfig(),
-								pse.isEnabled()));						
-					}
+		public void handle(DatapathId switchId, List<? extends OFStatsReply> replies) {
+			for (OFStatsReply r : replies) {
+				OFPortDescStatsReply psr = (OFPortDescStatsReply) r;	
+				for (OFPortDesc pse : psr.getEntries()) {
+					NodePortTuple npt = new NodePortTuple(switchId, pse.getPortNo());
+					portDesc.put(npt,PortDesc.of(switchId,
+							pse.getPortNo(),
+							pse.getName(),
+							pse.getState(),
+							pse.getConfig(),
+							pse.isEnabled()));						
 				}
 			}
 		}
 	}
 
-
-	/**
-	 * Single thread for collecting switch statistics and
-	 * containing the reply.
-	 * 
-	 * @author Ryan Izard, ryan.izard@bigswitch.com, rizard@g.clemson.edu
-	 *
-	 */
-	private class GetStatisticsThread extends Thread {
-		private List<OFStatsReply> statsReply;
-		private final DatapathId switchId;
-		private final OFStatsType statType;
-
-		public GetStatisticsThread(DatapathId switchId, OFStatsType statType) {
-			this.switchId = switchId;
-			this.statType = statType;
-			this.statsReply = null;
-		}
-
-		public List<OFStatsReply> getStatisticsReply() {
-			return statsReply;
-		}
-
-		public DatapathId getSwitchId() {
-			return switchId;
-		}
-
-		@Override
-		public void run() {
-			statsReply = getSwitchStatistics(switchId, statType);
-		}
-	}
-
 	/*
 	 * IFloodlightModule implementation
 	 */
@@ -349,6 +319,26 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 			}
 		}
 		log.info("Port statistics collection interval set to {}s", portStatsInterval);
+
+		if (config.containsKey(MAX_IN_FLIGHT_STR)) {
+			try {
+				maxInFlightPerSwitch = Integer.parseInt(config.get(MAX_IN_FLIGHT_STR).trim());
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", MAX_IN_FLIGHT_STR, maxInFlightPerSwitch);
+			}
+		}
+		log.info("At most {} statistics requests outstanding per switch", maxInFlightPerSwitch);
+
+		if (config.containsKey(HISTORY_SIZE_STR)) {
+			try {
+				int historySize = Integer.parseInt(config.get(HISTORY_SIZE_STR).trim());
+				portStats = new PortBandwidthStore(historySize);
+				portStatsHistorySize = historySize;
+			} catch (Exception e) {
+				log.error("Could not parse '{}'. Using default of {}", HISTORY_SIZE_STR, portStatsHistorySize);
+			}
+		}
+		log.info("Keeping {} port bandwidth samples per port", portStats.getHistorySize());
 	}
 
 	@Override
@@ -356,6 +346,10 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 			throws FloodlightModuleException {
 		restApiService.addRestletRoutable(new SwitchStatisticsWebRoutable());
 		debugCounterService.registerModule("statistics");
+		counterRequestsSkipped = debugCounterService.registerCounter("statistics", "requests-skipped",
+				"Stats requests not sent because too many were outstanding for the switch", MetaData.WARN);
+		counterRequestsTimedOut = debugCounterService.registerCounter("statistics", "requests-timed-out",
+				"Stats requests a switch did not reply to within the timeout", MetaData.WARN);
 		if (isEnabled) {
 			startStatisticsCollection();
 		}
@@ -393,17 +387,17 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	
 	@Override
 	public Map<Pair<Match, DatapathId>, FlowRuleStats> getFlowStats(){		 
-		return Collections.unmodifiableMap(flowStats);
+		Map<Pair<Match, DatapathId>, FlowRuleStats> all = new HashMap<>();
+		for (Map<Pair<Match, DatapathId>, FlowRuleStats> m : flowStats.values()) {
+			all.putAll(m);
+		}
+		return Collections.unmodifiableMap(all);
 	}
 
 	@Override
 	public Set<FlowRuleStats> getFlowStats(DatapathId dpid){
-		Set<FlowRuleStats> frs = new HashSet<>();
-		for(Pair<Match,DatapathId> pair: flowStats.keySet()){
-			if(pair.getValue().equals(dpid))
-				frs.add(flowStats.get(pair));
-		}
-		return frs;
+		Map<Pair<Match, DatapathId>, FlowRuleStats> m = flowStats.get(dpid);
+		return m == null ? new HashSet<FlowRuleStats>() : new HashSet<>(m.values());
 	}
 
 	@Override
@@ -413,7 +407,12 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 
 	@Override
 	public Map<NodePortTuple, SwitchPortBandwidth> getBandwidthConsumption() {
-		return Collections.unmodifiableMap(portStats);
+		return Collections.unmodifiableMap(portStats.getAll());
+	}
+
+	@Override
+	public List<SwitchPortBandwidth> getBandwidthHistory(DatapathId dpid, OFPort p) {
+		return Collections.unmodifiableList(portStats.getHistory(new NodePortTuple(dpid, p)));
 	}
 
 	@Override
@@ -442,9 +441,8 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 */
 	private void startStatisticsCollection() {
 		portStatsCollector = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new PortStatsCollector(), portStatsInterval, portStatsInterval, TimeUnit.SECONDS);
-		tentativePortStats.clear(); /* must clear out, otherwise might have huge BW result if present and wait a long time before re-enabling stats */
+		portStats.clear(); /* must clear out, otherwise might have huge BW result if present and wait a long time before re-enabling stats */
 		flowStatsCollector = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new FlowStatsCollector(), flowStatsInterval, flowStatsInterval, TimeUnit.SECONDS);
-		portDescCollector = threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new PortDescCollector(), portStatsInterval, portStatsInterval, TimeUnit.SECONDS);
 		log.warn("Statistics collection thread(s) started");
 	}
 
@@ -452,7 +450,7 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	 * Stop all stats threads.
 	 */
 	private void stopStatisticsCollection() {
-		if (!portStatsCollector.cancel(false) || !flowStatsCollector.cancel(false) || !portDescCollector.cancel(false)) {
+		if (!portStatsCollector.cancel(false) || !flowStatsCollector.cancel(false)) {
 			log.error("Could not cancel port/flow stats threads");
 		} else {
 			log.warn("Statistics collection thread(s) stopped");
@@ -460,192 +458,196 @@ public class StatisticsCollector implements IFloodlightModule, IStatisticsServic
 	}
 
 	/**
-	 * Retrieve the statistics from all switches in parallel.
+	 * Send statistics requests of the given types to all switches without
+	 * waiting for the replies. Each switch's replies are passed to the handler
+	 * for the type as they arrive. A switch that already has too many requests
+	 * outstanding is skipped for this round, and requests that are not
+	 * answered in time are cancelled, so a slow switch holds at most
+	 * maxInFlightPerSwitch requests at any time.
 	 * @param dpids
-	 * @param statsType
-	 * @return
+	 * @param handlers
 	 */
-	private Map<DatapathId, List<OFStatsReply>> getSwitchStatistics(Set<DatapathId> dpids, OFStatsType statsType) {
-		HashMap<DatapathId, List<OFStatsReply>> model = new HashMap<>();
-
-		List<GetStatisticsThread> activeThreads = new ArrayList<>(dpids.size());
-		List<GetStatisticsThread> pendingRemovalThreads = new ArrayList<>();
-		GetStatisticsThread t;
+	private void requestStatistics(Set<DatapathId> dpids, Map<OFStatsType, StatsReplyHandler> handlers) {
+		inFlight.keySet().retainAll(dpids);
 		for (DatapathId d : dpids) {
-			t = new GetStatisticsThread(d, statsType);
-			activeThreads.add(t);
-			t.start();
-		}
-
-		/* Join all the threads after the timeout. Set a hard timeout
-		 * of 12 seconds for the threads to finish. If the thread has not
-		 * finished the switch has not replied yet and therefore we won't
-		 * add the switch's stats to the reply.
-		 */
-		for (int iSleepCycles = 0; iSleepCycles < portStatsInterval; iSleepCycles++) {
-			for (GetStatisticsThread curThread : activeThreads) {
-				if (curThread.getState() == State.TERMINATED) {
-					model.put(curThread.getSwitchId(), curThread.getStatisticsReply());
-					pendingRemovalThreads.add(curThread);
+			IOFSwitch sw = switchService.getSwitch(d);
+			if (sw == null) {
+				continue;
+			}
+			for (Entry<OFStatsType, StatsReplyHandler> e : handlers.entrySet()) {
+				OFStatsRequest<?> req = buildStatsRequest(sw, e.getKey());
+				if (req != null) {
+					requestStatistics(sw, req, e.getValue());
 				}
 			}
+		}
+	}
 
-			/* remove the threads that have completed the queries to the switches */
-			for (GetStatisticsThread curThread : pendingRemovalThreads) {
-				activeThreads.remove(curThread);
-			}
+	private void requestStatistics(final IOFSwitch sw, OFStatsRequest<?> req, final StatsReplyHandler handler) {
+		final DatapathId switchId = sw.getId();
+		final AtomicInteger outstanding = inFlight.computeIfAbsent(switchId, k -> new AtomicInteger());
+		if (outstanding.incrementAndGet() > maxInFlightPerSwitch) {
+			outstanding.decrementAndGet();
+			counterRequestsSkipped.increment();
+			log.debug("Skipping {} stats request to switch {}; too many outstanding", req.getStatsType(), switchId);
+			return;
+		}
 
-			/* clear the list so we don't try to double remove them */
-			pendingRemovalThreads.clear();
+		final ListenableFuture<? extends List<? extends OFStatsReply>> future;
+		try {
+			future = sw.writeStatsRequest(req);
+		} catch (Exception e) {
+			outstanding.decrementAndGet();
+			log.error("Failure requesting statistics from switch {}. {}", sw, e);
+			return;
+		}
+		final ScheduledFuture<?> timeout = threadPoolService.getScheduledExecutor()
+				.schedule(() -> { future.cancel(false); }, getRequestTimeoutMs(), TimeUnit.MILLISECONDS);
 
-			/* if we are done finish early */
-			if (activeThreads.isEmpty()) {
-				break;
+		future.addListener(() -> {
+			outstanding.decrementAndGet();
+			timeout.cancel(false);
+			List<? extends OFStatsReply> replies;
+			try {
+				replies = future.get();
+			} catch (CancellationException e) {
+				counterRequestsTimedOut.increment();
+				log.debug("Timed out waiting for {} stats from switch {}", req.getStatsType(), switchId);
+				return;
+			} catch (InterruptedException | ExecutionException e) {
+				log.error("Failure retrieving statistics from switch {}. {}", sw, e);
+				return;
 			}
-
 			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.error("Interrupted while waiting for statistics", e);
+				handler.handle(switchId, replies);
+			} catch (Exception e) {
+				log.error("Failure processing {} stats from switch {}. {}", req.getStatsType(), switchId, e);
 			}
-		}
+		}, MoreExecutors.directExecutor());
+	}
 
-		return model;
+	/* Same as the blocking wait it replaces: half the port stats interval */
+	private static long getRequestTimeoutMs() {
+		return portStatsInterval * 1000L / 2;
 	}
 
 	/**
-	 * Get statistics from a switch.
-	 * @param switchId
+	 * Build a statistics request for a switch.
+	 * @param sw
 	 * @param statsType
-	 * @return
+	 * @return the request, or null if the switch's OpenFlow version does not support the type
 	 */
-	@SuppressWarnings("unchecked")
-	protected List<OFStatsReply> getSwitchStatistics(DatapathId switchId, OFStatsType statsType) {
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		ListenableFuture<?> future;
-		List<OFStatsReply> values = null;
+	protected OFStatsRequest<?> buildStatsRequest(IOFSwitch sw, OFStatsType statsType) {
+		OFStatsRequest<?> req = null;
 		Match match;
-		if (sw != null) {
-			OFStatsRequest<?> req = null;
-			switch (statsType) {
-			case FLOW:
-				match = sw.getOFFactory().buildMatch().build();
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_11) >= 0) {
-					req = sw.getOFFactory().buildFlowStatsRequest()
-							.setMatch(match)
-							.setOutPort(OFPort.ANY)
-							.setOutGroup(OFGroup.ANY)
-							.setTableId(TableId.ALL)
-							.build();
-				} else{
-					req = sw.getOFFactory().buildFlowStatsRequest()
-							.setMatch(match)
-							.setOutPort(OFPort.ANY)
-							.setTableId(TableId.ALL)
-							.build();
-				}
-				break;
-			case AGGREGATE:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildAggregateStatsRequest()
+		switch (statsType) {
+		case FLOW:
+			match = sw.getOFFactory().buildMatch().build();
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_11) >= 0) {
+				req = sw.getOFFactory().buildFlowStatsRequest()
 						.setMatch(match)
 						.setOutPort(OFPort.ANY)
+						.setOutGroup(OFGroup.ANY)
 						.setTableId(TableId.ALL)
 						.build();
-				break;
-			case PORT:
-				req = sw.getOFFactory().buildPortStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.build();
-				break;
-			case QUEUE:
-				req = sw.getOFFactory().buildQueueStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.setQueueId(UnsignedLong.MAX_VALUE.longValue())
-				.build();
-				break;
-			case DESC:
-				req = sw.getOFFactory().buildDescStatsRequest()
-				.build();
-				break;
-			case GROUP:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupStatsRequest()				
-							.build();
-				}
-				break;
-
-			case METER:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterStatsRequest()
-							.setMeterId(OFMeterSerializerVer13.ALL_VAL)
-							.build();
-				}
-				break;
-
-			case GROUP_DESC:			
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupDescStatsRequest()			
-							.build();
-				}
-				break;
+			} else{
+				req = sw.getOFFactory().buildFlowStatsRequest()
+						.setMatch(match)
+						.setOutPort(OFPort.ANY)
+						.setTableId(TableId.ALL)
+						.build();
+			}
+			break;
+		case AGGREGATE:
+			match = sw.getOFFactory().buildMatch().build();
+			req = sw.getOFFactory().buildAggregateStatsRequest()
+					.setMatch(match)
+					.setOutPort(OFPort.ANY)
+					.setTableId(TableId.ALL)
+					.build();
+			break;
+		case PORT:
+			req = sw.getOFFactory().buildPortStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.build();
+			break;
+		case QUEUE:
+			req = sw.getOFFactory().buildQueueStatsRequest()
+			.setPortNo(OFPort.ANY)
+			.setQueueId(UnsignedLong.MAX_VALUE.longValue())
+			.build();
+			break;
+		case DESC:
+			req = sw.getOFFactory().buildDescStatsRequest()
+			.build();
+			break;
+		case GROUP:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupStatsRequest()				
+						.build();
+			}
+			break;
 
-			case GROUP_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
-							.build();
-				}
-				break;
+		case METER:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterStatsRequest()
+						.setMeterId(OFMeterSerializerVer13.ALL_VAL)
+						.build();
+			}
+			break;
 
-			case METER_CONFIG:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterConfigStatsRequest()
-							.build();
-				}
-				break;
+		case GROUP_DESC:			
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupDescStatsRequest()			
+						.build();
+			}
+			break;
 
-			case METER_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
-							.build();
-				}
-				break;
+		case GROUP_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
+						.build();
+			}
+			break;
 
-			case TABLE:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableStatsRequest()
-							.build();
-				}
-				break;
+		case METER_CONFIG:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterConfigStatsRequest()
+						.build();
+			}
+			break;
 
-			case TABLE_FEATURES:	
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableFeaturesStatsRequest()
-							.build();		
-				}
-				break;
-			case PORT_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildPortDescStatsRequest()
-							.build();
-				}
-				break;
-			case EXPERIMENTER:		
-			default:
-				log.error("Stats Request Type {} not implemented yet", statsType.name());
-				break;
+		case METER_FEATURES:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
+						.build();
 			}
+			break;
 
-			try {
-				if (req != null) {
-					future = sw.writeStatsRequest(req); 
-					values = (List<OFStatsReply>) future.get(portStatsInterval*1000 / 2, TimeUnit.MILLISECONDS);
+		case TABLE:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableStatsRequest()
+						.build();
+			}
+			break;
 
-				}
-			} catch (Exception e) {
-				log.error("Failure retrieving statistics from switch {}. {}", sw, e);
+		case TABLE_FEATURES:	
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+				req = sw.getOFFactory().buildTableFeaturesStatsRequest()
+						.build();		
+			}
+			break;
+		case PORT_DESC:
+			if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				req = sw.getOFFactory().buildPortDescStatsRequest()
+						.build();
 			}
+			break;
+		case EXPERIMENTER:		
+		default:
+			log.error("Stats Request Type {} not implemented yet", statsType.name());
+			break;
 		}
-		return values;
+		return req;
 	}
 }
@@ -35,6 +35,16 @@ public class SwitchPortBandwidth {
 		this.txValue = txValue;
 	}
 	
+	/**
+	 * For samples recorded earlier, e.g. by the {@link PortBandwidthStore}
+	 */
+	static SwitchPortBandwidth of(DatapathId d, OFPort p, U64 s, U64 rx, U64 tx, U64 rxValue, U64 txValue, long time_ms, long starttime_ns) {
+		SwitchPortBandwidth spb = of(d, p, s, rx, tx, rxValue, txValue);
+		spb.time = new Date(time_ms);
+		spb.starttime_ns = starttime_ns;
+		return spb;
+	}
+	
 	public static SwitchPortBandwidth of(DatapathId d, OFPort p, U64 s, U64 rx, U64 tx, U64 rxValue, U64 txValue) {
 		if (d == null) {
 			throw new IllegalArgumentException("Datapath ID cannot be null");
@@ -30,6 +30,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
@@ -71,6 +72,12 @@ implements IStorageSourceService, IFloodlightModule {
 	private Map<String, Set<IStorageSourceListener>> listeners =
 			new ConcurrentHashMap<String, Set<IStorageSourceListener>>();
 
+	// Listeners are called inline unless notificationThreads is configured,
+	// in which case each table's notifications are delivered in order on
+	// one of that many threads.
+	protected StorageNotificationDispatcher notificationDispatcher =
+			new StorageNotificationDispatcher(0, this::deliverNotification);
+
 	// Our dependencies
 	protected IRestApiService restApi = null;
 
@@ -447,7 +454,19 @@ implements IStorageSourceService, IFloodlightModule {
 		}
 	}
 
-	protected synchronized void notifyListeners(StorageSourceNotification notification) {
+	protected void notifyListeners(StorageSourceNotification notification) {
+		notificationDispatcher.post(notification);
+	}
+
+	/**
+	 * @return the number of notifications waiting to be delivered to
+	 * listeners; always 0 when notifications are delivered inline
+	 */
+	public long getPendingNotificationCount() {
+		return notificationDispatcher.getPendingCount();
+	}
+
+	protected void deliverNotification(StorageSourceNotification notification) {
 		if (logger.isTraceEnabled()) {
 			logger.trace("Notifying storage listeneres: {}", notification);
 		}
@@ -506,6 +525,7 @@ implements IStorageSourceService, IFloodlightModule {
 				new ArrayList<Class<? extends IFloodlightService>>();
 		l.add(IRestApiService.class);
 		l.add(IDebugCounterService.class);
+		l.add(IShutdownService.class);
 		return l;
 	}
 
@@ -516,11 +536,34 @@ implements IStorageSourceService, IFloodlightModule {
 				context.getServiceImpl(IRestApiService.class);
 		debugCounterService =
 				context.getServiceImpl(IDebugCounterService.class);
+
+		Map<String, String> configParams = context.getConfigParams(this);
+		String threads = configParams.get("notificationThreads");
+		if (threads != null) {
+			try {
+				int n = Integer.parseInt(threads.trim());
+				notificationDispatcher = new StorageNotificationDispatcher(n,
+						this::deliverNotification);
+			} catch (IllegalArgumentException e) {
+				throw new FloodlightModuleException("Invalid notificationThreads "
+						+ threads, e);
+			}
+		}
+		logger.info("Storage notifications delivered {}",
+				notificationDispatcher.isAsync() ?
+						"on " + notificationDispatcher.getPartitionCount() + " threads" :
+						"inline");
 	}
 
 	@Override
 	public void startUp(FloodlightModuleContext context) {
 		restApi.addRestletRoutable(new StorageWebRoutable());
 		debugCounterService.registerModule(this.getClass().getCanonicalName());
+		notificationDispatcher.registerCounters(debugCounterService,
+				this.getClass().getCanonicalName());
+		if (notificationDispatcher.isAsync()) {
+			context.getServiceImpl(IShutdownService.class)
+			.registerShutdownListener(notificationDispatcher::shutdown);
+		}
 	}
 }
@@ -0,0 +1,226 @@
+package net.floodlightcontroller.storage;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Delivers storage notifications to listeners off the caller's thread.
+ * Each table is pinned to one of a fixed number of single-threaded
+ * partitions, so notifications for a table are delivered in the order
+ * they were posted while a slow listener only holds up the tables that
+ * share its partition. A MODIFY that is still queued behind no other
+ * action absorbs the keys of the next MODIFY for the same table, so a
+ * burst of updates reaches the listeners as a single rowsModified call.
+ *
+ * With zero partitions every notification is delivered inline on the
+ * posting thread, which is how the storage sources behaved before.
+ */
+public class StorageNotificationDispatcher {
+    protected static final Logger log =
+            LoggerFactory.getLogger(StorageNotificationDispatcher.class);
+
+    /* Deliveries from one table before its partition moves on to the next */
+    protected static final int MAX_DRAIN_BATCH = 64;
+
+    private final Consumer<StorageSourceNotification> sink;
+    private final ExecutorService[] partitions;
+    private final ConcurrentMap<String, TableQueue> tables =
+            new ConcurrentHashMap<String, TableQueue>();
+    private final AtomicLong pending = new AtomicLong();
+
+    private IDebugCounter ctrQueued;
+    private IDebugCounter ctrDelivered;
+    private IDebugCounter ctrCoalesced;
+    private IDebugCounter ctrPending;
+
+    private class TableQueue implements Runnable {
+        private final ArrayDeque<StorageSourceNotification> queue =
+                new ArrayDeque<StorageSourceNotification>();
+        private final ExecutorService executor;
+        private boolean scheduled;
+
+        TableQueue(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        void post(StorageSourceNotification notification) {
+            boolean schedule = false;
+            synchronized (this) {
+                StorageSourceNotification last = queue.peekLast();
+                if (last != null
+                        && last.getAction() == StorageSourceNotification.Action.MODIFY
+                        && notification.getAction() == StorageSourceNotification.Action.MODIFY) {
+                    last.getKeys().addAll(notification.getKeys());
+                    if (ctrCoalesced != null) {
+                        ctrCoalesced.increment();
+                    }
+                    return;
+                }
+                /* Copy the keys, since later MODIFYs may be merged into them */
+                queue.addLast(new StorageSourceNotification(
+                        notification.getTableName(),
+                        notification.getAction(),
+                        new HashSet<Object>(notification.getKeys())));
+                pending.incrementAndGet();
+                if (!scheduled) {
+                    scheduled = true;
+                    schedule = true;
+                }
+            }
+            if (ctrQueued != null) {
+                ctrQueued.increment();
+            }
+            updatePendingCounter();
+            if (schedule) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                log.warn("Storage notification dispatcher is shut down; " +
+                        "dropping notifications");
+                synchronized (this) {
+                    pending.addAndGet(-queue.size());
+                    queue.clear();
+                    scheduled = false;
+                }
+                updatePendingCounter();
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_DRAIN_BATCH; i++) {
+                StorageSourceNotification notification;
+                synchronized (this) {
+                    notification = queue.pollFirst();
+                    if (notification == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                pending.decrementAndGet();
+                updatePendingCounter();
+                sink.accept(notification);
+                if (ctrDelivered != null) {
+                    ctrDelivered.increment();
+                }
+            }
+            /* Still busy; requeue behind the other tables of this partition */
+            submit();
+        }
+    }
+
+    /**
+     * @param partitionCount number of delivery threads, or 0 to deliver
+     *        inline on the posting thread
+     * @param sink delivers one notification to the table's listeners
+     */
+    public StorageNotificationDispatcher(int partitionCount,
+            Consumer<StorageSourceNotification> sink) {
+        if (partitionCount < 0) {
+            throw new IllegalArgumentException("partitionCount must be >= 0. Was "
+                    + partitionCount);
+        }
+        this.sink = sink;
+        this.partitions = new ExecutorService[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder()
+                    .setNameFormat("storage-notify-" + i)
+                    .setDaemon(true)
+                    .build());
+        }
+    }
+
+    /**
+     * Register the queued, delivered, coalesced and pending counters. The
+     * pending counter holds the number of notifications still waiting, as
+     * of the last post or delivery; {@link #getPendingCount()} is
+     * exact.
+     */
+    public void registerCounters(IDebugCounterService debugCounterService,
+            String moduleName) {
+        if (debugCounterService == null || !isAsync()) {
+            return;
+        }
+        ctrQueued = debugCounterService.registerCounter(moduleName,
+                "notifications-queued",
+                "Storage notifications queued for asynchronous delivery");
+        ctrDelivered = debugCounterService.registerCounter(moduleName,
+                "notifications-delivered",
+                "Queued storage notifications delivered to listeners");
+        ctrCoalesced = debugCounterService.registerCounter(moduleName,
+                "notifications-coalesced",
+                "Storage modify notifications merged into one already queued");
+        ctrPending = debugCounterService.registerCounter(moduleName,
+                "notifications-pending",
+                "Storage notifications queued and not yet delivered");
+    }
+
+    /* Counters only count up, so the depth is stored by resetting it */
+    private void updatePendingCounter() {
+        IDebugCounter ctr = ctrPending;
+        if (ctr != null) {
+            ctr.reset();
+            ctr.add(pending.get());
+        }
+    }
+
+    public boolean isAsync() {
+        return partitions.length > 0;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * @return the number of notifications queued and not yet delivered
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+
+    public void post(StorageSourceNotification notification) {
+        if (!isAsync()) {
+            sink.accept(notification);
+            return;
+        }
+        String tableName = notification.getTableName();
+        TableQueue tq = tables.get(tableName);
+        if (tq == null) {
+            int p = (tableName.hashCode() & Integer.MAX_VALUE) % partitions.length;
+            TableQueue newTq = new TableQueue(partitions[p]);
+            tq = tables.putIfAbsent(tableName, newTq);
+            if (tq == null) {
+                tq = newTq;
+            }
+        }
+        tq.post(notification);
+    }
+
+    public void shutdown() {
+        for (ExecutorService e : partitions) {
+            e.shutdown();
+        }
+    }
+}
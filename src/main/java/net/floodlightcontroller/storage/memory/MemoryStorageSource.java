@@ -30,25 +30,77 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.floodlightcontroller.storage.StorageException;
 
+/**
+ * A storage source that keeps tables in memory. Writes to a table are
+ * serialized on the table; queries and row reads take no lock (see
+ * {@link MemoryTable}) and use the table's secondary indexes for
+ * equality and range predicates on indexed columns.
+ */
 public class MemoryStorageSource extends NoSqlStorageSource {
     
-    private Map<String, MemoryTable> tableMap = new HashMap<String,MemoryTable>();
+    private ConcurrentHashMap<String, MemoryTable> tableMap = new ConcurrentHashMap<String,MemoryTable>();
     IPktInProcessingTimeService pktinProcessingTime;
     
-    synchronized private MemoryTable getTable(String tableName, boolean create) {
+    private MemoryTable getTable(String tableName, boolean create) {
         MemoryTable table = tableMap.get(tableName);
         if (table == null) {
             if (!create)
                 throw new StorageException("Table " + tableName + " does not exist");
-            table = new MemoryTable(tableName);
-            tableMap.put(tableName, table);
+            table = tableMap.computeIfAbsent(tableName, MemoryTable::new);
         }
         return table;
     }
     
+    /*
+     * Looks up the rows with the given keys, dropping those that no longer
+     * exist or no longer match because they were changed after the index
+     * lookup.
+     */
+    private List<Map<String,Object>> getIndexedRows(MemoryTable table, Collection<Object> rowKeys,
+            String predicateColumnName, Comparable<?> startValue, boolean startInclusive,
+            Comparable<?> endValue, boolean endInclusive, boolean equality) {
+        List<Map<String,Object>> result = new ArrayList<Map<String,Object>>(rowKeys.size());
+        for (Object rowKey : rowKeys) {
+            Map<String,Object> row = table.getRow(rowKey);
+            if (row == null)
+                continue;
+            Object v = row.get(predicateColumnName);
+            if (equality ? matchesEquality(v, startValue)
+                    : matchesRange(v, startValue, startInclusive, endValue, endInclusive))
+                result.add(row);
+        }
+        return result;
+    }
+    
+    private static boolean matchesEquality(Object v, Comparable<?> value) {
+        if (value != null)
+            return (v != null) && value.equals(v);
+        return v == null;
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean matchesRange(Object v, Comparable<?> startValue, boolean startInclusive,
+            Comparable<?> endValue, boolean endInclusive) {
+        Comparable value = (Comparable) v;
+        if (value == null)
+            return false;
+        if (startValue != null) {
+            int compareResult = value.compareTo(startValue);
+            if ((compareResult < 0) || (!startInclusive && (compareResult == 0)))
+                return false;
+        }
+        if (endValue != null) {
+            int compareResult = value.compareTo(endValue);
+            if ((compareResult > 0) || (!endInclusive && (compareResult == 0)))
+                return false;
+        }
+        return true;
+    }
+    
     @Override
     protected Collection<Map<String,Object>> getAllRows(String tableName, String[] columnNameList) {
         MemoryTable table = getTable(tableName, false);
@@ -65,43 +117,33 @@ public class MemoryStorageSource extends NoSqlStorageSource {
     protected List<Map<String,Object>> executeEqualityQuery(String tableName,
             String[] columnNameList, String predicateColumnName, Comparable<?> value) {
         MemoryTable table = getTable(tableName, false);
+        Collection<Object> rowKeys = table.getRowKeys(predicateColumnName, value);
+        if (rowKeys != null)
+            return getIndexedRows(table, rowKeys, predicateColumnName, value, true, value, true, true);
+
         List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
-        synchronized (table) {
-            Collection<Map<String,Object>> allRows = table.getAllRows();
-            for (Map<String,Object> row : allRows) {
-                Object v = row.get(predicateColumnName);
-                if (value != null) {
-                    if ((v != null) && value.equals(v))
-                        result.add(row);
-                } else if (v == null) {
-                    result.add(row);
-                }
-            }
+        for (Map<String,Object> row : table.getAllRows()) {
+            if (matchesEquality(row.get(predicateColumnName), value))
+                result.add(row);
         }
         return result;
     }
     
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
     protected List<Map<String,Object>> executeRangeQuery(String tableName,
             String[] columnNameList, String predicateColumnName,
             Comparable<?> startValue, boolean startInclusive, Comparable<?> endValue, boolean endInclusive) {
         MemoryTable table = getTable(tableName, false);
+        Collection<Object> rowKeys = table.getRowKeys(predicateColumnName,
+                startValue, startInclusive, endValue, endInclusive);
+        if (rowKeys != null)
+            return getIndexedRows(table, rowKeys, predicateColumnName,
+                    startValue, startInclusive, endValue, endInclusive, false);
+
         List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
-        synchronized (table) {
-            Collection<Map<String,Object>> allRows = table.getAllRows();
-            for (Map<String,Object> row : allRows) {
-                Comparable value = (Comparable) row.get(predicateColumnName);
-                if (value != null) {
-                    int compareResult = value.compareTo(startValue);
-                    if ((compareResult > 0) || (startInclusive && (compareResult >= 0))) {
-                        compareResult = value.compareTo(endValue);
-                        if ((compareResult < 0) || (startInclusive && (compareResult <= 0))) {
-                            result.add(row);
-                        }
-                    }
-                }
-            }
+        for (Map<String,Object> row : table.getAllRows()) {
+            if (matchesRange(row.get(predicateColumnName), startValue, startInclusive, endValue, endInclusive))
+                result.add(row);
         }
         return result;
     }
@@ -112,10 +154,11 @@ public class MemoryStorageSource extends NoSqlStorageSource {
         String primaryKeyName = getTablePrimaryKeyName(tableName);
         synchronized (table) {
             for (Map<String,Object> row : insertRowList) {
+                /* Copied, since the table's rows must not change once stored */
+                row = new HashMap<String,Object>(row);
                 Object primaryKey = row.get(primaryKeyName);
                 if (primaryKey == null) {
                     if (primaryKeyName.equals(DEFAULT_PRIMARY_KEY_NAME)) {
-                        row = new HashMap<String,Object>(row);
                         primaryKey = table.getNextId();
                         row.put(primaryKeyName, primaryKey);
                     }
@@ -133,9 +176,12 @@ public class MemoryStorageSource extends NoSqlStorageSource {
                 Map<String,Object> row = table.getRow(rowKey);
                 if (row == null)
                     row = table.newRow(rowKey);
+                else
+                    row = new HashMap<String,Object>(row);
                 for (Map.Entry<String,Object> entry: updateRowList.entrySet()) {
                     row.put(entry.getKey(), entry.getValue());
                 }
+                table.insertRow(rowKey, row);
             }
         }
     }
@@ -152,9 +198,12 @@ public class MemoryStorageSource extends NoSqlStorageSource {
                 Map<String,Object> row = table.getRow(rowKey);
                 if (row == null)
                     row = table.newRow(rowKey);
+                else
+                    row = new HashMap<String,Object>(row);
                 for (Map.Entry<String,Object> entry: updateRow.entrySet()) {
                     row.put(entry.getKey(), entry.getValue());
                 }
+                table.insertRow(rowKey, row);
             }
         }
     }
@@ -175,6 +224,15 @@ public class MemoryStorageSource extends NoSqlStorageSource {
         getTable(tableName, true);
     }
     
+    @Override
+    public void setColumnIndexMode(String tableName, String columnName, ColumnIndexMode indexMode) {
+        super.setColumnIndexMode(tableName, columnName, indexMode);
+        MemoryTable table = getTable(tableName, true);
+        synchronized (table) {
+            table.setIndex(columnName, indexMode);
+        }
+    }
+    
     public void setPktinProcessingTime(
             IPktInProcessingTimeService pktinProcessingTime) {
         this.pktinProcessingTime = pktinProcessingTime;
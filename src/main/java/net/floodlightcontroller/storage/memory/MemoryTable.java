@@ -17,20 +17,130 @@
 
 package net.floodlightcontroller.storage.memory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.storage.nosql.NoSqlStorageSource.ColumnIndexMode;
+
+/**
+ * The rows of one table, plus secondary indexes on the columns that have
+ * an index mode: a hash index for EQUALITY_INDEXED columns and an ordered
+ * one for RANGE_INDEXED columns.
+ *
+ * Rows are never modified once stored; an update stores a new row. So
+ * readers neither lock nor copy: they read rows and indexes concurrently
+ * with writers, and see each row either before or after a write. Writers
+ * (and getNextId()) must hold the table's monitor, which keeps the rows
+ * and the indexes consistent with each other. A reader may see an index
+ * entry for a row that is being changed, so it must check the row it
+ * looks up still matches.
+ */
 public class MemoryTable {
+    protected static Logger log = LoggerFactory.getLogger(MemoryTable.class);
 
     private String tableName;
-    private Map<Object,Map<String,Object>> rowMap;
+    private ConcurrentSkipListMap<Object,Map<String,Object>> rowMap;
+    private ConcurrentHashMap<String,ColumnIndex> indexMap;
     private int nextId;
     
+    /**
+     * The primary keys of the rows, by their value in one column
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static class ColumnIndex {
+        private final String columnName;
+        private final ConcurrentMap<Object,Set<Object>> keysByValue;
+        private final Set<Object> keysWithNull = new ConcurrentSkipListSet<Object>();
+        /* Cleared if a value cannot be ordered against the others */
+        private volatile boolean usable = true;
+
+        ColumnIndex(String columnName, boolean ordered) {
+            this.columnName = columnName;
+            if (ordered)
+                keysByValue = new ConcurrentSkipListMap<Object,Set<Object>>();
+            else
+                keysByValue = new ConcurrentHashMap<Object,Set<Object>>();
+        }
+
+        boolean isOrdered() {
+            return keysByValue instanceof NavigableMap;
+        }
+
+        void add(Object rowKey, Map<String,Object> row) {
+            Object value = row.get(columnName);
+            if (value == null) {
+                keysWithNull.add(rowKey);
+                return;
+            }
+            try {
+                Set<Object> keys = keysByValue.get(value);
+                if (keys == null) {
+                    keys = new ConcurrentSkipListSet<Object>();
+                    keysByValue.put(value, keys);
+                }
+                keys.add(rowKey);
+            } catch (ClassCastException e) {
+                log.warn("Column {} has values of different types; not using its index", columnName);
+                usable = false;
+            }
+        }
+
+        void remove(Object rowKey, Map<String,Object> row) {
+            Object value = row.get(columnName);
+            if (value == null) {
+                keysWithNull.remove(rowKey);
+                return;
+            }
+            try {
+                Set<Object> keys = keysByValue.get(value);
+                if (keys != null) {
+                    keys.remove(rowKey);
+                    if (keys.isEmpty())
+                        keysByValue.remove(value);
+                }
+            } catch (ClassCastException e) {
+                usable = false;
+            }
+        }
+
+        Collection<Object> getKeys(Object value) {
+            Set<Object> keys = (value == null) ? keysWithNull : keysByValue.get(value);
+            return (keys == null) ? Collections.emptySet() : keys;
+        }
+
+        Collection<Object> getKeys(Object startValue, boolean startInclusive,
+                Object endValue, boolean endInclusive) {
+            NavigableMap<Object,Set<Object>> m = (NavigableMap<Object,Set<Object>>) keysByValue;
+            if (startValue != null)
+                m = m.tailMap(startValue, startInclusive);
+            if (endValue != null)
+                m = m.headMap(endValue, endInclusive);
+            List<Object> keys = new ArrayList<Object>();
+            for (Set<Object> s : m.values())
+                keys.addAll(s);
+            if (m.size() > 1)
+                Collections.sort((List) keys);
+            return keys;
+        }
+    }
+
     MemoryTable(String tableName) {
         this.tableName = tableName;
-        rowMap = new TreeMap<Object,Map<String,Object>>();
+        rowMap = new ConcurrentSkipListMap<Object,Map<String,Object>>();
+        indexMap = new ConcurrentHashMap<String,ColumnIndex>();
         nextId = 0;
     }
     
@@ -50,20 +160,77 @@ public class MemoryTable {
     // rkv: Do we still need this? Probably needs to be tweaked a bit
     // to work with the support for specifying which column to use as the
     // primary key
+    /**
+     * @return the values of a new row with the given key; not stored
+     * until passed to insertRow()
+     */
     Map<String,Object> newRow(Object key) {
         Map<String,Object> row = new HashMap<String, Object>();
         row.put("id", key);
-        rowMap.put(key, row);
         return row;
     }
     
+    /**
+     * Stores a row, replacing any row with the same key. The row must not
+     * be modified afterwards.
+     */
     void insertRow(Object key, Map<String,Object> rowValues) {
         assert(key != null);
-        rowMap.put(key, rowValues);
+        Map<String,Object> oldRow = rowMap.put(key, rowValues);
+        for (ColumnIndex index : indexMap.values()) {
+            if (oldRow != null)
+                index.remove(key, oldRow);
+            index.add(key, rowValues);
+        }
     }
     
     void deleteRow(Object rowKey) {
-        rowMap.remove(rowKey);
+        Map<String,Object> oldRow = rowMap.remove(rowKey);
+        if (oldRow != null) {
+            for (ColumnIndex index : indexMap.values())
+                index.remove(rowKey, oldRow);
+        }
+    }
+    
+    /**
+     * Builds or drops the index of a column. Must hold the table's monitor.
+     */
+    void setIndex(String columnName, ColumnIndexMode indexMode) {
+        if (indexMode == ColumnIndexMode.NOT_INDEXED) {
+            indexMap.remove(columnName);
+            return;
+        }
+        ColumnIndex index = new ColumnIndex(columnName,
+                indexMode == ColumnIndexMode.RANGE_INDEXED);
+        for (Map.Entry<Object,Map<String,Object>> entry : rowMap.entrySet())
+            index.add(entry.getKey(), entry.getValue());
+        indexMap.put(columnName, index);
+    }
+    
+    /**
+     * @return the keys of the rows whose value in the column equals the
+     * given value (or is null, if value is null); null if the column has
+     * no usable index
+     */
+    Collection<Object> getRowKeys(String columnName, Object value) {
+        ColumnIndex index = indexMap.get(columnName);
+        if ((index == null) || !index.usable)
+            return null;
+        return index.getKeys(value);
+    }
+    
+    /**
+     * @return the keys of the rows whose value in the column is in the
+     * given range, in key order; a null start or end value leaves the
+     * range open on that side. Null if the column has no usable ordered
+     * index.
+     */
+    Collection<Object> getRowKeys(String columnName, Object startValue, boolean startInclusive,
+            Object endValue, boolean endInclusive) {
+        ColumnIndex index = indexMap.get(columnName);
+        if ((index == null) || !index.usable || !index.isOrdered())
+            return null;
+        return index.getKeys(startValue, startInclusive, endValue, endInclusive);
     }
     
     Integer getNextId() {
@@ -33,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,9 +56,9 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
     
     protected static final String DEFAULT_PRIMARY_KEY_NAME = "id";
     
-    private Map<String,String> tablePrimaryKeyMap = new HashMap<String,String>();
+    private Map<String,String> tablePrimaryKeyMap = new ConcurrentHashMap<String,String>();
     private Map<String, Map<String,ColumnIndexMode>> tableIndexedColumnMap =
-        new HashMap<String,Map<String,ColumnIndexMode>>();
+        new ConcurrentHashMap<String,Map<String,ColumnIndexMode>>();
     
     abstract static class NoSqlPredicate {
 
@@ -71,6 +72,14 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
             return false;
         }
         
+        /**
+         * Whether execute() looks up a single value in an index, which is
+         * assumed to select fewer rows than a range or a compound predicate
+         */
+        public boolean isEqualityLookup() {
+            return false;
+        }
+        
         public List<Map<String,Object>> execute(String[] columnNames) {
             assert(false);
             return null;
@@ -211,6 +220,10 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
             return (startValue == endValue) && startInclusive && endInclusive;
         }
         
+        public boolean isEqualityLookup() {
+            return isEqualityRange();
+        }
+        
         public boolean canExecuteEfficiently() {
             ColumnIndexMode indexMode = storageSource.getColumnIndexMode(tableName, columnName);
             switch (indexMode) {
@@ -507,6 +520,35 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
         }
         
         public List<Map<String,Object>> execute(String columnNames[]) {
+            if (operator == CompoundPredicate.Operator.AND) {
+                /*
+                 * Fetch the rows of one indexed predicate, preferring an
+                 * equality lookup, and check the others on those rows.
+                 * That is cheaper than fetching, sorting and merging the
+                 * rows of every indexed predicate.
+                 */
+                NoSqlPredicate drivingPredicate = null;
+                for (NoSqlPredicate predicate: predicateList) {
+                    if (predicate.canExecuteEfficiently() && ((drivingPredicate == null) ||
+                            (predicate.isEqualityLookup() && !drivingPredicate.isEqualityLookup()))) {
+                        drivingPredicate = predicate;
+                    }
+                }
+                List<Map<String,Object>> filteredRowList = new ArrayList<Map<String,Object>>();
+                for (Map<String,Object> row: drivingPredicate.execute(columnNames)) {
+                    boolean matches = true;
+                    for (NoSqlPredicate predicate: predicateList) {
+                        if ((predicate != drivingPredicate) && !predicate.matchesRow(row)) {
+                            matches = false;
+                            break;
+                        }
+                    }
+                    if (matches)
+                        filteredRowList.add(row);
+                }
+                return filteredRowList;
+            }
+
             List<Map<String,Object>> combinedRowList = null;
             Set<NoSqlPredicate> inefficientPredicates = new HashSet<NoSqlPredicate>();
             for (NoSqlPredicate predicate: predicateList) {
@@ -599,7 +641,7 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
     public void setColumnIndexMode(String tableName, String columnName, ColumnIndexMode indexMode) {
         Map<String, ColumnIndexMode> indexedColumnMap = tableIndexedColumnMap.get(tableName);
         if (indexedColumnMap == null) {
-            indexedColumnMap = new HashMap<String,ColumnIndexMode>();
+            indexedColumnMap = new ConcurrentHashMap<String,ColumnIndexMode>();
             tableIndexedColumnMap.put(tableName, indexedColumnMap);
         }
         indexedColumnMap.put(columnName, indexMode);
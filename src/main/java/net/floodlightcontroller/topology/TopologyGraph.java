@@ -0,0 +1,357 @@
+package net.floodlightcontroller.topology;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import java.util.*;
+
+/**
+ * An immutable, array-based copy of the links a {@link TopologyInstance}
+ * computes paths over, used for all of its shortest path computations.
+ *
+ * Switches and switch ports are given dense indices. The links into and
+ * out of each switch are stored in compressed sparse row form, i.e. the
+ * links of switch i are adjacency[start[i]] to adjacency[start[i + 1] - 1],
+ * and link costs are kept in an int[]. Dijkstra runs over these arrays with
+ * an indexed binary heap that supports decrease-key, so it allocates
+ * nothing but its result arrays.
+ *
+ * A graph is built once per topology instance and is safe to use from
+ * several threads at once.
+ */
+class TopologyGraph {
+    private final DatapathId[] nodes; /* sorted, so the index order is the DPID order */
+    private final Map<DatapathId, Integer> nodeIndex;
+    private final Map<NodePortTuple, Integer> portIndex;
+
+    private final Link[] links;
+    private final int[] linkSrc;
+    private final int[] linkDst;
+    private final int[] linkSrcPort;
+    private final int[] linkDstPort;
+    private final int[] linkCost;
+
+    /* Links into each switch; used for destination-rooted trees */
+    private final int[] inStart;
+    private final int[] inLinks;
+    /* Links out of each switch; used for source-rooted trees */
+    private final int[] outStart;
+    private final int[] outLinks;
+
+    /**
+     * @param linkDpidMap the links of each switch. As with a HashMap based
+     * Dijkstra over the same map, a link is followed towards its source only
+     * if it is listed under its destination switch, and towards its
+     * destination only if it is listed under its source switch.
+     * @param linkCost link costs; links without an entry cost 1
+     */
+    TopologyGraph(Map<DatapathId, Set<Link>> linkDpidMap, Map<Link, Integer> linkCost) {
+        nodes = linkDpidMap.keySet().toArray(new DatapathId[0]);
+        Arrays.sort(nodes);
+        nodeIndex = new HashMap<DatapathId, Integer>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            nodeIndex.put(nodes[i], i);
+        }
+
+        /* Collect every distinct link, in a stable order */
+        Map<Link, Integer> linkIndex = new LinkedHashMap<Link, Integer>();
+        for (DatapathId n : nodes) {
+            for (Link l : linkDpidMap.get(n)) {
+                if (!linkIndex.containsKey(l) && nodeIndex.containsKey(l.getSrc())
+                        && nodeIndex.containsKey(l.getDst()) && !l.getSrc().equals(l.getDst())) {
+                    linkIndex.put(l, linkIndex.size());
+                }
+            }
+        }
+
+        int m = linkIndex.size();
+        links = new Link[m];
+        linkSrc = new int[m];
+        linkDst = new int[m];
+        linkSrcPort = new int[m];
+        linkDstPort = new int[m];
+        this.linkCost = new int[m];
+        portIndex = new HashMap<NodePortTuple, Integer>();
+        for (Map.Entry<Link, Integer> e : linkIndex.entrySet()) {
+            Link l = e.getKey();
+            int i = e.getValue();
+            links[i] = l;
+            linkSrc[i] = nodeIndex.get(l.getSrc());
+            linkDst[i] = nodeIndex.get(l.getDst());
+            linkSrcPort[i] = getOrAddPort(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+            linkDstPort[i] = getOrAddPort(new NodePortTuple(l.getDst(), l.getDstPort()));
+            Integer cost = linkCost == null ? null : linkCost.get(l);
+            this.linkCost[i] = cost == null ? 1 : cost;
+        }
+
+        /* Build CSR adjacency; counting pass, then fill */
+        int n = nodes.length;
+        inStart = new int[n + 1];
+        outStart = new int[n + 1];
+        boolean[] usableIn = new boolean[m];
+        boolean[] usableOut = new boolean[m];
+        for (int i = 0; i < m; i++) {
+            usableIn[i] = linkDpidMap.get(nodes[linkDst[i]]).contains(links[i]);
+            usableOut[i] = linkDpidMap.get(nodes[linkSrc[i]]).contains(links[i]);
+            if (usableIn[i]) inStart[linkDst[i] + 1]++;
+            if (usableOut[i]) outStart[linkSrc[i] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            inStart[i + 1] += inStart[i];
+            outStart[i + 1] += outStart[i];
+        }
+        inLinks = new int[inStart[n]];
+        outLinks = new int[outStart[n]];
+        int[] inPos = Arrays.copyOf(inStart, n);
+        int[] outPos = Arrays.copyOf(outStart, n);
+        for (int i = 0; i < m; i++) {
+            if (usableIn[i]) inLinks[inPos[linkDst[i]]++] = i;
+            if (usableOut[i]) outLinks[outPos[linkSrc[i]]++] = i;
+        }
+    }
+
+    private int getOrAddPort(NodePortTuple npt) {
+        Integer i = portIndex.get(npt);
+        if (i == null) {
+            i = portIndex.size();
+            portIndex.put(npt, i);
+        }
+        return i;
+    }
+
+    int getNodeCount() {
+        return nodes.length;
+    }
+
+    int getPortCount() {
+        return portIndex.size();
+    }
+
+    int getLinkCount() {
+        return links.length;
+    }
+
+    /**
+     * @return the index of the switch, or -1 if it has no links
+     */
+    int getNodeIndex(DatapathId node) {
+        Integer i = nodeIndex.get(node);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return the index of the switch port, or -1 if it has no links
+     */
+    int getPortIndex(NodePortTuple npt) {
+        Integer i = portIndex.get(npt);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Single-source shortest paths.
+     *
+     * @param root the tree root
+     * @param isDstRooted if true, compute the paths from every switch to
+     * root; otherwise from root to every switch
+     * @param excludedNodes switches that must not be used, by index; may be null
+     * @param excludedPorts switch ports that must not be used, by index; may
+     * be null. In a destination-rooted tree a link is excluded by its
+     * destination port, otherwise by its source port.
+     * @return the tree
+     */
+    Tree dijkstra(DatapathId root, boolean isDstRooted,
+            boolean[] excludedNodes, boolean[] excludedPorts) {
+        int n = nodes.length;
+        int r = getNodeIndex(root);
+        int[] dist = new int[n];
+        int[] parentLink = new int[n];
+        Arrays.fill(dist, TopologyInstance.MAX_PATH_WEIGHT);
+        Arrays.fill(parentLink, -1);
+        if (r < 0) {
+            return new Tree(root, -1, dist, parentLink, excludedNodes);
+        }
+
+        int[] start = isDstRooted ? inStart : outStart;
+        int[] adj = isDstRooted ? inLinks : outLinks;
+        int[] far = isDstRooted ? linkSrc : linkDst;
+        int[] port = isDstRooted ? linkDstPort : linkSrcPort;
+
+        IndexedHeap heap = new IndexedHeap(n, dist);
+        dist[r] = 0;
+        heap.insert(r);
+
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            int du = dist[u];
+            if (du >= TopologyInstance.MAX_PATH_WEIGHT) break;
+
+            for (int e = start[u]; e < start[u + 1]; e++) {
+                int l = adj[e];
+                int v = far[l];
+                if (excludedNodes != null && excludedNodes[v]) continue;
+                if (excludedPorts != null && excludedPorts[port[l]]) continue;
+                if (heap.isSettled(v)) continue;
+
+                int nd = du + linkCost[l];
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    parentLink[v] = l;
+                    heap.insertOrDecrease(v);
+                }
+            }
+        }
+        return new Tree(root, r, dist, parentLink, excludedNodes);
+    }
+
+    /**
+     * The result of {@link TopologyGraph#dijkstra}: a cost per switch and,
+     * for every reachable switch but the root, the link that leads one hop
+     * closer to (destination-rooted) or away from (source-rooted) the root.
+     */
+    class Tree {
+        private final DatapathId root;
+        private final int rootIndex;
+        private final int[] dist;
+        private final int[] parentLink;
+        private final boolean[] excludedNodes;
+
+        private Tree(DatapathId root, int rootIndex, int[] dist, int[] parentLink,
+                boolean[] excludedNodes) {
+            this.root = root;
+            this.rootIndex = rootIndex;
+            this.dist = dist;
+            this.parentLink = parentLink;
+            this.excludedNodes = excludedNodes;
+        }
+
+        DatapathId getRoot() {
+            return root;
+        }
+
+        /**
+         * @return the cost of node, {@link TopologyInstance#MAX_PATH_WEIGHT}
+         * if unreachable, or -1 if node is not part of the graph
+         */
+        int getCost(DatapathId node) {
+            if (node.equals(root)) return 0;
+            int i = getNodeIndex(node);
+            if (i < 0 || (excludedNodes != null && excludedNodes[i])) return -1;
+            return dist[i];
+        }
+
+        /**
+         * @return the tree link of node, or null for the root or an
+         * unreachable node
+         */
+        Link getTreeLink(DatapathId node) {
+            int i = getNodeIndex(node);
+            if (i < 0 || parentLink[i] < 0) return null;
+            return links[parentLink[i]];
+        }
+
+        /**
+         * @return the tree in the form kept by an {@link Archipelago}
+         */
+        BroadcastTree toBroadcastTree() {
+            HashMap<DatapathId, Link> treeLinks = new HashMap<DatapathId, Link>();
+            HashMap<DatapathId, Integer> costs = new HashMap<DatapathId, Integer>();
+            for (int i = 0; i < nodes.length; i++) {
+                if (excludedNodes != null && excludedNodes[i] && i != rootIndex) continue;
+                treeLinks.put(nodes[i], parentLink[i] < 0 ? null : links[parentLink[i]]);
+                costs.put(nodes[i], dist[i]);
+            }
+            costs.put(root, 0);
+            return new BroadcastTree(treeLinks, costs);
+        }
+    }
+
+    /*
+     * Binary min-heap of node indices ordered by (dist, index), with the
+     * position of every node kept so its key can be decreased in O(log n).
+     * Ties are broken by index, i.e. by DPID.
+     */
+    private static final class IndexedHeap {
+        private static final int NOT_INSERTED = -1;
+        private static final int SETTLED = -2;
+
+        private final int[] heap;
+        private final int[] pos;
+        private final int[] key;
+        private int size;
+
+        IndexedHeap(int n, int[] key) {
+            this.heap = new int[n];
+            this.pos = new int[n];
+            this.key = key;
+            Arrays.fill(pos, NOT_INSERTED);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        boolean isSettled(int v) {
+            return pos[v] == SETTLED;
+        }
+
+        void insert(int v) {
+            heap[size] = v;
+            pos[v] = size;
+            siftUp(size++);
+        }
+
+        void insertOrDecrease(int v) {
+            if (pos[v] == NOT_INSERTED) {
+                insert(v);
+            } else {
+                siftUp(pos[v]);
+            }
+        }
+
+        int poll() {
+            int top = heap[0];
+            pos[top] = SETTLED;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                pos[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private boolean less(int a, int b) {
+            return key[a] < key[b] || (key[a] == key[b] && a < b);
+        }
+
+        private void siftUp(int i) {
+            int v = heap[i];
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (!less(v, heap[p])) break;
+                heap[i] = heap[p];
+                pos[heap[i]] = i;
+                i = p;
+            }
+            heap[i] = v;
+            pos[v] = i;
+        }
+
+        private void siftDown(int i) {
+            int v = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int c = 2 * i + 1;
+                if (c + 1 < size && less(heap[c + 1], heap[c])) c++;
+                if (!less(heap[c], v)) break;
+                heap[i] = heap[c];
+                pos[heap[i]] = i;
+                i = c;
+            }
+            heap[i] = v;
+            pos[v] = i;
+        }
+    }
+}
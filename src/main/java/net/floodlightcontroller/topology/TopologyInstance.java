@@ -21,6 +21,7 @@ import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.linkdiscovery.Link;
 import net.floodlightcontroller.routing.BroadcastTree;
+import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
 import net.floodlightcontroller.routing.Path;
 import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.statistics.SwitchPortBandwidth;
@@ -35,6 +36,9 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 /**
@@ -81,6 +85,15 @@ public class TopologyInstance {
     private Map<DatapathId, Set<NodePortTuple>> portsBroadcastPerArchipelago; /* broadcast ports in each archipelago ID */
     private Map<PathId, List<Path>>             pathcache; /* contains computed paths ordered best to worst */
 
+    /* Path computation */
+    private final PATH_METRIC                   pathMetric; /* metric in effect when the instance was created */
+    private final int                           maxPathsToCompute; /* K used for Yen's */
+    private Map<Link, Integer>                  linkCost; /* computed once per instance */
+    private Map<DatapathId, Set<Link>>          linkDpidMap; /* links per switch used for path computation */
+    private TopologyGraph                       graph; /* array form of linkDpidMap and linkCost */
+    private boolean                             lazyPaths; /* compute missing pathcache entries on demand */
+    private ForkJoinPool                        pathComputationPool; /* null computes paths in the calling thread */
+
     protected TopologyInstance(Map<DatapathId, Set<OFPort>> portsWithLinks,
             Set<NodePortTuple> portsBlocked,
             Map<NodePortTuple, Set<Link>> linksNonBcastNonTunnel,
@@ -130,14 +143,40 @@ public class TopologyInstance {
         this.portsBroadcastAll= new HashSet<NodePortTuple>();
         this.portsBroadcastPerSwitch = new HashMap<DatapathId,Set<OFPort>>();
 
-        this.pathcache = new HashMap<PathId, List<Path>>();
+        this.pathcache = new ConcurrentHashMap<PathId, List<Path>>();
+        this.pathMetric = TopologyManager.getPathMetricInternal();
+        this.maxPathsToCompute = TopologyManager.getMaxPathsToComputeInternal();
+        this.lazyPaths = false;
 
         this.portsBroadcastPerArchipelago = new HashMap<DatapathId, Set<NodePortTuple>>();
 
         this.archipelagoFromCluster = new HashMap<Cluster, Archipelago>();
     }
 
+    /**
+     * Spread the path computations of {@link #compute()} over the given
+     * pool, which the caller owns, instead of running them in the calling
+     * thread.
+     */
+    protected void setPathComputationPool(ForkJoinPool pool) {
+        this.pathComputationPool = pool;
+    }
+
     protected void compute() {
+        compute(null);
+    }
+
+    /**
+     * Compute the topology. If a previous instance is given and it was
+     * computed with the same path metric and number of paths, only the
+     * pathcache entries affected by the links that changed between the two
+     * instances are dropped, and the rest are carried over. Dropped and new
+     * entries are then computed lazily, the first time they are asked for.
+     *
+     * @param previous the instance this one replaces, or null to compute
+     * all paths up front
+     */
+    protected void compute(TopologyInstance previous) {
         /*
          * Step 1: Compute clusters ignoring ports with > 2 links and 
          * blocked links.
@@ -165,7 +204,11 @@ public class TopologyInstance {
          * path located (i.e. first run of dijkstra's algorithm) will be used 
          * as the broadcast tree for the archipelago.
          */
-        computeOrderedPaths();
+        if (previous != null && canReusePaths(previous)) {
+            computeOrderedPathsIncremental(previous);
+        } else {
+            computeOrderedPaths();
+        }
 
         /*
          * Step 5: Determine the broadcast ports for each archipelago. These are
@@ -441,60 +484,6 @@ public class TopologyInstance {
         return portsBroadcastAll.contains(npt);
     }
 
-    private class NodeDist implements Comparable<NodeDist> {
-        private final DatapathId node;
-        public DatapathId getNode() {
-            return node;
-        }
-
-        private final int dist;
-        public int getDist() {
-            return dist;
-        }
-
-        public NodeDist(DatapathId node, int dist) {
-            this.node = node;
-            this.dist = dist;
-        }
-
-        @Override
-        public int compareTo(NodeDist o) {
-            if (o.dist == this.dist) {
-                return (int)(this.node.getLong() - o.node.getLong());
-            }
-            return this.dist - o.dist;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            NodeDist other = (NodeDist) obj;
-            if (!getOuterType().equals(other.getOuterType()))
-                return false;
-            if (node == null) {
-                if (other.node != null)
-                    return false;
-            } else if (!node.equals(other.node))
-                return false;
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            assert false : "hashCode not designed";
-        return 42;
-        }
-
-        private TopologyInstance getOuterType() {
-            return TopologyInstance.this;
-        }
-    }
-
     protected void identifyArchipelagos() {
         // Iterate through each external link and create/merge archipelagos based on the
         // islands that each link is connected to
@@ -572,85 +561,6 @@ public class TopologyInstance {
     }
     
 
-    /*
-     * Dijkstra that calculates destination rooted trees over the entire topology.
-     */
-    private BroadcastTree dijkstra(Map<DatapathId, Set<Link>> links, DatapathId root,
-            Map<Link, Integer> linkCost,
-            boolean isDstRooted) {
-        HashMap<DatapathId, Link> nexthoplinks = new HashMap<DatapathId, Link>();
-        HashMap<DatapathId, Integer> cost = new HashMap<DatapathId, Integer>();
-        int w;
-
-        for (DatapathId node : links.keySet()) {
-            nexthoplinks.put(node, null);
-            cost.put(node, MAX_PATH_WEIGHT);
-            //log.debug("Added max cost to {}", node);
-        }
-
-        HashMap<DatapathId, Boolean> seen = new HashMap<DatapathId, Boolean>();
-        PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
-        nodeq.add(new NodeDist(root, 0));
-        cost.put(root, 0);
-
-        //log.debug("{}", links);
-
-        while (nodeq.peek() != null) {
-            NodeDist n = nodeq.poll();
-            DatapathId cnode = n.getNode();
-            int cdist = n.getDist();
-
-            if (cdist >= MAX_PATH_WEIGHT) break;
-            if (seen.containsKey(cnode)) continue;
-            seen.put(cnode, true);
-
-            //log.debug("cnode {} and links {}", cnode, links.get(cnode));
-            if (links.get(cnode) == null) continue;
-            for (Link link : links.get(cnode)) {
-                DatapathId neighbor;
-
-                if (isDstRooted == true) {
-                    neighbor = link.getSrc();
-                } else {
-                    neighbor = link.getDst();
-                }
-
-                // links directed toward cnode will result in this condition
-                if (neighbor.equals(cnode)) continue;
-
-                if (seen.containsKey(neighbor)) continue;
-
-                if (linkCost == null || linkCost.get(link) == null) {
-                    w = 1;
-                } else {
-                    w = linkCost.get(link);
-                }
-
-                int ndist = cdist + w; // the weight of the link, always 1 in current version of floodlight.
-                log.debug("Neighbor: {}", neighbor);
-                log.debug("Cost: {}", cost);
-                log.debug("Neighbor cost: {}", cost.get(neighbor));
-
-                if (ndist < cost.get(neighbor)) {
-                    cost.put(neighbor, ndist);
-                    nexthoplinks.put(neighbor, link);
-
-                    NodeDist ndTemp = new NodeDist(neighbor, ndist);
-                    // Remove an object that's already in there.
-                    // Note that the comparison is based on only the node id,
-                    // and not node id and distance.
-                    nodeq.remove(ndTemp);
-                    // add the current object to the queue.
-                    nodeq.add(ndTemp);
-                }
-            }
-        }
-
-        BroadcastTree ret = new BroadcastTree(nexthoplinks, cost);
-
-        return ret;
-    }
-
     /*
      * Creates a map of links and the cost associated with each link
      */
@@ -784,68 +694,289 @@ public class TopologyInstance {
      * in the pathcache.
      */
     private void computeOrderedPaths() {
-        List<Path> paths;
-        PathId pathId;
         pathcache.clear();
+        lazyPaths = false;
+
+        /* Shared by all Yen's runs; build before fanning out */
+        TopologyGraph g = getGraph();
 
+        /*
+         * Archipelagos are independent of each other, and so are the Yen's
+         * runs of every source switch. Each source switch is one task.
+         */
+        List<Runnable> tasks = new ArrayList<Runnable>();
         for (Archipelago a : archipelagos) { /* for each archipelago */
             Set<DatapathId> srcSws = a.getSwitches();
-            Set<DatapathId> dstSws = a.getSwitches();
+            final Set<DatapathId> dstSws = a.getSwitches();
             log.debug("SRC {}", srcSws);
             log.debug("DST {}", dstSws);
 
-            for (DatapathId src : srcSws) { /* permute all member switches */
-                for (DatapathId dst : dstSws) {
-                    log.debug("Calling Yens {} {}", src, dst);
-                    paths = yens(src, dst, TopologyManager.getMaxPathsToComputeInternal(),
-                            a, a);
-                    pathId = new PathId(src, dst);
-                    pathcache.put(pathId, paths);
-                    log.debug("Adding paths {}", paths);
+            for (final DatapathId src : srcSws) { /* permute all member switches */
+                tasks.add(() -> {
+                    for (DatapathId dst : dstSws) {
+                        log.debug("Calling Yens {} {}", src, dst);
+                        List<Path> paths = yens(src, dst, maxPathsToCompute, a, a, false);
+                        pathcache.put(new PathId(src, dst), paths);
+                        log.debug("Adding paths {}", paths);
+                    }
+                });
+            }
+        }
+        runAll(tasks);
+
+        for (Archipelago a : archipelagos) {
+            /* The first tree of the last Yen's run is the archipelago's broadcast tree */
+            DatapathId lastDst = null;
+            for (DatapathId dst : a.getSwitches()) {
+                lastDst = dst;
+            }
+            if (lastDst != null && maxPathsToCompute > 0) {
+                a.setBroadcastTree(g.dijkstra(lastDst, true, null, null).toBroadcastTree());
+            }
+        }
+    }
+
+    /*
+     * Runs the tasks on the topology manager's path computation pool, or
+     * in the calling thread if there is none, and waits for all of them.
+     */
+    private void runAll(List<Runnable> tasks) {
+        ForkJoinPool pool = pathComputationPool;
+        if (pool == null || tasks.size() < 2) {
+            for (Runnable r : tasks) {
+                r.run();
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> submitted = new ArrayList<ForkJoinTask<?>>(tasks.size());
+        for (Runnable r : tasks) {
+            submitted.add(pool.submit(r));
+        }
+        for (ForkJoinTask<?> t : submitted) {
+            t.join();
+        }
+    }
+
+    /*
+     * Paths can only be carried over if link costs are a function of the
+     * links themselves. Link speed and utilization change without any
+     * link discovery update, so those metrics always recompute everything.
+     */
+    private boolean canReusePaths(TopologyInstance previous) {
+        if (previous.pathMetric != pathMetric
+                || previous.maxPathsToCompute != maxPathsToCompute) {
+            return false;
+        }
+        switch (pathMetric) {
+        case LINK_SPEED:
+        case UTILIZATION:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    /*
+     * Carries over the pathcache entries of the previous instance that are
+     * still valid and leaves everything else to be computed on demand.
+     *
+     * An entry is dropped if:
+     *  - src and dst are no longer in the same archipelago,
+     *  - one of its paths uses a link that was removed or whose cost changed, or
+     *  - a link that was added (or got a new cost) could yield a path cheaper
+     *    than the worst one cached, i.e. dist(src, l.src) + cost(l) +
+     *    dist(l.dst, dst) is below it. If fewer than K paths are cached,
+     *    any path through the new link qualifies.
+     */
+    private void computeOrderedPathsIncremental(TopologyInstance previous) {
+        pathcache.clear();
+        lazyPaths = true;
+
+        Map<Link, Integer> oldCost = previous.getLinkCost();
+        Map<Link, Integer> newCost = getLinkCost();
+        Set<Link> oldLinks = previous.getPathLinks();
+        Set<Link> newLinks = getPathLinks();
+
+        Set<Link> removedLinks = new HashSet<Link>();
+        for (Link l : oldLinks) {
+            if (!newLinks.contains(l) || getLinkCost(oldCost, l) != getLinkCost(newCost, l)) {
+                removedLinks.add(l);
+            }
+        }
+        Set<Link> addedLinks = new HashSet<Link>();
+        for (Link l : newLinks) {
+            if (!oldLinks.contains(l) || getLinkCost(oldCost, l) != getLinkCost(newCost, l)) {
+                addedLinks.add(l);
+            }
+        }
+
+        /* Broadcast trees are no longer a by-product of computing every path */
+        TopologyGraph g = getGraph();
+        for (Archipelago a : archipelagos) {
+            a.setBroadcastTree(g.dijkstra(a.getId(), true, null, null).toBroadcastTree());
+        }
+
+        if (addedLinks.size() > switches.size()) {
+            /* Bounding would cost more than recomputing what is asked for */
+            log.info("{} links added or changed. Dropping all {} cached paths",
+                    addedLinks.size(), previous.pathcache.size());
+            return;
+        }
+
+        final List<Link> added = new ArrayList<Link>(addedLinks);
+        final TopologyGraph.Tree[] toLinkSrcTrees = new TopologyGraph.Tree[added.size()];
+        final TopologyGraph.Tree[] fromLinkDstTrees = new TopologyGraph.Tree[added.size()];
+        List<Integer> addedCost = new ArrayList<Integer>(added.size());
+        List<Runnable> tasks = new ArrayList<Runnable>(added.size());
+        for (int i = 0; i < added.size(); i++) {
+            final int idx = i;
+            tasks.add(() -> {
+                toLinkSrcTrees[idx] = g.dijkstra(added.get(idx).getSrc(), true, null, null);
+                fromLinkDstTrees[idx] = g.dijkstra(added.get(idx).getDst(), false, null, null);
+            });
+            addedCost.add(getLinkCost(newCost, added.get(i)));
+        }
+        runAll(tasks);
+        List<TopologyGraph.Tree> toLinkSrc = Arrays.asList(toLinkSrcTrees);
+        List<TopologyGraph.Tree> fromLinkDst = Arrays.asList(fromLinkDstTrees);
+
+        int kept = 0;
+        int dropped = 0;
+        for (Entry<PathId, List<Path>> e : previous.pathcache.entrySet()) {
+            DatapathId src = e.getKey().getSrc();
+            DatapathId dst = e.getKey().getDst();
+            List<Path> paths = e.getValue();
+
+            Archipelago a = getArchipelago(src);
+            if (a == null || !a.equals(getArchipelago(dst))) {
+                dropped++;
+                continue;
+            }
+
+            boolean valid = true;
+            int worstCost = 0;
+            for (Path p : paths) {
+                int cost = 0;
+                List<NodePortTuple> npts = p.getPath();
+                for (int i = 0; i < npts.size() - 1 && valid; i = i + 2) {
+                    Link l = new Link(npts.get(i).getNodeId(), npts.get(i).getPortId(),
+                            npts.get(i + 1).getNodeId(), npts.get(i + 1).getPortId(), U64.ZERO);
+                    if (removedLinks.contains(l)) {
+                        valid = false;
+                    }
+                    cost += getLinkCost(newCost, l);
+                }
+                if (!valid) {
+                    break;
+                }
+                worstCost = Math.max(worstCost, cost);
+            }
+
+            if (valid && !src.equals(dst)) {
+                if (paths.size() < maxPathsToCompute) {
+                    worstCost = MAX_PATH_WEIGHT;
                 }
+                for (int i = 0; i < toLinkSrc.size() && valid; i++) {
+                    int toSrc = toLinkSrc.get(i).getCost(src);
+                    int fromDst = fromLinkDst.get(i).getCost(dst);
+                    if (toSrc < 0 || toSrc >= MAX_PATH_WEIGHT
+                            || fromDst < 0 || fromDst >= MAX_PATH_WEIGHT) {
+                        continue; /* link is not reachable on the way from src to dst */
+                    }
+                    if ((long) toSrc + addedCost.get(i) + fromDst < worstCost) {
+                        valid = false;
+                    }
+                }
+            }
+
+            if (valid) {
+                pathcache.put(e.getKey(), paths);
+                kept++;
+            } else {
+                dropped++;
+            }
+        }
+
+        log.info("Incremental path computation: {} links removed/changed, {} added/changed, "
+                + "kept {} and dropped {} cached path sets", 
+                new Object[] { removedLinks.size(), addedLinks.size(), kept, dropped });
+    }
+
+    /*
+     * Returns the cached paths for id, computing them first if the instance
+     * was built incrementally and they are not known yet. Returns null if
+     * there are no paths to compute.
+     */
+    private List<Path> getCachedPaths(PathId id) {
+        List<Path> paths = pathcache.get(id);
+        if (paths == null && lazyPaths) {
+            final Archipelago a = getArchipelago(id.getSrc());
+            if (a != null && a.equals(getArchipelago(id.getDst()))) {
+                paths = pathcache.computeIfAbsent(id,
+                        pid -> yens(pid.getSrc(), pid.getDst(), maxPathsToCompute, a, a, false));
             }
         }
+        return paths;
+    }
+
+    private Map<Link, Integer> getLinkCost() {
+        if (linkCost == null) {
+            linkCost = initLinkCostMap();
+        }
+        return linkCost;
+    }
+
+    private static int getLinkCost(Map<Link, Integer> linkCost, Link l) {
+        Integer cost = linkCost.get(l);
+        return cost == null ? 1 : cost; /* same default as TopologyGraph */
+    }
+
+    private Map<DatapathId, Set<Link>> getLinkDpidMap() {
+        if (linkDpidMap == null) {
+            linkDpidMap = buildLinkDpidMap(switches, portsWithLinks, links);
+        }
+        return linkDpidMap;
     }
 
-    private Path buildPath(PathId id, BroadcastTree tree) {
-        NodePortTuple npt;
+    private TopologyGraph getGraph() {
+        if (graph == null) {
+            graph = new TopologyGraph(getLinkDpidMap(), getLinkCost());
+        }
+        return graph;
+    }
+
+    /* All links that paths can be computed over */
+    private Set<Link> getPathLinks() {
+        Set<Link> result = new HashSet<Link>();
+        for (Set<Link> s : getLinkDpidMap().values()) {
+            result.addAll(s);
+        }
+        return result;
+    }
+
+    private Path buildPath(PathId id, TopologyGraph.Tree tree) {
         DatapathId srcId = id.getSrc();
         DatapathId dstId = id.getDst();
-        //set of NodePortTuples on the route
-        LinkedList<NodePortTuple> sPorts = new LinkedList<NodePortTuple>();
+        List<NodePortTuple> sPorts = new ArrayList<NodePortTuple>();
 
         if (tree == null) return new Path(id, ImmutableList.of()); /* empty route */
 
-        Map<DatapathId, Link> nexthoplinks = tree.getLinks();
-
         if (!switches.contains(srcId) || !switches.contains(dstId)) {
             // This is a switch that is not connected to any other switch
             // hence there was no update for links (and hence it is not
             // in the network)
             log.debug("buildpath: Standalone switch: {}", srcId);
-
-            // The only possible non-null path for this case is
-            // if srcId equals dstId --- and that too is an 'empty' path []
-
-        } else if ((nexthoplinks != null) && (nexthoplinks.get(srcId) != null)) {
+        } else if (tree.getTreeLink(srcId) != null) {
             while (!srcId.equals(dstId)) {
-                Link l = nexthoplinks.get(srcId);
-                npt = new NodePortTuple(l.getSrc(), l.getSrcPort());
-                sPorts.addLast(npt);
-                npt = new NodePortTuple(l.getDst(), l.getDstPort());
-                sPorts.addLast(npt);
-                srcId = nexthoplinks.get(srcId).getDst();
+                Link l = tree.getTreeLink(srcId);
+                sPorts.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+                sPorts.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+                srcId = l.getDst();
             }
         }
-        // else, no path exists, and path equals null
 
-        Path result = null;
-        if (sPorts != null && !sPorts.isEmpty()) {
-            result = new Path(id, sPorts);
-
-        }
-        log.trace("buildpath: {}", result);
-        return result == null ? new Path(id, ImmutableList.of()) : result;
+        log.trace("buildpath: {}", sPorts);
+        return sPorts.isEmpty() ? new Path(id, ImmutableList.of()) : new Path(id, sPorts);
     }
 
     /*
@@ -909,13 +1040,13 @@ public class TopologyInstance {
      */
     public List<Path> getPathsFast(DatapathId src, DatapathId dst, int k) {
         PathId routeId = new PathId(src, dst);
-        List<Path> routes = pathcache.get(routeId);
+        List<Path> routes = getCachedPaths(routeId);
 
         if (routes == null || k < 1) {
             return ImmutableList.of();
         }
 
-        if (k >= TopologyManager.getMaxPathsToComputeInternal() || k >= routes.size()) {
+        if (k >= maxPathsToCompute || k >= routes.size()) {
             return routes;
         } else {
             return routes.subList(0, k);
@@ -936,12 +1067,12 @@ public class TopologyInstance {
      */
     public List<Path> getPathsSlow(DatapathId src, DatapathId dst, int k) {
         PathId pathId = new PathId(src, dst);
-        List<Path> paths = pathcache.get(pathId);
+        List<Path> paths = getCachedPaths(pathId);
 
         if (paths == null || k < 1) return ImmutableList.of();
 
-        if (k >= TopologyManager.getMaxPathsToComputeInternal() || k >= paths.size()) {
-            return yens(src, dst, k, getArchipelago(src), getArchipelago(dst)); /* heavy computation */
+        if (k >= maxPathsToCompute || k >= paths.size()) {
+            return yens(src, dst, k, getArchipelago(src), getArchipelago(dst), true); /* heavy computation */
         }
         else {
             return new ArrayList<Path>(paths.subList(0, k));
@@ -986,18 +1117,17 @@ public class TopologyInstance {
 
     }
 
-    private List<Path> yens(DatapathId src, DatapathId dst, Integer K, Archipelago aSrc, Archipelago aDst) {
+    private List<Path> yens(DatapathId src, DatapathId dst, Integer K, Archipelago aSrc, Archipelago aDst,
+            boolean setBroadcastTree) {
 
         log.debug("YENS ALGORITHM -----------------");
         log.debug("Asking for paths from {} to {}", src, dst);
         log.debug("Asking for {} paths", K);
 
         // Find link costs
-        Map<Link, Integer> linkCost = initLinkCostMap();
+        Map<Link, Integer> linkCost = getLinkCost();
 
-        Map<DatapathId, Set<Link>> linkDpidMap = buildLinkDpidMap(switches, portsWithLinks, links);
-
-        Map<DatapathId, Set<Link>> copyOfLinkDpidMap = new HashMap<DatapathId, Set<Link>>(linkDpidMap);
+        TopologyGraph g = getGraph();
 
         // A is the list of shortest paths. The number in the list at the end should be less than or equal to K
         // B is the list of possible shortest paths found in this function.
@@ -1021,11 +1151,13 @@ public class TopologyInstance {
         }
 
         /* Use Dijkstra's to find the shortest path, which will also be the first path in A */
-        BroadcastTree bt = dijkstra(copyOfLinkDpidMap, dst, linkCost, true);
+        TopologyGraph.Tree bt = g.dijkstra(dst, true, null, null);
         /* add this initial tree as our archipelago's broadcast tree (aSrc == aDst) */
-        aSrc.setBroadcastTree(bt);
+        if (setBroadcastTree) {
+            aSrc.setBroadcastTree(bt.toBroadcastTree());
+        }
         /* now add the shortest path */
-        log.debug("src {} dst {} tree {}", new Object[] {src, dst, bt});
+        log.debug("src {} dst {}", src, dst);
         Path newroute = buildPath(new PathId(src, dst), bt); /* guaranteed to be in same tree */
 
         if (newroute != null && !newroute.getPath().isEmpty()) { /* should never be null, but might be empty */
@@ -1038,6 +1170,9 @@ public class TopologyInstance {
             return A;
         }
 
+        boolean[] excludedNodes = new boolean[g.getNodeCount()];
+        boolean[] excludedPorts = new boolean[g.getPortCount()];
+
         // Loop through K - 1 times to get other possible shortest paths
         for (int k = 1; k < K; k++) {
             log.trace("k: {}", k);
@@ -1056,29 +1191,29 @@ public class TopologyInstance {
                         path.subList(0, i));
 
 
-                Map<NodePortTuple, Set<Link>> allLinksCopy = new HashMap<NodePortTuple, Set<Link>>(links);
+                Arrays.fill(excludedNodes, false);
+                Arrays.fill(excludedPorts, false);
                 // Remove the links after the spur node that are part of other paths in A so that new paths
                 // found are unique
                 for (Path r : A) {
                     if (r.getPath().size() > (i + 1) && r.getPath().subList(0, i).equals(rootPath.getPath())) {
-                        allLinksCopy.remove(r.getPath().get(i));
-                        allLinksCopy.remove(r.getPath().get(i+1));
+                        excludePort(g, excludedPorts, r.getPath().get(i));
+                        excludePort(g, excludedPorts, r.getPath().get(i + 1));
                     }
                 }
 
                 // Removes the root path so Dijkstra's doesn't try to go through it to find a path
-                Set<DatapathId> switchesCopy = new HashSet<DatapathId>(switches);
                 for (NodePortTuple npt : rootPath.getPath()) {
                     if (!npt.getNodeId().equals(spurNode)) {
-                        switchesCopy.remove(npt.getNodeId());
+                        int n = g.getNodeIndex(npt.getNodeId());
+                        if (n >= 0) {
+                            excludedNodes[n] = true;
+                        }
                     }
                 }
 
-                // Builds the new topology without the parts we want removed
-                copyOfLinkDpidMap = buildLinkDpidMap(switchesCopy, portsWithLinks, allLinksCopy);
-
                 // Uses Dijkstra's to try to find a shortest path from the spur node to the destination
-                Path spurPath = buildPath(new PathId(spurNode, dst), dijkstra(copyOfLinkDpidMap, dst, linkCost, true));
+                Path spurPath = buildPath(new PathId(spurNode, dst), g.dijkstra(dst, true, excludedNodes, excludedPorts));
                 if (spurPath == null || spurPath.getPath().isEmpty()) {
                     log.debug("spurPath is null");
                     continue;
@@ -1150,6 +1285,13 @@ public class TopologyInstance {
         return A;
     }
 
+    private static void excludePort(TopologyGraph g, boolean[] excludedPorts, NodePortTuple npt) {
+        int p = g.getPortIndex(npt);
+        if (p >= 0) {
+            excludedPorts[p] = true;
+        }
+    }
+
     private Path removeShortestPath(List<Path> routes, Map<Link, Integer> linkCost) {
         log.debug("REMOVE SHORTEST PATH -------------");
         // If there is nothing in B, return
@@ -1240,8 +1382,9 @@ public class TopologyInstance {
         Path result = null;
 
         try {
-            if (!pathcache.get(id).isEmpty()) {
-                result = pathcache.get(id).get(0);
+            List<Path> paths = getCachedPaths(id);
+            if (!paths.isEmpty()) {
+                result = paths.get(0);
             }
         } catch (Exception e) {
             log.warn("Could not find route from {} to {}. If the path exists, wait for the topology to settle, and it will be detected", srcId, dstId);
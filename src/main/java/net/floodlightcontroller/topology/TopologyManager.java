@@ -31,6 +31,7 @@ import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.linkdiscovery.Link;
 import net.floodlightcontroller.packet.BSN;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.EthernetView;
 import net.floodlightcontroller.packet.LLDP;
 import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
@@ -53,6 +54,7 @@ import com.google.common.collect.ImmutableSet;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -74,6 +76,19 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     private static volatile int maxPathsToCompute = 3;
 
+    /**
+     * Whether a new topology instance reuses the paths of the previous one
+     * that are unaffected by link changes, computing the rest on demand.
+     */
+    private boolean incrementalPathComputation = false;
+
+    /**
+     * Pool the per-source-switch path computations of a topology instance
+     * are spread over. Sized by 'pathComputationThreads'; null computes
+     * paths in the topology thread. Shut down with the controller.
+     */
+    private ForkJoinPool pathComputationPool;
+
     /**
      * Role of the controller.
      */
@@ -591,6 +606,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         l.add(IOFSwitchService.class);
         l.add(IDebugCounterService.class);
         l.add(IRestApiService.class);
+        l.add(IShutdownService.class);
         return l;
     }
 
@@ -654,6 +670,34 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                     }
                 }
                 log.info("Will compute a max of {} paths upon topology updates", maxPathsToCompute);
+
+                String incremental = configOptions.get("incrementalPathComputation") != null
+                        ? configOptions.get("incrementalPathComputation").trim() : null;
+                if (incremental != null) {
+                    incrementalPathComputation = Boolean.parseBoolean(incremental);
+                }
+                log.info("Incremental path computation is {}", incrementalPathComputation ? "enabled" : "disabled");
+
+                /* 0, the default, means one thread per core */
+                int threads = 0;
+                String pathThreads = configOptions.get("pathComputationThreads") != null
+                        ? configOptions.get("pathComputationThreads").trim() : null;
+                if (pathThreads != null) {
+                    try {
+                        threads = Integer.parseInt(pathThreads);
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'pathComputationThreads'. Using default {}", threads);
+                    }
+                }
+                if (threads <= 0) {
+                    threads = Runtime.getRuntime().availableProcessors();
+                }
+                ForkJoinPool oldPool = pathComputationPool;
+                pathComputationPool = threads > 1 ? new ForkJoinPool(threads) : null;
+                if (oldPool != null) {
+                    oldPool.shutdown();
+                }
+                log.info("Will compute paths using {} thread(s)", threads > 1 ? threads : 1);
     }
 
     @Override
@@ -673,6 +717,15 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         floodlightProviderService.addOFMessageListener(OFType.PACKET_IN, this);
         floodlightProviderService.addHAListener(this.haListener);
         addRestletRoutable();
+        context.getServiceImpl(IShutdownService.class)
+        .registerShutdownListener(this::shutdownPathComputationPool);
+    }
+
+    private void shutdownPathComputationPool() {
+        ForkJoinPool pool = pathComputationPool;
+        if (pool != null) {
+            pool.shutdown();
+        }
     }
 
     private void registerTopologyDebugCounters() throws FloodlightModuleException {
@@ -855,12 +908,14 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
 
     protected Command processPacketInMessage(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx) {
         // get the packet-in switch.
-        Ethernet eth =
+        // only BDDP needs decoding here
+        EthernetView view =
                 IFloodlightProviderService.bcStore.
-                get(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+                getView(cntx,IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
 
-        if (eth.getPayload() instanceof BSN) {
-            BSN bsn = (BSN) eth.getPayload();
+        if (view.isValid() && view.getEtherTypeValue() == (Ethernet.TYPE_BSN & 0xffff)
+                && view.getEthernet().getPayload() instanceof BSN) {
+            BSN bsn = (BSN) view.getEthernet().getPayload();
             if (bsn == null) return Command.STOP;
             if (bsn.getPayload() == null) return Command.STOP;
 
@@ -1015,7 +1070,16 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                 allPorts,
                 interClusterLinks);
 
-        nt.compute();
+        /* 
+         * A recompute triggered by link discovery updates only needs to redo
+         * the paths over the links that changed. Forced recomputes start over.
+         */
+        nt.setPathComputationPool(pathComputationPool);
+        if (incrementalPathComputation && !forced && currentInstance != null) {
+            nt.compute(currentInstance);
+        } else {
+            nt.compute();
+        }
 
         currentInstance = nt;
 
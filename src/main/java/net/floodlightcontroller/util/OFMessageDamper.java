@@ -16,8 +16,10 @@
 
 package net.floodlightcontroller.util;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 
 import net.floodlightcontroller.core.IOFSwitch;
@@ -118,37 +120,54 @@ public class OFMessageDamper {
      * the message was dampened. 
      */
     public boolean write(IOFSwitch sw, OFMessage msg) {
-        if (!msgTypesToCache.contains(msg.getType())) {
-            log.debug("Not dampening this type of msg {}", msg);
-            sw.write(msg);
-            return true;
-        }
-        
-        DamperEntry entry = new DamperEntry(msg, sw);
-        if (cache.update(entry)) {
-            // entry exists in cache. Dampening.
-            log.debug("Dampening cached msg {}", msg);
-            return false; 
-        } else {
-            log.debug("Not dampening new msg {}", msg);
-            sw.write(msg);
-            return true;
+        if (isDampened(sw, msg)) {
+            return false;
         }
+        sw.write(msg);
+        return true;
     }
     
     /**
-     * Wrapper around {@link OFMessageDamper#write(IOFSwitch, OFMessage)}. 
+     * Write the messages that are not dampened to the switch in a single
+     * call, so they go out together rather than one write per message.
      * @param sw
      * @param msgs
      * @return false if *any* message was dampened; true if no messages were dampened
      */
     public boolean write(IOFSwitch sw, Collection<OFMessage> msgs) {
-        boolean allWritten = true;
+        List<OFMessage> toWrite = new ArrayList<OFMessage>(msgs.size());
         for (OFMessage msg : msgs) {
-            if (!write(sw, msg)) {
-                allWritten = false;
+            if (!isDampened(sw, msg)) {
+                toWrite.add(msg);
             }
         }
-        return allWritten;
+        if (!toWrite.isEmpty()) {
+            sw.write(toWrite);
+        }
+        return toWrite.size() == msgs.size();
+    }
+    
+    /**
+     * Check the message against our dampening settings, recording it as
+     * written if it is not dampened
+     * @param sw
+     * @param msg
+     * @return true if the message must not be written to the switch
+     */
+    private boolean isDampened(IOFSwitch sw, OFMessage msg) {
+        if (!msgTypesToCache.contains(msg.getType())) {
+            log.debug("Not dampening this type of msg {}", msg);
+            return false;
+        }
+        
+        DamperEntry entry = new DamperEntry(msg, sw);
+        if (cache.update(entry)) {
+            // entry exists in cache. Dampening.
+            log.debug("Dampening cached msg {}", msg);
+            return true;
+        } else {
+            log.debug("Not dampening new msg {}", msg);
+            return false;
+        }
     }
-}
\ No newline at end of file
+}
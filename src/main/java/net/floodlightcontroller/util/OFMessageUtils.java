@@ -2,7 +2,11 @@ package net.floodlightcontroller.util;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.IOFSwitch;
 
@@ -10,8 +14,10 @@ import org.projectfloodlight.openflow.protocol.OFAsyncGetReply;
 import org.projectfloodlight.openflow.protocol.OFBarrierReply;
 import org.projectfloodlight.openflow.protocol.OFBundleCtrlMsg;
 import org.projectfloodlight.openflow.protocol.OFBundleCtrlType;
+import org.projectfloodlight.openflow.protocol.OFBundleFlags;
 import org.projectfloodlight.openflow.protocol.OFEchoReply;
 import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
 import org.projectfloodlight.openflow.protocol.OFGetConfigReply;
 import org.projectfloodlight.openflow.protocol.OFMessage;
@@ -23,6 +29,7 @@ import org.projectfloodlight.openflow.protocol.OFStatsReply;
 import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.BundleId;
 import org.projectfloodlight.openflow.types.OFBufferId;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.OFVlanVidMatch;
@@ -45,6 +52,8 @@ public class OFMessageUtils {
 	 */
 	private OFMessageUtils() {};
 
+	private static final AtomicInteger bundleIdGenerator = new AtomicInteger();
+
 	/**
 	 * Simple class to streamline the use of OFMessage's
 	 * equalsIgnoreXid() and hashCodeIgnoreXid() functions.
@@ -181,6 +190,49 @@ public class OFMessageUtils {
 		sw.write(pob.build());
 	}
 
+	/**
+	 * Wrap messages in an atomic, ordered bundle: an open request, one
+	 * bundle add per message, a commit request and a barrier. Bundles are
+	 * only in OpenFlow 1.4 and later; for older versions the messages are
+	 * returned as they are.
+	 * 
+	 * @param factory
+	 *            The factory of the switch the bundle is for.
+	 * @param msgs
+	 *            The messages to apply together.
+	 * @return the messages to write to the switch
+	 */
+	public static List<OFMessage> buildBundle(OFFactory factory, Collection<OFMessage> msgs) {
+		if (factory.getVersion().compareTo(OFVersion.OF_14) < 0) {
+			return new ArrayList<OFMessage>(msgs);
+		}
+		BundleId id = BundleId.of(bundleIdGenerator.incrementAndGet());
+		Set<OFBundleFlags> flags = EnumSet.of(OFBundleFlags.ATOMIC, OFBundleFlags.ORDERED);
+
+		List<OFMessage> bundle = new ArrayList<OFMessage>(msgs.size() + 3);
+		bundle.add(factory.buildBundleCtrlMsg()
+				.setBundleId(id)
+				.setBundleCtrlType(OFBundleCtrlType.OPEN_REQUEST)
+				.setFlags(flags)
+				.build());
+		for (OFMessage m : msgs) {
+			/* The added message and the bundle add must have the same XID */
+			bundle.add(factory.buildBundleAddMsg()
+					.setXid(m.getXid())
+					.setBundleId(id)
+					.setFlags(flags)
+					.setData(m)
+					.build());
+		}
+		bundle.add(factory.buildBundleCtrlMsg()
+				.setBundleId(id)
+				.setBundleCtrlType(OFBundleCtrlType.COMMIT_REQUEST)
+				.setFlags(flags)
+				.build());
+		bundle.add(factory.buildBarrierRequest().build());
+		return bundle;
+	}
+
 	public static boolean isReplyForRequest(OFMessage request, OFMessage reply) {
 		switch (request.getType()) {
 			case BARRIER_REQUEST:
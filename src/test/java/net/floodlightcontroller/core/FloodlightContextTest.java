@@ -0,0 +1,43 @@
+package net.floodlightcontroller.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.flowcache.IFlowReconcileEngineService;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+public class FloodlightContextTest {
+
+    @Test
+    public void testSlotsAndStorage() {
+        FloodlightContext cntx = new FloodlightContext();
+        IDevice src = EasyMock.createMock(IDevice.class);
+        IDevice dst = EasyMock.createMock(IDevice.class);
+
+        IDeviceService.fcStore.put(cntx, IDeviceService.CONTEXT_SRC_DEVICE, src);
+        IDeviceService.fcStore.put(cntx, IDeviceService.CONTEXT_DST_DEVICE, dst);
+        IFlowReconcileEngineService.fcStore.put(cntx, "some.key", "value");
+
+        /* Well-known keys do not go to the storage map */
+        assertEquals(1, cntx.getStorage().size());
+        assertEquals(src, IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE));
+        assertEquals(dst, IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE));
+        assertEquals("value", IFlowReconcileEngineService.fcStore.get(cntx, "some.key"));
+
+        /* A key with the same contents is the same key */
+        String key = new String(IDeviceService.CONTEXT_SRC_DEVICE);
+        assertEquals(src, IDeviceService.fcStore.get(cntx, key));
+
+        IDeviceService.fcStore.remove(cntx, IDeviceService.CONTEXT_DST_DEVICE);
+        assertNull(IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE));
+
+        cntx.clear();
+        assertNull(IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_SRC_DEVICE));
+        assertTrue(cntx.getStorage().isEmpty());
+    }
+}
@@ -45,6 +45,8 @@ import org.projectfloodlight.openflow.types.*;
 import org.sdnplatform.sync.ISyncService;
 import org.sdnplatform.sync.test.MockSyncService;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.easymock.EasyMock.*;
@@ -376,6 +378,139 @@ public class ControllerTest extends FloodlightTestCase {
         verify(sw);
     }
 
+    /**
+     * A message listener that records the order it is called in and can
+     * be told which listener it has to come after
+     */
+    private static class OrderedListener implements IOFMessageListener {
+        private final String name;
+        private final String after;
+        private final List<String> calls;
+
+        OrderedListener(String name, String after, List<String> calls) {
+            this.name = name;
+            this.after = after;
+            this.calls = calls;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isCallbackOrderingPrereq(OFType type, String name) {
+            return name.equals(after);
+        }
+
+        @Override
+        public boolean isCallbackOrderingPostreq(OFType type, String name) {
+            return false;
+        }
+
+        @Override
+        public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
+            calls.add(name);
+            return Command.CONTINUE;
+        }
+    }
+
+    /**
+     * Test that the dispatch table follows listeners being added and
+     * removed, in the order the listeners ask for
+     * @throws Exception
+     */
+    @Test
+    public void testDispatchAfterAddAndRemoveListener() throws Exception {
+        controller.removeOFMessageListeners(OFType.PACKET_IN);
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+        replay(sw);
+
+        List<String> calls = new ArrayList<String>();
+        OrderedListener test1 = new OrderedListener("test1", null, calls);
+        OrderedListener test2 = new OrderedListener("test2", "test1", calls);
+        OrderedListener test3 = new OrderedListener("test3", "test2", calls);
+
+        controller.handleMessage(sw, pi, null);
+        assertTrue(calls.isEmpty());
+
+        // Added listeners get the next message, in order
+        controller.addOFMessageListener(OFType.PACKET_IN, test3);
+        controller.handleMessage(sw, pi, null);
+        assertEquals(Arrays.asList("test3"), calls);
+
+        calls.clear();
+        controller.addOFMessageListener(OFType.PACKET_IN, test1);
+        controller.addOFMessageListener(OFType.PACKET_IN, test2);
+        controller.handleMessage(sw, pi, null);
+        assertEquals(Arrays.asList("test1", "test2", "test3"), calls);
+
+        // Only other message types were added for
+        calls.clear();
+        controller.handleMessage(sw, factory.buildFlowModify().build(), null);
+        assertTrue(calls.isEmpty());
+
+        // Removed listeners do not get the next message
+        controller.removeOFMessageListener(OFType.PACKET_IN, test2);
+        controller.handleMessage(sw, pi, null);
+        assertEquals(Arrays.asList("test1", "test3"), calls);
+
+        calls.clear();
+        controller.removeOFMessageListener(OFType.PACKET_IN, test1);
+        controller.removeOFMessageListener(OFType.PACKET_IN, test3);
+        controller.handleMessage(sw, pi, null);
+        assertTrue(calls.isEmpty());
+
+        verify(sw);
+    }
+
+    /**
+     * Test that completion listeners are called after the message
+     * listeners, also when there are none, and not after being removed
+     * @throws Exception
+     */
+    @Test
+    public void testCompletionListener() throws Exception {
+        controller.removeOFMessageListeners(OFType.PACKET_IN);
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.NONE).anyTimes();
+
+        IControllerCompletionListener done = createMock(IControllerCompletionListener.class);
+        expect(done.getName()).andReturn("done").anyTimes();
+        // No message listener, so there is no context either
+        done.onMessageConsumed(same(sw), same(pi), isNull(FloodlightContext.class));
+        replay(sw, done);
+
+        controller.addCompletionListener(done);
+        controller.handleMessage(sw, pi, null);
+        verify(done);
+
+        IOFMessageListener test1 = createMock(IOFMessageListener.class);
+        expect(test1.getName()).andReturn("test1").anyTimes();
+        setupListenerOrdering(test1);
+        expect(test1.receive(same(sw), same(pi), isA(FloodlightContext.class)))
+                .andReturn(Command.STOP).times(2);
+        replay(test1);
+        controller.addOFMessageListener(OFType.PACKET_IN, test1);
+
+        // Called after the listeners, also when one stopped the chain
+        reset(done);
+        expect(done.getName()).andReturn("done").anyTimes();
+        done.onMessageConsumed(same(sw), same(pi), isA(FloodlightContext.class));
+        replay(done);
+        controller.handleMessage(sw, pi, null);
+        verify(done);
+
+        // Not called after being removed
+        reset(done);
+        expect(done.getName()).andReturn("done").anyTimes();
+        replay(done);
+        controller.removeCompletionListener(done);
+        controller.handleMessage(sw, pi, null);
+        verify(test1, done, sw);
+    }
+
     @Test
     public void testHandleMessagesSlave() throws Exception {
         doSetUp(HARole.STANDBY);
@@ -3,6 +3,7 @@ package net.floodlightcontroller.core.internal;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
@@ -92,6 +94,7 @@ public class OFConnectionTest {
     	if (timer != null) {
     		timer.stop();
     	}
+    	OFConnection.setWriteCoalescing(false, 256);
     }
 
     @Test(timeout = 5000)
@@ -278,4 +281,35 @@ public class OFConnectionTest {
                 Matchers.<OFMessage> contains(hello, packetOut));
     }
 
+
+    @Test(timeout = 5000)
+    public void testWriteCoalescing() {
+        OFConnection.setWriteCoalescing(true, 2);
+        IDebugCounterService debugCounterService = new DebugCounterServiceImpl();
+        debugCounterService.registerModule(OFConnectionCounters.COUNTER_MODULE);
+        conn = new OFConnection(switchId, factory, channel, OFAuxId.MAIN,
+                                debugCounterService, timer);
+
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        Capture<List<OFMessage>> cMsgList = EasyMock.newCapture(CaptureType.ALL);
+        expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).times(2);
+        replay(channel);
+
+        OFHello hello = factory.hello(ImmutableList.<OFHelloElem>of());
+        OFEchoRequest echo1 = factory.echoRequest(new byte[] { 1 });
+        OFEchoRequest echo2 = factory.echoRequest(new byte[] { 2 });
+        conn.write(hello);
+        conn.write(echo1);
+        conn.write(echo2);
+        assertThat("Writes should share one flush task",
+                eventLoop.getQueuedTasks().size(), equalTo(1));
+
+        eventLoop.runTasks();
+        verify(channel);
+        assertThat(cMsgList.getValues().get(0), Matchers.<OFMessage> contains(hello, echo1));
+        assertThat(cMsgList.getValues().get(1), Matchers.<OFMessage> contains(echo2));
+
+        /* Nothing is left pending */
+        assertThat(eventLoop.getQueuedTasks().size(), equalTo(0));
+    }
 }
@@ -65,6 +65,7 @@ import net.floodlightcontroller.threadpool.ThreadPool;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.protocol.OFPortFeatures;
 import org.projectfloodlight.openflow.protocol.OFVersion;
@@ -451,6 +452,30 @@ public class OFSwitchManagerTest{
        controller.processUpdateQueueForTesting();
    }
 
+   /**
+    * Tests that the shadow flow table is dropped when the switch
+    * disconnects and is not created again by a late flow mod
+    */
+   @Test
+   public void testShadowFlowTableDroppedOnDisconnect() {
+       MockOFConnection connection = new MockOFConnection(DATAPATH_ID_1, OFAuxId.MAIN);
+       IOFSwitchBackend sw = new MockOFSwitchImpl(connection);
+       sw.setStatus(SwitchStatus.HANDSHAKE);
+       OFFlowAdd fa = sw.getOFFactory().buildFlowAdd().build();
+
+       assertNull(switchManager.getShadowFlowTable(DATAPATH_ID_1));
+       switchManager.switchAdded(sw);
+       switchManager.handleOutgoingMessage(sw, fa);
+       assertEquals(1, switchManager.getShadowFlowTable(DATAPATH_ID_1).size());
+
+       switchManager.switchDisconnected(sw);
+       assertNull(switchManager.getShadowFlowTable(DATAPATH_ID_1));
+       switchManager.handleOutgoingMessage(sw, fa);
+       assertNull(switchManager.getShadowFlowTable(DATAPATH_ID_1));
+       // we don't care for updates. drain queue.
+       controller.processUpdateQueueForTesting();
+   }
+
    /**
     * Test that notifyPortChanged() results in an IOFSwitchListener
     * update and that its arguments are passed through to
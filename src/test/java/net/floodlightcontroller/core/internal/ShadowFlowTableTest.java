@@ -0,0 +1,189 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowAdd;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowRemovedReason;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+public class ShadowFlowTableTest {
+    private OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private ShadowFlowTable table;
+
+    @Before
+    public void setUp() {
+        table = new ShadowFlowTable();
+    }
+
+    private Match match(int inPort, String dst) {
+        return factory.buildMatch()
+                .setExact(MatchField.IN_PORT, OFPort.of(inPort))
+                .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                .setExact(MatchField.IPV4_DST, IPv4Address.of(dst))
+                .build();
+    }
+
+    private OFFlowAdd flow(Match match, long cookie, int outPort) {
+        return factory.buildFlowAdd()
+                .setMatch(match)
+                .setCookie(U64.of(cookie))
+                .setPriority(100)
+                .setInstructions(Collections.<OFInstruction>singletonList(
+                        factory.instructions().applyActions(Collections.<OFAction>singletonList(
+                                factory.actions().output(OFPort.of(outPort), Integer.MAX_VALUE)))))
+                .build();
+    }
+
+    @Test
+    public void testAddAndDiff() {
+        OFFlowAdd a = flow(match(1, "10.0.0.1"), 1, 2);
+        OFFlowAdd b = flow(match(1, "10.0.0.2"), 1, 2);
+        table.apply(a);
+
+        assertTrue(table.contains(a));
+        assertEquals(Collections.singletonList(b), table.diff(Arrays.asList(a, b)));
+
+        /* Same flow with other actions is changed, so it has to be written */
+        OFFlowAdd changed = flow(match(1, "10.0.0.1"), 1, 3);
+        assertFalse(table.contains(changed));
+        table.apply(changed);
+        assertTrue(table.contains(changed));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testModifyOfUnknownFlowAdds() {
+        OFFlowAdd a = flow(match(1, "10.0.0.1"), 1, 2);
+        OFFlowMod modify = factory.buildFlowModify()
+                .setMatch(a.getMatch())
+                .setCookie(a.getCookie())
+                .setPriority(a.getPriority())
+                .setInstructions(a.getInstructions())
+                .build();
+        table.apply(modify);
+        assertTrue(table.contains(modify));
+        assertTrue(table.contains(a));
+
+        /* Unless the flow would not be tracked anyway */
+        table.apply(modify.createBuilder().setMatch(match(1, "10.0.0.2")).setHardTimeout(5).build());
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testTransientFlowsNotTracked() {
+        OFFlowAdd a = flow(match(1, "10.0.0.1"), 1, 2);
+        table.apply(a);
+        table.apply(a.createBuilder().setIdleTimeout(5).build());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testDeleteByCookieAndMatch() {
+        table.apply(flow(match(1, "10.0.0.1"), 0x10, 2));
+        table.apply(flow(match(1, "10.0.0.2"), 0x11, 2));
+        table.apply(flow(match(2, "10.0.0.3"), 0x20, 2));
+        assertEquals(1, table.countFlowsWithCookie(U64.of(0x10)));
+
+        /* Both flows with cookie 0x1? on in-port 1 */
+        table.apply(factory.buildFlowDelete()
+                .setTableId(TableId.ALL)
+                .setCookie(U64.of(0x10))
+                .setCookieMask(U64.of(0xf0))
+                .setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(1)).build())
+                .build());
+        assertEquals(1, table.size());
+        assertEquals(0, table.countFlowsWithCookie(U64.of(0x10)));
+
+        /* An out port that is not used deletes nothing */
+        table.apply(factory.buildFlowDelete()
+                .setTableId(TableId.ALL)
+                .setOutPort(OFPort.of(7))
+                .build());
+        assertEquals(1, table.size());
+        table.apply(factory.buildFlowDelete()
+                .setTableId(TableId.ALL)
+                .setOutPort(OFPort.of(2))
+                .build());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testDeleteStrict() {
+        OFFlowAdd a = flow(match(1, "10.0.0.1"), 1, 2);
+        table.apply(a);
+        /* Different priority */
+        table.apply(factory.buildFlowDeleteStrict().setMatch(a.getMatch()).setPriority(1).build());
+        assertEquals(1, table.size());
+        table.apply(factory.buildFlowDeleteStrict().setMatch(a.getMatch()).setPriority(100).build());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testFlowRemoved() {
+        OFFlowAdd a = flow(match(1, "10.0.0.1"), 1, 2);
+        table.apply(a);
+        table.apply(factory.buildFlowRemoved()
+                .setMatch(a.getMatch())
+                .setPriority(100)
+                .setTableId(TableId.ZERO)
+                .setReason(OFFlowRemovedReason.DELETE)
+                .build());
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testSync() throws Exception {
+        OFFlowAdd kept = flow(match(1, "10.0.0.1"), 1, 2);
+        OFFlowAdd gone = flow(match(1, "10.0.0.2"), 1, 2);
+        table.apply(kept);
+        table.apply(gone);
+        long requestedMs = System.currentTimeMillis() + 1;
+        Thread.sleep(2);
+        /* Written after the request was sent, so not in the reply */
+        OFFlowAdd late = flow(match(1, "10.0.0.3"), 1, 2);
+        table.apply(late);
+
+        OFFlowAdd onSwitch = flow(match(2, "10.0.0.4"), 1, 2);
+        OFFlowStatsEntry e1 = factory.buildFlowStatsEntry()
+                .setMatch(kept.getMatch())
+                .setPriority(100)
+                .setCookie(kept.getCookie())
+                .setTableId(TableId.ZERO)
+                .setInstructions(kept.getInstructions())
+                .build();
+        OFFlowStatsEntry e2 = factory.buildFlowStatsEntry()
+                .setMatch(onSwitch.getMatch())
+                .setPriority(100)
+                .setCookie(onSwitch.getCookie())
+                .setTableId(TableId.ZERO)
+                .setInstructions(onSwitch.getInstructions())
+                .build();
+        table.sync(Arrays.asList(e1, e2), requestedMs);
+
+        assertTrue(table.contains(kept));
+        assertFalse(table.contains(gone));
+        assertTrue(table.contains(late));
+        assertTrue(table.contains(onSwitch));
+        assertEquals(3, table.size());
+    }
+}
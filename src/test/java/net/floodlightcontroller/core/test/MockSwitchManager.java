@@ -23,6 +23,7 @@ import net.floodlightcontroller.core.internal.IAppHandshakePluginFactory;
 import net.floodlightcontroller.core.internal.IOFSwitchManager;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.internal.OFSwitchHandshakeHandler;
+import net.floodlightcontroller.core.internal.ShadowFlowTable;
 import net.floodlightcontroller.core.internal.SwitchManagerCounters;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -30,23 +31,29 @@ import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
 
+import org.projectfloodlight.openflow.protocol.OFBundleAddMsg;
 import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.types.DatapathId;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 
 public class MockSwitchManager implements IFloodlightModule, IOFSwitchManager, IOFSwitchService {
 
     private Map<DatapathId, OFSwitchHandshakeHandler> switchHandlers;
     private Map<DatapathId, IOFSwitch> switches;
+    private Map<DatapathId, ShadowFlowTable> shadowFlowTables;
     private final SwitchManagerCounters counters;
     //private final CopyOnWriteArrayList<IOFSwitchListener> switchListeners;
 
     public MockSwitchManager(){
         switchHandlers = new ConcurrentHashMap<DatapathId, OFSwitchHandshakeHandler>();
         switches = new ConcurrentHashMap<DatapathId, IOFSwitch>();
+        shadowFlowTables = new ConcurrentHashMap<DatapathId, ShadowFlowTable>();
         counters = new SwitchManagerCounters(new DebugCounterServiceImpl());
         //switchListeners = new CopyOnWriteArrayList<IOFSwitchListener>();
     }
@@ -92,8 +99,12 @@ public class MockSwitchManager implements IFloodlightModule, IOFSwitchManager, I
     
     @Override
     public void handleOutgoingMessage(IOFSwitch sw, OFMessage m) {
-    	// do nothing
-    	
+        /* As the switch manager does, so the shadow flow table follows the writes */
+        OFMessage fm = m instanceof OFBundleAddMsg ? ((OFBundleAddMsg) m).getData() : m;
+        if (fm instanceof OFFlowMod) {
+            shadowFlowTables.computeIfAbsent(sw.getId(), k -> new ShadowFlowTable())
+            .apply((OFFlowMod) fm);
+        }
     }
 
     public void setSwitchHandshakeHandlers(Map<DatapathId, OFSwitchHandshakeHandler> handlers) {
@@ -105,6 +116,21 @@ public class MockSwitchManager implements IFloodlightModule, IOFSwitchManager, I
         return ImmutableList.copyOf(this.switchHandlers.values());
     }
 
+    @Override
+    public ShadowFlowTable getShadowFlowTable(DatapathId dpid) {
+        return shadowFlowTables.get(dpid);
+    }
+
+    /**
+     * Does not talk to the switch; the table is returned as it is, or an
+     * empty one for a switch that was not seen yet
+     */
+    @Override
+    public ListenableFuture<ShadowFlowTable> refreshShadowFlowTable(DatapathId dpid) {
+        return Futures.immediateFuture(
+                shadowFlowTables.computeIfAbsent(dpid, k -> new ShadowFlowTable()));
+    }
+
     @Override
     public void addOFSwitchDriver(String manufacturerDescriptionPrefix,
                                   IOFSwitchDriver driver) {
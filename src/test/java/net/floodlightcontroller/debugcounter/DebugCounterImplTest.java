@@ -78,4 +78,49 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testLastModified() throws Exception {
+        DebugCounterImpl c1 =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        long created = c1.getLastModified();
+        Thread.sleep(5);
+        assertEquals(created, c1.getLastModified());
+
+        c1.increment();
+        long incremented = System.currentTimeMillis();
+        Thread.sleep(5);
+        /* The time of the increment, not of the read */
+        long modified = c1.getLastModified();
+        assertTrue(modified > created);
+        assertTrue(modified <= incremented);
+
+        c1.reset();
+        assertTrue(c1.getLastModified() > modified);
+        assertEquals(0L, c1.getCounterValue());
+    }
+
+    @Test
+    public void testConcurrentIncrement() throws Exception {
+        final DebugCounterImpl c1 =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        c1.increment();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(40000L, c1.getCounterValue());
+    }
 }
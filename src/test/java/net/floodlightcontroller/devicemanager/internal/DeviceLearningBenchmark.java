@@ -0,0 +1,189 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyShort;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.FloodlightContext;
+import net.floodlightcontroller.core.HARole;
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IListener.Command;
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.test.MockFloodlightProvider;
+import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.MockDebugCounterService;
+import net.floodlightcontroller.devicemanager.IDeviceService;
+import net.floodlightcontroller.devicemanager.IEntityClassifierService;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.UDP;
+import net.floodlightcontroller.restserver.IRestApiService;
+import net.floodlightcontroller.restserver.RestApiServer;
+import net.floodlightcontroller.routing.IGatewayService;
+import net.floodlightcontroller.routing.IRoutingService;
+import net.floodlightcontroller.storage.IStorageSourceService;
+import net.floodlightcontroller.storage.memory.MemoryStorageSource;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.topology.ITopologyService;
+import net.floodlightcontroller.util.OFMessageDamperMockSwitch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.sdnplatform.sync.ISyncService;
+import org.sdnplatform.sync.test.MockSyncService;
+
+/**
+ * {@link DeviceManagerImpl#processPacketInMessage} for packet-ins from
+ * hosts that are already known at the port they are seen on, which is
+ * what almost all packet-ins are in a stable network. Run with
+ * "-prof gc" to see the allocation rate per packet-in.
+ *
+ * Not a unit test; run with main() or through the JMH runner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeviceLearningBenchmark {
+
+    @Param({ "1", "1000" })
+    public int hosts;
+
+    private DeviceManagerImpl deviceManager;
+    private IOFSwitch sw;
+    private OFPacketIn[] packetIns;
+    private FloodlightContext[] contexts;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        FloodlightModuleContext fmc = new FloodlightModuleContext();
+        MockThreadPoolService tp = new MockThreadPoolService();
+        MockFloodlightProvider provider = new MockFloodlightProvider();
+        provider.setRole(HARole.STANDBY, "");
+        MemoryStorageSource storageSource = new MemoryStorageSource();
+        RestApiServer restApi = new RestApiServer();
+        DefaultEntityClassifier entityClassifier = new DefaultEntityClassifier();
+        MockSyncService syncService = new MockSyncService();
+
+        ITopologyService topology = createNiceMock(ITopologyService.class);
+        expect(topology.isAttachmentPointPort(DatapathId.of(anyLong()), OFPort.of(anyShort())))
+        .andReturn(true).anyTimes();
+        expect(topology.getClusterId(DatapathId.of(anyLong()))).andReturn(DatapathId.of(1L)).anyTimes();
+        IRoutingService routing = createNiceMock(IRoutingService.class);
+        IGatewayService gateway = createNiceMock(IGatewayService.class);
+        replay(topology, routing, gateway);
+
+        deviceManager = new DeviceManagerImpl();
+        fmc.addService(IThreadPoolService.class, tp);
+        fmc.addService(IFloodlightProviderService.class, provider);
+        fmc.addService(IStorageSourceService.class, storageSource);
+        fmc.addService(IRestApiService.class, restApi);
+        fmc.addService(IEntityClassifierService.class, entityClassifier);
+        fmc.addService(ISyncService.class, syncService);
+        fmc.addService(IDebugCounterService.class, new MockDebugCounterService());
+        fmc.addService(ITopologyService.class, topology);
+        fmc.addService(IRoutingService.class, routing);
+        fmc.addService(IGatewayService.class, gateway);
+        fmc.addService(IDeviceService.class, deviceManager);
+        tp.init(fmc);
+        restApi.init(fmc);
+        storageSource.init(fmc);
+        deviceManager.init(fmc);
+        entityClassifier.init(fmc);
+        syncService.init(fmc);
+        storageSource.startUp(fmc);
+        deviceManager.startUp(fmc);
+        tp.startUp(fmc);
+        entityClassifier.startUp(fmc);
+        syncService.startUp(fmc);
+
+        final DatapathId dpid = DatapathId.of(1L);
+        sw = new OFMessageDamperMockSwitch() {
+            @Override
+            public DatapathId getId() {
+                return dpid;
+            }
+        };
+
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        packetIns = new OFPacketIn[hosts];
+        contexts = new FloodlightContext[hosts];
+        for (int i = 0; i < hosts; i++) {
+            Ethernet eth = (Ethernet) new Ethernet()
+            .setSourceMACAddress(MacAddress.of(0x0a0000000000L + i + 1))
+            .setDestinationMACAddress(MacAddress.of(0x0b0000000000L))
+            .setEtherType(EthType.IPv4)
+            .setPayload(new IPv4()
+                    .setTtl((byte) 64)
+                    .setSourceAddress(IPv4Address.of(0x0a000000 + i + 1))
+                    .setDestinationAddress(IPv4Address.of(0x0b000001))
+                    .setPayload(new UDP()
+                            .setSourcePort(TransportPort.of(5000))
+                            .setDestinationPort(TransportPort.of(5001))
+                            .setPayload(new Data(new byte[] { 1, 2, 3, 4 }))));
+            byte[] data = eth.serialize();
+            packetIns[i] = factory.buildPacketIn()
+                    .setBufferId(OFBufferId.NO_BUFFER)
+                    .setMatch(factory.buildMatch()
+                            .setExact(MatchField.IN_PORT, OFPort.of(i % 48 + 1))
+                            .build())
+                    .setData(data)
+                    .setReason(OFPacketInReason.NO_MATCH)
+                    .build();
+            contexts[i] = new FloodlightContext();
+            IFloodlightProviderService.bcStore.put(contexts[i],
+                    IFloodlightProviderService.CONTEXT_PI_PAYLOAD, eth);
+            /* Learn the host so the benchmark only sees known hosts */
+            deviceManager.processPacketInMessage(sw, packetIns[i], contexts[i]);
+        }
+    }
+
+    @Benchmark
+    public Command knownHost() {
+        int i = next;
+        next = i + 1 == hosts ? 0 : i + 1;
+        return deviceManager.processPacketInMessage(sw, packetIns[i], contexts[i]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DeviceLearningBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -2254,6 +2254,94 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 		doTestDeviceQuery();
 	}
 
+	@Test
+	public void testDevicesOnSwitchPort() throws Exception {
+		ITopologyService mockTopology = createMock(ITopologyService.class);
+		deviceManager.topology = mockTopology;
+		expect(mockTopology.isAttachmentPointPort(DatapathId.of(anyLong()),
+				OFPort.of(anyShort()))).
+				andReturn(true).anyTimes();
+		expect(mockTopology.getClusterId(DatapathId.of(EasyMock.anyLong()))).andReturn(DatapathId.of(1L)).anyTimes();
+		expect(mockTopology.isBroadcastPort(DatapathId.of(anyLong()), OFPort.of(anyShort()))).
+		andReturn(false).anyTimes();
+		expect(mockTopology.isConsistent(DatapathId.of(anyLong()), OFPort.of(anyShort()),
+				DatapathId.of(anyLong()), OFPort.of(anyShort()))).andReturn(false).anyTimes();
+		expect(mockTopology.isInSameArchipelago(DatapathId.of(anyLong()),
+				DatapathId.of(anyLong()))).andReturn(true).anyTimes();
+		replay(mockTopology);
+
+		Calendar c = Calendar.getInstance();
+		Date then = c.getTime();
+		Entity entity1 = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(1), then);
+		Entity entity2 = new Entity(MacAddress.of(2L), VlanVid.ofVlan(1), IPv4Address.of(2), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(1), then);
+		Entity entity3 = new Entity(MacAddress.of(3L), VlanVid.ofVlan(1), IPv4Address.of(3), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(2), then);
+		Device d1 = deviceManager.learnDeviceByEntity(entity1);
+		Device d2 = deviceManager.learnDeviceByEntity(entity2);
+		Device d3 = deviceManager.learnDeviceByEntity(entity3);
+
+		Set<Long> keys = new HashSet<Long>();
+		for (IDevice d : deviceManager.getDevicesOnSwitchPort(DatapathId.of(1L), OFPort.of(1))) {
+			keys.add(d.getDeviceKey());
+		}
+		assertEquals(new HashSet<Long>(Arrays.asList(d1.getDeviceKey(), d2.getDeviceKey())), keys);
+		assertEquals(3, deviceManager.getDevicesOnSwitch(DatapathId.of(1L)).size());
+		assertTrue(deviceManager.getDevicesOnSwitch(DatapathId.of(5L)).isEmpty());
+
+		Iterator<? extends IDevice> iter = deviceManager.queryDevices(MacAddress.NONE, null,
+				IPv4Address.NONE, IPv6Address.NONE, DatapathId.of(1L), OFPort.of(2));
+		assertTrue(iter.hasNext());
+		assertEquals(d3.getDeviceKey(), iter.next().getDeviceKey());
+		assertFalse(iter.hasNext());
+
+		// d1 moves to another port of the same switch
+		c.add(Calendar.HOUR, 1);
+		Entity entity1b = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(2), c.getTime());
+		deviceManager.learnDeviceByEntity(entity1b);
+		keys.clear();
+		for (IDevice d : deviceManager.getDevicesOnSwitchPort(DatapathId.of(1L), OFPort.of(2))) {
+			keys.add(d.getDeviceKey());
+		}
+		assertEquals(new HashSet<Long>(Arrays.asList(d1.getDeviceKey(), d3.getDeviceKey())), keys);
+		assertEquals(1, deviceManager.getDevicesOnSwitchPort(DatapathId.of(1L), OFPort.of(1)).size());
+
+		deviceManager.deleteDevice(deviceManager.deviceMap.get(d2.getDeviceKey()));
+		assertTrue(deviceManager.getDevicesOnSwitchPort(DatapathId.of(1L), OFPort.of(1)).isEmpty());
+		assertTrue(deviceManager.apIndex.getDeviceKeys(DatapathId.of(1L), OFPort.of(1)).isEmpty());
+	}
+
+	@Test
+	public void testAttachmentPointRefreshInPlace() throws Exception {
+		ITopologyService mockTopology = makeMockTopologyAllPortsAp();
+		replay(mockTopology);
+		deviceManager.topology = mockTopology;
+
+		Calendar c = Calendar.getInstance();
+		Entity entity1 = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(1), c.getTime());
+		Device d = deviceManager.learnDeviceByEntity(entity1);
+		List<AttachmentPoint> aps = d.attachmentPoints;
+		assertEquals(1, aps.size());
+
+		// Same host, same port, later: the last seen time is bumped in place
+		c.add(Calendar.SECOND, 10);
+		Date later = c.getTime();
+		Entity entity1b = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(1), later);
+		Device d2 = deviceManager.learnDeviceByEntity(entity1b);
+		assertSame(d, d2);
+		assertSame(aps, d2.attachmentPoints);
+		assertEquals(later, d2.attachmentPoints.get(0).getLastSeen());
+		assertEquals(later, d2.getEntities()[0].getLastSeenTimestamp());
+
+		// A reordered, older packet does not move the last seen time back
+		c.add(Calendar.SECOND, -5);
+		Entity entity1c = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(1), c.getTime());
+		deviceManager.learnDeviceByEntity(entity1c);
+		assertEquals(later, d.attachmentPoints.get(0).getLastSeen());
+
+		// Suppressed attachment points take the full path
+		deviceManager.addSuppressAPs(DatapathId.of(1L), OFPort.of(1));
+		assertFalse(deviceManager.isValidAttachmentPoint(DatapathId.of(1L), OFPort.of(1)));
+	}
+
 	protected void doTestDeviceClassQuery() throws Exception {
 		Entity entity1 = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(1), new Date());
 		Entity entity2 = new Entity(MacAddress.of(2L), VlanVid.ofVlan(2), IPv4Address.of(2), IPv6Address.NONE, DatapathId.of(1L), OFPort.of(2), new Date());
@@ -0,0 +1,70 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class EntityExpiryWheelTest {
+
+    @Test
+    public void testPollInOrder() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(1000, 8);
+        wheel.schedule(1L, 1500);
+        wheel.schedule(2L, 3000);
+        /* Beyond one turn of the wheel */
+        wheel.schedule(3L, 20000);
+        assertEquals(3, wheel.size());
+
+        assertTrue(wheel.poll(999).isEmpty());
+        assertEquals(Collections.singletonList(1L), wheel.poll(2000));
+        assertEquals(Collections.singletonList(2L), wheel.poll(3000));
+        /* Slot 4 comes round at 12s and 20s, only the second is due */
+        assertTrue(wheel.poll(12000).isEmpty());
+        assertEquals(Collections.singletonList(3L), wheel.poll(20000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRescheduleOnlyMovesEarlier() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(1000, 8);
+        wheel.schedule(1L, 5000);
+        wheel.schedule(1L, 7000);
+        wheel.schedule(1L, 2000);
+        assertEquals(1, wheel.size());
+        assertEquals(Collections.singletonList(1L), wheel.poll(2000));
+        /* The stale entries for later slots do not fire again */
+        assertTrue(wheel.poll(10000).isEmpty());
+    }
+
+    @Test
+    public void testScheduleInThePast() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(1000, 8);
+        assertTrue(wheel.poll(50000).isEmpty());
+        wheel.schedule(1L, 1000);
+        wheel.schedule(2L, 49000);
+        assertEquals(new HashSet<Long>(Arrays.asList(1L, 2L)),
+                new HashSet<Long>(wheel.poll(51000)));
+    }
+
+    @Test
+    public void testPollAtDueTime() {
+        EntityExpiryWheel wheel = new EntityExpiryWheel(1000, 8);
+        wheel.schedule(1L, 2500);
+        wheel.schedule(2L, 4000);
+        assertTrue(wheel.poll(1999).isEmpty());
+        /* Due within the tick being polled */
+        assertEquals(Collections.singletonList(1L), wheel.poll(2500));
+        assertTrue(wheel.poll(3999).isEmpty());
+        /* Exactly at the due time, not one tick later */
+        assertEquals(Collections.singletonList(2L), wheel.poll(4000));
+
+        wheel.schedule(3L, 5000);
+        assertEquals(Collections.singletonList(3L), wheel.poll(5001));
+        assertEquals(0, wheel.size());
+    }
+}
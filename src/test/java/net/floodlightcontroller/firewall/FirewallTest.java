@@ -525,6 +525,67 @@ public class FirewallTest extends FloodlightTestCase {
         assertEquals(BLOCK_ALL_COOKIE, decision.getDescriptor());
     }
 
+    @Test
+    public void testSwitchAndPortRules() throws Exception {
+        firewall.enableFirewall(true);
+
+        // block all on another switch
+        FirewallRule rule = new FirewallRule();
+        rule.dpid = DatapathId.of(2);
+        rule.any_dpid = false;
+        rule.action = FirewallRule.FirewallAction.DROP;
+        rule.priority = 1;
+        firewall.addRule(rule);
+
+        // block all on another port of any switch
+        rule = new FirewallRule();
+        rule.in_port = OFPort.of(2);
+        rule.any_in_port = false;
+        rule.action = FirewallRule.FirewallAction.DROP;
+        rule.priority = 2;
+        firewall.addRule(rule);
+
+        // allow all on this switch and port
+        rule = new FirewallRule();
+        rule.dpid = DatapathId.of(TestSwitch1DPID);
+        rule.any_dpid = false;
+        rule.in_port = OFPort.of(1);
+        rule.any_in_port = false;
+        rule.priority = 3;
+        firewall.addRule(rule);
+        int allowId = rule.ruleid;
+
+        // block all on this switch
+        rule = new FirewallRule();
+        rule.dpid = DatapathId.of(TestSwitch1DPID);
+        rule.any_dpid = false;
+        rule.action = FirewallRule.FirewallAction.DROP;
+        rule.priority = 4;
+        firewall.addRule(rule);
+        U64 BLOCK_SWITCH_COOKIE = AppCookie.makeCookie(APP_ID, rule.ruleid);
+
+        assertEquals(4, firewall.rules.size());
+
+        this.setPacketIn(tcpPacket);
+        firewall.receive(sw, this.packetIn, cntx);
+
+        IRoutingDecision decision = IRoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+        assertEquals(IRoutingDecision.RoutingAction.FORWARD_OR_FLOOD, decision.getRoutingAction());
+        assertEquals(AppCookie.makeCookie(APP_ID, allowId), decision.getDescriptor());
+        assertEquals(OFPort.of(1), decision.getMatch().get(MatchField.IN_PORT));
+
+        // without the allow rule, the switch-wide block rule applies
+        IRoutingDecision.rtStore.remove(cntx, IRoutingDecision.CONTEXT_DECISION);
+        firewall.deleteRule(allowId);
+        assertEquals(3, firewall.rules.size());
+
+        firewall.receive(sw, this.packetIn, cntx);
+
+        decision = IRoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+        assertEquals(IRoutingDecision.RoutingAction.DROP, decision.getRoutingAction());
+        assertEquals(BLOCK_SWITCH_COOKIE, decision.getDescriptor());
+    }
+
     @Test
     public void testARP() throws Exception {
         // enable firewall first
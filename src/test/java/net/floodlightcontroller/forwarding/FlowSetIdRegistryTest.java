@@ -0,0 +1,114 @@
+package net.floodlightcontroller.forwarding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.forwarding.Forwarding.FlowSetIdRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class FlowSetIdRegistryTest {
+    private FlowSetIdRegistry registry;
+    private NodePortTuple npt1;
+    private NodePortTuple npt2;
+    private NodePortTuple npt3;
+
+    @Before
+    public void setUp() {
+        registry = new FlowSetIdRegistry();
+        npt1 = new NodePortTuple(DatapathId.of(1L), OFPort.of(1));
+        npt2 = new NodePortTuple(DatapathId.of(2L), OFPort.of(1));
+        npt3 = new NodePortTuple(DatapathId.of(3L), OFPort.of(1));
+    }
+
+    @Test
+    public void testGenerateFlowSetId() {
+        registry.seedFlowSetIdForUnitTest(3);
+        assertEquals(U64.of(4L << Forwarding.FLOWSET_SHIFT), registry.generateFlowSetId());
+        assertEquals(U64.of(5L << Forwarding.FLOWSET_SHIFT), registry.generateFlowSetId());
+    }
+
+    @Test
+    public void testRemoveNodePortTuple() {
+        U64 a = registry.generateFlowSetId();
+        U64 b = registry.generateFlowSetId();
+        registry.registerFlowSetId(npt1, a);
+        registry.registerFlowSetId(npt2, a);
+        registry.registerFlowSetId(npt2, b);
+        registry.registerFlowSetId(npt3, b);
+
+        assertEquals(new HashSet<U64>(Arrays.asList(a, b)), registry.getFlowSetIds(npt2));
+
+        registry.removeNodePortTuple(npt2);
+        assertNull(registry.getFlowSetIds(npt2));
+        assertEquals(Collections.singleton(npt1), registry.getNodePortTuples(a));
+        assertEquals(Collections.singleton(npt3), registry.getNodePortTuples(b));
+    }
+
+    @Test
+    public void testRemoveFlowSetId() {
+        U64 a = registry.generateFlowSetId();
+        U64 b = registry.generateFlowSetId();
+        registry.registerFlowSetId(npt1, a);
+        registry.registerFlowSetId(npt2, a);
+        registry.registerFlowSetId(npt2, b);
+
+        /* Removing while iterating over the port's flowsets */
+        for (U64 id : registry.getFlowSetIds(npt2)) {
+            registry.removeFlowSetId(id);
+        }
+        assertNull(registry.getNodePortTuples(a));
+        assertNull(registry.getNodePortTuples(b));
+        assertNull(registry.getFlowSetIds(npt1));
+        assertNull(registry.getFlowSetIds(npt2));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testAgeOutOldest() {
+        registry.setMaxFlowSets(2);
+        U64 a = registry.generateFlowSetId();
+        U64 b = registry.generateFlowSetId();
+        U64 c = registry.generateFlowSetId();
+        registry.registerFlowSetId(npt1, a);
+        registry.registerFlowSetId(npt1, b);
+        /* Not a new flowset, so nothing is pushed out */
+        registry.registerFlowSetId(npt2, b);
+        assertEquals(2, registry.size());
+
+        registry.registerFlowSetId(npt3, c);
+        assertEquals(2, registry.size());
+        assertNull(registry.getNodePortTuples(a));
+        assertEquals(Collections.singleton(b), registry.getFlowSetIds(npt1));
+    }
+
+    @Test
+    public void testRemovedFlowSetDoesNotAgeOutItsSuccessor() {
+        registry.setMaxFlowSets(2);
+        U64 a = registry.generateFlowSetId();
+        U64 b = registry.generateFlowSetId();
+        U64 c = registry.generateFlowSetId();
+        registry.registerFlowSetId(npt1, a);
+        registry.registerFlowSetId(npt1, b);
+        registry.removeFlowSetId(a);
+        /* The same ID again, as after the generator wrapped */
+        registry.registerFlowSetId(npt2, a);
+        assertEquals(2, registry.size());
+
+        /* b is the oldest flowset now, not the removed a */
+        registry.registerFlowSetId(npt3, c);
+        assertEquals(2, registry.size());
+        assertNull(registry.getNodePortTuples(b));
+        assertEquals(Collections.singleton(npt2), registry.getNodePortTuples(a));
+        assertEquals(Collections.singleton(npt3), registry.getNodePortTuples(c));
+    }
+}
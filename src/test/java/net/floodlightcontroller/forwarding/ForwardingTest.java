@@ -45,6 +45,8 @@ import net.floodlightcontroller.devicemanager.test.MockDeviceManager;
 import net.floodlightcontroller.devicemanager.IDevice;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.IEntityClassifierService;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.linkdiscovery.internal.LinkDiscoveryManager;
 import net.floodlightcontroller.packet.Data;
@@ -100,6 +102,7 @@ import org.sdnplatform.sync.ISyncService;
 import org.sdnplatform.sync.test.MockSyncService;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
 public class ForwardingTest extends FloodlightTestCase {
 	protected FloodlightContext cntx;
@@ -1086,4 +1089,94 @@ public class ForwardingTest extends FloodlightTestCase {
 		forwarding.deleteFlowsByDescriptor(descriptors);
 		verify(routingEngine);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testPortDownRemovesFlowSets() throws Exception {
+		NodePortTuple down = new NodePortTuple(DatapathId.of(1L), OFPort.of(10));
+		NodePortTuple sw1Other = new NodePortTuple(DatapathId.of(1L), OFPort.of(11));
+		NodePortTuple sw2In = new NodePortTuple(DatapathId.of(2L), OFPort.of(10));
+		NodePortTuple sw2Out = new NodePortTuple(DatapathId.of(2L), OFPort.of(11));
+
+		/* One flowset crosses the port that goes down, one does not */
+		U64 crossing = Forwarding.flowSetIdRegistry.generateFlowSetId();
+		U64 unaffected = Forwarding.flowSetIdRegistry.generateFlowSetId();
+		for (NodePortTuple npt : new NodePortTuple[] { down, sw1Other, sw2In, sw2Out }) {
+			Forwarding.flowSetIdRegistry.registerFlowSetId(npt, crossing);
+		}
+		Forwarding.flowSetIdRegistry.registerFlowSetId(sw2Out, unaffected);
+
+		/* One write per switch */
+		Capture<List<OFMessage>> wc1 = EasyMock.newCapture(CaptureType.ALL);
+		Capture<List<OFMessage>> wc2 = EasyMock.newCapture(CaptureType.ALL);
+		expect(sw1.write(capture(wc1))).andReturn(ImmutableList.of()).once();
+		expect(sw2.write(capture(wc2))).andReturn(ImmutableList.of()).once();
+		replay(sw1, sw2);
+		forwarding.linkDiscoveryUpdate(ImmutableList.of(
+				new LDUpdate(down.getNodeId(), down.getPortId(), UpdateOperation.PORT_DOWN)));
+		verify(sw1, sw2);
+
+		U64 anyFlowSet = AppCookie.makeCookie(Forwarding.FORWARDING_APP_ID, 0);
+		U64 flowSetCookie = crossing.or(anyFlowSet);
+		U64 flowSetMask = U64.of(((1L << 28) - 1) << Forwarding.FLOWSET_SHIFT).or(AppCookie.getAppFieldMask());
+
+		Set<OFMessageUtils.OFMessageIgnoreXid> sw1Msgs = new HashSet<OFMessageUtils.OFMessageIgnoreXid>();
+		for (OFMessage m : wc1.getValue()) {
+			sw1Msgs.add(OFMessageUtils.OFMessageIgnoreXid.of(m));
+		}
+		/* All forwarding flows on the port that went down... */
+		assertTrue(sw1Msgs.contains(OFMessageUtils.OFMessageIgnoreXid.of(factory.buildFlowDelete()
+				.setCookie(anyFlowSet)
+				.setCookieMask(AppCookie.getAppFieldMask())
+				.setOutPort(down.getPortId())
+				.build())));
+		/* ...and the crossing flowset on the other ports, by cookie alone */
+		assertEquals(3, sw1Msgs.size());
+		assertTrue(sw1Msgs.contains(OFMessageUtils.OFMessageIgnoreXid.of(factory.buildFlowDelete()
+				.setCookie(flowSetCookie)
+				.setCookieMask(flowSetMask)
+				.build())));
+
+		Set<OFMessageUtils.OFMessageIgnoreXid> sw2Msgs = new HashSet<OFMessageUtils.OFMessageIgnoreXid>();
+		for (OFMessage m : wc2.getValue()) {
+			sw2Msgs.add(OFMessageUtils.OFMessageIgnoreXid.of(m));
+		}
+		/* One delete covers the crossing flowset on both ports */
+		assertEquals(1, sw2Msgs.size());
+		assertTrue(sw2Msgs.contains(OFMessageUtils.OFMessageIgnoreXid.of(factory.buildFlowDelete()
+				.setCookie(flowSetCookie)
+				.setCookieMask(flowSetMask)
+				.build())));
+
+		assertNull(Forwarding.flowSetIdRegistry.getFlowSetIds(down));
+		assertNull(Forwarding.flowSetIdRegistry.getNodePortTuples(crossing));
+		assertEquals(ImmutableSet.of(unaffected), Forwarding.flowSetIdRegistry.getFlowSetIds(sw2Out));
+	}
+
+	@Test
+	public void testAggregateFlowSetIds() throws Exception {
+		U64 appMask = AppCookie.getAppFieldMask();
+		U64 anyFlowSet = AppCookie.makeCookie(Forwarding.FORWARDING_APP_ID, 0);
+		long flowSetMask = ((1L << 28) - 1) << Forwarding.FLOWSET_SHIFT;
+
+		/* An aligned run of four IDs is a single cookie */
+		Set<U64> ids = new HashSet<U64>();
+		for (long i = 4; i < 8; i++) {
+			ids.add(U64.of(i << Forwarding.FLOWSET_SHIFT));
+		}
+		assertEquals(ImmutableSet.of(Masked.of(U64.of(4L << Forwarding.FLOWSET_SHIFT).or(anyFlowSet),
+				U64.of(flowSetMask & (-1L << (Forwarding.FLOWSET_SHIFT + 2))).or(appMask))),
+				new HashSet<Masked<U64>>(Forwarding.aggregateFlowSetIds(ids)));
+
+		/* An unaligned run is split, and no other flowset is matched */
+		ids.remove(U64.of(7L << Forwarding.FLOWSET_SHIFT));
+		ids.add(U64.of(9L << Forwarding.FLOWSET_SHIFT));
+		assertEquals(ImmutableSet.of(
+				Masked.of(U64.of(4L << Forwarding.FLOWSET_SHIFT).or(anyFlowSet),
+						U64.of(flowSetMask & (-1L << (Forwarding.FLOWSET_SHIFT + 1))).or(appMask)),
+				Masked.of(U64.of(6L << Forwarding.FLOWSET_SHIFT).or(anyFlowSet),
+						U64.of(flowSetMask).or(appMask)),
+				Masked.of(U64.of(9L << Forwarding.FLOWSET_SHIFT).or(anyFlowSet),
+						U64.of(flowSetMask).or(appMask))),
+				new HashSet<Masked<U64>>(Forwarding.aggregateFlowSetIds(ids)));
+	}
+}
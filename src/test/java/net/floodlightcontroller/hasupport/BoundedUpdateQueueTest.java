@@ -0,0 +1,89 @@
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import net.floodlightcontroller.hasupport.BoundedUpdateQueue.OfferResult;
+import net.floodlightcontroller.hasupport.IFilterQueue.OverflowPolicy;
+
+public class BoundedUpdateQueueTest {
+
+	/* Updates look like "key=value" */
+	private static BoundedUpdateQueue queue(OverflowPolicy policy) {
+		return new BoundedUpdateQueue(3, policy, u -> u.split("=")[0]);
+	}
+
+	private static List<String> drain(BoundedUpdateQueue q) {
+		List<String> l = new ArrayList<>();
+		q.drainTo(l);
+		return l;
+	}
+
+	@Test
+	public void testReject() {
+		BoundedUpdateQueue q = queue(OverflowPolicy.REJECT);
+		assertEquals(OfferResult.ENQUEUED, q.offer("a=1"));
+		assertEquals(OfferResult.ENQUEUED, q.offer("b=1"));
+		assertEquals(OfferResult.ENQUEUED, q.offer("c=1"));
+		assertEquals(OfferResult.REJECTED, q.offer("a=2"));
+		assertEquals(1, q.getDropCount());
+		assertEquals(Arrays.asList("a=1", "b=1", "c=1"), drain(q));
+		assertTrue(q.isEmpty());
+	}
+
+	@Test
+	public void testDropOldest() {
+		BoundedUpdateQueue q = queue(OverflowPolicy.DROP_OLDEST);
+		q.offer("a=1");
+		q.offer("b=1");
+		q.offer("c=1");
+		List<String> dropped = new ArrayList<>();
+		assertEquals(OfferResult.EVICTED, q.offer("d=1", dropped::add));
+		assertEquals(Arrays.asList("a=1"), dropped);
+		assertEquals(1, q.getDropCount());
+		assertEquals(Arrays.asList("b=1", "c=1", "d=1"), drain(q));
+	}
+
+	@Test
+	public void testCoalesce() {
+		BoundedUpdateQueue q = queue(OverflowPolicy.COALESCE);
+		q.offer("a=1");
+		q.offer("b=1");
+		q.offer("a=2");
+		/* Full: replaces the newest queued update for a, in place */
+		List<String> dropped = new ArrayList<>();
+		assertEquals(OfferResult.COALESCED, q.offer("a=3", dropped::add));
+		assertEquals(OfferResult.COALESCED, q.offer("b=2", dropped::add));
+		assertEquals(Arrays.asList("a=2", "b=1"), dropped);
+		assertEquals(2, q.getCoalesceCount());
+		assertEquals(0, q.getDropCount());
+		/* No queued update for c, so the oldest goes */
+		assertEquals(OfferResult.EVICTED, q.offer("c=1"));
+		assertEquals(1, q.getDropCount());
+		assertEquals(Arrays.asList("b=2", "a=3", "c=1"), drain(q));
+
+		/* Below capacity updates are never merged */
+		q.offer("a=4");
+		q.offer("a=5");
+		assertEquals(Arrays.asList("a=4", "a=5"), drain(q));
+	}
+
+	@Test
+	public void testLruMap() {
+		LruMap<String, String> m = new LruMap<>(2);
+		m.put("a", "1");
+		m.put("b", "2");
+		m.get("a");
+		m.put("c", "3");
+		assertTrue(m.containsKey("a"));
+		assertFalse(m.containsKey("b"));
+		assertEquals(1, m.getEvictionCount());
+	}
+}
@@ -0,0 +1,74 @@
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SyncUpdateCodecTest {
+
+	private final SyncUpdateCodec codec = new SyncUpdateCodec(
+			new String[] { "src", "srcPort", "dst", "dstPort", "type" },
+			new String[] { "operation", "latency" });
+
+	private static Map<String, String> link(String src, String dst, String op, String latency) {
+		Map<String, String> m = new HashMap<>();
+		m.put("src", src);
+		m.put("srcPort", "2");
+		m.put("dst", dst);
+		m.put("dstPort", "local");
+		m.put("type", "external");
+		m.put("operation", op);
+		m.put("latency", latency);
+		return m;
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		Map<String, String> a = link("00:00:00:00:00:00:00:01", "00:00:00:00:00:00:00:02",
+				"Link Updated", "0x0000000000000177");
+		Map<String, String> b = link("00:00:00:00:00:00:00:02", "00:00:00:00:00:00:00:01",
+				"Link Updated", "0x0000000000000177");
+		Map<String, String> a2 = link("00:00:00:00:00:00:00:01", "00:00:00:00:00:00:00:02",
+				"Link Removed", "0x0000000000000177");
+		Map<String, String> odd = new HashMap<>();
+		odd.put("src", "00:00:00:00:00:00:00:0A");
+		odd.put("operation", "Switch Removed");
+
+		List<SyncUpdateCodec.Record> records = Arrays.asList(
+				codec.toRecord(a, 1), codec.toRecord(b, 7),
+				codec.toRecord(a2, 2), codec.toRecord(odd, 1));
+		byte[] data = codec.encode(42, 3, 1000, records);
+		SyncUpdateCodec.Batch batch = codec.decode(data);
+
+		assertEquals(42, batch.getEpoch());
+		assertEquals(3, batch.getSeq());
+		assertEquals(1000, batch.getTimestamp());
+		assertEquals(4, batch.getRecords().size());
+		assertEquals(a, codec.toFields(batch.getRecords().get(0)));
+		assertEquals(b, codec.toFields(batch.getRecords().get(1)));
+		assertEquals(a2, codec.toFields(batch.getRecords().get(2)));
+		assertEquals(odd, codec.toFields(batch.getRecords().get(3)));
+		assertEquals(7, batch.getRecords().get(1).getSeq());
+		assertEquals(2, batch.getRecords().get(2).getSeq());
+		assertArrayEquals(records.get(2).getKey(), batch.getRecords().get(2).getKey());
+	}
+
+	@Test
+	public void testRepeatedKeyIsDelta() throws Exception {
+		Map<String, String> a = link("00:00:00:00:00:00:00:01", "00:00:00:00:00:00:00:02",
+				"Link Updated", "0x0000000000000177");
+		byte[] one = codec.encode(1, 1, 1, Arrays.asList(codec.toRecord(a, 1)));
+		byte[] two = codec.encode(1, 1, 1, Arrays.asList(codec.toRecord(a, 1), codec.toRecord(a, 2)));
+		/* key index, seq delta and an empty value mask */
+		assertEquals(3, two.length - one.length);
+		/* DPIDs and the latency are carried as 8 byte numbers; the JSON is ~190 */
+		assertTrue(one.length < 80);
+	}
+}
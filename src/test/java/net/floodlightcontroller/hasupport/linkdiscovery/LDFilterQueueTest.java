@@ -16,11 +16,17 @@ package net.floodlightcontroller.hasupport.linkdiscovery;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.sdnplatform.sync.IStoreClient;
 
+import net.floodlightcontroller.hasupport.IFilterQueue;
+
 public class LDFilterQueueTest {
 
 	protected static IStoreClient<String, String> storeLD;
@@ -92,4 +98,47 @@ public class LDFilterQueueTest {
 		LDFilterQueue.reverseFilterQueue.clear();
 	}
 
+	@Test
+	public void testRetryAfterReject() {
+		LDFilterQueue q = new LDFilterQueue(storeLD, controllerID);
+		LDFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.REJECT, 1);
+		try {
+			assertEquals(q.enqueueForward("first"), true);
+			assertEquals(q.enqueueForward("second"), false);
+			q.dequeueForward();
+			/* The rejected update is not taken for a duplicate */
+			assertEquals(q.enqueueForward("second"), true);
+			assertEquals(LDFilterQueue.filterQueue.size(), 1);
+		} finally {
+			LDFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.COALESCE, IFilterQueue.DEFAULT_QUEUE_CAPACITY);
+			LDFilterQueue.myMap.clear();
+			LDFilterQueue.filterQueue.clear();
+		}
+	}
+
+	@Test
+	public void testEvictedUpdateForgotten() {
+		LDFilterQueue q = new LDFilterQueue(storeLD, controllerID);
+		LDFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.DROP_OLDEST, 1);
+		try {
+			assertEquals(q.enqueueForward("first"), true);
+			/* Queued; pushes out the first one */
+			assertEquals(q.enqueueForward("second"), true);
+			/* Still queued, so still a duplicate */
+			assertEquals(q.enqueueForward("second"), true);
+			assertEquals(LDFilterQueue.filterQueue.size(), 1);
+			assertEquals(LDFilterQueue.myMap.containsKey(new LDHAUtils().calculateMD5Hash("second")), true);
+			/* The first one was never sent, so it is not a duplicate */
+			assertEquals(LDFilterQueue.myMap.containsKey(new LDHAUtils().calculateMD5Hash("first")), false);
+			assertEquals(q.enqueueForward("first"), true);
+			List<String> queued = new ArrayList<>();
+			LDFilterQueue.filterQueue.drainTo(queued);
+			assertEquals(queued, Collections.singletonList("first"));
+		} finally {
+			LDFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.COALESCE, IFilterQueue.DEFAULT_QUEUE_CAPACITY);
+			LDFilterQueue.myMap.clear();
+			LDFilterQueue.filterQueue.clear();
+		}
+	}
+
 }
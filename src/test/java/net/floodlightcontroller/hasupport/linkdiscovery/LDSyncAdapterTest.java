@@ -14,13 +14,22 @@
 
 package net.floodlightcontroller.hasupport.linkdiscovery;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.test.MockSyncService;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
  * Unit tests for the Sync Adapter class. Test both packing and unpacking of the
@@ -150,4 +159,64 @@ public class LDSyncAdapterTest {
 		}
 	}
 
+	@Test
+	public void testBatchRoundTrip() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.registerStore("LDUpdates", Scope.GLOBAL);
+		IStoreClient<String, String> store = syncService.getStoreClient("LDUpdates", String.class, String.class);
+		LDFilterQueue ldfq = new LDFilterQueue(store, "C1");
+		LDSyncAdapter publisher = new LDSyncAdapter(store, "C1", ldfq);
+		LDSyncAdapter subscriber = new LDSyncAdapter(store, "C2", ldfq);
+		LDFilterQueue.reverseFilterQueue.clear();
+
+		String up = "{\"dstPort\":\"2\",\"dst\":\"00:00:00:00:00:00:00:01\",\"src\":\"00:00:00:00:00:00:00:02\",\"latency\":\"0x0000000000000177\",\"srcPort\":\"2\",\"type\":\"external\",\"operation\":\"Link Updated\"}";
+		String down = up.replace("Link Updated", "Link Removed");
+		publisher.packJSON(Arrays.asList(up, "not json"));
+		publisher.packJSON(Arrays.asList(up, down));
+		assertEquals("2", store.getValue("C1"));
+
+		subscriber.unpackJSON("C1");
+		List<String> updates = ldfq.dequeueReverse();
+		assertEquals(3, updates.size());
+
+		ObjectMapper mapper = new ObjectMapper();
+		Map<String, String> last = mapper.readValue(updates.get(2),
+				new TypeReference<HashMap<String, String>>() {
+		});
+		assertEquals("Link Removed", last.get("operation"));
+		assertEquals("00:00:00:00:00:00:00:02", last.get("src"));
+		assertEquals("0x0000000000000177", last.get("latency"));
+		assertEquals("3", last.get("seq"));
+
+		/* Nothing new since the last read */
+		subscriber.unpackJSON("C1");
+		assertTrue(ldfq.dequeueReverse().isEmpty());
+	}
+
+	@Test
+	public void testBadBatchSkipped() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.registerStore("LDUpdates", Scope.GLOBAL);
+		IStoreClient<String, String> store = syncService.getStoreClient("LDUpdates", String.class, String.class);
+		LDFilterQueue ldfq = new LDFilterQueue(store, "C1");
+		LDSyncAdapter publisher = new LDSyncAdapter(store, "C1", ldfq);
+		LDSyncAdapter subscriber = new LDSyncAdapter(store, "C2", ldfq);
+		LDFilterQueue.reverseFilterQueue.clear();
+
+		String up = "{\"dstPort\":\"2\",\"dst\":\"00:00:00:00:00:00:00:01\",\"src\":\"00:00:00:00:00:00:00:02\",\"latency\":\"0x0000000000000177\",\"srcPort\":\"2\",\"type\":\"external\",\"operation\":\"Link Updated\"}";
+		String down = up.replace("Link Updated", "Link Removed");
+		publisher.packJSON(Arrays.asList(up));
+		publisher.packJSON(Arrays.asList(up, down));
+		/* Not Base64, so the first batch cannot be read */
+		store.put("C1:1", "not a batch!");
+
+		/* The later batch is still delivered */
+		subscriber.unpackJSON("C1");
+		assertEquals(2, ldfq.dequeueReverse().size());
+
+		/* ...and the bad one is not read again */
+		subscriber.unpackJSON("C1");
+		assertTrue(ldfq.dequeueReverse().isEmpty());
+	}
+
 }
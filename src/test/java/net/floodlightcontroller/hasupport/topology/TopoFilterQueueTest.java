@@ -16,11 +16,17 @@ package net.floodlightcontroller.hasupport.topology;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.sdnplatform.sync.IStoreClient;
 
+import net.floodlightcontroller.hasupport.IFilterQueue;
+
 public class TopoFilterQueueTest {
 
 	protected static IStoreClient<String, String> storeTopo;
@@ -92,4 +98,47 @@ public class TopoFilterQueueTest {
 		TopoFilterQueue.reverseFilterQueue.clear();
 	}
 
+	@Test
+	public void testRetryAfterReject() {
+		TopoFilterQueue q = new TopoFilterQueue(storeTopo, controllerID);
+		TopoFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.REJECT, 1);
+		try {
+			assertEquals(q.enqueueForward("first"), true);
+			assertEquals(q.enqueueForward("second"), false);
+			q.dequeueForward();
+			/* The rejected update is not taken for a duplicate */
+			assertEquals(q.enqueueForward("second"), true);
+			assertEquals(TopoFilterQueue.filterQueue.size(), 1);
+		} finally {
+			TopoFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.COALESCE, IFilterQueue.DEFAULT_QUEUE_CAPACITY);
+			TopoFilterQueue.myMap.clear();
+			TopoFilterQueue.filterQueue.clear();
+		}
+	}
+
+	@Test
+	public void testEvictedUpdateForgotten() {
+		TopoFilterQueue q = new TopoFilterQueue(storeTopo, controllerID);
+		TopoFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.DROP_OLDEST, 1);
+		try {
+			assertEquals(q.enqueueForward("first"), true);
+			/* Queued; pushes out the first one */
+			assertEquals(q.enqueueForward("second"), true);
+			/* Still queued, so still a duplicate */
+			assertEquals(q.enqueueForward("second"), true);
+			assertEquals(TopoFilterQueue.filterQueue.size(), 1);
+			assertEquals(TopoFilterQueue.myMap.containsKey(new TopoUtils().calculateMD5Hash("second")), true);
+			/* The first one was never sent, so it is not a duplicate */
+			assertEquals(TopoFilterQueue.myMap.containsKey(new TopoUtils().calculateMD5Hash("first")), false);
+			assertEquals(q.enqueueForward("first"), true);
+			List<String> queued = new ArrayList<>();
+			TopoFilterQueue.filterQueue.drainTo(queued);
+			assertEquals(queued, Collections.singletonList("first"));
+		} finally {
+			TopoFilterQueue.filterQueue.setOverflowPolicy(IFilterQueue.OverflowPolicy.COALESCE, IFilterQueue.DEFAULT_QUEUE_CAPACITY);
+			TopoFilterQueue.myMap.clear();
+			TopoFilterQueue.filterQueue.clear();
+		}
+	}
+
 }
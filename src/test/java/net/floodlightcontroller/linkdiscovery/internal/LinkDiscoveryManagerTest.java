@@ -38,6 +38,7 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.internal.MockOFConnection;
 import net.floodlightcontroller.core.internal.MockOFSwitchImpl;
@@ -46,6 +47,7 @@ import net.floodlightcontroller.core.test.MockThreadPoolService;
 import net.floodlightcontroller.core.types.NodePortTuple;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryListener;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.linkdiscovery.Link;
@@ -142,6 +144,9 @@ public class LinkDiscoveryManagerTest extends FloodlightTestCase {
         MockThreadPoolService tp = new MockThreadPoolService();
         RestApiServer restApi = new RestApiServer();
         MemoryStorageSource storageService = new MemoryStorageSource();
+        IShutdownService shutdownService = createNiceMock(IShutdownService.class);
+        replay(shutdownService);
+        cntx.addService(IShutdownService.class, shutdownService);
         cntx.addService(IRestApiService.class, restApi);
         cntx.addService(IThreadPoolService.class, tp);
         cntx.addService(IRoutingService.class, routingEngine);
@@ -224,6 +229,28 @@ public class LinkDiscoveryManagerTest extends FloodlightTestCase {
         assertTrue(linkDiscovery.switchLinks.get(lt.getSrc()).iterator().next().getLatency().equals(latency));
     }
 
+    @Test
+    public void testRefreshLink() throws Exception {
+        LinkDiscoveryManager linkDiscovery = getLinkDiscoveryManager();
+        Link lt = new Link(DatapathId.of(1L), OFPort.of(2), DatapathId.of(2L), OFPort.of(1), U64.of(100));
+        assertTrue(linkDiscovery.addOrUpdateLink(lt, new LinkInfo(new Date(), new Date(), null)));
+
+        // A newer LLDP only refreshes the valid time; no update is dispatched
+        Date later = new Date(System.currentTimeMillis() + 1000);
+        assertFalse(linkDiscovery.addOrUpdateLink(lt, new LinkInfo(later, later, null)));
+        assertEquals(later, linkDiscovery.links.get(lt).getUnicastValidTime());
+
+        // So does a BDDP on a link known from LLDP
+        assertFalse(linkDiscovery.addOrUpdateLink(lt, new LinkInfo(later, null, later)));
+        assertEquals(later, linkDiscovery.links.get(lt).getMulticastValidTime());
+        assertEquals(LinkType.DIRECT_LINK, linkDiscovery.links.get(lt).getLinkType());
+
+        // Once the LLDP time is gone, the next LLDP is a link change again
+        linkDiscovery.links.get(lt).setUnicastValidTime(null);
+        assertTrue(linkDiscovery.addOrUpdateLink(lt, new LinkInfo(later, later, null)));
+        assertEquals(later, linkDiscovery.links.get(lt).getUnicastValidTime());
+    }
+
     @Test
     public void testDeleteLink() throws Exception {
         LinkDiscoveryManager linkDiscovery = getLinkDiscoveryManager();
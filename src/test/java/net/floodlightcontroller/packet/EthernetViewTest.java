@@ -0,0 +1,133 @@
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+public class EthernetViewTest {
+
+    private static Ethernet udpPacket(short vlan) {
+        return (Ethernet) new Ethernet()
+        .setDestinationMACAddress("00:11:22:33:44:55")
+        .setSourceMACAddress("00:44:33:22:11:00")
+        .setVlanID(vlan)
+        .setPriorityCode((byte) 5)
+        .setEtherType(EthType.IPv4)
+        .setPayload(
+                new IPv4()
+                .setTtl((byte) 128)
+                .setSourceAddress("192.168.1.1")
+                .setDestinationAddress("192.168.1.2")
+                .setPayload(new UDP()
+                .setSourcePort((short) 5000)
+                .setDestinationPort((short) 5001)
+                .setPayload(new Data(new byte[] {0x01}))));
+    }
+
+    @Test
+    public void testUntaggedHeaders() {
+        EthernetView view = new EthernetView(udpPacket(Ethernet.VLAN_UNTAGGED).serialize());
+
+        assertTrue(view.isValid());
+        assertEquals(MacAddress.of("00:11:22:33:44:55"), view.getDestinationMACAddress());
+        assertEquals(MacAddress.of("00:44:33:22:11:00"), view.getSourceMACAddress());
+        assertFalse(view.isVlanTagged());
+        assertEquals(Ethernet.VLAN_UNTAGGED, view.getVlanID());
+        assertEquals(EthType.IPv4, view.getEtherType());
+        assertTrue(view.isIPv4());
+        assertEquals(IPv4Address.of("192.168.1.1"), view.getIPv4Source());
+        assertEquals(IPv4Address.of("192.168.1.2"), view.getIPv4Destination());
+        assertEquals(IpProtocol.UDP, view.getIpProtocol());
+        assertTrue(view.hasTransportPorts());
+        assertEquals(TransportPort.of(5000), view.getTransportSource());
+        assertEquals(TransportPort.of(5001), view.getTransportDestination());
+        assertFalse(view.isMaterialized());
+    }
+
+    @Test
+    public void testTaggedHeaders() {
+        EthernetView view = new EthernetView(udpPacket((short) 42).serialize());
+
+        assertTrue(view.isVlanTagged());
+        assertEquals(42, view.getVlanID());
+        assertEquals(5, view.getPriorityCode());
+        assertEquals(EthType.IPv4, view.getEtherType());
+        assertEquals(IPv4Address.of("192.168.1.2"), view.getIPv4Destination());
+        assertEquals(TransportPort.of(5001), view.getTransportDestination());
+    }
+
+    @Test
+    public void testBroadcastAndMulticast() {
+        Ethernet eth = udpPacket(Ethernet.VLAN_UNTAGGED);
+        eth.setDestinationMACAddress(MacAddress.BROADCAST);
+        EthernetView view = new EthernetView(eth.serialize());
+        assertTrue(view.isBroadcast());
+        assertFalse(view.isMulticast());
+
+        eth.setDestinationMACAddress("01:00:5e:00:00:01");
+        view = new EthernetView(eth.serialize());
+        assertFalse(view.isBroadcast());
+        assertTrue(view.isMulticast());
+    }
+
+    @Test
+    public void testMaterializeMatchesEagerDecode() {
+        byte[] data = udpPacket((short) 42).serialize();
+        EthernetView view = new EthernetView(data);
+
+        Ethernet eager = new Ethernet();
+        eager.deserialize(data, 0, data.length);
+
+        Ethernet lazy = view.getEthernet();
+        assertTrue(view.isMaterialized());
+        assertEquals(eager, lazy);
+        assertSame(lazy, view.getEthernet());
+    }
+
+    @Test
+    public void testWrapExistingPacket() {
+        Ethernet eth = udpPacket(Ethernet.VLAN_UNTAGGED);
+        EthernetView view = EthernetView.of(eth);
+        assertSame(eth, view.getEthernet());
+        assertEquals(eth.getSourceMACAddress(), view.getSourceMACAddress());
+    }
+
+    @Test
+    public void testIsValid() {
+        assertTrue(new EthernetView(new byte[14]).isValid());
+        assertFalse(new EthernetView(new byte[13]).isValid());
+
+        /* A VLAN tag needs 4 more bytes */
+        byte[] tagged = new byte[18];
+        tagged[12] = (byte) 0x81;
+        assertTrue(new EthernetView(tagged).isValid());
+        assertFalse(new EthernetView(tagged, 0, 17).isValid());
+    }
+
+    @Test
+    public void testMalformedFrame() {
+        /* Cut short in the middle of the source MAC address */
+        byte[] data = udpPacket(Ethernet.VLAN_UNTAGGED).serialize();
+        EthernetView view = new EthernetView(data, 0, 10);
+        assertFalse(view.isValid());
+
+        try {
+            view.getEthernet();
+            fail("Expected a decode error");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Error in deserialize ethernet packet of 10 bytes: "));
+            assertNotNull(e.getCause());
+        }
+        assertFalse(view.isMaterialized());
+    }
+}
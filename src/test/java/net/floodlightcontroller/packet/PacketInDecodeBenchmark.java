@@ -0,0 +1,98 @@
+package net.floodlightcontroller.packet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.projectfloodlight.openflow.types.EthType;
+
+/**
+ * Compares the eager packet-in decode the controller used to do for every
+ * PACKET_IN with the lazy {@link EthernetView}, for a listener that only
+ * looks at the L2 header and for one that needs the full packet.
+ *
+ * Not a unit test; run with main() or through the JMH runner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketInDecodeBenchmark {
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = new Ethernet()
+        .setDestinationMACAddress("00:11:22:33:44:55")
+        .setSourceMACAddress("00:44:33:22:11:00")
+        .setEtherType(EthType.IPv4)
+        .setPayload(
+                new IPv4()
+                .setTtl((byte) 128)
+                .setSourceAddress("192.168.1.1")
+                .setDestinationAddress("192.168.1.2")
+                .setPayload(new TCP()
+                .setSourcePort((short) 5000)
+                .setDestinationPort((short) 80)
+                .setPayload(new Data(new byte[64]))))
+        .serialize();
+    }
+
+    @Benchmark
+    public void eagerL2Only(Blackhole bh) {
+        Ethernet eth = new Ethernet();
+        eth.deserialize(data, 0, data.length);
+        bh.consume(eth.getSourceMACAddress());
+    }
+
+    @Benchmark
+    public void lazyL2Only(Blackhole bh) {
+        EthernetView view = new EthernetView(data);
+        bh.consume(view.getSourceMACAddress());
+    }
+
+    @Benchmark
+    public void eagerL4(Blackhole bh) {
+        Ethernet eth = new Ethernet();
+        eth.deserialize(data, 0, data.length);
+        IPv4 ip = (IPv4) eth.getPayload();
+        bh.consume(ip.getDestinationAddress());
+        bh.consume(((TCP) ip.getPayload()).getDestinationPort());
+    }
+
+    @Benchmark
+    public void lazyL4(Blackhole bh) {
+        EthernetView view = new EthernetView(data);
+        if (view.hasTransportPorts()) {
+            bh.consume(view.getIPv4Destination());
+            bh.consume(view.getTransportDestination());
+        }
+    }
+
+    @Benchmark
+    public void lazyMaterialized(Blackhole bh) {
+        EthernetView view = new EthernetView(data);
+        bh.consume(view.getSourceMACAddress());
+        bh.consume(view.getEthernet());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PacketInDecodeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
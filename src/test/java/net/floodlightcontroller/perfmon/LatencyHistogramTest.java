@@ -0,0 +1,78 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue("expected about " + expected + ", got " + actual,
+                Math.abs(actual - expected) <= expected / 32 + 1);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getValueAtPercentile(99.0));
+
+        for (long v = 1; v <= 100000; v++) {
+            h.record(v * 1000);
+        }
+        assertEquals(100000, h.getCount());
+        assertClose(50000000, h.getValueAtPercentile(50.0));
+        assertClose(99000000, h.getValueAtPercentile(99.0));
+        assertClose(99900000, h.getValueAtPercentile(99.9));
+        assertEquals(100000000, h.getValueAtPercentile(100.0));
+        assertEquals(100000000, h.getMaxNs());
+        assertEquals(50000500, h.getMeanNs());
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(3);
+        h.record(5);
+        h.record(-1); /* counted as 0 */
+        assertEquals(0, h.getValueAtPercentile(10.0));
+        assertEquals(3, h.getValueAtPercentile(50.0));
+        assertEquals(5, h.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    public void testAddAndReset() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(1000);
+        b.record(LatencyHistogram.MAX_TRACKABLE_NS * 2);
+        a.add(b);
+        assertEquals(2, a.getCount());
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NS, a.getMaxNs());
+        assertClose(1000, a.getValueAtPercentile(50.0));
+
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getValueAtPercentile(50.0));
+    }
+
+    @Test
+    public void testRollingWindows() {
+        long window = 1000000000L;
+        RollingLatencyHistogram r = new RollingLatencyHistogram(2, window);
+        long now = System.nanoTime();
+        r.record(100, now);
+        r.record(200, now + window);
+        assertEquals(2, r.snapshot(now + window).getCount());
+
+        /* Two windows on, the first window's histogram is reused */
+        r.record(300, now + 2 * window);
+        LatencyHistogram h = r.snapshot(now + 2 * window);
+        assertEquals(2, h.getCount());
+        assertEquals(300, h.getMaxNs());
+        assertClose(200, h.getValueAtPercentile(50.0));
+
+        /* Nothing recorded for two windows */
+        assertEquals(0, r.snapshot(now + 4 * window).getCount());
+    }
+}
@@ -47,13 +47,21 @@ import org.projectfloodlight.openflow.util.HexString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
 import java.util.*;
 
 import static net.floodlightcontroller.staticentry.StaticEntryPusher.Columns;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class StaticFlowTests extends FloodlightTestCase {
 	protected static Logger log = LoggerFactory.getLogger(StaticFlowTests.class);
@@ -206,7 +214,8 @@ public class StaticFlowTests extends FloodlightTestCase {
 		writeCaptureList = EasyMock.newCapture(CaptureType.ALL);
 
 		expect(mockSwitch.write(capture(writeCapture))).andReturn(true).anyTimes();
-		expect(mockSwitch.write(capture(writeCaptureList))).andReturn(Collections.<OFMessage>emptyList()).anyTimes();
+		expectListWrites();
+		expect(mockSwitch.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
 		expect(mockSwitch.getOFFactory()).andReturn(factory).anyTimes();
 		replay(mockSwitch);
 
@@ -248,9 +257,11 @@ public class StaticFlowTests extends FloodlightTestCase {
 		// if someone calls getId(), return this dpid instead
 		resetToNice(mockSwitch);
 		expect(mockSwitch.write(capture(writeCapture))).andReturn(true).anyTimes();
-		expect(mockSwitch.write(capture(writeCaptureList))).andReturn(Collections.<OFMessage> emptyList()).anyTimes();
+		expectListWrites();
 		expect(mockSwitch.getOFFactory()).andReturn(factory).anyTimes();
 		expect(mockSwitch.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+		expect(mockSwitch.writeRequest(EasyMock.<OFBarrierRequest>anyObject()))
+		.andReturn(Futures.immediateFuture(factory.buildBarrierReply().build())).anyTimes();
 		replay(mockSwitch);
 
 		// hook the static pusher up to the fake switch
@@ -258,20 +269,27 @@ public class StaticFlowTests extends FloodlightTestCase {
 
 		verify(mockSwitch);
 
-		// Verify that the switch has gotten some flow_mods
-		assertEquals(true, writeCapture.hasCaptured());
-		assertEquals(TotalTestRules, writeCapture.getValues().size());
+		// Verify that the switch has gotten all flow_mods in one batch
+		assertEquals(Integer.valueOf(TotalTestRules), pusher.getEntryPush(DatapathId.of(dpid)).get());
+		assertEquals(1, writeCaptureList.getValues().size());
+		List<OFMessage> pushed = writeCaptureList.getValues().get(0);
+		assertEquals(TotalTestRules, pushed.size());
 
 		// Order assumes how things are stored in hash bucket;
 		// should be fixed because OFMessage.hashCode() is deterministic
-		OFFlowMod firstFlowMod = (OFFlowMod) writeCapture.getValues().get(2);
+		OFFlowMod firstFlowMod = (OFFlowMod) pushed.get(2);
 		verifyFlowMod(firstFlowMod, FlowMod1);
-		OFFlowMod secondFlowMod = (OFFlowMod) writeCapture.getValues().get(0); /* Java 8 stores 2-0-1 */
+		OFFlowMod secondFlowMod = (OFFlowMod) pushed.get(0); /* Java 8 stores 2-0-1 */
 		verifyFlowMod(secondFlowMod, FlowMod2);
-		OFFlowMod thirdFlowMod = (OFFlowMod) writeCapture.getValues().get(1);
+		OFFlowMod thirdFlowMod = (OFFlowMod) pushed.get(1);
 		verifyFlowMod(thirdFlowMod, FlowMod3);
 
+		// the push is dropped with the switch
+		pusher.switchRemoved(DatapathId.of(dpid));
+		assertNull(pusher.getEntryPush(DatapathId.of(dpid)));
+
 		writeCapture.reset();
+		writeCaptureList.reset();
 
 		// delete two rules and verify they've been removed
 		// this should invoke staticFlowPusher.rowsDeleted()
@@ -338,6 +356,177 @@ public class StaticFlowTests extends FloodlightTestCase {
 	}
 
 
+	/**
+	 * Capture the lists of messages written to the switch, and pass them
+	 * on to the switch service, which keeps the shadow flow table
+	 */
+	private void expectListWrites() {
+		expect(mockSwitch.write(capture(writeCaptureList))).andAnswer(() -> {
+			for (Object m : (Iterable<?>) EasyMock.getCurrentArguments()[0]) {
+				getMockSwitchService().handleOutgoingMessage(mockSwitch, (OFMessage) m);
+			}
+			return Collections.<OFMessage> emptyList();
+		}).anyTimes();
+	}
+
+	/**
+	 * Make the switch answer barriers only when told to
+	 * @param f The switch's factory
+	 * @return The replies to the barriers written, in order
+	 */
+	private List<SettableFuture<OFBarrierReply>> expectPacedBarriers(OFFactory f) {
+		final List<SettableFuture<OFBarrierReply>> barriers = new ArrayList<SettableFuture<OFBarrierReply>>();
+		resetToNice(mockSwitch);
+		expect(mockSwitch.write(capture(writeCapture))).andReturn(true).anyTimes();
+		expectListWrites();
+		expect(mockSwitch.getOFFactory()).andReturn(f).anyTimes();
+		expect(mockSwitch.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+		expect(mockSwitch.writeRequest(EasyMock.<OFBarrierRequest>anyObject())).andAnswer(() -> {
+			SettableFuture<OFBarrierReply> reply = SettableFuture.create();
+			barriers.add(reply);
+			return reply;
+		}).anyTimes();
+		replay(mockSwitch);
+		return barriers;
+	}
+
+	private static void assertNoBarrier(List<OFMessage> written) {
+		for (OFMessage m : written) {
+			assertFalse(m instanceof OFBarrierRequest);
+		}
+	}
+
+	@Test
+	public void testStaticFlowPushInBatches() throws Exception {
+		pusher.pushBatchSize = 2;
+		List<SettableFuture<OFBarrierReply>> barriers = expectPacedBarriers(factory);
+		pusher.switchAdded(DatapathId.of(dpid));
+		ListenableFuture<Integer> push = pusher.getEntryPush(DatapathId.of(dpid));
+
+		// the second batch waits for the switch to reply to the first
+		assertEquals(1, writeCaptureList.getValues().size());
+		assertEquals(2, writeCaptureList.getValues().get(0).size());
+		assertEquals(1, barriers.size());
+		assertFalse(push.isDone());
+
+		barriers.get(0).set(factory.buildBarrierReply().build());
+		assertEquals(2, writeCaptureList.getValues().size());
+		assertEquals(1, writeCaptureList.getValues().get(1).size());
+		assertEquals(2, barriers.size());
+		assertFalse(push.isDone());
+
+		barriers.get(1).set(factory.buildBarrierReply().build());
+		assertEquals(Integer.valueOf(TotalTestRules), push.get());
+		assertEquals(2, writeCaptureList.getValues().size());
+		for (List<OFMessage> written : writeCaptureList.getValues()) {
+			assertNoBarrier(written);
+		}
+	}
+
+	@Test
+	public void testStaticFlowPushReconciled() throws Exception {
+		pusher.pushBatchSize = 2;
+		List<SettableFuture<OFBarrierReply>> barriers = expectPacedBarriers(factory);
+		pusher.switchAdded(DatapathId.of(dpid));
+		ListenableFuture<Integer> push = pusher.getEntryPush(DatapathId.of(dpid));
+		List<OFMessage> first = writeCaptureList.getValues().get(0);
+
+		// the switch turns out not to have the first batch
+		getMockSwitchService().getShadowFlowTable(DatapathId.of(dpid)).clear();
+		barriers.get(0).set(factory.buildBarrierReply().build());
+		assertEquals(2, writeCaptureList.getValues().size());
+		assertFalse(push.isDone());
+
+		// ...so once the push is done, that batch is written again
+		barriers.get(1).set(factory.buildBarrierReply().build());
+		assertEquals(3, writeCaptureList.getValues().size());
+		assertEquals(new HashSet<OFMessage>(first), new HashSet<OFMessage>(writeCaptureList.getValues().get(2)));
+		assertFalse(push.isDone());
+
+		barriers.get(2).set(factory.buildBarrierReply().build());
+		assertEquals(Integer.valueOf(TotalTestRules + 2), push.get());
+	}
+
+	@Test
+	public void testStaticFlowPushSkipsDeletedEntry() throws Exception {
+		pusher.pushBatchSize = 2;
+		List<SettableFuture<OFBarrierReply>> barriers = expectPacedBarriers(factory);
+		pusher.switchAdded(DatapathId.of(dpid));
+		ListenableFuture<Integer> push = pusher.getEntryPush(DatapathId.of(dpid));
+		List<OFMessage> first = writeCaptureList.getValues().get(0);
+
+		// delete the entry that is left for the second batch
+		String left = null;
+		for (Map.Entry<String, OFMessage> e : pusher.getEntries(DatapathId.of(dpid)).entrySet()) {
+			if (!first.contains(e.getValue())) {
+				left = e.getKey();
+			}
+		}
+		assertNotNull(left);
+		storage.deleteRow(StaticEntryPusher.TABLE_NAME, left);
+		assertEquals(1, writeCapture.getValues().size());
+		assertTrue(writeCapture.getValues().get(0) instanceof OFFlowDeleteStrict);
+
+		// ...so it is not added back after its delete
+		barriers.get(0).set(factory.buildBarrierReply().build());
+		assertEquals(Integer.valueOf(2), push.get());
+		assertEquals(1, writeCaptureList.getValues().size());
+		assertEquals(1, barriers.size());
+	}
+
+	@Test
+	public void testStaticFlowPushInBundle() throws Exception {
+		OFFactory factory14 = OFFactories.getFactory(OFVersion.OF_14);
+		pusher.pushBatchSize = 2;
+		pusher.pushInBundle = true;
+		List<SettableFuture<OFBarrierReply>> barriers = expectPacedBarriers(factory14);
+		pusher.switchAdded(DatapathId.of(dpid));
+		ListenableFuture<Integer> push = pusher.getEntryPush(DatapathId.of(dpid));
+
+		// open, two adds and commit; the bundle's barrier is the one waited for
+		assertEquals(1, writeCaptureList.getValues().size());
+		List<OFMessage> bundle = writeCaptureList.getValues().get(0);
+		assertEquals(4, bundle.size());
+		assertEquals(OFBundleCtrlType.OPEN_REQUEST, ((OFBundleCtrlMsg) bundle.get(0)).getBundleCtrlType());
+		assertTrue(bundle.get(1) instanceof OFBundleAddMsg);
+		assertTrue(bundle.get(2) instanceof OFBundleAddMsg);
+		assertEquals(OFBundleCtrlType.COMMIT_REQUEST, ((OFBundleCtrlMsg) bundle.get(3)).getBundleCtrlType());
+		assertEquals(1, barriers.size());
+		assertFalse(push.isDone());
+
+		barriers.get(0).set(factory14.buildBarrierReply().build());
+		assertEquals(2, writeCaptureList.getValues().size());
+		bundle = writeCaptureList.getValues().get(1);
+		assertEquals(3, bundle.size());
+		assertTrue(bundle.get(1) instanceof OFBundleAddMsg);
+		assertEquals(2, barriers.size());
+
+		barriers.get(1).set(factory14.buildBarrierReply().build());
+		assertEquals(Integer.valueOf(TotalTestRules), push.get());
+		for (List<OFMessage> written : writeCaptureList.getValues()) {
+			assertNoBarrier(written);
+		}
+	}
+
+	@Test
+	public void testUnchangedRowNotParsedAgain() throws Exception {
+		OFMessage parsed = pusher.getEntries(DatapathId.of(dpid)).get("TestRule1");
+		assertNotNull(parsed);
+
+		// same row again; the entry parsed before is reused
+		storage.updateRow(StaticEntryPusher.TABLE_NAME, TestRule1);
+		assertSame(parsed, pusher.getEntries(DatapathId.of(dpid)).get("TestRule1"));
+
+		// changed row; parsed again
+		Map<String, Object> changed = new HashMap<String, Object>(TestRule1);
+		changed.put(Columns.COLUMN_PRIORITY, "2");
+		storage.updateRow(StaticEntryPusher.TABLE_NAME, changed);
+		OFFlowMod reparsed = (OFFlowMod) pusher.getEntries(DatapathId.of(dpid)).get("TestRule1");
+		assertNotSame(parsed, reparsed);
+		assertEquals(2, reparsed.getPriority());
+	}
+
+
 	IStorageSourceService createStorageWithFlowEntries() {
 		return populateStorageWithFlowEntries();
 	}
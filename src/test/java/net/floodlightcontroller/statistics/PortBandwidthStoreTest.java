@@ -0,0 +1,63 @@
+package net.floodlightcontroller.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class PortBandwidthStoreTest {
+    private static final NodePortTuple NPT = new NodePortTuple(DatapathId.of(1), OFPort.of(1));
+
+    @Test
+    public void testFirstSampleHasNoBandwidth() {
+        PortBandwidthStore store = new PortBandwidthStore(3);
+        store.record(NPT, 100, 1000, 2000);
+        assertNull(store.get(NPT));
+        assertTrue(store.getHistory(NPT).isEmpty());
+        assertTrue(store.getAll().isEmpty());
+
+        store.record(NPT, 100, 2000, 4000);
+        SwitchPortBandwidth spb = store.get(NPT);
+        assertEquals(U64.of(100), spb.getLinkSpeedBitsPerSec());
+        assertEquals(U64.of(2000), spb.getPriorByteValueRx());
+        assertEquals(U64.of(4000), spb.getPriorByteValueTx());
+        assertTrue(spb.getBitsPerSecondRx().getValue() > 0);
+        assertEquals(spb, store.getAll().get(NPT));
+    }
+
+    @Test
+    public void testHistoryKeepsLatestSamples() {
+        PortBandwidthStore store = new PortBandwidthStore(3);
+        for (int i = 0; i < 10; i++) {
+            store.record(NPT, 100, i * 1000, i * 1000);
+        }
+        List<SwitchPortBandwidth> history = store.getHistory(NPT);
+        assertEquals(3, history.size());
+        assertEquals(U64.of(7000), history.get(0).getPriorByteValueRx());
+        assertEquals(U64.of(8000), history.get(1).getPriorByteValueRx());
+        assertEquals(U64.of(9000), history.get(2).getPriorByteValueRx());
+        assertEquals(history.get(2).getPriorByteValueRx(), store.get(NPT).getPriorByteValueRx());
+    }
+
+    @Test
+    public void testCounterOverflow() {
+        PortBandwidthStore store = new PortBandwidthStore(2);
+        store.record(NPT, 0, U64.NO_MASK.getValue() - 10, 0);
+        store.record(NPT, 0, 10, 0);
+        /* 20 bytes counted across the wrap, not a negative or huge value */
+        SwitchPortBandwidth spb = store.get(NPT);
+        assertTrue(spb.getBitsPerSecondRx().getValue() > 0);
+        assertEquals(0, spb.getBitsPerSecondTx().getValue());
+
+        store.clear();
+        assertNull(store.get(NPT));
+    }
+}
@@ -6,15 +6,21 @@ import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
 import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.MockDebugCounterService;
+import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.test.FloodlightTestCase;
 import org.easymock.EasyMock;
 import org.projectfloodlight.openflow.protocol.*;
 
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 
+import com.google.common.util.concurrent.SettableFuture;
+
 import java.util.*;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
@@ -51,10 +57,13 @@ public class StatisticsTest extends FloodlightTestCase {
 
         fmc.addService(IThreadPoolService.class, threadpool);
         fmc.addService(IOFSwitchService.class, switchService);
+        fmc.addService(IDebugCounterService.class, new MockDebugCounterService());
+        fmc.addService(IRestApiService.class, EasyMock.createNiceMock(IRestApiService.class));
 
         threadpool.init(fmc);
         statsCollector.init(fmc);
         threadpool.startUp(fmc);
+        statsCollector.startUp(fmc);
 
     }
 
@@ -103,6 +112,78 @@ public class StatisticsTest extends FloodlightTestCase {
 
     }
 
+    /**
+     * Test that port stats and port descriptions are requested together
+     * without waiting for replies, that replies are processed as they
+     * arrive, and that no more than the in-flight limit of requests is
+     * outstanding for a switch that does not reply.
+     *
+     * @throws Exception
+     */
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void testAsyncPortStatsCollection() throws Exception {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        DatapathId dpid = DatapathId.of(100 + inputOFVersion.ordinal()); /* stats maps are shared by all runs */
+        final List<SettableFuture> futures = new ArrayList<>();
+        final List<OFStatsType> types = new ArrayList<>();
+
+        IOFSwitch sw = EasyMock.createNiceMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(dpid).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        expect(sw.writeStatsRequest((OFStatsRequest) anyObject())).andAnswer(() -> {
+            types.add(((OFStatsRequest) getCurrentArguments()[0]).getStatsType());
+            SettableFuture f = SettableFuture.create();
+            futures.add(f);
+            return f;
+        }).anyTimes();
+        replay(sw);
+        Map<DatapathId, IOFSwitch> switchMap = new HashMap<>();
+        switchMap.put(dpid, sw);
+        getMockSwitchService().setSwitches(switchMap);
+
+        StatisticsCollector.PortStatsCollector collector = statsCollector.new PortStatsCollector();
+        collector.run();
+        assertEquals(Arrays.asList(OFStatsType.PORT, OFStatsType.PORT_DESC), types);
+
+        futures.get(0).set(Collections.singletonList(buildPortStatsReply(factory, 1000)));
+        futures.get(1).set(Collections.singletonList(factory.buildPortDescStatsReply()
+                .setEntries(Collections.singletonList(factory.buildPortDesc()
+                        .setPortNo(OFPort.of(1))
+                        .setName("eth1")
+                        .build()))
+                .build()));
+        assertNotNull(statsCollector.getPortDesc(dpid, OFPort.of(1)));
+        /* Bandwidth needs two samples */
+        assertNull(statsCollector.getBandwidthConsumption(dpid, OFPort.of(1)));
+
+        collector.run();
+        assertEquals(4, futures.size());
+        futures.get(2).set(Collections.singletonList(buildPortStatsReply(factory, 2000)));
+        assertNotNull(statsCollector.getBandwidthConsumption(dpid, OFPort.of(1)));
+
+        /* One request outstanding; the switch stops answering */
+        for (int i = 0; i < 5; i++) {
+            collector.run();
+        }
+        assertEquals(4 + 3, futures.size());
+
+        /* A reply frees a slot */
+        futures.get(4).set(Collections.singletonList(buildPortStatsReply(factory, 3000)));
+        collector.run();
+        assertEquals(4 + 3 + 1, futures.size());
+    }
+
+    private OFPortStatsReply buildPortStatsReply(OFFactory factory, long bytes) {
+        return factory.buildPortStatsReply()
+                .setEntries(Collections.singletonList(factory.buildPortStatsEntry()
+                        .setPortNo(OFPort.of(1))
+                        .setRxBytes(U64.of(bytes))
+                        .setTxBytes(U64.of(bytes))
+                        .build()))
+                .build();
+    }
+
     private IOFSwitch getSwitchByOFVersion(OFVersion inputOFVersion) {
         IOFSwitch sw = EasyMock.createMock(IOFSwitch.class);
         OFFactory inputFactory = OFFactories.getFactory(inputOFVersion);
@@ -0,0 +1,98 @@
+package net.floodlightcontroller.storage.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.storage.StorageNotificationDispatcher;
+import net.floodlightcontroller.storage.StorageSourceNotification;
+import net.floodlightcontroller.storage.StorageSourceNotification.Action;
+
+import org.junit.Test;
+
+public class StorageNotificationDispatcherTest {
+
+    private static StorageSourceNotification notification(String table,
+            Action action, Object... keys) {
+        Set<Object> keySet = new HashSet<Object>(Arrays.asList(keys));
+        return new StorageSourceNotification(table, action, keySet);
+    }
+
+    private static long pendingCounter(IDebugCounterService debugCounterService) {
+        return debugCounterService.getCounterHierarchy("storage",
+                "notifications-pending").get(0).getCounterValue();
+    }
+
+    @Test
+    public void testInlineDelivery() {
+        List<StorageSourceNotification> delivered =
+                new CopyOnWriteArrayList<StorageSourceNotification>();
+        StorageNotificationDispatcher d =
+                new StorageNotificationDispatcher(0, delivered::add);
+        assertFalse(d.isAsync());
+        d.post(notification("t", Action.MODIFY, 1));
+        d.post(notification("t", Action.MODIFY, 2));
+        assertEquals(2, delivered.size());
+        assertEquals(Collections.singleton(2), delivered.get(1).getKeys());
+    }
+
+    @Test
+    public void testOrderedCoalescedDelivery() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final List<StorageSourceNotification> delivered =
+                new CopyOnWriteArrayList<StorageSourceNotification>();
+        StorageNotificationDispatcher d = new StorageNotificationDispatcher(2,
+                n -> {
+                    started.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    delivered.add(n);
+                });
+        IDebugCounterService debugCounterService = new DebugCounterServiceImpl();
+        debugCounterService.registerModule("storage");
+        d.registerCounters(debugCounterService, "storage");
+        try {
+            /* The first one is handed to the listener and holds up the rest */
+            d.post(notification("t", Action.MODIFY, 1));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            d.post(notification("t", Action.MODIFY, 2));
+            d.post(notification("t", Action.MODIFY, 3));
+            d.post(notification("t", Action.DELETE, 2));
+            d.post(notification("t", Action.MODIFY, 4));
+            assertEquals(3, d.getPendingCount());
+            assertEquals(3, pendingCounter(debugCounterService));
+
+            release.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (delivered.size() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(4, delivered.size());
+            assertEquals(0, d.getPendingCount());
+            assertEquals(0, pendingCounter(debugCounterService));
+            assertEquals(notification("t", Action.MODIFY, 1), delivered.get(0));
+            assertEquals(notification("t", Action.MODIFY, 2, 3), delivered.get(1));
+            assertEquals(notification("t", Action.DELETE, 2), delivered.get(2));
+            assertEquals(notification("t", Action.MODIFY, 4), delivered.get(3));
+        } finally {
+            release.countDown();
+            d.shutdown();
+        }
+    }
+}
@@ -260,6 +260,50 @@ public abstract class StorageTest extends FloodlightTestCase {
         checkExpectedResults(resultSet, columnList, expectedResults);
     }
 
+    @Test
+    public void testIndexedQueries() {
+        storageSource.setColumnIndexMode(PERSON_TABLE_NAME, PERSON_AGE,
+                NoSqlStorageSource.ColumnIndexMode.RANGE_INDEXED);
+        String[] columnList = {PERSON_FIRST_NAME,PERSON_LAST_NAME, PERSON_AGE};
+        IPredicate predicate = new CompoundPredicate(CompoundPredicate.Operator.AND, false,
+                new OperatorPredicate(PERSON_AGE, OperatorPredicate.Operator.GTE, 27),
+                new OperatorPredicate(PERSON_AGE, OperatorPredicate.Operator.LT, 40));
+        Object[][] expectedResults = {
+                {"Lisa", "Jones", 27},
+                {"Jose", "Garcia", 31},
+                {"Abigail", "Johnson", 35}
+        };
+        IResultSet resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                predicate, new RowOrdering(PERSON_SSN));
+        checkExpectedResults(resultSet, columnList, expectedResults);
+
+        // Indexes follow updates and deletes
+        Map<String,Object> updateValues = new HashMap<String,Object>();
+        updateValues.put(PERSON_FIRST_NAME, "Elisabeth");
+        updateValues.put(PERSON_AGE, 45);
+        storageSource.updateRow(PERSON_TABLE_NAME, "333-33-3333", updateValues);
+        storageSource.deleteRow(PERSON_TABLE_NAME, "555-55-5555");
+        expectedResults = new Object[][] {
+                {"Abigail", "Johnson", 35}
+        };
+        resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                predicate, new RowOrdering(PERSON_SSN));
+        checkExpectedResults(resultSet, columnList, expectedResults);
+
+        expectedResults = new Object[][] {
+                {"Elisabeth", "Jones", 45}
+        };
+        resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                new CompoundPredicate(CompoundPredicate.Operator.AND, false,
+                        new OperatorPredicate(PERSON_AGE, OperatorPredicate.Operator.GT, 40),
+                        new OperatorPredicate(PERSON_FIRST_NAME, OperatorPredicate.Operator.EQ, "Elisabeth")),
+                new RowOrdering(PERSON_SSN));
+        checkExpectedResults(resultSet, columnList, expectedResults);
+        resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                new OperatorPredicate(PERSON_FIRST_NAME, OperatorPredicate.Operator.EQ, "Lisa"), null);
+        checkExpectedResults(resultSet, columnList, new Object[0][]);
+    }
+
     @Test
     public void testOrQuery() {
         String[] columnList = {PERSON_FIRST_NAME,PERSON_LAST_NAME, PERSON_AGE};        
@@ -0,0 +1,183 @@
+package net.floodlightcontroller.topology;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Path computation over generated fat-tree and random topologies:
+ * building the {@link TopologyGraph}, one Dijkstra per switch, and a
+ * complete {@link TopologyInstance#compute()} (clusters, archipelagos,
+ * Yen's for every pair and broadcast trees).
+ *
+ * Not a unit test; run with main() or through the JMH runner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopologyGraphBenchmark {
+
+    @Param({ "fattree-4", "fattree-8", "random-100", "random-400" })
+    public String topology;
+
+    private Map<DatapathId, Set<OFPort>> portsWithLinks;
+    private Map<NodePortTuple, Set<Link>> links;
+    private Map<DatapathId, Set<Link>> linkDpidMap;
+    private TopologyGraph graph;
+
+    @Setup
+    public void setUp() {
+        portsWithLinks = new HashMap<DatapathId, Set<OFPort>>();
+        links = new HashMap<NodePortTuple, Set<Link>>();
+
+        String[] t = topology.split("-");
+        int size = Integer.parseInt(t[1]);
+        if (t[0].equals("fattree")) {
+            buildFatTree(size);
+        } else {
+            buildRandom(size, 4, 42);
+        }
+
+        linkDpidMap = new HashMap<DatapathId, Set<Link>>();
+        for (Set<Link> ls : links.values()) {
+            for (Link l : ls) {
+                add(linkDpidMap, l.getSrc(), l);
+                add(linkDpidMap, l.getDst(), l);
+            }
+        }
+        graph = new TopologyGraph(linkDpidMap, Collections.<Link, Integer>emptyMap());
+    }
+
+    /*
+     * k pods of k/2 edge and k/2 aggregation switches, and (k/2)^2 core
+     * switches. Every edge switch connects to every aggregation switch in
+     * its pod; aggregation switch j of each pod connects to core switches
+     * j*k/2 to (j+1)*k/2-1.
+     */
+    private void buildFatTree(int k) {
+        int half = k / 2;
+        long core = 1;
+        long agg = core + half * half;
+        long edge = agg + k * half;
+        for (int p = 0; p < k; p++) {
+            for (int e = 0; e < half; e++) {
+                for (int a = 0; a < half; a++) {
+                    connect(DatapathId.of(edge + p * half + e), DatapathId.of(agg + p * half + a));
+                }
+            }
+            for (int a = 0; a < half; a++) {
+                for (int c = 0; c < half; c++) {
+                    connect(DatapathId.of(agg + p * half + a), DatapathId.of(core + a * half + c));
+                }
+            }
+        }
+    }
+
+    /* A ring, so the graph is connected, plus random chords */
+    private void buildRandom(int n, int degree, long seed) {
+        Random r = new Random(seed);
+        for (int i = 0; i < n; i++) {
+            connect(DatapathId.of(i + 1), DatapathId.of((i + 1) % n + 1));
+        }
+        for (int i = 0; i < n * (degree - 2) / 2; i++) {
+            int a = r.nextInt(n) + 1;
+            int b = r.nextInt(n) + 1;
+            if (a != b) {
+                connect(DatapathId.of(a), DatapathId.of(b));
+            }
+        }
+    }
+
+    /* Adds a bidirectional link on the next free port of each switch */
+    private void connect(DatapathId a, DatapathId b) {
+        OFPort pa = nextPort(a);
+        OFPort pb = nextPort(b);
+        Link ab = new Link(a, pa, b, pb, U64.ZERO);
+        Link ba = new Link(b, pb, a, pa, U64.ZERO);
+        for (Link l : new Link[] { ab, ba }) {
+            add(links, new NodePortTuple(l.getSrc(), l.getSrcPort()), l);
+            add(links, new NodePortTuple(l.getDst(), l.getDstPort()), l);
+        }
+    }
+
+    private OFPort nextPort(DatapathId sw) {
+        Set<OFPort> ports = portsWithLinks.get(sw);
+        if (ports == null) {
+            ports = new HashSet<OFPort>();
+            portsWithLinks.put(sw, ports);
+        }
+        OFPort p = OFPort.of(ports.size() + 1);
+        ports.add(p);
+        return p;
+    }
+
+    private static <K> void add(Map<K, Set<Link>> m, K key, Link l) {
+        Set<Link> s = m.get(key);
+        if (s == null) {
+            s = new HashSet<Link>();
+            m.put(key, s);
+        }
+        s.add(l);
+    }
+
+    @Benchmark
+    public TopologyGraph buildGraph() {
+        return new TopologyGraph(linkDpidMap, Collections.<Link, Integer>emptyMap());
+    }
+
+    @Benchmark
+    public void dijkstraFromEverySwitch(Blackhole bh) {
+        for (DatapathId root : linkDpidMap.keySet()) {
+            bh.consume(graph.dijkstra(root, true, null, null));
+        }
+    }
+
+    @Benchmark
+    public TopologyInstance computeTopology() {
+        TopologyInstance ti = new TopologyInstance(portsWithLinks,
+                Collections.<NodePortTuple>emptySet(),
+                links,
+                Collections.<NodePortTuple>emptySet(),
+                Collections.<NodePortTuple>emptySet(),
+                links,
+                portsWithLinks,
+                Collections.<NodePortTuple, Set<Link>>emptyMap());
+        ti.compute();
+        return ti;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TopologyGraphBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
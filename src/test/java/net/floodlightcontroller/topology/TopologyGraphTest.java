@@ -0,0 +1,95 @@
+package net.floodlightcontroller.topology;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+public class TopologyGraphTest {
+    private static final DatapathId ONE = DatapathId.of(1);
+    private static final DatapathId TWO = DatapathId.of(2);
+    private static final DatapathId THREE = DatapathId.of(3);
+    private static final DatapathId FOUR = DatapathId.of(4);
+
+    private Map<DatapathId, Set<Link>> linkDpidMap;
+    private Map<Link, Integer> linkCost;
+
+    /*
+     * 1 -> 2 -> 4 costs 2, 1 -> 3 -> 4 costs 11 (the 3 -> 4 link costs 10)
+     */
+    @Before
+    public void setUp() {
+        linkDpidMap = new HashMap<DatapathId, Set<Link>>();
+        linkCost = new HashMap<Link, Integer>();
+        addLink(ONE, 1, TWO, 1, 1);
+        addLink(TWO, 2, FOUR, 1, 1);
+        addLink(ONE, 2, THREE, 1, 1);
+        addLink(THREE, 2, FOUR, 2, 10);
+    }
+
+    private Link addLink(DatapathId src, int srcPort, DatapathId dst, int dstPort, int cost) {
+        Link l = new Link(src, OFPort.of(srcPort), dst, OFPort.of(dstPort), U64.ZERO);
+        for (DatapathId d : new DatapathId[] { src, dst }) {
+            if (!linkDpidMap.containsKey(d)) {
+                linkDpidMap.put(d, new HashSet<Link>());
+            }
+            linkDpidMap.get(d).add(l);
+        }
+        linkCost.put(l, cost);
+        return l;
+    }
+
+    @Test
+    public void testDstRootedTree() {
+        TopologyGraph g = new TopologyGraph(linkDpidMap, linkCost);
+        TopologyGraph.Tree t = g.dijkstra(FOUR, true, null, null);
+
+        assertEquals(0, t.getCost(FOUR));
+        assertEquals(1, t.getCost(TWO));
+        assertEquals(10, t.getCost(THREE));
+        assertEquals(2, t.getCost(ONE));
+        assertEquals(TWO, t.getTreeLink(ONE).getDst());
+        assertNull(t.getTreeLink(FOUR));
+    }
+
+    @Test
+    public void testSrcRootedTree() {
+        TopologyGraph g = new TopologyGraph(linkDpidMap, linkCost);
+        TopologyGraph.Tree t = g.dijkstra(ONE, false, null, null);
+
+        assertEquals(2, t.getCost(FOUR));
+        assertEquals(TWO, t.getTreeLink(FOUR).getSrc());
+        /* Nothing reaches 1 along the direction of the links */
+        assertEquals(TopologyInstance.MAX_PATH_WEIGHT, g.dijkstra(FOUR, false, null, null).getCost(ONE));
+    }
+
+    @Test
+    public void testExclusions() {
+        TopologyGraph g = new TopologyGraph(linkDpidMap, linkCost);
+
+        boolean[] nodes = new boolean[g.getNodeCount()];
+        nodes[g.getNodeIndex(TWO)] = true;
+        TopologyGraph.Tree t = g.dijkstra(FOUR, true, nodes, null);
+        assertEquals(11, t.getCost(ONE));
+        assertEquals(-1, t.getCost(TWO));
+
+        /* A destination-rooted tree drops a link by its destination port */
+        boolean[] ports = new boolean[g.getPortCount()];
+        ports[g.getPortIndex(new NodePortTuple(FOUR, OFPort.of(1)))] = true;
+        t = g.dijkstra(FOUR, true, null, ports);
+        assertEquals(11, t.getCost(ONE));
+        assertEquals(THREE, t.getTreeLink(ONE).getDst());
+    }
+}
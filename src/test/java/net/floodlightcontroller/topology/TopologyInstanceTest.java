@@ -933,4 +933,102 @@ public class TopologyInstanceTest {
         verifyRoute(r10, r10.size());
     }
     
-}
\ No newline at end of file
+    @Test
+    public void testIncrementalPathComputation() throws Exception {
+        fmc.addConfigParam(topologyManager, "incrementalPathComputation", "true");
+        topologyManager.init(fmc);
+        topologyManager.setPathMetric(HOPCOUNT);
+        int k = 3;
+
+        /* A ring of four switches: 1 - 2 - 3 - 4 - 1 */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 1, 2, 2, DIRECT_LINK},
+                {3, 2, 4, 1, DIRECT_LINK},
+                {4, 1, 3, 2, DIRECT_LINK},
+                {4, 2, 1, 2, DIRECT_LINK},
+                {1, 2, 4, 2, DIRECT_LINK},
+        };
+        createTopologyFromLinks(linkArray);
+        DatapathId two = DatapathId.of(2);
+        DatapathId three = DatapathId.of(3);
+        assertEquals(1, topologyManager.getCurrentInstance().getPath(two, three).getHopCount());
+
+        /* Drop 2 <-> 3; only the path sets using it should change */
+        topologyManager.removeLink(two, OFPort.of(2), three, OFPort.of(1));
+        topologyManager.removeLink(three, OFPort.of(1), two, OFPort.of(2));
+        topologyManager.createNewInstance();
+        TopologyInstance incremental = topologyManager.getCurrentInstance();
+        assertEquals(3, incremental.getPath(two, three).getHopCount());
+
+        topologyManager.forceRecompute();
+        TopologyInstance full = topologyManager.getCurrentInstance();
+        verifySamePathCosts(full, incremental, k);
+
+        /* Bring the link back; the direct path must be found again */
+        topologyManager.addOrUpdateLink(two, OFPort.of(2), three, OFPort.of(1), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.addOrUpdateLink(three, OFPort.of(1), two, OFPort.of(2), U64.ZERO, ILinkDiscovery.LinkType.DIRECT_LINK);
+        topologyManager.createNewInstance();
+        incremental = topologyManager.getCurrentInstance();
+        assertEquals(1, incremental.getPath(two, three).getHopCount());
+
+        topologyManager.forceRecompute();
+        full = topologyManager.getCurrentInstance();
+        verifySamePathCosts(full, incremental, k);
+    }
+
+    @Test
+    public void testParallelPathComputation() throws Exception {
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 1, 2, 2, DIRECT_LINK},
+                {3, 2, 4, 1, DIRECT_LINK},
+                {4, 1, 3, 2, DIRECT_LINK},
+                {4, 2, 1, 2, DIRECT_LINK},
+                {1, 2, 4, 2, DIRECT_LINK},
+                {1, 3, 3, 3, DIRECT_LINK},
+                {3, 3, 1, 3, DIRECT_LINK},
+                {2, 3, 5, 1, DIRECT_LINK},
+                {5, 1, 2, 3, DIRECT_LINK},
+                {4, 3, 5, 2, DIRECT_LINK},
+                {5, 2, 4, 3, DIRECT_LINK},
+        };
+        int k = 3;
+        topologyManager.setPathMetric(HOPCOUNT);
+
+        fmc.addConfigParam(topologyManager, "pathComputationThreads", "1");
+        topologyManager.init(fmc);
+        createTopologyFromLinks(linkArray);
+        TopologyInstance sequential = topologyManager.getCurrentInstance();
+
+        fmc.addConfigParam(topologyManager, "pathComputationThreads", "4");
+        topologyManager.init(fmc);
+        createTopologyFromLinks(linkArray);
+        TopologyInstance parallel = topologyManager.getCurrentInstance();
+
+        for (DatapathId src : sequential.getSwitches()) {
+            for (DatapathId dst : sequential.getSwitches()) {
+                assertEquals(sequential.getPathsFast(src, dst, k), parallel.getPathsFast(src, dst, k));
+            }
+        }
+        assertEquals(sequential.getAllBroadcastPorts(), parallel.getAllBroadcastPorts());
+    }
+
+    private void verifySamePathCosts(TopologyInstance expected, TopologyInstance actual, int k) {
+        for (DatapathId src : expected.getSwitches()) {
+            for (DatapathId dst : expected.getSwitches()) {
+                List<Path> e = expected.getPathsFast(src, dst, k);
+                List<Path> a = actual.getPathsFast(src, dst, k);
+                assertEquals("number of paths " + src + " -> " + dst, e.size(), a.size());
+                for (int i = 0; i < e.size(); i++) {
+                    assertEquals("hop count of path " + i + " " + src + " -> " + dst,
+                            e.get(i).getHopCount(), a.get(i).getHopCount());
+                }
+            }
+        }
+    }
+}